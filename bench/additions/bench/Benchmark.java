@@ -0,0 +1,217 @@
+package additions.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * A small benchmark harness that runs an operation a number of times to warm
+ * up the JIT compiler and then times it, recording the time, the bytes allocated,
+ * and the garbage collections per operation.<br>
+ * <br>
+ * The allocated bytes are read from <code>com.sun.management.ThreadMXBean</code>
+ * and summed over all live threads, so work done in a <code>ForkJoinPool</code> is
+ * counted too (as long as its threads stay alive, which the common pool's do).
+ * If the JVM does not support this, the allocation is reported as -1.
+ */
+public class Benchmark
+{
+	/** The number of runs before timing starts. */
+	private int warmups;
+	/** The number of timed runs. */
+	private int iterations;
+	/** The thread bean used to count allocated bytes, or null. */
+	private com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Constructor with the number of warm-up and timed runs.
+	 *
+	 * @param warmups  the number of runs before timing starts
+	 * @param iterations  the number of timed runs
+	 */
+	public Benchmark(int warmups, int iterations)
+	{
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.threads = null;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+		{
+			threads = (com.sun.management.ThreadMXBean) bean;
+			if(threads.isThreadAllocatedMemorySupported())
+			{
+				threads.setThreadAllocatedMemoryEnabled(true);
+			}
+			else
+			{
+				threads = null;
+			}
+		}
+	}
+
+	/**
+	 * Warms up and then times an operation.
+	 *
+	 * @param op  the operation
+	 * @return  the measurements per operation
+	 */
+	public Result run(Runnable op)
+	{
+		for(int i = 0; i < warmups; i++)
+		{
+			op.run();
+		}
+		System.gc();
+
+		long bytes = allocatedBytes();
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++)
+		{
+			op.run();
+		}
+		long nanos = System.nanoTime() - start;
+		long allocated = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+
+		return new Result(nanos / (double) iterations,
+				(allocated < 0) ? -1 : allocated / (double) iterations,
+				(gcCount() - gcCount) / (double) iterations,
+				(gcTime() - gcTime) / (double) iterations);
+	}
+
+	/**
+	 * Gets the total number of bytes allocated by all live threads.
+	 *
+	 * @return  the bytes allocated, or -1 if this is not supported
+	 */
+	private long allocatedBytes()
+	{
+		if(threads == null)
+		{
+			return -1;
+		}
+		long total = 0;
+		for(long b : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+		{
+			if(b > 0)
+			{
+				total += b;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Gets the total number of garbage collections so far.
+	 *
+	 * @return  the number of collections
+	 */
+	private static long gcCount()
+	{
+		long count = 0;
+		List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+		for(GarbageCollectorMXBean gc : beans)
+		{
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the total time spent in garbage collection so far.
+	 *
+	 * @return  the time, in milliseconds
+	 */
+	private static long gcTime()
+	{
+		long time = 0;
+		List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+		for(GarbageCollectorMXBean gc : beans)
+		{
+			time += Math.max(0, gc.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * The measurements of one benchmark, averaged per operation.
+	 */
+	public static class Result
+	{
+		/** The time per operation, in nanoseconds. */
+		private double nanos;
+		/** The bytes allocated per operation, or -1 if unknown. */
+		private double bytes;
+		/** The garbage collections per operation. */
+		private double gcCount;
+		/** The time spent in garbage collection per operation, in milliseconds. */
+		private double gcMillis;
+
+		/**
+		 * Constructor with all values specified.
+		 *
+		 * @param nanos  the time per operation, in nanoseconds
+		 * @param bytes  the bytes allocated per operation
+		 * @param gcCount  the garbage collections per operation
+		 * @param gcMillis  the garbage collection time per operation
+		 */
+		public Result(double nanos, double bytes, double gcCount, double gcMillis)
+		{
+			this.nanos = nanos;
+			this.bytes = bytes;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+		}
+
+		/**
+		 * Gets the time per operation.
+		 *
+		 * @return  the time, in milliseconds
+		 */
+		public double getMillis()
+		{
+			return nanos / 1e6;
+		}
+
+		/**
+		 * Gets the number of operations per second.
+		 *
+		 * @return  the throughput
+		 */
+		public double getThroughput()
+		{
+			return 1e9 / nanos;
+		}
+
+		/**
+		 * Gets the bytes allocated per operation.
+		 *
+		 * @return  the bytes, or -1 if unknown
+		 */
+		public double getBytes()
+		{
+			return bytes;
+		}
+
+		/**
+		 * Gets the garbage collections per operation.
+		 *
+		 * @return  the number of collections
+		 */
+		public double getGcCount()
+		{
+			return gcCount;
+		}
+
+		/**
+		 * Gets the time spent in garbage collection per operation.
+		 *
+		 * @return  the time, in milliseconds
+		 */
+		public double getGcMillis()
+		{
+			return gcMillis;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package additions.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.jblas.DoubleMatrix;
+
+import additions.BitMatrix;
+import additions.ClosureEngine;
+import additions.ClosureEngines;
+import additions.ClosureResult;
+import additions.IncrementalVisibility;
+import additions.OffHeapBitMatrix;
+import additions.ReachabilityCounts;
+import additions.SparseDependencyMatrix;
+import additions.VisibilityMode;
+
+/**
+ * Checks that every exact <code>ClosureEngine</code> gives the same visibility as
+ * <code>ClosureEngines.bitset()</code> and <code>ClosureEngines.reference()</code>,
+ * and prints one tab-separated row per graph and engine: the VFI and VFO sums, the
+ * number of elements that can see themselves, and whether they (and the matrix, if
+ * the engine keeps one) match both. The engines are those of every exact
+ * <code>VisibilityMode</code>, and <code>offHeap()</code> with a budget small enough
+ * that it uses a scratch file and builds its rows in several blocks.<br>
+ * <br>
+ * The graphs are the generated kinds, each also with some elements depending on
+ * themselves, a graph with no elements, one with no dependencies, and one with a
+ * single element that depends on itself. The reference engine is only run on graphs
+ * of up to <code>MAX_REFERENCE</code> elements, since its sums of powers of the
+ * dependency matrix grow too large for doubles on bigger graphs with cycles.<br>
+ * <br>
+ * <code>IncrementalVisibility</code> is checked against <code>bitset()</code> too, by
+ * updating it from each generated graph to the same graph with self-dependencies,
+ * back again, and to and from a different graph of the same kind, and from the single
+ * self-dependent element to one without dependencies and back.<br>
+ * <br>
+ * Arguments (all optional): the graph kinds to generate (comma-separated, as in
+ * <code>PhaseBenchmarks</code>), the number of elements, and the average number of
+ * dependencies per element. The program exits with status 1 if any engine differs.
+ */
+public class EngineValidation
+{
+	/** The largest graph that the reference engine is run on. */
+	private static final int MAX_REFERENCE = 300;
+	/** Every this many elements depend on themselves in the graphs with self-dependencies. */
+	private static final int SELF_STEP = 7;
+	/** The memory budget of the off-heap engine that uses a scratch file. */
+	private static final long SMALL_BUDGET = 4096;
+
+	/**
+	 * Main method to run the validation.
+	 * @param args  the graph kinds, size, and average degree
+	 */
+	public static void main(String[] args)
+	{
+		Logger.getRootLogger().setLevel(Level.WARN);
+		String[] kinds = (args.length > 0) ? args[0].split(",")
+				: new String[] {"random", "powerlaw", "bigcore"};
+		int n = (args.length > 1) ? Integer.parseInt(args[1]) : 300;
+		double degree = (args.length > 2) ? Double.parseDouble(args[2]) : 4;
+
+		List<String> labels = new ArrayList<String>();
+		List<SparseDependencyMatrix> graphs = new ArrayList<SparseDependencyMatrix>();
+		for(String kind : kinds)
+		{
+			SparseDependencyMatrix dep = GraphGenerator.generate(kind, n, degree, 42);
+			graphs.add(dep);
+			labels.add(kind + "-" + n);
+			graphs.add(withSelfDependencies(dep));
+			labels.add(kind + "-" + n + "-self");
+		}
+		graphs.add(SparseDependencyMatrix.fromEdges(0, new int[0], new int[0], 0, null));
+		labels.add("empty");
+		graphs.add(SparseDependencyMatrix.fromEdges(50, new int[0], new int[0], 0, null));
+		labels.add("isolated-50");
+		graphs.add(SparseDependencyMatrix.fromEdges(1, new int[] {0}, new int[] {0}, 1, null));
+		labels.add("self-1");
+
+		List<ClosureEngine> engines = new ArrayList<ClosureEngine>();
+		List<String> names = new ArrayList<String>();
+		for(VisibilityMode mode : VisibilityMode.values())
+		{
+			if(mode != VisibilityMode.AUTO && mode != VisibilityMode.APPROXIMATE)
+			{
+				ClosureEngine engine = ClosureEngines.forMode(mode, null, 0, 0,
+						OffHeapBitMatrix.DEFAULT_MEMORY_BUDGET, null);
+				engines.add(engine);
+				names.add(engine.getName());
+			}
+		}
+		engines.add(ClosureEngines.offHeap(SMALL_BUDGET, null));
+		names.add("off-heap (mapped)");
+
+		System.out.println("graph\tengine\tvfiSum\tvfoSum\tselfVisible\tbitset\treference");
+		boolean allMatch = true;
+		for(int g = 0; g < graphs.size(); g++)
+		{
+			allMatch &= validate(labels.get(g), graphs.get(g), engines, names);
+		}
+
+		SparseDependencyMatrix single = SparseDependencyMatrix.fromEdges(1, new int[0], new int[0], 0, null);
+		SparseDependencyMatrix singleSelf = graphs.get(graphs.size() - 1);
+		allMatch &= validateIncremental("self-1", single, "isolated-1", singleSelf);
+		allMatch &= validateIncremental("isolated-1", singleSelf, "self-1", single);
+		for(String kind : kinds)
+		{
+			String label = kind + "-" + n;
+			SparseDependencyMatrix dep = GraphGenerator.generate(kind, n, degree, 42);
+			SparseDependencyMatrix self = withSelfDependencies(dep);
+			SparseDependencyMatrix other = GraphGenerator.generate(kind, n, degree, 43);
+			allMatch &= validateIncremental(label + "-self", dep, label, self);
+			allMatch &= validateIncremental(label, self, label + "-self", dep);
+			allMatch &= validateIncremental(label + "-self", other, label + "-other", self);
+			allMatch &= validateIncremental(label + "-other", self, label + "-self", other);
+		}
+		System.out.println(allMatch ? "All engines match." : "Some engines do not match.");
+		if(!allMatch)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs every engine on one graph and prints whether each matches the bitset
+	 * and reference engines.
+	 *
+	 * @param label  the name of the graph
+	 * @param dep  the dependency matrix
+	 * @param engines  the engines to check
+	 * @param names  the name of each engine
+	 * @return  true if every engine matches
+	 */
+	private static boolean validate(String label, SparseDependencyMatrix dep,
+									List<ClosureEngine> engines, List<String> names)
+	{
+		BitMatrix expected = matrixOf(compute(ClosureEngines.bitset(), dep));
+		ReachabilityCounts expectedCounts = expected.reachabilityCounts();
+		ReachabilityCounts referenceCounts = null;
+		BitMatrix referenceMatrix = null;
+		if(dep.size() <= MAX_REFERENCE)
+		{
+			referenceMatrix = matrixOf(compute(ClosureEngines.reference(), dep));
+			referenceCounts = referenceMatrix.reachabilityCounts();
+		}
+
+		boolean allMatch = true;
+		for(int k = 0; k < engines.size(); k++)
+		{
+			ClosureResult result = compute(engines.get(k), dep);
+			if(result == null)
+			{
+				System.out.println(label + "\t" + names.get(k) + "\t\t\t\tfailed\tfailed");
+				allMatch = false;
+				continue;
+			}
+			BitMatrix matrix = matrixOf(result);
+			ReachabilityCounts counts = result.getCounts();
+			boolean bitset = matches(counts, matrix, expectedCounts, expected);
+			String reference = "skipped";
+			if(referenceCounts != null)
+			{
+				boolean same = matches(counts, matrix, referenceCounts, referenceMatrix);
+				reference = same ? "ok" : "MISMATCH";
+				allMatch &= same;
+			}
+			if(counts == null)
+			{
+				counts = matrix.reachabilityCounts();
+			}
+			allMatch &= bitset;
+			System.out.println(label + "\t" + names.get(k) + "\t" + sum(counts.getVFI())
+					+ "\t" + sum(counts.getVFO()) + "\t" + counts.getSelfVisible() + "\t"
+					+ (bitset ? "ok" : "MISMATCH") + "\t" + reference);
+		}
+		return allMatch;
+	}
+
+	/**
+	 * Updates an <code>IncrementalVisibility</code> from one graph to another, and
+	 * prints whether it then matches the bitset engine on the second graph.
+	 *
+	 * @param label  the name of the graph it is updated to
+	 * @param start  the graph it starts from
+	 * @param startLabel  the name of the graph it starts from
+	 * @param dep  the graph it is updated to
+	 * @return  true if it matches
+	 */
+	private static boolean validateIncremental(String label, SparseDependencyMatrix start,
+											   String startLabel, SparseDependencyMatrix dep)
+	{
+		BitMatrix expected = matrixOf(compute(ClosureEngines.bitset(), dep));
+		IncrementalVisibility incremental = new IncrementalVisibility(start);
+		incremental.update(dep);
+		BitMatrix matrix = incremental.getVisibilityMatrix();
+		ReachabilityCounts counts = matrix.reachabilityCounts();
+		boolean same = sameMatrix(matrix, expected)
+				&& sameCounts(counts, expected.reachabilityCounts())
+				&& incremental.getVisibilitySum() == counts.getTotal();
+		for(int i = 0; i < dep.size() && same; i++)
+		{
+			same = incremental.getVFI(i) == counts.getVFI()[i]
+					&& incremental.getVFO(i) == counts.getVFO()[i];
+		}
+		System.out.println(label + "\tincremental from " + startLabel + "\t"
+				+ sum(counts.getVFI()) + "\t" + sum(counts.getVFO()) + "\t"
+				+ counts.getSelfVisible() + "\t" + (same ? "ok" : "MISMATCH") + "\tskipped");
+		return same;
+	}
+
+	/**
+	 * Runs an engine and releases any matrix it keeps outside the heap.
+	 *
+	 * @param engine  the engine
+	 * @param dep  the dependency matrix
+	 * @return  the result, with a matrix outside the heap copied to the heap,
+	 * or null if the engine failed
+	 */
+	private static ClosureResult compute(ClosureEngine engine, SparseDependencyMatrix dep)
+	{
+		try
+		{
+			ClosureResult result = engine.compute(dep);
+			OffHeapBitMatrix offHeap = result.getOffHeapMatrix();
+			if(offHeap != null)
+			{
+				BitMatrix matrix = offHeap.toBitMatrix();
+				ReachabilityCounts counts = result.getCounts();
+				offHeap.close();
+				return new ClosureResult(null, matrix, null, counts);
+			}
+			return result;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the visibility matrix of a result as a bit matrix.
+	 *
+	 * @param result  the result of an engine
+	 * @return  the matrix, or null if the engine only counted the VFI and VFO
+	 */
+	private static BitMatrix matrixOf(ClosureResult result)
+	{
+		if(result.getMatrix() != null)
+		{
+			return result.getMatrix();
+		}
+		DoubleMatrix dense = result.getDenseMatrix();
+		if(dense == null)
+		{
+			return null;
+		}
+		BitMatrix matrix = new BitMatrix(dense.rows);
+		for(int i = 0; i < dense.rows; i++)
+		{
+			for(int j = 0; j < dense.columns; j++)
+			{
+				if(dense.get(i, j) != 0)
+				{
+					matrix.set(i, j);
+				}
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Checks whether the counts and the matrix of an engine, whichever it gave,
+	 * are the expected ones.
+	 *
+	 * @param counts  the counts given by the engine, or null
+	 * @param matrix  the matrix given by the engine, or null
+	 * @param expectedCounts  the expected counts
+	 * @param expected  the expected matrix
+	 * @return  true if they match
+	 */
+	private static boolean matches(ReachabilityCounts counts, BitMatrix matrix,
+								   ReachabilityCounts expectedCounts, BitMatrix expected)
+	{
+		return (counts == null || sameCounts(counts, expectedCounts))
+				&& (matrix == null || sameMatrix(matrix, expected));
+	}
+
+	/**
+	 * Checks whether two sets of counts are the same.
+	 *
+	 * @param a  the first counts
+	 * @param b  the second counts
+	 * @return  true if the VFI, VFO, and number of elements that see themselves are equal
+	 */
+	private static boolean sameCounts(ReachabilityCounts a, ReachabilityCounts b)
+	{
+		return Arrays.equals(a.getVFI(), b.getVFI()) && Arrays.equals(a.getVFO(), b.getVFO())
+				&& a.getSelfVisible() == b.getSelfVisible();
+	}
+
+	/**
+	 * Checks whether two bit matrices have the same entries.
+	 *
+	 * @param a  the first matrix
+	 * @param b  the second matrix
+	 * @return  true if every row is equal
+	 */
+	private static boolean sameMatrix(BitMatrix a, BitMatrix b)
+	{
+		if(a.size() != b.size())
+		{
+			return false;
+		}
+		for(int i = 0; i < a.size(); i++)
+		{
+			if(!Arrays.equals(a.getRow(i), b.getRow(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a dependency of every <code>SELF_STEP</code>-th element on itself.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  a new matrix with the extra dependencies
+	 */
+	private static SparseDependencyMatrix withSelfDependencies(SparseDependencyMatrix dep)
+	{
+		int n = dep.size();
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		int count = rowStart[n] + (n + SELF_STEP - 1) / SELF_STEP;
+		int[] from = new int[count];
+		int[] to = new int[count];
+		int e = 0;
+		for(int i = 0; i < n; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				from[e] = i;
+				to[e] = columns[p];
+				e++;
+			}
+			if(i % SELF_STEP == 0)
+			{
+				from[e] = i;
+				to[e] = i;
+				e++;
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(n, from, to, e, dep.getNames());
+	}
+
+	/**
+	 * Adds up an array of counts.
+	 *
+	 * @param counts  the counts
+	 * @return  their sum
+	 */
+	private static long sum(int[] counts)
+	{
+		long total = 0;
+		for(int c : counts)
+		{
+			total += c;
+		}
+		return total;
+	}
+}
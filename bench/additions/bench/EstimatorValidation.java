@@ -0,0 +1,141 @@
+package additions.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import additions.ClassNameTable;
+import additions.CondensationReachability;
+import additions.DependencyFinderLoader;
+import additions.ReachabilityCounts;
+import additions.ReachabilityEstimate;
+import additions.ReachabilityEstimator;
+import additions.SparseDependencyMatrix;
+
+/**
+ * Checks the estimates of the <code>APPROXIMATE</code> visibility mode against
+ * the exact counts, and prints one tab-separated row per graph and sketch size:
+ * the exact propagation cost, the mean estimate, the largest relative error of the
+ * estimate, how often the exact value was inside the 95% confidence interval,
+ * the mean relative error of the VFO of each element, and the time per estimate.<br>
+ * <br>
+ * Arguments (all optional): either a Dependency Finder XML file and a filter,
+ * or the graph kinds to generate (comma-separated, as in <code>PhaseBenchmarks</code>),
+ * the number of elements, and the average number of dependencies per element.
+ * The default is generated graphs the size of Tomcat (about 2,500 classes).
+ */
+public class EstimatorValidation
+{
+	/** The sketch sizes that are checked. */
+	private static final int[] SKETCH_SIZES = {16, 64, 256};
+	/** The number of seeds each sketch size is run with. */
+	private static final int RUNS = 20;
+	/** The number of standard errors in half of a 95% confidence interval. */
+	private static final double CONFIDENCE_Z = 1.96;
+
+	/**
+	 * Main method to run the validation.
+	 * @param args  a dependencies file and filter, or the graph kinds, size, and average degree
+	 */
+	public static void main(String[] args)
+	{
+		Logger.getRootLogger().setLevel(Level.WARN);
+		List<String> labels = new ArrayList<String>();
+		List<SparseDependencyMatrix> graphs = new ArrayList<SparseDependencyMatrix>();
+		if(args.length > 0 && args[0].endsWith(".xml"))
+		{
+			String filter = (args.length > 1) ? args[1] : "[.*]";
+			try
+			{
+				graphs.add(DependencyFinderLoader.load(args[0], filter, new ClassNameTable()));
+				labels.add(args[0]);
+			}
+			catch (IOException | XMLStreamException e)
+			{
+				e.printStackTrace();
+				return;
+			}
+		}
+		else
+		{
+			String[] kinds = (args.length > 0) ? args[0].split(",")
+					: new String[] {"random", "powerlaw", "bigcore"};
+			int n = (args.length > 1) ? Integer.parseInt(args[1]) : 2500;
+			double degree = (args.length > 2) ? Double.parseDouble(args[2]) : 6;
+			for(String kind : kinds)
+			{
+				graphs.add(GraphGenerator.generate(kind, n, degree, 42));
+				labels.add(kind + "-" + n);
+			}
+		}
+
+		System.out.println("graph\tsketch\texactPC\tmeanPC\tmaxRelErrPC\tcoverage95\tmeanRelErrVFO\tms");
+		for(int g = 0; g < graphs.size(); g++)
+		{
+			for(int k : SKETCH_SIZES)
+			{
+				validate(labels.get(g), graphs.get(g), k);
+			}
+		}
+	}
+
+	/**
+	 * Runs the estimator with several seeds on one graph and prints how close it is.
+	 *
+	 * @param label  the name of the graph
+	 * @param dep  the dependency matrix
+	 * @param sketchSize  the number of rankings
+	 */
+	private static void validate(String label, SparseDependencyMatrix dep, int sketchSize)
+	{
+		int n = dep.size();
+		double cells = (double) n * n;
+		ReachabilityCounts exact = CondensationReachability.countAll(dep);
+		double exactCost = exact.getTotal() / cells;
+		int[] exactVFO = exact.getVFO();
+
+		double sumCost = 0;
+		double maxError = 0;
+		int covered = 0;
+		double elementError = 0;
+		long nanos = 0;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			ReachabilityEstimate estimate = ReachabilityEstimator.estimate(dep, sketchSize, run + 1);
+			nanos += System.nanoTime() - start;
+
+			double cost = estimate.getTotal() / cells;
+			sumCost += cost;
+			if(exactCost > 0)
+			{
+				maxError = Math.max(maxError, Math.abs(cost - exactCost) / exactCost);
+			}
+			if(Math.abs(cost - exactCost) <= CONFIDENCE_Z * estimate.getStandardError() / cells)
+			{
+				covered++;
+			}
+			int[] vfo = estimate.getVFO();
+			double error = 0;
+			int counted = 0;
+			for(int i = 0; i < n; i++)
+			{
+				if(exactVFO[i] > 0)
+				{
+					error += Math.abs(vfo[i] - exactVFO[i]) / (double) exactVFO[i];
+					counted++;
+				}
+			}
+			elementError += (counted == 0) ? 0 : error / counted;
+		}
+		System.out.println(String.format(Locale.ROOT, "%s\t%d\t%.6f\t%.6f\t%.4f\t%.2f\t%.4f\t%.2f",
+				label, sketchSize, exactCost, sumCost / RUNS, maxError, covered / (double) RUNS,
+				elementError / RUNS, nanos / 1e6 / RUNS));
+	}
+}
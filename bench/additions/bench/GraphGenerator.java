@@ -0,0 +1,287 @@
+package additions.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import additions.SparseDependencyMatrix;
+import edu.carleton.tim.jdsm.dependency.Dependency;
+import edu.carleton.tim.jdsm.dependency.DependencyDSM;
+
+/**
+ * Creates synthetic dependency graphs for the benchmarks. All of the graphs are
+ * made from a seed, so the same arguments always give the same graph.<br>
+ * <br>
+ * There are three kinds of graph:
+ * <ul>
+ * <li><b>random</b> - each dependency is between two elements picked uniformly.
+ * With an average of more than one dependency per element, most elements end up
+ * in one large cyclic group.</li>
+ * <li><b>powerlaw</b> - the elements that are depended on are picked with a Zipf
+ * distribution, so a few elements (like utility classes) are used by almost
+ * everything and most are used by very few.</li>
+ * <li><b>bigcore</b> - a Tomcat-like structure: the elements are laid out in
+ * layers, with shared elements at the bottom, one cyclic Core in the middle, and
+ * control and peripheral elements above it. Only the Core has cycles, so its size
+ * is known exactly.</li>
+ * </ul>
+ */
+public class GraphGenerator
+{
+	/** The exponent of the Zipf distribution in power-law graphs. */
+	private static final double ZIPF_EXPONENT = 1.0;
+	/** The fraction of elements in the Core of a big-core graph. */
+	private static final double CORE_FRACTION = 0.2;
+	/** The fraction of elements below the Core (shared elements) in a big-core graph. */
+	private static final double SHARED_FRACTION = 0.3;
+
+	/**
+	 * Creates a graph of the given kind.
+	 *
+	 * @param kind  "random", "powerlaw", or "bigcore"
+	 * @param n  the number of elements
+	 * @param avgDegree  the average number of dependencies of each element
+	 * @param seed  the random seed
+	 * @return  the dependency matrix
+	 */
+	public static SparseDependencyMatrix generate(String kind, int n, double avgDegree, long seed)
+	{
+		if(kind.equals("random"))
+		{
+			return random(n, avgDegree, seed);
+		}
+		else if(kind.equals("powerlaw"))
+		{
+			return powerLaw(n, avgDegree, seed);
+		}
+		else if(kind.equals("bigcore"))
+		{
+			return bigCore(n, avgDegree, seed);
+		}
+		throw new IllegalArgumentException("Unknown graph kind: " + kind);
+	}
+
+	/**
+	 * Creates a graph where each dependency is between two elements picked
+	 * uniformly at random.
+	 *
+	 * @param n  the number of elements
+	 * @param avgDegree  the average number of dependencies of each element
+	 * @param seed  the random seed
+	 * @return  the dependency matrix
+	 */
+	public static SparseDependencyMatrix random(int n, double avgDegree, long seed)
+	{
+		Random rnd = new Random(seed);
+		int m = (int) (n * avgDegree);
+		int[] from = new int[m];
+		int[] to = new int[m];
+		int count = 0;
+		for(int e = 0; e < m; e++)
+		{
+			int u = rnd.nextInt(n);
+			int v = rnd.nextInt(n);
+			if(u != v)
+			{
+				from[count] = u;
+				to[count] = v;
+				count++;
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(n, from, to, count, names(n));
+	}
+
+	/**
+	 * Creates a graph where the sources of the dependencies are picked uniformly
+	 * and the targets with a Zipf distribution over a random ranking of the elements.
+	 *
+	 * @param n  the number of elements
+	 * @param avgDegree  the average number of dependencies of each element
+	 * @param seed  the random seed
+	 * @return  the dependency matrix
+	 */
+	public static SparseDependencyMatrix powerLaw(int n, double avgDegree, long seed)
+	{
+		Random rnd = new Random(seed);
+		int[] rank = permutation(n, rnd);
+		double[] cumulative = new double[n];
+		double total = 0;
+		for(int r = 0; r < n; r++)
+		{
+			total += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+			cumulative[r] = total;
+		}
+
+		int m = (int) (n * avgDegree);
+		int[] from = new int[m];
+		int[] to = new int[m];
+		int count = 0;
+		for(int e = 0; e < m; e++)
+		{
+			int u = rnd.nextInt(n);
+			int v = rank[search(cumulative, rnd.nextDouble() * total)];
+			if(u != v)
+			{
+				from[count] = u;
+				to[count] = v;
+				count++;
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(n, from, to, count, names(n));
+	}
+
+	/**
+	 * Creates a layered graph with one Core. Elements are given a layer position;
+	 * every element outside the Core only depends on elements in lower positions,
+	 * and the Core members are joined in a ring (so they form one cyclic group)
+	 * plus random dependencies on each other and on the shared elements below.
+	 * The positions are then shuffled, so the Core is spread over the matrix.
+	 *
+	 * @param n  the number of elements
+	 * @param avgDegree  the average number of dependencies of each element
+	 * @param seed  the random seed
+	 * @return  the dependency matrix
+	 */
+	public static SparseDependencyMatrix bigCore(int n, double avgDegree, long seed)
+	{
+		Random rnd = new Random(seed);
+		int[] element = permutation(n, rnd);
+		int coreStart = (int) (n * SHARED_FRACTION);
+		int coreEnd = Math.min(n, coreStart + (int) (n * CORE_FRACTION));
+		int coreSize = coreEnd - coreStart;
+
+		int m = (int) (n * avgDegree) + coreSize;
+		int[] from = new int[m];
+		int[] to = new int[m];
+		int count = 0;
+		for(int p = coreStart; p < coreEnd; p++)
+		{
+			int next = (p + 1 < coreEnd) ? p + 1 : coreStart;
+			if(next != p)
+			{
+				from[count] = element[p];
+				to[count] = element[next];
+				count++;
+			}
+		}
+		while(count < m)
+		{
+			int p = 1 + rnd.nextInt(n - 1);
+			int q;
+			if(p >= coreStart && p < coreEnd)
+			{
+				//Core members depend on other Core members or on shared elements
+				q = rnd.nextBoolean() ? coreStart + rnd.nextInt(coreSize) : rnd.nextInt(p);
+			}
+			else
+			{
+				q = rnd.nextInt(p);
+			}
+			if(p != q)
+			{
+				from[count] = element[p];
+				to[count] = element[q];
+				count++;
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(n, from, to, count, names(n));
+	}
+
+	/**
+	 * Converts a sparse matrix into a jDSM DSM, as
+	 * <code>DependencyFinderDSMProvider</code> would create it.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  the jDSM DSM
+	 */
+	public static DependencyDSM toDSM(SparseDependencyMatrix dep)
+	{
+		int n = dep.size();
+		Dependency[][] map = new Dependency[n][n];
+		Map<String, Integer> namePositions = new HashMap<String, Integer>();
+		Map<Integer, String> positionNames = new HashMap<Integer, String>();
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		for(int i = 0; i < n; i++)
+		{
+			for(int j = 0; j < n; j++)
+			{
+				map[i][j] = Dependency.NO;
+			}
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				map[i][columns[p]] = Dependency.YES;
+			}
+			namePositions.put(dep.getName(i), i);
+			positionNames.put(i, dep.getName(i));
+		}
+		return new DependencyDSM(new HashMap<String, Integer>(), new HashMap<String, Integer>(),
+				namePositions, positionNames, map);
+	}
+
+	/**
+	 * Creates class names for the elements, with 50 classes in each package.
+	 *
+	 * @param n  the number of elements
+	 * @return  the names
+	 */
+	private static String[] names(int n)
+	{
+		String[] names = new String[n];
+		for(int i = 0; i < n; i++)
+		{
+			names[i] = "gen.p" + (i / 50) + ".C" + i;
+		}
+		return names;
+	}
+
+	/**
+	 * Creates a random permutation of 0 to n - 1.
+	 *
+	 * @param n  the number of elements
+	 * @param rnd  the random number generator
+	 * @return  the permutation
+	 */
+	private static int[] permutation(int n, Random rnd)
+	{
+		int[] p = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			p[i] = i;
+		}
+		for(int i = n - 1; i > 0; i--)
+		{
+			int j = rnd.nextInt(i + 1);
+			int t = p[i];
+			p[i] = p[j];
+			p[j] = t;
+		}
+		return p;
+	}
+
+	/**
+	 * Finds the first position whose cumulative weight is at least the given value.
+	 *
+	 * @param cumulative  the cumulative weights, in ascending order
+	 * @param value  the value to look for
+	 * @return  the position
+	 */
+	private static int search(double[] cumulative, double value)
+	{
+		int lo = 0;
+		int hi = cumulative.length - 1;
+		while(lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(cumulative[mid] < value)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
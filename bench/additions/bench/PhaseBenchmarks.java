@@ -0,0 +1,243 @@
+package additions.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import additions.CycleComponent;
+import additions.CycleComponentStore;
+import additions.DSMData;
+import additions.ReachabilityCounts;
+import additions.SparseDependencyMatrix;
+import additions.SparseReachability;
+import additions.VisibilityMode;
+import edu.carleton.tim.jdsm.dependency.DependencyDSM;
+
+/**
+ * Benchmarks each phase of <code>DSMData</code> on synthetic graphs of several
+ * kinds and sizes, and prints one tab-separated row per phase, graph, and size:
+ * the time and throughput, the bytes allocated, and the garbage collections per
+ * operation. After all of the rows, it prints a scaling table with the growth
+ * exponent of each phase between successive sizes (the k in time ~ n^k).<br>
+ * <br>
+ * Arguments (all optional, in order): the graph kinds (comma-separated, from
+ * "random", "powerlaw", and "bigcore"), the sizes (comma-separated), the average
+ * number of dependencies per element, and the number of timed runs.<br>
+ * <br>
+ * The phases that need memory or time growing faster than n<sup>2</sup> are
+ * skipped above a size limit: the jBLAS reference visibility calculation (which
+ * multiplies dense matrices up to n times) above 500 elements,
+ * <code>recalcDepMatrix</code> (which needs a jDSM <code>Dependency[][]</code>)
+ * above 5,000, and the bit matrix modes above 20,000.
+ */
+public class PhaseBenchmarks
+{
+	/** The largest size that the reference visibility calculation is run on. */
+	private static final int MAX_REFERENCE = 500;
+	/** The largest size that <code>recalcDepMatrix</code> is run on. */
+	private static final int MAX_DENSE_DSM = 5000;
+	/** The largest size that the bit matrix modes are run on. */
+	private static final int MAX_BITSET = 20000;
+	/** The seed of the generated graphs. */
+	private static final long SEED = 42;
+
+	/** The harness that times each phase. */
+	private Benchmark bench;
+	/** The time of each phase for each size, keyed by graph kind and phase name. */
+	private Map<String, Map<Integer, Double>> times;
+
+	/**
+	 * Constructor with the number of timed runs of each phase.
+	 *
+	 * @param iterations  the number of timed runs
+	 */
+	public PhaseBenchmarks(int iterations)
+	{
+		bench = new Benchmark(Math.max(1, iterations / 2), iterations);
+		times = new LinkedHashMap<String, Map<Integer, Double>>();
+	}
+
+	/**
+	 * Main method to run the benchmarks.
+	 * @param args  the graph kinds, sizes, average degree, and number of timed runs
+	 */
+	public static void main(String[] args)
+	{
+		String[] kinds = {"random", "powerlaw", "bigcore"};
+		int[] sizes = {1000, 2000, 5000, 10000, 20000, 50000};
+		double degree = 6;
+		int iterations = 5;
+		if(args.length > 0)
+		{
+			kinds = args[0].split(",");
+		}
+		if(args.length > 1)
+		{
+			String[] parts = args[1].split(",");
+			sizes = new int[parts.length];
+			for(int i = 0; i < parts.length; i++)
+			{
+				sizes[i] = Integer.parseInt(parts[i].trim());
+			}
+		}
+		if(args.length > 2)
+		{
+			degree = Double.parseDouble(args[2]);
+		}
+		if(args.length > 3)
+		{
+			iterations = Integer.parseInt(args[3]);
+		}
+
+		//the phases log at info level, which would be timed too
+		Logger.getRootLogger().setLevel(Level.WARN);
+		PhaseBenchmarks b = new PhaseBenchmarks(iterations);
+		System.out.println("graph\tsize\tdependencies\tphase\tms/op\tops/s\tbytes/op\tgc/op\tgcms/op");
+		for(String kind : kinds)
+		{
+			for(int n : sizes)
+			{
+				b.runAll(kind, n, degree);
+			}
+		}
+		b.printScaling(sizes);
+	}
+
+	/**
+	 * Runs every phase on one generated graph.
+	 *
+	 * @param kind  the kind of graph
+	 * @param n  the number of elements
+	 * @param degree  the average number of dependencies per element
+	 */
+	public void runAll(String kind, int n, double degree)
+	{
+		final SparseDependencyMatrix dep = GraphGenerator.generate(kind, n, degree, SEED);
+		final DSMData data = new DSMData(true, dep, VisibilityMode.SPARSE);
+		String label = kind + "\t" + n + "\t" + dep.getEdgeCount();
+
+		final int[] from = new int[dep.getEdgeCount()];
+		final int[] to = new int[dep.getEdgeCount()];
+		int[] rowStart = dep.getRowStarts();
+		for(int i = 0; i < n; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				from[p] = i;
+				to[p] = dep.getColumns()[p];
+			}
+		}
+		report(label, kind, n, "buildSparseMatrix", bench.run(
+				() -> SparseDependencyMatrix.fromEdges(n, from, to, from.length, dep.getNames())));
+
+		if(n <= MAX_DENSE_DSM)
+		{
+			final DependencyDSM dsm = GraphGenerator.toDSM(dep);
+			report(label, kind, n, "recalcDepMatrix", bench.run(() -> data.recalcDepMatrix(dsm)));
+		}
+
+		for(final VisibilityMode mode : VisibilityMode.values())
+		{
+			//AUTO is included since it keeps the bit matrix whenever it fits in the heap
+			boolean bits = (mode == VisibilityMode.BITSET || mode == VisibilityMode.PARALLEL
+					|| mode == VisibilityMode.CONDENSED_BITSET || mode == VisibilityMode.OFF_HEAP
+					|| mode == VisibilityMode.AUTO);
+			if((mode == VisibilityMode.REFERENCE && n > MAX_REFERENCE) || (bits && n > MAX_BITSET))
+			{
+				continue;
+			}
+			data.setVisibilityMode(mode);
+			report(label, kind, n, "calcVisibility." + mode, bench.run(() -> data.calcVisibility()));
+		}
+
+		data.setVisibilityMode(VisibilityMode.SPARSE);
+		data.calcVisibility();
+		report(label, kind, n, "calcFanInOut", bench.run(() -> data.calcFanInOut()));
+		report(label, kind, n, "calcPropCost", bench.run(() -> data.calcPropCost()));
+		report(label, kind, n, "calcPropCostSelf", bench.run(() -> data.calcPropCostSelf()));
+		report(label, kind, n, "findCoreSize", bench.run(() -> data.findCoreSize()));
+
+		//the sort in initializeCyclicComponents, on its own
+		ReachabilityCounts reach = SparseReachability.countAll(dep);
+		final int[] vfi = reach.getVFI();
+		final int[] vfo = reach.getVFO();
+		report(label, kind, n, "sortCycleComponents", bench.run(() ->
+		{
+			CycleComponent[] components = new CycleComponent[n];
+			for(int i = 0; i < n; i++)
+			{
+				components[i] = new CycleComponent(i, vfi[i], vfo[i], 0, 0, 0);
+			}
+			Arrays.sort(components);
+		}));
+		report(label, kind, n, "sortCycleComponentStore", bench.run(
+				() -> new CycleComponentStore(vfi, vfo, null)));
+	}
+
+	/**
+	 * Prints one row of results and records the time for the scaling table.
+	 *
+	 * @param label  the graph kind, size, and number of dependencies
+	 * @param kind  the kind of graph
+	 * @param n  the number of elements
+	 * @param phase  the name of the phase
+	 * @param r  the measurements
+	 */
+	private void report(String label, String kind, int n, String phase, Benchmark.Result r)
+	{
+		System.out.println(label + "\t" + phase
+				+ String.format(Locale.ROOT, "\t%.3f\t%.2f\t%.0f\t%.2f\t%.2f", r.getMillis(),
+						r.getThroughput(), r.getBytes(), r.getGcCount(), r.getGcMillis()));
+		String key = kind + "\t" + phase;
+		Map<Integer, Double> curve = times.get(key);
+		if(curve == null)
+		{
+			curve = new LinkedHashMap<Integer, Double>();
+			times.put(key, curve);
+		}
+		curve.put(n, r.getMillis());
+	}
+
+	/**
+	 * Prints the growth exponent of each phase between each pair of
+	 * successive sizes that it was run on.
+	 *
+	 * @param sizes  the sizes, in the order they were run
+	 */
+	private void printScaling(int[] sizes)
+	{
+		System.out.println();
+		StringBuilder header = new StringBuilder("graph\tphase");
+		for(int s = 1; s < sizes.length; s++)
+		{
+			header.append('\t').append(sizes[s - 1]).append('-').append(sizes[s]);
+		}
+		System.out.println(header);
+		for(Map.Entry<String, Map<Integer, Double>> e : times.entrySet())
+		{
+			List<String> cells = new ArrayList<String>();
+			Map<Integer, Double> curve = e.getValue();
+			for(int s = 1; s < sizes.length; s++)
+			{
+				Double t1 = curve.get(sizes[s - 1]);
+				Double t2 = curve.get(sizes[s]);
+				if(t1 == null || t2 == null || t1 <= 0)
+				{
+					cells.add("");
+				}
+				else
+				{
+					double k = Math.log(t2 / t1) / Math.log(sizes[s] / (double) sizes[s - 1]);
+					cells.add(String.format(Locale.ROOT, "%.2f", k));
+				}
+			}
+			System.out.println(e.getKey() + "\t" + String.join("\t", cells));
+		}
+	}
+}
@@ -0,0 +1,677 @@
+package additions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running analysis server, so that many analyses can be run in one warm
+ * JVM instead of starting a new one (and loading log4j, jBLAS, and jDSM, and
+ * compiling everything again) for each.<br>
+ * <br>
+ * The server only listens on the loopback address, and has three endpoints:
+ * <ul>
+ * 	<li><code>POST /analyze?path=...&amp;filter=...&amp;mode=...&amp;priority=...&amp;label=...</code>
+ * 	analyzes a dependencies XML file, or a folder or archive of classes. The parameters
+ * 	can also be sent as a form in the body. Only the path is needed; the filter defaults to everything, the mode to the server's mode,
+ * 	and the priority to 0. The response is streamed as JSON lines: one when the job
+ * 	is queued (with its position in the queue), one when it starts, and one with the
+ * 	results (or the error) when it is done.</li>
+ * 	<li><code>/status</code> gives the number of queued, running, and finished
+ * 	jobs, and the sizes of the caches, as one JSON object.</li>
+ * 	<li><code>POST /shutdown</code> stops the server after the running jobs finish.</li>
+ * </ul>
+ * Since the server reads any path it is given, it refuses requests that a web page
+ * open in a local browser could make: <code>/analyze</code> and <code>/shutdown</code>
+ * only accept POST (status 405 otherwise), and requests with an Origin header or a
+ * Host header that is not a loopback name or address are refused with status 403.<br>
+ * <br>
+ * Jobs wait in a priority queue (higher priorities first, then in the order they
+ * came in) and are run on a fixed number of workers. If too many jobs are waiting,
+ * new ones are refused with status 503.<br>
+ * <br>
+ * The parsed dependency matrices are kept in memory, by path, filter, and the
+ * size and modification time of the path, so running a file again in another mode
+ * does not parse it again. The results are kept by the same key and the mode, so
+ * running it again in the same mode returns at once. Both caches drop their least
+ * recently used entries when they are full. If a cache folder is given, dependency
+ * files are also analyzed through a <code>ResultCache</code>, so results survive a
+ * restart. For a folder of classes only the folder's own modification time is
+ * checked, so a changed class file deeper down may not be noticed until the
+ * entry is dropped.
+ */
+public class AnalysisServer
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(AnalysisServer.class);
+	/** The default port. */
+	public static final int DEFAULT_PORT = 8642;
+	/** The largest number of jobs that may wait in the queue. */
+	private static final int MAX_QUEUED = 1000;
+	/** The number of dependency matrices kept in memory. */
+	private static final int GRAPH_CACHE_SIZE = 16;
+	/** The number of results kept in memory. */
+	private static final int RESULT_CACHE_SIZE = 1024;
+	/** The filter used when a job does not give one. */
+	private static final String DEFAULT_FILTER = "[.*]";
+	/** Marks the end of the lines of a job. */
+	private static final Object END = new Object();
+	/** Matches an IPv4 loopback address. */
+	private static final Pattern LOOPBACK_IPV4 = Pattern.compile("127(\\.\\d{1,3}){3}");
+	/** The HTTP server. */
+	private HttpServer server;
+	/** The workers that run the jobs. */
+	private ThreadPoolExecutor workers;
+	/** The threads that handle the HTTP exchanges. */
+	private ExecutorService handlers;
+	/** The method used to calculate visibility when a job does not give one. */
+	private VisibilityMode mode;
+	/** The cache of results on disk, or null. */
+	private ResultCache resultCache;
+	/** The parsed dependency matrices, least recently used first. */
+	private Map<String, SparseDependencyMatrix> graphs = lruMap(GRAPH_CACHE_SIZE);
+	/** The results as JSON objects, least recently used first. */
+	private Map<String, String> results = lruMap(RESULT_CACHE_SIZE);
+	/** The number of the next job. */
+	private AtomicLong nextId = new AtomicLong();
+	/** The number of jobs running. */
+	private AtomicInteger running = new AtomicInteger();
+	/** The number of jobs finished. */
+	private AtomicLong finished = new AtomicLong();
+
+	/**
+	 * Constructor for a server on the given port of the loopback address. It
+	 * does not accept jobs until <code>start()</code> is called.
+	 *
+	 * @param port  the port, or 0 for any free port
+	 * @param nrWorkers  the number of jobs to run at once
+	 * @param mode  the method used to calculate visibility when a job does not give one
+	 * @param cacheFolder  the folder of the <code>ResultCache</code>, or null for none
+	 * @param cacheBytes  the largest size of the <code>ResultCache</code>, in bytes
+	 * @throws IOException  if the port cannot be opened or the cache folder created
+	 */
+	public AnalysisServer(int port, int nrWorkers, VisibilityMode mode, String cacheFolder,
+						  long cacheBytes) throws IOException
+	{
+		this.mode = mode;
+		if(cacheFolder != null)
+		{
+			resultCache = new ResultCache(cacheFolder, cacheBytes, false);
+		}
+		workers = new ThreadPoolExecutor(nrWorkers, nrWorkers, 0, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>());
+		handlers = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(handlers);
+		server.createContext("/analyze", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				if(checkRequest(exchange, true))
+				{
+					handleAnalyze(exchange);
+				}
+			}
+		});
+		server.createContext("/status", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				if(checkRequest(exchange, false))
+				{
+					send(exchange, 200, getStatus());
+				}
+			}
+		});
+		server.createContext("/shutdown", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				if(checkRequest(exchange, true))
+				{
+					send(exchange, 200, "{\"status\":\"stopping\"}");
+					new Thread(() -> stop()).start();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Main method to run the server until it is shut down.
+	 *
+	 * @param args  optionally the port, the number of workers, the cache folder,
+	 * and the largest size of the cache in megabytes
+	 */
+	public static void main(String[] args)
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		String cache = (args.length > 2) ? args[2] : null;
+		long cacheBytes = ((args.length > 3) ? Long.parseLong(args[3]) : 1024) << 20;
+		try
+		{
+			new AnalysisServer(port, threads, VisibilityMode.CONDENSATION, cache, cacheBytes).start();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Starts accepting jobs.
+	 */
+	public void start()
+	{
+		server.start();
+		logger.info("Listening on http://" + server.getAddress().getHostString() + ":"
+				+ getPort() + "/ with " + workers.getCorePoolSize() + " workers.");
+	}
+
+	/**
+	 * Stops accepting jobs, and stops the server once the running and queued
+	 * jobs have finished.
+	 */
+	public void stop()
+	{
+		workers.shutdown();
+		try
+		{
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		//give the handlers a moment to send the last results
+		server.stop(1);
+		handlers.shutdown();
+		logger.info("Stopped after " + finished.get() + " jobs.");
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 *
+	 * @return  the port
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Queues an analysis job and streams its progress and results back.
+	 *
+	 * @param exchange  the HTTP exchange
+	 * @throws IOException  if the response cannot be written
+	 */
+	private void handleAnalyze(HttpExchange exchange) throws IOException
+	{
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+		params.putAll(parseQuery(readBody(exchange)));
+		String path = params.get("path");
+		if(path == null)
+		{
+			send(exchange, 400, "{\"status\":\"failed\",\"error\":\"No path given.\"}");
+			return;
+		}
+		Job job;
+		try
+		{
+			job = new Job(nextId.incrementAndGet(), path,
+					params.containsKey("filter") ? params.get("filter") : DEFAULT_FILTER,
+					params.containsKey("mode")
+							? VisibilityMode.valueOf(params.get("mode").toUpperCase(Locale.ROOT)) : mode,
+					params.containsKey("priority") ? Integer.parseInt(params.get("priority")) : 0,
+					params.containsKey("label") ? params.get("label") : path);
+		}
+		catch (IllegalArgumentException e)
+		{
+			StringBuilder error = new StringBuilder("{\"status\":\"failed\",\"error\":");
+			JsonMetricsSink.appendString(error, String.valueOf(e.getMessage()));
+			send(exchange, 400, error.append('}').toString());
+			return;
+		}
+		if(workers.getQueue().size() >= MAX_QUEUED || workers.isShutdown())
+		{
+			send(exchange, 503, "{\"status\":\"failed\",\"error\":\"The queue is full.\"}");
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream out = exchange.getResponseBody();
+		try
+		{
+			job.events.put(job.line("queued", ",\"position\":" + (workers.getQueue().size() + 1)));
+			try
+			{
+				workers.execute(job);
+			}
+			catch (RejectedExecutionException e)
+			{
+				//the server was shut down after the check above
+				job.events.put(job.line("failed", ",\"error\":\"The server is shutting down.\""));
+				job.events.put(END);
+			}
+			while(true)
+			{
+				Object line = job.events.take();
+				if(line == END)
+				{
+					break;
+				}
+				out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Runs one job, using the cached matrix or results if there are any.
+	 *
+	 * @param job  the job
+	 * @return  the results, as a JSON object (without the label, so that they can be
+	 * reused by jobs with other labels)
+	 * @throws Exception  if the analysis fails
+	 */
+	private String analyze(Job job) throws Exception
+	{
+		File file = new File(job.path);
+		if(!file.exists())
+		{
+			throw new IOException("No such file: " + job.path);
+		}
+		String graphKey = job.path + "\0" + job.filter + "\0" + file.length() + "\0"
+				+ file.lastModified();
+		String resultKey = graphKey + "\0" + job.mode;
+		String cached;
+		synchronized(results)
+		{
+			cached = results.get(resultKey);
+		}
+		if(cached != null)
+		{
+			logger.info("Using cached results for " + job.path);
+			return cached;
+		}
+
+		SparseDependencyMatrix dep;
+		synchronized(graphs)
+		{
+			dep = graphs.get(graphKey);
+		}
+		DSMData data;
+		if(dep != null)
+		{
+			data = new DSMData(true, dep, job.mode);
+		}
+		else if(resultCache != null && !BytecodeDependencyExtractor.isClassPath(job.path))
+		{
+			data = resultCache.analyze(true, job.path, job.filter, job.mode);
+			dep = data.getDependencyMatrix();
+		}
+		else
+		{
+			//each matrix gets a table of its own, so its names are dropped with it from the cache
+			ClassNameTable names = new ClassNameTable();
+			if(BytecodeDependencyExtractor.isClassPath(job.path))
+			{
+				dep = new BytecodeDependencyExtractor(job.filter, names, ForkJoinPool.commonPool())
+						.extract(job.path);
+			}
+			else
+			{
+				dep = DependencyFinderLoader.load(job.path, job.filter, names);
+			}
+			data = new DSMData(true, dep, job.mode);
+		}
+		if(dep == null)
+		{
+			throw new IOException("Could not read the dependencies of " + job.path);
+		}
+		synchronized(graphs)
+		{
+			graphs.put(graphKey, dep);
+		}
+
+		StringBuilder json = new StringBuilder("{\"mode\":\"").append(job.mode).append('"');
+		json.append(",\"classes\":").append(data.getNrFiles());
+		json.append(",\"dependencies\":").append(dep.getEdgeCount());
+		json.append(String.format(Locale.ROOT, ",\"vfiSum\":%.1f,\"vfoSum\":%.1f",
+				data.getVFISum(), data.getVFOSum()));
+		json.append(String.format(Locale.ROOT, ",\"propCost\":%.6g,\"propCost2\":%.6g",
+				data.getPropCost(), data.getPropCost2()));
+		if(job.mode == VisibilityMode.APPROXIMATE)
+		{
+			json.append(String.format(Locale.ROOT, ",\"propCostError\":%.6g",
+					data.getPropCostError()));
+		}
+		json.append(",\"coreSize\":").append(data.getCoreSize());
+		json.append(",\"cyclicGroups\":").append(data.getCyclicGroupCount());
+		json.append('}');
+		String result = json.toString();
+		synchronized(results)
+		{
+			results.put(resultKey, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the state of the server.
+	 *
+	 * @return  the state, as a JSON object
+	 */
+	private String getStatus()
+	{
+		int nrGraphs;
+		int nrResults;
+		synchronized(graphs)
+		{
+			nrGraphs = graphs.size();
+		}
+		synchronized(results)
+		{
+			nrResults = results.size();
+		}
+		return "{\"queued\":" + workers.getQueue().size() + ",\"running\":" + running.get()
+				+ ",\"finished\":" + finished.get() + ",\"workers\":" + workers.getCorePoolSize()
+				+ ",\"graphs\":" + nrGraphs + ",\"results\":" + nrResults + "}";
+	}
+
+	/**
+	 * Checks that a request could not have come from a web page: it has no Origin
+	 * header, its Host header is a loopback name or address, and it is a POST if it
+	 * changes anything. If not, the error response is sent.
+	 *
+	 * @param exchange  the HTTP exchange
+	 * @param postOnly  true if only POST is allowed
+	 * @return  true if the request may be handled
+	 * @throws IOException  if the error response cannot be written
+	 */
+	private static boolean checkRequest(HttpExchange exchange, boolean postOnly) throws IOException
+	{
+		Headers headers = exchange.getRequestHeaders();
+		if(headers.containsKey("Origin") || !isLoopbackHost(headers.getFirst("Host")))
+		{
+			send(exchange, 403, "{\"status\":\"failed\",\"error\":\"Only local clients are allowed.\"}");
+			return false;
+		}
+		if(postOnly && !"POST".equals(exchange.getRequestMethod()))
+		{
+			exchange.getResponseHeaders().set("Allow", "POST");
+			send(exchange, 405, "{\"status\":\"failed\",\"error\":\"Use POST.\"}");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a Host header names the loopback interface. Names other than
+	 * localhost are not looked up, so a name that is made to point at the loopback
+	 * address is still refused.
+	 *
+	 * @param host  the Host header, with or without a port, or null
+	 * @return  true if it is localhost or a loopback address
+	 */
+	private static boolean isLoopbackHost(String host)
+	{
+		if(host == null)
+		{
+			return false;
+		}
+		String name = host.trim().toLowerCase(Locale.ROOT);
+		if(name.startsWith("["))
+		{
+			int end = name.indexOf(']');
+			return end > 0 && name.substring(1, end).equals("::1");
+		}
+		int colon = name.indexOf(':');
+		if(colon >= 0)
+		{
+			name = name.substring(0, colon);
+		}
+		return name.equals("localhost") || LOOPBACK_IPV4.matcher(name).matches();
+	}
+
+	/**
+	 * Reads the body of a request as a form.
+	 *
+	 * @param exchange  the HTTP exchange
+	 * @return  the body, or null if it is not a form
+	 * @throws IOException  if the body cannot be read
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException
+	{
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if(type == null || !type.startsWith("application/x-www-form-urlencoded"))
+		{
+			return null;
+		}
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while((n = in.read(buffer)) > 0)
+		{
+			body.write(buffer, 0, n);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends a whole response.
+	 *
+	 * @param exchange  the HTTP exchange
+	 * @param status  the HTTP status code
+	 * @param json  the body, as JSON
+	 * @throws IOException  if the response cannot be written
+	 */
+	private static void send(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		try
+		{
+			out.write(body);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Splits a query string into its parameters.
+	 *
+	 * @param query  the raw query, or null
+	 * @return  the decoded value of each parameter
+	 */
+	private static Map<String, String> parseQuery(String query)
+	{
+		Map<String, String> params = new HashMap<String, String>();
+		if(query == null)
+		{
+			return params;
+		}
+		for(String pair : query.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			try
+			{
+				if(eq > 0)
+				{
+					params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+							URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+				}
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				throw new IllegalStateException("UTF-8 is not supported", e);
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Creates a map that drops its least recently used entry when it has more
+	 * than the given number of entries.
+	 *
+	 * @param capacity  the largest number of entries
+	 * @return  the map, which is not synchronized
+	 */
+	private static <V> Map<String, V> lruMap(final int capacity)
+	{
+		return new LinkedHashMap<String, V>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * One analysis job, ordered by priority and then by the order they came in.
+	 */
+	private class Job implements Runnable, Comparable<Job>
+	{
+		/** The number of the job, in the order they came in. */
+		private long id;
+		/** The path of the dependencies file, or of the folder or archive of classes. */
+		private String path;
+		/** The filter to use when analyzing the DSM. */
+		private String filter;
+		/** The method used to calculate visibility. */
+		private VisibilityMode mode;
+		/** The priority; higher runs first. */
+		private int priority;
+		/** The label written in the results. */
+		private String label;
+		/** The lines to send back, ending with <code>END</code>. */
+		private BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+		/**
+		 * Constructor with all values specified.
+		 *
+		 * @param id  the number of the job
+		 * @param path  the path to analyze
+		 * @param filter  the filter to use
+		 * @param mode  the method used to calculate visibility
+		 * @param priority  the priority
+		 * @param label  the label written in the results
+		 */
+		private Job(long id, String path, String filter, VisibilityMode mode, int priority,
+					String label)
+		{
+			this.id = id;
+			this.path = path;
+			this.filter = filter;
+			this.mode = mode;
+			this.priority = priority;
+			this.label = label;
+		}
+
+		/**
+		 * Formats a line about this job.
+		 *
+		 * @param status  the status of the job
+		 * @param rest  the rest of the fields, starting with a comma, or an empty string
+		 * @return  the line, as a JSON object
+		 */
+		private String line(String status, String rest)
+		{
+			return "{\"id\":" + id + ",\"status\":\"" + status + "\"" + rest + "}";
+		}
+
+		@Override
+		public void run()
+		{
+			running.incrementAndGet();
+			long start = System.nanoTime();
+			String last = null;
+			try
+			{
+				events.add(line("running", ""));
+				String result = analyze(this);
+				StringBuilder done = new StringBuilder(",\"label\":");
+				JsonMetricsSink.appendString(done, label);
+				done.append(String.format(Locale.ROOT, ",\"millis\":%.1f", (System.nanoTime() - start) / 1e6));
+				last = line("done", done.append(",\"result\":").append(result).toString());
+			}
+			catch (Throwable e)
+			{
+				//errors such as OutOfMemoryError are reported too, so the client is not left waiting
+				logger.info("Job " + id + " (" + path + ") failed: " + e);
+				StringBuilder error = new StringBuilder(",\"error\":");
+				JsonMetricsSink.appendString(error, String.valueOf(e));
+				last = line("failed", error.toString());
+			}
+			finally
+			{
+				running.decrementAndGet();
+				finished.incrementAndGet();
+				events.add((last != null) ? last : line("failed", ""));
+				events.add(END);
+			}
+		}
+
+		@Override
+		public int compareTo(Job other)
+		{
+			if(priority != other.priority)
+			{
+				return (priority > other.priority) ? -1 : 1;
+			}
+			return Long.compare(id, other.id);
+		}
+	}
+}
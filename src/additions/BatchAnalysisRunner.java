@@ -0,0 +1,301 @@
+package additions;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Analyzes many systems (or many versions of one system) in one run, and writes
+ * one row of results per system to a tab-separated table.<br>
+ * <br>
+ * The systems are listed in a manifest file, one per line, with four
+ * tab-separated fields:<br>
+ * <code>label	dependencies.xml	filter	classesPath</code><br>
+ * The dependencies file is analyzed with <code>DSMData</code>; it can also be a folder of
+ * classes or an archive, whose dependencies are then read straight from the class files
+ * with <code>BytecodeDependencyExtractor</code>. The classes
+ * path (a folder, JAR, or WAR) with <code>JDependRunner</code>. Either can be
+ * <code>-</code> to skip that analysis. Blank lines and lines starting with
+ * <code>#</code> are ignored.<br>
+ * <br>
+ * The systems are analyzed at the same time on a fixed number of worker threads
+ * (the number of processors by default), and all of the dependency files share
+ * one <code>ClassNameTable</code>, so a class name that appears in every version
+ * is only kept once. The rows are written in the same order as the manifest,
+ * whichever order the systems finish in.
+ */
+public class BatchAnalysisRunner
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(BatchAnalysisRunner.class);
+	/** The field that marks a skipped analysis in the manifest. */
+	private static final String NONE = "-";
+	/** The pool used to parse class files within one job, which has only one thread. */
+	private static final ForkJoinPool SINGLE_THREAD = new ForkJoinPool(1);
+	/** The number of JDepend metrics that are written. */
+	private static final int NR_METRICS = 5;
+	/** The number of worker threads. */
+	private int nrThreads;
+	/** The method used to calculate visibility for each system. */
+	private VisibilityMode mode;
+	/** The class names shared by all systems. */
+	private ClassNameTable names;
+
+	/**
+	 * Constructor for a runner with the given number of worker threads.
+	 *
+	 * @param nrThreads  the number of systems to analyze at once
+	 * @param mode  the method used to calculate the visibility matrix
+	 */
+	public BatchAnalysisRunner(int nrThreads, VisibilityMode mode)
+	{
+		this.nrThreads = nrThreads;
+		this.mode = mode;
+		this.names = new ClassNameTable();
+	}
+
+	/**
+	 * Main method to run a batch analysis.
+	 * @param args  the manifest file, the output file, and optionally the
+	 * number of worker threads and a file to append the phase metrics to (as JSON lines)
+	 */
+	public static void main(String[] args)
+	{
+		if(args.length < 2)
+		{
+			logger.info("Usage: BatchAnalysisRunner manifest.tsv results.tsv [threads [metrics.jsonl]]");
+			return;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if(args.length > 2)
+		{
+			threads = Integer.parseInt(args[2]);
+		}
+		try
+		{
+			if(args.length > 3)
+			{
+				PhaseTimer.setDefaultSink(new JsonMetricsSink(args[3]));
+			}
+			new BatchAnalysisRunner(threads, VisibilityMode.SPARSE).run(args[0], args[1]);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the manifest, analyzes every system in it, and writes the table.
+	 *
+	 * @param manifestPath  the path to the manifest file
+	 * @param outputPath  the path to the table to write
+	 * @throws IOException  if the manifest cannot be read or the table cannot
+	 * be written
+	 */
+	public void run(String manifestPath, String outputPath) throws IOException
+	{
+		List<String[]> jobs = readManifest(manifestPath);
+		logger.info("Analyzing " + jobs.size() + " systems on " + nrThreads + " threads.");
+
+		ExecutorService workers = Executors.newFixedThreadPool(nrThreads);
+		List<Future<String>> rows = new ArrayList<Future<String>>();
+		for(final String[] job : jobs)
+		{
+			rows.add(workers.submit(() -> analyze(job)));
+		}
+		workers.shutdown();
+
+		String header = getHeader();
+		//a failed system gets empty fields, so that its row still lines up with the header
+		StringBuilder emptyFields = new StringBuilder();
+		for(int c = header.split("\t").length; c > 1; c--)
+		{
+			emptyFields.append('\t');
+		}
+		PrintWriter out = new PrintWriter(outputPath, "UTF-8");
+		try
+		{
+			out.println(header);
+			for(int i = 0; i < rows.size(); i++)
+			{
+				try
+				{
+					out.println(rows.get(i).get());
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					workers.shutdownNow();
+					throw new IOException("Interrupted while waiting for results.", e);
+				}
+				catch (ExecutionException e)
+				{
+					logger.info("Analysis of " + jobs.get(i)[0] + " failed.");
+					e.getCause().printStackTrace();
+					out.println(jobs.get(i)[0] + emptyFields);
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		logger.info("Wrote results to " + outputPath + " (" + names.size() + " distinct class names).");
+	}
+
+	/**
+	 * Reads the jobs from a manifest file. Missing trailing fields are
+	 * treated as skipped.
+	 *
+	 * @param manifestPath  the path to the manifest file
+	 * @return  the label, dependency file, filter, and classes path of each job
+	 * @throws IOException  if the manifest cannot be read
+	 */
+	private List<String[]> readManifest(String manifestPath) throws IOException
+	{
+		List<String[]> jobs = new ArrayList<String[]>();
+		BufferedReader in = new BufferedReader(new FileReader(manifestPath));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				if(line.trim().isEmpty() || line.startsWith("#"))
+				{
+					continue;
+				}
+				String[] fields = line.split("\t");
+				String[] job = {fields[0].trim(), NONE, NONE, NONE};
+				for(int f = 1; f < fields.length && f < job.length; f++)
+				{
+					job[f] = fields[f].trim();
+				}
+				jobs.add(job);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return jobs;
+	}
+
+	/**
+	 * Analyzes one system and formats its row of the table.
+	 *
+	 * @param job  the label, dependency file, filter, and classes path
+	 * @return  the row of results
+	 * @throws IOException  if the dependency file cannot be read
+	 * @throws XMLStreamException  if the dependency file is not well-formed XML
+	 */
+	private String analyze(String[] job) throws IOException, XMLStreamException
+	{
+		String label = job[0];
+		StringBuilder row = new StringBuilder(label);
+		logger.info("Started analyzing " + label + ".");
+
+		if(!job[1].equals(NONE))
+		{
+			String filter = job[2].equals(NONE) ? "[.*]" : job[2];
+			PhaseTimer timer = PhaseTimer.start(PhaseTimer.getDefaultSink(), "DSMData", "load");
+			SparseDependencyMatrix dep;
+			if(BytecodeDependencyExtractor.isClassPath(job[1]))
+			{
+				//the systems already run in parallel, so each one parses on one thread
+				dep = new BytecodeDependencyExtractor(filter, names, SINGLE_THREAD).extract(job[1]);
+			}
+			else
+			{
+				dep = DependencyFinderLoader.load(job[1], filter, names);
+			}
+			timer.count("files", dep.size());
+			timer.count("edges", dep.getEdgeCount());
+			timer.stop();
+			DSMData data = new DSMData(true, dep, mode);
+			append(row, data.getNrFiles());
+			append(row, dep.getEdgeCount());
+			append(row, data.getVFISum());
+			append(row, data.getVFOSum());
+			append(row, data.getPropCost());
+			append(row, data.getPropCost2());
+			append(row, data.getCoreSize());
+			append(row, data.getCyclicGroupCount());
+		}
+		else
+		{
+			row.append("\t\t\t\t\t\t\t\t");
+		}
+
+		if(!job[3].equals(NONE))
+		{
+			JDependRunner jdepend = new JDependRunner();
+			jdepend.analyze(job[3]);
+			append(row, jdepend.getSize());
+			append(row, jdepend.getCycleCount());
+			for(int m = 0; m < NR_METRICS; m++)
+			{
+				append(row, jdepend.getMean(m));
+			}
+		}
+		else
+		{
+			row.append("\t\t\t\t\t\t\t");
+		}
+
+		logger.info("Finished analyzing " + label + ".");
+		return row.toString();
+	}
+
+	/**
+	 * Gets the header row of the table.
+	 *
+	 * @return  the column names, separated by tabs
+	 */
+	private static String getHeader()
+	{
+		StringBuilder header = new StringBuilder("label\tclasses\tdependencies\tvfiSum\tvfoSum"
+				+ "\tpropCost\tpropCost2\tcoreSize\tcyclicGroups\tpackages\tpackageCycles");
+		for(int m = 0; m < NR_METRICS; m++)
+		{
+			header.append("\tmean ").append(JDependRunner.getMetricName(m));
+		}
+		return header.toString();
+	}
+
+	/**
+	 * Appends a whole number to a row, after a tab.
+	 *
+	 * @param row  the row
+	 * @param value  the value
+	 */
+	private static void append(StringBuilder row, long value)
+	{
+		row.append('\t').append(value);
+	}
+
+	/**
+	 * Appends a real number to a row, after a tab. A dot is always used as
+	 * the decimal separator.
+	 *
+	 * @param row  the row
+	 * @param value  the value
+	 */
+	private static void append(StringBuilder row, double value)
+	{
+		row.append('\t').append(String.format(Locale.ROOT, "%.6f", value));
+	}
+}
@@ -0,0 +1,434 @@
+package additions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads and writes a dependency matrix (and optionally its visibility matrix)
+ * in a compact binary file, so that a system only has to be parsed from the
+ * Dependency Finder XML once.<br>
+ * <br>
+ * The file is written with NIO and read by mapping it into memory with a
+ * <code>MappedByteBuffer</code>, so each array is copied straight out of the page
+ * cache in one bulk operation. All values are big-endian. The layout is:
+ * <ol>
+ * 	<li>A header of six <code>int</code>s: the magic number <code>"DSMB"</code>, the
+ * format version, the flags (1 if the names are stored, 2 if the visibility matrix is
+ * stored, 4 if the results are stored), the number of elements n, the number of dependencies, and the number of
+ * <code>long</code> words in each row of the visibility matrix (0 if it is not stored).</li>
+ * 	<li>The CSR row starts (n + 1 <code>int</code>s) and column indices (one
+ * <code>int</code> per dependency) of the dependency matrix.</li>
+ * 	<li>If the names are stored: the position where each name starts in the name
+ * bytes (n + 1 <code>int</code>s), then the names as UTF-8 bytes.</li>
+ * 	<li>If the results are stored (since version 2): 1 if the propagation cost with
+ * self-dependencies was calculated, the number of cyclic groups, and the Core size,
+ * then the VFI, VFO, and cyclic group of each element (n <code>int</code>s each), then
+ * both propagation costs as <code>double</code>s.</li>
+ * 	<li>If the visibility matrix is stored: padding to a multiple of 8 bytes, then
+ * each row of the <code>BitMatrix</code> in order.</li>
+ * </ol>
+ * A file with a different magic number or a newer version is rejected. Version 1
+ * files (without results) can still be read.
+ */
+public class BinaryDSMFile
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(BinaryDSMFile.class);
+	/** The first four bytes of every file: "DSMB". */
+	public static final int MAGIC = 0x44534D42;
+	/** The version of the format that is written. */
+	public static final int VERSION = 2;
+	/** The flag that is set when the names are stored. */
+	private static final int FLAG_NAMES = 1;
+	/** The flag that is set when the visibility matrix is stored. */
+	private static final int FLAG_CLOSURE = 2;
+	/** The flag that is set when the results are stored. */
+	private static final int FLAG_RESULTS = 4;
+	/** The size of the header, in bytes. */
+	private static final int HEADER_SIZE = 24;
+	/** The size of the buffer used when writing. */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** The whole file, mapped into memory. */
+	private MappedByteBuffer buffer;
+	/** The flags from the header. */
+	private int flags;
+	/** The number of elements. */
+	private int size;
+	/** The number of dependencies. */
+	private int edgeCount;
+	/** The number of words in each row of the visibility matrix, or 0. */
+	private int words;
+	/** The position of the name table in the file. */
+	private int namesPosition;
+	/** The position of the results in the file. */
+	private int resultsPosition;
+	/** The position of the visibility matrix in the file. */
+	private long closurePosition;
+
+	/**
+	 * Constructor that maps a file into memory and reads its header.
+	 *
+	 * @param filePath  the path to the binary DSM file
+	 * @throws IOException  if the file cannot be read, or is not a binary DSM
+	 * file of a version that can be read
+	 */
+	public BinaryDSMFile(String filePath) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		try
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("File is too large to map: " + filePath);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			channel.close();
+		}
+		if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException("Not a binary DSM file: " + filePath);
+		}
+		int version = buffer.getInt(4);
+		if(version > VERSION)
+		{
+			throw new IOException("Binary DSM file version " + version
+					+ " is newer than the supported version " + VERSION + ": " + filePath);
+		}
+		flags = buffer.getInt(8);
+		size = buffer.getInt(12);
+		edgeCount = buffer.getInt(16);
+		words = buffer.getInt(20);
+		if((flags & FLAG_CLOSURE) != 0 && words != (size + 63) >>> 6)
+		{
+			throw new IOException("Binary DSM file has the wrong row length: " + filePath);
+		}
+
+		long end = HEADER_SIZE + 4L * (size + 1) + 4L * edgeCount;
+		if((flags & FLAG_NAMES) != 0 && end + 4L * (size + 1) <= buffer.capacity())
+		{
+			end += 4L * (size + 1) + buffer.getInt((int) end + 4 * size);
+		}
+		namesPosition = HEADER_SIZE + 4 * (size + 1) + 4 * edgeCount;
+		resultsPosition = (int) end;
+		if((flags & FLAG_RESULTS) != 0)
+		{
+			end += 12 + 12L * size + 16;
+		}
+		closurePosition = (end + 7) & ~7L;
+		if((flags & FLAG_CLOSURE) != 0)
+		{
+			end = closurePosition + 8L * size * words;
+		}
+		if(end > buffer.capacity())
+		{
+			throw new IOException("Binary DSM file is truncated: " + filePath);
+		}
+	}
+
+	/**
+	 * Writes a dependency matrix to a binary DSM file, with its names if they
+	 * are known.
+	 *
+	 * @param filePath  the path of the file to write
+	 * @param dep  the dependency matrix
+	 * @param closure  the visibility matrix to store as well, or null
+	 * @throws IOException  if the file cannot be written
+	 */
+	public static void write(String filePath, SparseDependencyMatrix dep, BitMatrix closure)
+			throws IOException
+	{
+		write(filePath, dep, closure, null);
+	}
+
+	/**
+	 * Writes a dependency matrix to a binary DSM file, with its names if they
+	 * are known, and the results calculated from it.
+	 *
+	 * @param filePath  the path of the file to write
+	 * @param dep  the dependency matrix
+	 * @param closure  the visibility matrix to store as well, or null
+	 * @param results  the results to store as well, or null
+	 * @throws IOException  if the file cannot be written
+	 */
+	public static void write(String filePath, SparseDependencyMatrix dep, BitMatrix closure,
+							 DSMResults results) throws IOException
+	{
+		int n = dep.size();
+		String[] names = dep.getNames();
+		int flags = (names == null ? 0 : FLAG_NAMES) | (closure == null ? 0 : FLAG_CLOSURE)
+				| (results == null ? 0 : FLAG_RESULTS);
+		int words = (closure == null) ? 0 : closure.getWordsPerRow();
+
+		FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			out.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(n)
+				.putInt(dep.getEdgeCount()).putInt(words);
+			long written = HEADER_SIZE;
+			written += putInts(channel, out, dep.getRowStarts(), n + 1);
+			written += putInts(channel, out, dep.getColumns(), dep.getEdgeCount());
+
+			if(names != null)
+			{
+				byte[][] bytes = new byte[n][];
+				int[] nameStart = new int[n + 1];
+				for(int i = 0; i < n; i++)
+				{
+					bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+					nameStart[i + 1] = nameStart[i] + bytes[i].length;
+				}
+				written += putInts(channel, out, nameStart, n + 1);
+				for(int i = 0; i < n; i++)
+				{
+					int pos = 0;
+					while(pos < bytes[i].length)
+					{
+						if(!out.hasRemaining())
+						{
+							flush(channel, out);
+						}
+						int length = Math.min(out.remaining(), bytes[i].length - pos);
+						out.put(bytes[i], pos, length);
+						pos += length;
+					}
+				}
+				written += nameStart[n];
+			}
+
+			if(results != null)
+			{
+				int[] header = {results.hasPropCost2() ? 1 : 0, results.getCyclicGroupCount(),
+								results.getCoreSize()};
+				written += putInts(channel, out, header, header.length);
+				written += putInts(channel, out, results.getVFI(), n);
+				written += putInts(channel, out, results.getVFO(), n);
+				written += putInts(channel, out, results.getCyclicGroups(), n);
+				if(out.remaining() < 16)
+				{
+					flush(channel, out);
+				}
+				out.putDouble(results.getPropCost());
+				out.putDouble(results.getPropCost2());
+				written += 16;
+			}
+
+			if(closure != null)
+			{
+				while((written & 7) != 0)
+				{
+					if(!out.hasRemaining())
+					{
+						flush(channel, out);
+					}
+					out.put((byte) 0);
+					written++;
+				}
+				for(int i = 0; i < n; i++)
+				{
+					long[] row = closure.getRow(i);
+					for(int w = 0; w < words; w++)
+					{
+						if(out.remaining() < 8)
+						{
+							flush(channel, out);
+						}
+						out.putLong(row[w]);
+					}
+				}
+			}
+			flush(channel, out);
+		}
+		finally
+		{
+			channel.close();
+		}
+		logger.info("Wrote binary DSM with " + n + " files to " + filePath);
+	}
+
+	/**
+	 * Puts the first <code>count</code> values of an array into the buffer,
+	 * writing the buffer to the channel whenever it is full.
+	 *
+	 * @param channel  the channel to write to
+	 * @param out  the buffer
+	 * @param values  the values
+	 * @param count  the number of values to put
+	 * @return  the number of bytes put
+	 * @throws IOException  if the channel cannot be written
+	 */
+	private static long putInts(FileChannel channel, ByteBuffer out, int[] values, int count)
+			throws IOException
+	{
+		for(int i = 0; i < count; i++)
+		{
+			if(out.remaining() < 4)
+			{
+				flush(channel, out);
+			}
+			out.putInt(values[i]);
+		}
+		return 4L * count;
+	}
+
+	/**
+	 * Writes everything in the buffer to the channel and clears it.
+	 *
+	 * @param channel  the channel to write to
+	 * @param out  the buffer
+	 * @throws IOException  if the channel cannot be written
+	 */
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException
+	{
+		out.flip();
+		while(out.hasRemaining())
+		{
+			channel.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Gets the number of elements in the file.
+	 *
+	 * @return  the size of the DSM
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Checks whether the file stores the names of the elements.
+	 *
+	 * @return  true if the names are stored
+	 */
+	public boolean hasNames()
+	{
+		return (flags & FLAG_NAMES) != 0;
+	}
+
+	/**
+	 * Checks whether the file stores the visibility matrix.
+	 *
+	 * @return  true if the visibility matrix is stored
+	 */
+	public boolean hasClosure()
+	{
+		return (flags & FLAG_CLOSURE) != 0;
+	}
+
+	/**
+	 * Checks whether the file stores the results calculated from the DSM.
+	 *
+	 * @return  true if the results are stored
+	 */
+	public boolean hasResults()
+	{
+		return (flags & FLAG_RESULTS) != 0;
+	}
+
+	/**
+	 * Reads the results calculated from the DSM.
+	 *
+	 * @return  the results, or null if they are not stored
+	 */
+	public DSMResults getResults()
+	{
+		if(!hasResults())
+		{
+			return null;
+		}
+		ByteBuffer bytes = (ByteBuffer) buffer.duplicate().position(resultsPosition);
+		boolean hasPropCost2 = bytes.getInt() != 0;
+		int nrCyclicGroups = bytes.getInt();
+		int coreSize = bytes.getInt();
+		int[] vfi = new int[size];
+		int[] vfo = new int[size];
+		int[] groups = new int[size];
+		IntBuffer ints = bytes.asIntBuffer();
+		ints.get(vfi);
+		ints.get(vfo);
+		ints.get(groups);
+		bytes.position(bytes.position() + 12 * size);
+		double propCost = bytes.getDouble();
+		double propCost2 = bytes.getDouble();
+		return new DSMResults(vfi, vfo, propCost, propCost2, hasPropCost2,
+				groups, nrCyclicGroups, coreSize);
+	}
+
+	/**
+	 * Reads the dependency matrix, with its names if they are stored.
+	 *
+	 * @return  the dependency matrix
+	 */
+	public SparseDependencyMatrix getDependencyMatrix()
+	{
+		IntBuffer ints = ((ByteBuffer) buffer.duplicate().position(HEADER_SIZE)).asIntBuffer();
+		int[] rowStart = new int[size + 1];
+		int[] columns = new int[edgeCount];
+		ints.get(rowStart);
+		ints.get(columns);
+		return new SparseDependencyMatrix(size, rowStart, columns, getNames());
+	}
+
+	/**
+	 * Reads the names of the elements.
+	 *
+	 * @return  the names, or null if they are not stored
+	 */
+	public String[] getNames()
+	{
+		if(!hasNames())
+		{
+			return null;
+		}
+		int[] nameStart = new int[size + 1];
+		((ByteBuffer) buffer.duplicate().position(namesPosition)).asIntBuffer().get(nameStart);
+		ByteBuffer bytes = (ByteBuffer) buffer.duplicate().position(namesPosition + 4 * (size + 1));
+		byte[] all = new byte[nameStart[size]];
+		bytes.get(all);
+		String[] names = new String[size];
+		for(int i = 0; i < size; i++)
+		{
+			names[i] = new String(all, nameStart[i], nameStart[i + 1] - nameStart[i],
+					StandardCharsets.UTF_8);
+		}
+		return names;
+	}
+
+	/**
+	 * Reads the visibility matrix.
+	 *
+	 * @return  the visibility matrix, or null if it is not stored
+	 */
+	public BitMatrix getClosure()
+	{
+		if(!hasClosure())
+		{
+			return null;
+		}
+		BitMatrix closure = new BitMatrix(size);
+		LongBuffer longs = ((ByteBuffer) buffer.duplicate().position((int) closurePosition))
+				.asLongBuffer();
+		for(int i = 0; i < size; i++)
+		{
+			longs.get(closure.getRow(i));
+		}
+		return closure;
+	}
+}
@@ -0,0 +1,349 @@
+package additions;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * A square binary matrix in which each row is stored as a bitset
+ * (an array of <code>long</code> words, 64 columns per word).<br>
+ * <br>
+ * This is used to hold the visibility matrix of a DSM. Since the visibility
+ * matrix is only ever used as a binary matrix (through <code>truth()</code>),
+ * there is no reason to keep it as a dense matrix of doubles, which takes 64
+ * times more memory and is much slower to compute.<br>
+ * <br>
+ * The transitive closure is computed with Warshall's algorithm, where the
+ * inner loop ORs whole rows together 64 columns at a time.
+ */
+public class BitMatrix
+{
+	/** The number of rows (and columns) in the matrix. */
+	private int size;
+	/** The number of long words used to store each row. */
+	private int words;
+	/** The bits of the matrix, one array of words per row. */
+	private long[][] rows;
+
+	/**
+	 * Constructor for an empty (all zero) matrix of the given size.
+	 *
+	 * @param size  the number of rows and columns in the matrix
+	 */
+	public BitMatrix(int size)
+	{
+		this.size = size;
+		this.words = (size + 63) >>> 6;
+		this.rows = new long[size][words];
+	}
+
+	/**
+	 * Creates a bit matrix from a sparse dependency matrix.
+	 *
+	 * @param dep  the dependency matrix to convert
+	 * @return  the bit matrix
+	 */
+	public static BitMatrix fromDependencies(SparseDependencyMatrix dep)
+	{
+		int n = dep.size();
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		BitMatrix b = new BitMatrix(n);
+		for(int i = 0; i < n; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				b.set(i, columns[p]);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Creates the visibility matrix of a dependency matrix from its condensation.
+	 * Components are numbered so that every component only depends on lower ones,
+	 * so the row of a component is the OR of the rows of the components it depends
+	 * on, plus their members, and is built once and copied to all of its members.
+	 * This takes one row OR per dependency of the condensation instead of one per
+	 * entry of the visibility matrix, as <code>transitiveClosure()</code> does.
+	 *
+	 * @param cond  the condensation of the dependency matrix
+	 * @return  the visibility matrix
+	 */
+	public static BitMatrix closureOf(Condensation cond)
+	{
+		BitMatrix b = new BitMatrix(cond.getElementCount());
+		int[] rowStart = cond.getDAG().getRowStarts();
+		int[] columns = cond.getDAG().getColumns();
+		for(int c = 0; c < cond.getComponentCount(); c++)
+		{
+			long[] row = b.rows[cond.getMember(c, 0)];
+			for(int p = rowStart[c]; p < rowStart[c + 1]; p++)
+			{
+				int d = columns[p];
+				long[] rowD = b.rows[cond.getMember(d, 0)];
+				for(int w = 0; w < b.words; w++)
+				{
+					row[w] |= rowD[w];
+				}
+				for(int k = 0; k < cond.getComponentSize(d); k++)
+				{
+					int j = cond.getMember(d, k);
+					row[j >>> 6] |= 1L << j;
+				}
+			}
+			if(cond.isCyclic(c))
+			{
+				for(int k = 0; k < cond.getComponentSize(c); k++)
+				{
+					int j = cond.getMember(c, k);
+					row[j >>> 6] |= 1L << j;
+				}
+			}
+			for(int k = 1; k < cond.getComponentSize(c); k++)
+			{
+				System.arraycopy(row, 0, b.rows[cond.getMember(c, k)], 0, b.words);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Creates a copy of this matrix.
+	 *
+	 * @return  a new matrix with the same entries
+	 */
+	public BitMatrix copy()
+	{
+		BitMatrix b = new BitMatrix(size);
+		for(int i = 0; i < size; i++)
+		{
+			System.arraycopy(rows[i], 0, b.rows[i], 0, words);
+		}
+		return b;
+	}
+
+	/**
+	 * Gets the number of long words used to store each row.
+	 *
+	 * @return  the length of each row's array
+	 */
+	public int getWordsPerRow()
+	{
+		return words;
+	}
+
+	/**
+	 * Gets the number of rows (and columns) in the matrix.
+	 *
+	 * @return  the size of the matrix
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the value of a single entry.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 * @return  true if the entry is set
+	 */
+	public boolean get(int i, int j)
+	{
+		return (rows[i][j >>> 6] & (1L << j)) != 0;
+	}
+
+	/**
+	 * Sets a single entry to 1.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 */
+	public void set(int i, int j)
+	{
+		rows[i][j >>> 6] |= 1L << j;
+	}
+
+	/**
+	 * Sets a single entry to 0.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 */
+	public void clear(int i, int j)
+	{
+		rows[i][j >>> 6] &= ~(1L << j);
+	}
+
+	/**
+	 * Gets the words of a row. The returned array is the one backing the
+	 * matrix, so changes to it change the matrix.
+	 *
+	 * @param i  the row
+	 * @return  the words of the row
+	 */
+	public long[] getRow(int i)
+	{
+		return rows[i];
+	}
+
+	/**
+	 * ORs the source row into the target row.
+	 *
+	 * @param target  the row that is changed
+	 * @param source  the row that is added to the target
+	 */
+	public void orRow(int target, int source)
+	{
+		long[] t = rows[target];
+		long[] s = rows[source];
+		for(int w = 0; w < words; w++)
+		{
+			t[w] |= s[w];
+		}
+	}
+
+	/**
+	 * Counts the number of set entries in a row.
+	 *
+	 * @param i  the row
+	 * @return  the number of set entries
+	 */
+	public int rowCardinality(int i)
+	{
+		long[] r = rows[i];
+		int count = 0;
+		for(int w = 0; w < words; w++)
+		{
+			count += Long.bitCount(r[w]);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the number of set entries in every column.
+	 *
+	 * @return  an array with the number of set entries for each column
+	 */
+	public int[] columnCardinalities()
+	{
+		int[] counts = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			long[] r = rows[i];
+			for(int w = 0; w < words; w++)
+			{
+				long word = r[w];
+				while(word != 0)
+				{
+					counts[(w << 6) + Long.numberOfTrailingZeros(word)]++;
+					word &= word - 1;
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the number of set entries in the whole matrix.
+	 *
+	 * @return  the number of set entries
+	 */
+	public long cardinality()
+	{
+		long count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			count += rowCardinality(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the number of set entries on the diagonal.
+	 *
+	 * @return  the number of set diagonal entries
+	 */
+	public int diagonalCardinality()
+	{
+		int count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			if(get(i, i))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the set entries of every row and column, and of the diagonal.
+	 *
+	 * @return  the row, column, and diagonal sums of this matrix
+	 */
+	public ReachabilityCounts reachabilityCounts()
+	{
+		int[] rowCounts = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			rowCounts[i] = rowCardinality(i);
+		}
+		return new ReachabilityCounts(columnCardinalities(), rowCounts, diagonalCardinality());
+	}
+
+	/**
+	 * Replaces this matrix with its transitive closure, using Warshall's
+	 * algorithm. For each intermediate element k, every row that has
+	 * column k set gets row k ORed into it.<br>
+	 * <br>
+	 * The result has entry (i, j) set if there is a path of length one or more
+	 * from i to j, which is the same as the non-zero entries of the sum of
+	 * all powers of the matrix. The diagonal is only set for elements that are
+	 * part of a cycle.
+	 */
+	public void transitiveClosure()
+	{
+		for(int k = 0; k < size; k++)
+		{
+			int wk = k >>> 6;
+			long mask = 1L << k;
+			long[] rowK = rows[k];
+			for(int i = 0; i < size; i++)
+			{
+				long[] rowI = rows[i];
+				if((rowI[wk] & mask) != 0)
+				{
+					for(int w = 0; w < words; w++)
+					{
+						rowI[w] |= rowK[w];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converts this matrix into a DoubleMatrix of 1s and 0s.
+	 *
+	 * @return  the matrix as a DoubleMatrix
+	 */
+	public DoubleMatrix toDoubleMatrix()
+	{
+		DoubleMatrix m = DoubleMatrix.zeros(size, size);
+		for(int i = 0; i < size; i++)
+		{
+			long[] r = rows[i];
+			for(int w = 0; w < words; w++)
+			{
+				long word = r[w];
+				while(word != 0)
+				{
+					m.put(i, (w << 6) + Long.numberOfTrailingZeros(word), 1.0);
+					word &= word - 1;
+				}
+			}
+		}
+		return m;
+	}
+}
@@ -0,0 +1,674 @@
+package additions;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Finds the class-to-class dependencies of compiled classes by reading their
+ * class files directly, so that a DSM can be made from folders of classes and
+ * from JAR, WAR, EAR, and ZIP files without running Dependency Finder and going
+ * through its XML.<br>
+ * <br>
+ * A class depends on every class named in its constant pool: the classes it
+ * extends, implements, creates, casts to, and calls or uses fields of, and every
+ * class in the descriptors of its fields, of its methods, and of the methods and
+ * fields it uses. Annotations and generic signatures are not read. Archives inside
+ * archives (such as the libraries in a WAR's <code>WEB-INF/lib</code>) are read too.<br>
+ * <br>
+ * The class files are parsed in parallel on a <code>ForkJoinPool</code>. The
+ * classes are then numbered in the order they were found (with folders listed in
+ * name order), so the result does not depend on the order the threads ran in.
+ * The filter has the same format and meaning as in <code>DependencyFinderLoader</code>:
+ * only classes in packages whose whole name matches one of the expressions are
+ * included, and dependencies on classes that are not included are dropped. If the
+ * same class is found more than once, the first one is used.
+ */
+public class BytecodeDependencyExtractor
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(BytecodeDependencyExtractor.class);
+	/** The number of class files that one task parses without splitting further. */
+	private static final int CHUNK_SIZE = 16;
+	/** The first four bytes of every class file. */
+	private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+	/** The package name patterns to include. */
+	private Pattern[] filter;
+	/** The table used to share class names, or null. */
+	private ClassNameTable table;
+	/** The pool that parses the class files. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructor with the filter to apply to package names.
+	 *
+	 * @param filter  the filter, in the same format jDSM uses
+	 * @param table  the table of class names, or null
+	 * @param pool  the pool to parse the class files in
+	 */
+	public BytecodeDependencyExtractor(String filter, ClassNameTable table, ForkJoinPool pool)
+	{
+		this.table = table;
+		this.pool = pool;
+		String[] parts = filter.split(",");
+		this.filter = new Pattern[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			this.filter[i] = Pattern.compile(parts[i].substring(1, parts[i].length() - 1));
+		}
+	}
+
+	/**
+	 * Reads the dependency matrix of the classes in a folder or archive, on the
+	 * common <code>ForkJoinPool</code>.
+	 *
+	 * @param path  the folder, class file, or JAR, WAR, EAR, or ZIP file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @return  the dependency matrix, with the class names
+	 * @throws IOException  if the path cannot be read
+	 */
+	public static SparseDependencyMatrix load(String path, String filter) throws IOException
+	{
+		return new BytecodeDependencyExtractor(filter, null, ForkJoinPool.commonPool())
+				.extract(path);
+	}
+
+	/**
+	 * Checks whether a path holds classes rather than a Dependency Finder XML file.
+	 *
+	 * @param path  the path
+	 * @return  true if it is a folder, or a class or archive file
+	 */
+	public static boolean isClassPath(String path)
+	{
+		File file = new File(path);
+		return file.isDirectory() || isClassFile(file.getName()) || isArchive(file.getName());
+	}
+
+	/**
+	 * Reads the dependency matrix of the classes in the given folders and archives.
+	 *
+	 * @param paths  the folders, class files, and JAR, WAR, EAR, or ZIP files
+	 * @return  the dependency matrix, with the class names
+	 * @throws IOException  if a path does not exist
+	 */
+	public SparseDependencyMatrix extract(String... paths) throws IOException
+	{
+		logger.info("Started reading classes from: " + Arrays.toString(paths));
+		List<Unit> units = new ArrayList<Unit>();
+		List<ZipFile> archives = new ArrayList<ZipFile>();
+		try
+		{
+			for(String path : paths)
+			{
+				File file = new File(path);
+				if(!file.exists())
+				{
+					throw new IOException("No such file or folder: " + path);
+				}
+				collect(file, units, archives);
+			}
+			Unit[] all = units.toArray(new Unit[units.size()]);
+			pool.invoke(new ParseTask(all, 0, all.length));
+			SparseDependencyMatrix dep = buildMatrix(all);
+			logger.info("Finished reading " + all.length + " class files and archives.");
+			return dep;
+		}
+		finally
+		{
+			for(ZipFile zip : archives)
+			{
+				try
+				{
+					zip.close();
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the class files in a folder or archive, and the archives inside an
+	 * archive, in a fixed order.
+	 *
+	 * @param file  the folder or file
+	 * @param units  the list to add the class files and inner archives to
+	 * @param archives  the list to add the opened archives to, to close at the end
+	 */
+	private void collect(File file, List<Unit> units, List<ZipFile> archives)
+	{
+		if(file.isDirectory())
+		{
+			File[] children = file.listFiles();
+			if(children == null)
+			{
+				return;
+			}
+			Arrays.sort(children);
+			for(File child : children)
+			{
+				collect(child, units, archives);
+			}
+		}
+		else if(isClassFile(file.getName()))
+		{
+			units.add(new Unit(file, null, null));
+		}
+		else if(isArchive(file.getName()))
+		{
+			try
+			{
+				ZipFile zip = new ZipFile(file);
+				archives.add(zip);
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				while(entries.hasMoreElements())
+				{
+					ZipEntry entry = entries.nextElement();
+					if(!entry.isDirectory()
+							&& (isClassFile(entry.getName()) || isArchive(entry.getName())))
+					{
+						units.add(new Unit(file, zip, entry));
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				logger.info("Skipping " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Numbers the included classes in the order they were found, and builds
+	 * the matrix of their dependencies on each other.
+	 *
+	 * @param all  the parsed class files and archives
+	 * @return  the dependency matrix
+	 */
+	private SparseDependencyMatrix buildMatrix(Unit[] all)
+	{
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		List<ParsedClass> included = new ArrayList<ParsedClass>();
+		for(Unit unit : all)
+		{
+			for(ParsedClass c : unit.classes)
+			{
+				if(!matchesPattern(getPackageName(c.name)))
+				{
+					continue;
+				}
+				if(index.containsKey(c.name))
+				{
+					logger.info("Class " + c.name + " appears more than once.");
+					continue;
+				}
+				index.put(c.name, names.size());
+				names.add((table == null) ? c.name : table.intern(c.name));
+				included.add(c);
+			}
+		}
+
+		int edges = 0;
+		for(ParsedClass c : included)
+		{
+			edges += c.references.length;
+		}
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		edges = 0;
+		for(int i = 0; i < included.size(); i++)
+		{
+			for(String name : included.get(i).references)
+			{
+				Integer j = index.get(name);
+				if(j != null && j != i)
+				{
+					from[edges] = i;
+					to[edges] = j;
+					edges++;
+				}
+			}
+		}
+		logger.info("Loaded " + names.size() + " classes.");
+		return SparseDependencyMatrix.fromEdges(names.size(), from, to, edges,
+				names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Checks whether a package name matches any of the filter's patterns.
+	 *
+	 * @param packageName  the name of the package
+	 * @return  true if the package is included
+	 */
+	private boolean matchesPattern(String packageName)
+	{
+		for(Pattern p : filter)
+		{
+			if(p.matcher(packageName).matches())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the package of a class.
+	 *
+	 * @param className  the full name of the class, with dots
+	 * @return  the package name, or an empty string for the default package
+	 */
+	private static String getPackageName(String className)
+	{
+		int dot = className.lastIndexOf('.');
+		return (dot < 0) ? "" : className.substring(0, dot);
+	}
+
+	/**
+	 * Checks whether a file name is a class file's.
+	 *
+	 * @param name  the file name
+	 * @return  true if it ends in .class
+	 */
+	private static boolean isClassFile(String name)
+	{
+		return name.endsWith(".class");
+	}
+
+	/**
+	 * Checks whether a file name is an archive's.
+	 *
+	 * @param name  the file name
+	 * @return  true if it ends in .jar, .war, .ear, or .zip
+	 */
+	private static boolean isArchive(String name)
+	{
+		String lower = name.toLowerCase(Locale.ROOT);
+		return lower.endsWith(".jar") || lower.endsWith(".war") || lower.endsWith(".ear")
+				|| lower.endsWith(".zip");
+	}
+
+	/**
+	 * Reads every class in an archive that is inside another archive.
+	 *
+	 * @param in  the stream of the inner archive
+	 * @param label  the name of the archive, for messages
+	 * @param classes  the list to add the classes to
+	 * @throws IOException  if the archive cannot be read
+	 */
+	private static void parseArchive(InputStream in, String label, List<ParsedClass> classes)
+			throws IOException
+	{
+		ZipInputStream zip = new ZipInputStream(in);
+		ZipEntry entry;
+		while((entry = zip.getNextEntry()) != null)
+		{
+			if(entry.isDirectory())
+			{
+				continue;
+			}
+			if(isClassFile(entry.getName()))
+			{
+				ParsedClass c = parseClass(zip, label + "!" + entry.getName());
+				if(c != null)
+				{
+					classes.add(c);
+				}
+			}
+			else if(isArchive(entry.getName()))
+			{
+				//read the inner archive from a copy, since ZipInputStream cannot be nested in place
+				ByteArrayOutputStream copy = new ByteArrayOutputStream();
+				byte[] buffer = new byte[1 << 14];
+				int read;
+				while((read = zip.read(buffer)) > 0)
+				{
+					copy.write(buffer, 0, read);
+				}
+				parseArchive(new ByteArrayInputStream(copy.toByteArray()),
+						label + "!" + entry.getName(), classes);
+			}
+		}
+	}
+
+	/**
+	 * Reads the name of a class and the names of the classes it refers to from
+	 * its class file.
+	 *
+	 * @param stream  the class file, which is not closed
+	 * @param label  the name of the class file, for messages
+	 * @return  the class, or null if it is not a valid class file
+	 */
+	private static ParsedClass parseClass(InputStream stream, String label)
+	{
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 13));
+			if(in.readInt() != CLASS_MAGIC)
+			{
+				logger.info("Skipping " + label + ": not a class file.");
+				return null;
+			}
+			in.readUnsignedShort();	//minor version
+			in.readUnsignedShort();	//major version
+
+			int count = in.readUnsignedShort();
+			String[] utf8 = new String[count];
+			int[] classNameOf = new int[count];	//the Utf8 entry of each Class entry, or 0
+			List<Integer> descriptors = new ArrayList<Integer>();
+			for(int i = 1; i < count; i++)
+			{
+				int tag = in.readUnsignedByte();
+				switch(tag)
+				{
+					case 1:		//Utf8
+						utf8[i] = in.readUTF();
+						break;
+					case 7:		//Class
+						classNameOf[i] = in.readUnsignedShort();
+						break;
+					case 12:	//NameAndType
+						in.readUnsignedShort();
+						descriptors.add(in.readUnsignedShort());
+						break;
+					case 16:	//MethodType
+						descriptors.add(in.readUnsignedShort());
+						break;
+					case 8:		//String
+					case 19:	//Module
+					case 20:	//Package
+						in.readUnsignedShort();
+						break;
+					case 15:	//MethodHandle
+						in.readUnsignedByte();
+						in.readUnsignedShort();
+						break;
+					case 3:		//Integer
+					case 4:		//Float
+					case 9:		//Fieldref
+					case 10:	//Methodref
+					case 11:	//InterfaceMethodref
+					case 17:	//Dynamic
+					case 18:	//InvokeDynamic
+						in.readInt();
+						break;
+					case 5:		//Long
+					case 6:		//Double
+						in.readLong();
+						i++;	//takes two entries
+						break;
+					default:
+						logger.info("Skipping " + label + ": unknown constant pool tag " + tag);
+						return null;
+				}
+			}
+			in.readUnsignedShort();	//access flags
+			int thisClass = in.readUnsignedShort();
+			in.readUnsignedShort();	//super class, which is also a Class entry
+			int interfaces = in.readUnsignedShort();
+			for(int i = 0; i < interfaces; i++)
+			{
+				in.readUnsignedShort();
+			}
+			//the descriptors of the fields, then of the methods
+			for(int group = 0; group < 2; group++)
+			{
+				int members = in.readUnsignedShort();
+				for(int m = 0; m < members; m++)
+				{
+					in.readUnsignedShort();	//access flags
+					in.readUnsignedShort();	//name
+					descriptors.add(in.readUnsignedShort());
+					int attributes = in.readUnsignedShort();
+					for(int a = 0; a < attributes; a++)
+					{
+						in.readUnsignedShort();	//name
+						skipFully(in, in.readInt() & 0xFFFFFFFFL);
+					}
+				}
+			}
+
+			String name = utf8[classNameOf[thisClass]].replace('/', '.');
+			Set<String> references = new LinkedHashSet<String>();
+			for(int i = 1; i < count; i++)
+			{
+				if(classNameOf[i] != 0)
+				{
+					String internal = utf8[classNameOf[i]];
+					if(internal.startsWith("["))
+					{
+						addDescriptorClasses(internal, references);
+					}
+					else
+					{
+						references.add(internal.replace('/', '.'));
+					}
+				}
+			}
+			for(int d : descriptors)
+			{
+				addDescriptorClasses(utf8[d], references);
+			}
+			references.remove(name);
+			return new ParsedClass(name, references.toArray(new String[references.size()]));
+		}
+		catch(IOException | RuntimeException e)
+		{
+			logger.info("Skipping " + label + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Skips bytes of a stream.
+	 *
+	 * @param in  the stream
+	 * @param length  the number of bytes to skip
+	 * @throws IOException  if the stream ends first
+	 */
+	private static void skipFully(InputStream in, long length) throws IOException
+	{
+		while(length > 0)
+		{
+			long skipped = in.skip(length);
+			if(skipped <= 0)
+			{
+				if(in.read() < 0)
+				{
+					throw new IOException("Unexpected end of class file.");
+				}
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+	/**
+	 * Adds the classes named in a field or method descriptor, such as
+	 * <code>(Ljava/lang/String;[I)Ljava/util/List;</code>.
+	 *
+	 * @param descriptor  the descriptor
+	 * @param references  the set to add the class names to, with dots
+	 */
+	private static void addDescriptorClasses(String descriptor, Set<String> references)
+	{
+		int start = descriptor.indexOf('L');
+		while(start >= 0)
+		{
+			int end = descriptor.indexOf(';', start);
+			if(end < 0)
+			{
+				return;
+			}
+			references.add(descriptor.substring(start + 1, end).replace('/', '.'));
+			start = descriptor.indexOf('L', end);
+		}
+	}
+
+	/**
+	 * A class file, or an archive inside an archive, and the classes read from it.
+	 */
+	private static class Unit
+	{
+		/** The file, or the archive the entry is in. */
+		private File file;
+		/** The open archive the entry is in, or null for a class file. */
+		private ZipFile zip;
+		/** The entry in the archive, or null for a class file. */
+		private ZipEntry entry;
+		/** The classes read from it. */
+		private List<ParsedClass> classes = new ArrayList<ParsedClass>();
+
+		/**
+		 * Constructor for a class file or archive entry.
+		 *
+		 * @param file  the file, or the archive the entry is in
+		 * @param zip  the open archive the entry is in, or null for a class file
+		 * @param entry  the entry in the archive, or null for a class file
+		 */
+		private Unit(File file, ZipFile zip, ZipEntry entry)
+		{
+			this.file = file;
+			this.zip = zip;
+			this.entry = entry;
+		}
+
+		/**
+		 * Reads the classes.
+		 */
+		private void parse()
+		{
+			String label = (entry == null) ? file.getPath() : file.getPath() + "!" + entry.getName();
+			InputStream in = null;
+			try
+			{
+				in = (zip == null) ? new FileInputStream(file) : zip.getInputStream(entry);
+				if(isArchive(label))
+				{
+					parseArchive(in, label, classes);
+				}
+				else
+				{
+					ParsedClass c = parseClass(in, label);
+					if(c != null)
+					{
+						classes.add(c);
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				logger.info("Skipping " + label + ": " + e.getMessage());
+			}
+			finally
+			{
+				if(in != null)
+				{
+					try
+					{
+						in.close();
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The name of a class and the names of the classes it refers to.
+	 */
+	private static class ParsedClass
+	{
+		/** The name of the class, with dots. */
+		private String name;
+		/** The names of the classes it refers to, with dots. */
+		private String[] references;
+
+		/**
+		 * Constructor with all values specified.
+		 *
+		 * @param name  the name of the class
+		 * @param references  the names of the classes it refers to
+		 */
+		private ParsedClass(String name, String[] references)
+		{
+			this.name = name;
+			this.references = references;
+		}
+	}
+
+	/**
+	 * Parses a range of class files and archives, splitting the range in half
+	 * until it is small enough.
+	 */
+	private static class ParseTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		/** All of the class files and archives. */
+		private Unit[] units;
+		/** The first one in the range. */
+		private int from;
+		/** One past the last one in the range. */
+		private int to;
+
+		/**
+		 * Constructor for a task over the units from <code>from</code> to
+		 * <code>to - 1</code>.
+		 *
+		 * @param units  all of the class files and archives
+		 * @param from  the first one
+		 * @param to  one past the last one
+		 */
+		private ParseTask(Unit[] units, int from, int to)
+		{
+			this.units = units;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > CHUNK_SIZE)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new ParseTask(units, from, mid), new ParseTask(units, mid, to));
+				return;
+			}
+			for(int k = from; k < to; k++)
+			{
+				units[k].parse();
+			}
+		}
+	}
+}
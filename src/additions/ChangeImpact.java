@@ -0,0 +1,166 @@
+package additions;
+
+/**
+ * The result of a <code>ChangeImpactAnalysis</code>: the classes affected by a
+ * change, and the propagation costs and Core size before and after it.
+ */
+public class ChangeImpact
+{
+	/** The classes that can see a changed class, in ascending order. */
+	private int[] impactSet;
+	/** Whether the search stopped at the limit before finding every affected class. */
+	private boolean truncated;
+	/** The number of classes. */
+	private int size;
+	/** The sum of all VFO (and of all VFI) before the change. */
+	private long totalBefore;
+	/** The sum of all VFO (and of all VFI) after the change. */
+	private long totalAfter;
+	/** The number of classes that can see themselves before the change. */
+	private int selfVisibleBefore;
+	/** The number of classes that can see themselves after the change. */
+	private int selfVisibleAfter;
+	/** The Core size before the change. */
+	private int coreSizeBefore;
+	/** The Core size after the change. */
+	private int coreSizeAfter;
+	/** The number of classes whose visibility had to be found again. */
+	private int recountedRows;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param impactSet  the classes that can see a changed class
+	 * @param truncated  true if the search stopped at the limit
+	 * @param size  the number of classes
+	 * @param totalBefore  the sum of all VFO before the change
+	 * @param totalAfter  the sum of all VFO after the change
+	 * @param selfVisibleBefore  the number of classes that can see themselves before
+	 * @param selfVisibleAfter  the number of classes that can see themselves after
+	 * @param coreSizeBefore  the Core size before
+	 * @param coreSizeAfter  the Core size after
+	 * @param recountedRows  the number of classes whose visibility was found again
+	 */
+	public ChangeImpact(int[] impactSet, boolean truncated, int size, long totalBefore,
+						long totalAfter, int selfVisibleBefore, int selfVisibleAfter,
+						int coreSizeBefore, int coreSizeAfter, int recountedRows)
+	{
+		this.impactSet = impactSet;
+		this.truncated = truncated;
+		this.size = size;
+		this.totalBefore = totalBefore;
+		this.totalAfter = totalAfter;
+		this.selfVisibleBefore = selfVisibleBefore;
+		this.selfVisibleAfter = selfVisibleAfter;
+		this.coreSizeBefore = coreSizeBefore;
+		this.coreSizeAfter = coreSizeAfter;
+		this.recountedRows = recountedRows;
+	}
+
+	/**
+	 * Gets the classes affected by the change: every class that can see one of
+	 * the changed classes after the change. A changed class is only included if
+	 * it can see another changed class or itself.
+	 *
+	 * @return  the indices of the classes, in ascending order
+	 */
+	public int[] getImpactSet()
+	{
+		return impactSet;
+	}
+
+	/**
+	 * Checks whether the impact set is incomplete because it reached the limit.
+	 *
+	 * @return  true if the search stopped at the limit
+	 */
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	/**
+	 * Gets the change in the sum of all VFO, which is also the change in the
+	 * sum of all VFI.
+	 *
+	 * @return  the sum after the change minus the sum before
+	 */
+	public long getVisibilitySumDelta()
+	{
+		return totalAfter - totalBefore;
+	}
+
+	/**
+	 * Gets the propagation cost before the change.
+	 *
+	 * @return  the propagation cost
+	 */
+	public double getPropCostBefore()
+	{
+		return totalBefore / ((double) size * size);
+	}
+
+	/**
+	 * Gets the propagation cost after the change.
+	 *
+	 * @return  the propagation cost
+	 */
+	public double getPropCostAfter()
+	{
+		return totalAfter / ((double) size * size);
+	}
+
+	/**
+	 * Gets the change in propagation cost.
+	 *
+	 * @return  the propagation cost after the change minus the one before
+	 */
+	public double getPropCostDelta()
+	{
+		return getPropCostAfter() - getPropCostBefore();
+	}
+
+	/**
+	 * Gets the change in propagation cost with self-dependencies.
+	 *
+	 * @return  the propagation cost with self-dependencies after the change minus
+	 * the one before
+	 */
+	public double getPropCost2Delta()
+	{
+		long before = totalBefore + size - selfVisibleBefore;
+		long after = totalAfter + size - selfVisibleAfter;
+		return (after - before) / ((double) size * size);
+	}
+
+	/**
+	 * Gets the Core size before the change.
+	 *
+	 * @return  the Core size
+	 */
+	public int getCoreSizeBefore()
+	{
+		return coreSizeBefore;
+	}
+
+	/**
+	 * Gets the Core size after the change.
+	 *
+	 * @return  the Core size
+	 */
+	public int getCoreSizeAfter()
+	{
+		return coreSizeAfter;
+	}
+
+	/**
+	 * Gets the number of classes whose visibility had to be found again, which
+	 * is the number of classes if it was all counted again.
+	 *
+	 * @return  the number of classes
+	 */
+	public int getRecountedRows()
+	{
+		return recountedRows;
+	}
+}
@@ -0,0 +1,637 @@
+package additions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds what a change to a few classes affects, without analysing the whole DSM
+ * again. A change is a set of modified classes, and optionally dependencies that
+ * are added or removed.<br>
+ * <br>
+ * The impact set is every class that can see a changed class after the change.
+ * It is found by one search over the reversed dependencies that starts from all
+ * of the changed classes at once, so each class is visited at most once however
+ * many classes changed, and the search stops as soon as every class has been
+ * reached or the limit set with <code>setImpactLimit()</code> is hit.<br>
+ * <br>
+ * The VFO of every class, the propagation costs, and the Core size of the DSM
+ * before the change are calculated once, when the analysis is created, and kept.
+ * Modifying a class without changing its dependencies does not change any of
+ * them. When dependencies are added or removed, only the classes that could see
+ * the class that has them, before or after the change, can see anything
+ * different, so only the VFO of those classes is found again by searching from
+ * each of them. The VFI sum is always the same as the VFO sum, so this also gives
+ * the change in the VFI sum. If so many classes are affected that searching from
+ * each would take longer, every VFO is counted again over the condensation
+ * instead (see <code>CondensationReachability</code>). The Core size after the
+ * change comes from the strongly connected components of the changed matrix.
+ */
+public class ChangeImpactAnalysis
+{
+	/**
+	 * How many times the number of classes and dependencies the searches from the
+	 * affected classes may visit before every VFO is counted again instead.
+	 */
+	public static final int RECOUNT_FACTOR = 8;
+
+	/** The dependency matrix before the change. */
+	private SparseDependencyMatrix dep;
+	/** The transpose of the dependency matrix, which is searched for the impact set. */
+	private SparseDependencyMatrix reverse;
+	/** The VFO of every class before the change. */
+	private int[] vfo;
+	/** The sum of all VFO before the change. */
+	private long total;
+	/** The number of classes that can see themselves before the change. */
+	private int selfVisible;
+	/** The Core size before the change. */
+	private int coreSize;
+	/** The most classes to put in an impact set, or 0 for no limit. */
+	private int impactLimit;
+	/** The index of each class name, built the first time a name is looked up. */
+	private Map<String, Integer> index;
+
+	/**
+	 * Constructor that calculates the metrics of a dependency matrix before any change.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public ChangeImpactAnalysis(SparseDependencyMatrix dep)
+	{
+		this(dep, new Condensation(dep));
+	}
+
+	/**
+	 * Constructor that calculates the metrics from components that have already been found.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param cond  the condensation of the matrix
+	 */
+	public ChangeImpactAnalysis(SparseDependencyMatrix dep, Condensation cond)
+	{
+		this.dep = dep;
+		this.reverse = dep.transpose();
+		ReachabilityCounts counts = new CondensationReachability(cond, false).getCounts();
+		this.vfo = counts.getVFO();
+		this.total = counts.getTotal();
+		this.selfVisible = counts.getSelfVisible();
+		for(int c = 0; c < cond.getComponentCount(); c++)
+		{
+			coreSize = Math.max(coreSize, cond.getComponentSize(c));
+		}
+	}
+
+	/**
+	 * Sets the most classes to put in an impact set. A search that reaches the
+	 * limit stops there, and its impact set is marked as truncated.
+	 *
+	 * @param impactLimit  the limit, or 0 for no limit
+	 */
+	public void setImpactLimit(int impactLimit)
+	{
+		this.impactLimit = impactLimit;
+	}
+
+	/**
+	 * Gets the index of a class.
+	 *
+	 * @param name  the name of the class
+	 * @return  the index, or -1 if there is no class with that name
+	 */
+	public synchronized int indexOf(String name)
+	{
+		if(index == null)
+		{
+			if(dep.getNames() == null)
+			{
+				return -1;
+			}
+			index = new HashMap<String, Integer>();
+			for(int i = 0; i < dep.size(); i++)
+			{
+				index.put(dep.getName(i), i);
+			}
+		}
+		Integer i = index.get(name);
+		return (i == null) ? -1 : i;
+	}
+
+	/**
+	 * Analyses a change to some classes that does not change any dependencies.
+	 *
+	 * @param changed  the indices of the changed classes
+	 * @return  the impact of the change
+	 */
+	public ChangeImpact analyze(int[] changed)
+	{
+		return analyze(changed, null, null);
+	}
+
+	/**
+	 * Analyses a change to some classes that may also add and remove dependencies.
+	 * Each dependency is a pair of indices: the class that has it, and the class it
+	 * is on. The class that has an added or removed dependency is treated as changed.
+	 * Adding a dependency that already exists, removing one that does not, and
+	 * dependencies of a class on itself are ignored, and a dependency that is both
+	 * removed and added is kept.
+	 *
+	 * @param changed  the indices of the changed classes
+	 * @param added  the dependencies that are added, or null
+	 * @param removed  the dependencies that are removed, or null
+	 * @return  the impact of the change
+	 */
+	public ChangeImpact analyze(int[] changed, int[][] added, int[][] removed)
+	{
+		Edits edits = new Edits();
+		if(removed != null)
+		{
+			for(int[] e : removed)
+			{
+				if(e[0] != e[1] && dep.get(e[0], e[1]))
+				{
+					edits.remove(e[0], e[1]);
+				}
+			}
+		}
+		if(added != null)
+		{
+			for(int[] e : added)
+			{
+				if(e[0] != e[1] && !dep.get(e[0], e[1]))
+				{
+					edits.add(e[0], e[1]);
+				}
+				else if(e[0] != e[1])
+				{
+					edits.restore(e[0], e[1]);
+				}
+			}
+		}
+
+		int n = dep.size();
+		int[] seeds = Arrays.copyOf(changed, changed.length + edits.sources.size());
+		for(int k = 0; k < edits.sources.size(); k++)
+		{
+			seeds[changed.length + k] = edits.sources.get(k);
+		}
+		int limit = (impactLimit > 0) ? impactLimit : n;
+		int[] state = new int[n];
+		int[] queue = new int[n];
+		int[] found = new int[n];
+		int count = searchReverse(seeds, edits, false, limit, state, queue, found);
+		int[] impactSet = Arrays.copyOf(found, count);
+		Arrays.sort(impactSet);
+		boolean truncated = count >= limit && count < n && hasMore(edits, state);
+
+		if(edits.sources.isEmpty())
+		{
+			return new ChangeImpact(impactSet, truncated, n, total, total, selfVisible,
+					selfVisible, coreSize, coreSize, 0);
+		}
+
+		//only the classes that could see an edited class before or after can change
+		Arrays.fill(state, 0);
+		int[] sources = new int[edits.sources.size()];
+		for(int k = 0; k < sources.length; k++)
+		{
+			sources[k] = edits.sources.get(k);
+		}
+		int affected = searchReverse(sources, edits, true, n, state, queue, found);
+		for(int s : sources)
+		{
+			if(state[s] != REACHED)
+			{
+				found[affected++] = s;
+			}
+		}
+
+		SparseDependencyMatrix changedDep = edits.apply();
+		StronglyConnectedComponents scc = new StronglyConnectedComponents(changedDep);
+		Condensation cond = new Condensation(changedDep, scc);
+		int selfVisibleAfter = 0;
+		for(int c = 0; c < cond.getComponentCount(); c++)
+		{
+			if(cond.isCyclic(c))
+			{
+				selfVisibleAfter += cond.getComponentSize(c);
+			}
+		}
+
+		long work = 0;
+		for(int k = 0; k < affected; k++)
+		{
+			work += vfo[found[k]] + 1;
+		}
+		long totalAfter;
+		int recounted;
+		if(work <= (long) RECOUNT_FACTOR * (n + dep.getEdgeCount()))
+		{
+			totalAfter = total;
+			int[] stamp = state;
+			Arrays.fill(stamp, 0);
+			for(int k = 0; k < affected; k++)
+			{
+				int i = found[k];
+				totalAfter += countVisible(changedDep, i, k + 1, stamp, queue) - vfo[i];
+			}
+			recounted = affected;
+		}
+		else
+		{
+			totalAfter = new CondensationReachability(cond, false).getCounts().getTotal();
+			recounted = n;
+		}
+		return new ChangeImpact(impactSet, truncated, n, total, totalAfter, selfVisible,
+				selfVisibleAfter, coreSize, scc.getLargestComponentSize(), recounted);
+	}
+
+	/**
+	 * Analyses a change to some classes, by name.
+	 *
+	 * @param changed  the names of the changed classes
+	 * @param added  the dependencies that are added, as pairs of names, or null
+	 * @param removed  the dependencies that are removed, as pairs of names, or null
+	 * @return  the impact of the change
+	 * @throws IllegalArgumentException  if a class does not exist
+	 */
+	public ChangeImpact analyze(String[] changed, String[][] added, String[][] removed)
+	{
+		int[] c = new int[changed.length];
+		for(int k = 0; k < changed.length; k++)
+		{
+			c[k] = require(changed[k]);
+		}
+		return analyze(c, indicesOf(added), indicesOf(removed));
+	}
+
+	/**
+	 * Gets the names of the classes in an impact set.
+	 *
+	 * @param impact  the impact of a change
+	 * @return  the names, in the order of their indices
+	 */
+	public String[] getImpactNames(ChangeImpact impact)
+	{
+		int[] set = impact.getImpactSet();
+		String[] names = new String[set.length];
+		for(int k = 0; k < set.length; k++)
+		{
+			names[k] = dep.getName(set[k]);
+		}
+		return names;
+	}
+
+	/** A class that has been put in the search queue. */
+	private static final int QUEUED = 1;
+	/** A class that has been found by the search, and so also queued. */
+	private static final int REACHED = 2;
+
+	/**
+	 * Searches the reversed dependencies from several classes at once, finding every
+	 * class that can see one of them. The starting classes are only found if they
+	 * can be reached from another one, or from themselves.
+	 *
+	 * @param seeds  the classes to start from
+	 * @param edits  the added and removed dependencies
+	 * @param union  true to follow the removed dependencies as well as the added ones
+	 * @param limit  the most classes to find
+	 * @param state  the state of each class, all 0 at the start
+	 * @param queue  scratch space for the queue
+	 * @param found  the classes found, in the order they were found
+	 * @return  the number of classes found
+	 */
+	private int searchReverse(int[] seeds, Edits edits, boolean union, int limit,
+							  int[] state, int[] queue, int[] found)
+	{
+		int n = dep.size();
+		int head = 0;
+		int tail = 0;
+		for(int s : seeds)
+		{
+			if(state[s] == 0)
+			{
+				state[s] = QUEUED;
+				queue[tail++] = s;
+			}
+		}
+		int count = 0;
+		int[] rowStart = reverse.getRowStarts();
+		int[] cols = reverse.getColumns();
+		while(head < tail)
+		{
+			int v = queue[head++];
+			int[] extra = edits.addedIn.get(v);
+			int[] gone = union ? null : edits.removedIn.get(v);
+			int end = rowStart[v + 1] + ((extra == null) ? 0 : extra.length);
+			for(int p = rowStart[v]; p < end; p++)
+			{
+				int u = (p < rowStart[v + 1]) ? cols[p] : extra[p - rowStart[v + 1]];
+				if(state[u] == REACHED || (gone != null && contains(gone, u)))
+				{
+					continue;
+				}
+				if(state[u] == 0)
+				{
+					queue[tail++] = u;
+				}
+				state[u] = REACHED;
+				found[count++] = u;
+				if(count >= limit || count == n)
+				{
+					return count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks whether a search that stopped at the limit would have found more
+	 * classes, which it would if a class left in the queue, or one already
+	 * searched, has a reversed dependency on a class that was not found.
+	 *
+	 * @param edits  the added and removed dependencies
+	 * @param state  the state of each class after the search
+	 * @return  true if there are more classes to find
+	 */
+	private boolean hasMore(Edits edits, int[] state)
+	{
+		int[] rowStart = reverse.getRowStarts();
+		int[] cols = reverse.getColumns();
+		for(int v = 0; v < state.length; v++)
+		{
+			if(state[v] == 0)
+			{
+				continue;
+			}
+			int[] gone = edits.removedIn.get(v);
+			for(int p = rowStart[v]; p < rowStart[v + 1]; p++)
+			{
+				if(state[cols[p]] != REACHED && (gone == null || !contains(gone, cols[p])))
+				{
+					return true;
+				}
+			}
+			int[] extra = edits.addedIn.get(v);
+			if(extra != null)
+			{
+				for(int u : extra)
+				{
+					if(state[u] != REACHED)
+					{
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the classes one class can see in a dependency matrix, stopping as
+	 * soon as it has seen every class.
+	 *
+	 * @param m  the dependency matrix
+	 * @param i  the class to search from
+	 * @param mark  the value that marks a class as seen in this search
+	 * @param stamp  the mark of each class, never above <code>mark</code> at the start
+	 * @param queue  scratch space for the queue
+	 * @return  the VFO of the class
+	 */
+	private static int countVisible(SparseDependencyMatrix m, int i, int mark,
+									int[] stamp, int[] queue)
+	{
+		int n = m.size();
+		int[] rowStart = m.getRowStarts();
+		int[] cols = m.getColumns();
+		int head = 0;
+		int tail = 0;
+		int seen = 0;
+		queue[tail++] = i;
+		while(head < tail && seen < n)
+		{
+			int v = queue[head++];
+			for(int p = rowStart[v]; p < rowStart[v + 1]; p++)
+			{
+				int u = cols[p];
+				if(stamp[u] != mark)
+				{
+					stamp[u] = mark;
+					seen++;
+					if(u != i)
+					{
+						queue[tail++] = u;
+					}
+				}
+			}
+		}
+		return seen;
+	}
+
+	/**
+	 * Checks whether a small array holds a value.
+	 *
+	 * @param a  the array
+	 * @param x  the value
+	 * @return  true if it does
+	 */
+	private static boolean contains(int[] a, int x)
+	{
+		for(int y : a)
+		{
+			if(y == x)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the index of a class that must exist.
+	 *
+	 * @param name  the name of the class
+	 * @return  the index
+	 * @throws IllegalArgumentException  if there is no class with that name
+	 */
+	private int require(String name)
+	{
+		int i = indexOf(name);
+		if(i < 0)
+		{
+			throw new IllegalArgumentException("No such class: " + name);
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the indices of pairs of class names.
+	 *
+	 * @param pairs  the pairs of names, or null
+	 * @return  the pairs of indices, or null
+	 * @throws IllegalArgumentException  if a class does not exist
+	 */
+	private int[][] indicesOf(String[][] pairs)
+	{
+		if(pairs == null)
+		{
+			return null;
+		}
+		int[][] result = new int[pairs.length][];
+		for(int k = 0; k < pairs.length; k++)
+		{
+			result[k] = new int[] {require(pairs[k][0]), require(pairs[k][1])};
+		}
+		return result;
+	}
+
+	/**
+	 * The dependencies added and removed by a change, by the class that has them
+	 * and by the class they are on.
+	 */
+	private class Edits
+	{
+		/** The classes that have an added or removed dependency, each once. */
+		List<Integer> sources = new ArrayList<Integer>();
+		/** Every added or removed dependency, as (class that has it) * size + (class it is on). */
+		Set<Long> keys = new HashSet<Long>();
+		/** The same classes as <code>sources</code>, for looking them up. */
+		Set<Integer> sourceSet = new HashSet<Integer>();
+		/** The classes that get a dependency on each class. */
+		Map<Integer, int[]> addedIn = new HashMap<Integer, int[]>();
+		/** The classes that lose a dependency on each class. */
+		Map<Integer, int[]> removedIn = new HashMap<Integer, int[]>();
+		/** The added dependencies, as pairs. */
+		List<int[]> added = new ArrayList<int[]>();
+
+		/**
+		 * Adds a dependency.
+		 *
+		 * @param from  the class that has it
+		 * @param to  the class it is on
+		 */
+		void add(int from, int to)
+		{
+			if(keys.add((long) from * dep.size() + to))
+			{
+				added.add(new int[] {from, to});
+				put(addedIn, to, from);
+				addSource(from);
+			}
+		}
+
+		/**
+		 * Removes a dependency.
+		 *
+		 * @param from  the class that has it
+		 * @param to  the class it is on
+		 */
+		void remove(int from, int to)
+		{
+			if(keys.add((long) from * dep.size() + to))
+			{
+				put(removedIn, to, from);
+				addSource(from);
+			}
+		}
+
+		/**
+		 * Keeps a dependency that was removed. The class that has it is still
+		 * treated as changed.
+		 *
+		 * @param from  the class that has it
+		 * @param to  the class it is on
+		 */
+		void restore(int from, int to)
+		{
+			if(keys.remove((long) from * dep.size() + to))
+			{
+				int[] old = removedIn.get(to);
+				int[] a = new int[old.length - 1];
+				int k = 0;
+				for(int x : old)
+				{
+					if(x != from)
+					{
+						a[k++] = x;
+					}
+				}
+				if(a.length == 0)
+				{
+					removedIn.remove(to);
+				}
+				else
+				{
+					removedIn.put(to, a);
+				}
+			}
+		}
+
+		/**
+		 * Builds the dependency matrix after the change.
+		 *
+		 * @return  the changed dependency matrix
+		 */
+		SparseDependencyMatrix apply()
+		{
+			int[] rowStart = dep.getRowStarts();
+			int[] cols = dep.getColumns();
+			int size = dep.getEdgeCount() + added.size();
+			int[] from = new int[size];
+			int[] to = new int[size];
+			int count = 0;
+			for(int i = 0; i < dep.size(); i++)
+			{
+				for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+				{
+					int[] gone = removedIn.get(cols[p]);
+					if(gone == null || !contains(gone, i))
+					{
+						from[count] = i;
+						to[count++] = cols[p];
+					}
+				}
+			}
+			for(int[] e : added)
+			{
+				from[count] = e[0];
+				to[count++] = e[1];
+			}
+			return SparseDependencyMatrix.fromEdges(dep.size(), from, to, count, dep.getNames());
+		}
+
+		/**
+		 * Records a class that has an added or removed dependency.
+		 *
+		 * @param from  the class
+		 */
+		private void addSource(int from)
+		{
+			if(!sourceSet.contains(from))
+			{
+				sourceSet.add(from);
+				sources.add(from);
+			}
+		}
+
+		/**
+		 * Appends a class to the array kept for another.
+		 *
+		 * @param map  the arrays
+		 * @param key  the class the array is kept for
+		 * @param value  the class to append
+		 */
+		private void put(Map<Integer, int[]> map, int key, int value)
+		{
+			int[] old = map.get(key);
+			int[] a = (old == null) ? new int[1] : Arrays.copyOf(old, old.length + 1);
+			a[a.length - 1] = value;
+			map.put(key, a);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package additions;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of class names shared between many loaded DSMs, so that each
+ * distinct name is only kept in memory once. When many versions of the same
+ * system are analyzed together, most of their class names are the same.<br>
+ * <br>
+ * The table can be used by several threads at once.
+ */
+public class ClassNameTable
+{
+	/** The shared copy of each name. */
+	private ConcurrentHashMap<String, String> names;
+
+	/**
+	 * Constructor for an empty table.
+	 */
+	public ClassNameTable()
+	{
+		names = new ConcurrentHashMap<String, String>();
+	}
+
+	/**
+	 * Gets the shared copy of a name, adding it to the table if it is new.
+	 *
+	 * @param name  the name
+	 * @return  the copy of the name that is kept in the table
+	 */
+	public String intern(String name)
+	{
+		String shared = names.putIfAbsent(name, name);
+		return (shared == null) ? name : shared;
+	}
+
+	/**
+	 * Gets the number of distinct names in the table.
+	 *
+	 * @return  the number of names
+	 */
+	public int size()
+	{
+		return names.size();
+	}
+}
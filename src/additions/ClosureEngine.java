@@ -0,0 +1,33 @@
+package additions;
+
+import java.io.IOException;
+
+/**
+ * Calculates the visibility matrix of a dependency matrix, or only its row and
+ * column sums. <code>DSMData</code> uses one of the engines in
+ * <code>ClosureEngines</code>, chosen by its <code>VisibilityMode</code> (or by a
+ * <code>ClosurePlanner</code> in the <code>AUTO</code> mode), unless another engine
+ * is given with <code>DSMData.setClosureEngine()</code>.<br>
+ * <br>
+ * Every metric that <code>DSMData</code> calculates from the visibility matrix only
+ * needs the <code>ClosureResult</code>, so it is the same whichever engine is used.
+ * An engine must give at least the VFI and VFO, either as counts or as a matrix.
+ */
+public interface ClosureEngine
+{
+	/**
+	 * Gets the name of the engine, for log messages.
+	 *
+	 * @return  the name
+	 */
+	String getName();
+
+	/**
+	 * Calculates the visibility of a dependency matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  the visibility matrix, its row and column sums, or both
+	 * @throws IOException  if the engine needs a file that cannot be created
+	 */
+	ClosureResult compute(SparseDependencyMatrix dep) throws IOException;
+}
@@ -0,0 +1,339 @@
+package additions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+import org.jblas.DoubleMatrix;
+
+/**
+ * The <code>ClosureEngine</code>s that <code>DSMData</code> can use, one for each
+ * <code>VisibilityMode</code>. They differ in how their time and memory grow with
+ * the size of the DSM, the number of dependencies, and the size of the Core:
+ * <ul>
+ * <li><code>reference()</code> sums the powers of the dense dependency matrix with
+ * jBLAS. It takes n^3 time for every power and 8n^2 bytes, so it is only a reference.</li>
+ * <li><code>bitset()</code> runs Warshall's algorithm on a bit-packed matrix, which
+ * ORs whole rows 64 columns at a time, in n^2/8 bytes. Rows fill up quickly when
+ * the dependencies are dense, so it does well on small, dense DSMs.</li>
+ * <li><code>condensedBitset()</code> builds the same bit-packed matrix from the
+ * condensation, with one row OR per dependency between components, so it does well
+ * on large, sparse DSMs and on DSMs with one big Core.</li>
+ * <li><code>sparse()</code> and <code>parallel()</code> search from every element,
+ * which takes n times the number of dependencies, but only the memory of the
+ * dependencies when the matrix is not kept.</li>
+ * <li><code>condensation()</code> only counts the VFI and VFO over the condensation,
+ * with one bitset per component.</li>
+ * <li><code>approximate()</code> estimates the VFI and VFO in near-linear time.</li>
+ * <li><code>offHeap()</code> builds the bit-packed matrix from the condensation
+ * outside the heap, under a memory budget.</li>
+ * </ul>
+ * <code>ClosurePlanner</code> chooses between them for the <code>AUTO</code> mode.
+ */
+public class ClosureEngines
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(ClosureEngines.class);
+
+	/**
+	 * Gets the engine of a visibility mode.
+	 *
+	 * @param mode  the visibility mode, which must not be <code>AUTO</code>
+	 * @param pool  the pool used by the parallel modes, or null to use the common pool
+	 * @param sketchSize  the number of rankings used in the <code>APPROXIMATE</code> mode
+	 * @param seed  the seed of the random ranks used in the <code>APPROXIMATE</code> mode
+	 * @param memoryBudget  the number of bytes of memory the <code>OFF_HEAP</code> mode may use
+	 * @param scratchFolder  the folder of the scratch file in the <code>OFF_HEAP</code> mode,
+	 * or null for the temporary folder
+	 * @return  the engine
+	 * @throws IllegalArgumentException  if the mode is <code>AUTO</code>
+	 */
+	public static ClosureEngine forMode(VisibilityMode mode, ForkJoinPool pool, int sketchSize,
+										long seed, long memoryBudget, File scratchFolder)
+	{
+		switch(mode)
+		{
+			case REFERENCE:
+				return reference();
+			case BITSET:
+				return bitset();
+			case CONDENSED_BITSET:
+				return condensedBitset();
+			case SPARSE:
+				return sparse();
+			case PARALLEL:
+				return parallel(pool, true);
+			case PARALLEL_SPARSE:
+				return parallel(pool, false);
+			case CONDENSATION:
+				return condensation();
+			case APPROXIMATE:
+				return approximate(sketchSize, seed);
+			case OFF_HEAP:
+				return offHeap(memoryBudget, scratchFolder);
+			default:
+				throw new IllegalArgumentException("No engine for the visibility mode " + mode);
+		}
+	}
+
+	/**
+	 * Gets the engine that sums the powers of the dependency matrix with jBLAS
+	 * until they are all zero. This is the original (slow) method, and is kept
+	 * to check the results of the others.
+	 *
+	 * @return  the engine
+	 */
+	public static ClosureEngine reference()
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "reference";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				int nrFiles = dep.size();
+				DoubleMatrix depMatrix = dep.toDoubleMatrix();
+				//DoubleMatrix zeros = DoubleMatrix.zeros(nrFiles, nrFiles);
+
+				DoubleMatrix temp = DoubleMatrix.eye(nrFiles);
+				DoubleMatrix visibility;
+
+				visibility = DoubleMatrix.zeros(nrFiles, nrFiles);
+
+				logger.info("Beginning Visibility Matrix calculation.");
+
+				int count = 0;
+				while(count < nrFiles && temp.truth().sum() != 0)	// && !temp.equals(zeros)
+				{
+					count++;
+					if (count % 50 == 0) {
+						logger.info("Processed " + count + " of " + nrFiles);
+					}
+					temp = temp.mmul(depMatrix);
+					visibility = visibility.add(temp);
+				}
+
+				logger.info("Finished Visibility Matrix calculation.");
+				return new ClosureResult(visibility, null, null, null)
+						.count("matrixMultiplications", count);
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that calculates the visibility matrix as the transitive
+	 * closure of the dependency matrix, with Warshall's algorithm on a
+	 * <code>BitMatrix</code>. This gives the same non-zero entries as
+	 * <code>reference()</code>.
+	 *
+	 * @return  the engine
+	 */
+	public static ClosureEngine bitset()
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "bitset";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				logger.info("Beginning Visibility Matrix calculation (bitset).");
+				BitMatrix closure = BitMatrix.fromDependencies(dep);
+				closure.transitiveClosure();
+				logger.info("Finished Visibility Matrix calculation.");
+				return ClosureResult.ofMatrix(closure);
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that builds the bit-packed visibility matrix from the
+	 * condensation of the dependency matrix (see <code>BitMatrix.closureOf()</code>).
+	 *
+	 * @return  the engine
+	 */
+	public static ClosureEngine condensedBitset()
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "condensed bitset";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				logger.info("Beginning Visibility Matrix calculation (condensed bitset).");
+				Condensation cond = new Condensation(dep);
+				BitMatrix closure = BitMatrix.closureOf(cond);
+				logger.info("Finished Visibility Matrix calculation.");
+				return ClosureResult.ofMatrix(closure).count("components", cond.getComponentCount());
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that counts the VFI and VFO of every element by searching
+	 * the sparse dependency matrix from each one, without building the
+	 * visibility matrix.
+	 *
+	 * @return  the engine
+	 */
+	public static ClosureEngine sparse()
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "sparse";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				logger.info("Beginning Visibility calculation (sparse).");
+				ReachabilityCounts reach = SparseReachability.countAll(dep);
+				logger.info("Finished Visibility calculation.");
+				return ClosureResult.ofCounts(reach);
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that counts the VFI and VFO of every element by searching
+	 * the sparse dependency matrix from each one, with the searches spread over
+	 * a <code>ForkJoinPool</code>.
+	 *
+	 * @param pool  the pool to run the searches on, or null to use the common pool
+	 * @param keepMatrix  true to also store the visibility matrix as a
+	 * <code>BitMatrix</code>
+	 * @return  the engine
+	 */
+	public static ClosureEngine parallel(final ForkJoinPool pool, final boolean keepMatrix)
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return keepMatrix ? "parallel" : "parallel sparse";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				ForkJoinPool p = (pool == null) ? ForkJoinPool.commonPool() : pool;
+				logger.info("Beginning Visibility calculation (parallel, "
+						+ p.getParallelism() + " threads).");
+				BitMatrix closure = keepMatrix ? new BitMatrix(dep.size()) : null;
+				ReachabilityCounts reach = new ParallelReachability(dep, p).countAll(closure);
+				logger.info("Finished Visibility calculation.");
+				return new ClosureResult(null, closure, null, reach)
+						.count("threads", p.getParallelism());
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that counts the VFI and VFO of every element over the
+	 * condensation of the dependency matrix, where each strongly connected
+	 * component is one node, without building the visibility matrix.
+	 *
+	 * @return  the engine
+	 */
+	public static ClosureEngine condensation()
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "condensation";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				logger.info("Beginning Visibility calculation (condensation).");
+				ReachabilityCounts reach = CondensationReachability.countAll(dep);
+				logger.info("Finished Visibility calculation.");
+				return ClosureResult.ofCounts(reach);
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that estimates the VFI and VFO of every element from random
+	 * ranks propagated over the condensation of the dependency matrix, without
+	 * finding the reachable sets.
+	 *
+	 * @param sketchSize  the number of rankings, at least 3
+	 * @param seed  the seed of the random ranks
+	 * @return  the engine
+	 */
+	public static ClosureEngine approximate(final int sketchSize, final long seed)
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "approximate";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep)
+			{
+				logger.info("Beginning Visibility estimation (" + sketchSize + " rankings).");
+				ReachabilityCounts reach = ReachabilityEstimator.estimate(dep, sketchSize, seed);
+				logger.info("Finished Visibility estimation.");
+				return ClosureResult.ofCounts(reach).count("sketchSize", sketchSize);
+			}
+		};
+	}
+
+	/**
+	 * Gets the engine that calculates the visibility matrix outside the heap, in
+	 * row blocks that fit in the memory budget, and counts the VFI and VFO from it.
+	 *
+	 * @param memoryBudget  the number of bytes of memory the visibility matrix may use
+	 * @param scratchFolder  the folder for the scratch file, or null for the temporary folder
+	 * @return  the engine
+	 */
+	public static ClosureEngine offHeap(final long memoryBudget, final File scratchFolder)
+	{
+		return new ClosureEngine()
+		{
+			@Override
+			public String getName()
+			{
+				return "off-heap";
+			}
+
+			@Override
+			public ClosureResult compute(SparseDependencyMatrix dep) throws IOException
+			{
+				logger.info("Beginning Visibility Matrix calculation (off-heap, budget "
+						+ (memoryBudget >> 20) + " MB).");
+				OffHeapBitMatrix closure = OffHeapBitMatrix.closureOf(dep, memoryBudget, scratchFolder);
+				ReachabilityCounts reach = closure.reachabilityCounts();
+				logger.info("Finished Visibility Matrix calculation.");
+				return new ClosureResult(null, null, closure, reach)
+						.count("mapped", closure.isMapped() ? 1 : 0);
+			}
+		};
+	}
+}
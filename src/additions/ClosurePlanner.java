@@ -0,0 +1,142 @@
+package additions;
+
+/**
+ * Chooses the <code>VisibilityMode</code> that <code>DSMData</code> uses in the
+ * <code>AUTO</code> mode, from the number of elements, the density of the
+ * dependencies, and the memory available. Only exact modes are chosen.<br>
+ * <br>
+ * The bit-packed visibility matrix is kept whenever it fits in the heap budget,
+ * so that it can be stored and updated later. Small, dense DSMs use
+ * <code>BITSET</code>, whose rows fill up after a few steps of Warshall's
+ * algorithm. Everything else that fits uses <code>CONDENSED_BITSET</code>, which
+ * only does one row OR per dependency between strongly connected components,
+ * and is faster than the searches of <code>PARALLEL</code> at every size and
+ * density. A matrix that does not fit in the heap is built with <code>OFF_HEAP</code>
+ * if it fits in direct buffers: in three quarters of the off-heap budget, as
+ * <code>OffHeapBitMatrix</code> requires, and in the direct memory the JVM has left,
+ * and if the rows that <code>OFF_HEAP</code> builds on the heap fit in the heap budget.
+ * The planner never chooses a memory-mapped scratch file.<br>
+ * <br>
+ * Otherwise only the VFI and VFO are counted. <code>CONDENSATION</code> needs at
+ * most one bit for every pair of elements, half the size of the matrix, and much
+ * less when there is a Core. If even that does not fit, <code>PARALLEL_SPARSE</code>
+ * only needs the memory of the dependencies, at the cost of a search from every
+ * element.
+ */
+public class ClosurePlanner
+{
+	/** The largest DSM for which <code>BITSET</code> is chosen, if it is dense. */
+	public static final int SMALL_SIZE = 512;
+	/** The part of all pairs of elements (between 0 and 1) that must be dependencies
+	 *  for a small DSM to count as dense. */
+	public static final double DENSE_DENSITY = 0.01;
+	/** The part of the maximum heap size that the default heap budget is. */
+	public static final int HEAP_SHARE = 4;
+
+	/** The number of bytes of heap the visibility calculation may use. */
+	private long heapBudget;
+	/** The number of bytes of memory outside the heap the visibility matrix may use. */
+	private long memoryBudget;
+	/** The number of bytes of direct memory the JVM has left. */
+	private long directMemory;
+	/** Whether to keep the visibility matrix when it fits. */
+	private boolean keepMatrix;
+
+	/**
+	 * Constructor that allows a quarter of the maximum heap size, the default
+	 * off-heap budget, and the direct memory the JVM has left, and keeps the
+	 * visibility matrix when it fits.
+	 */
+	public ClosurePlanner()
+	{
+		this(Runtime.getRuntime().maxMemory() / HEAP_SHARE,
+				OffHeapBitMatrix.DEFAULT_MEMORY_BUDGET, true);
+	}
+
+	/**
+	 * Constructor that allows the direct memory the JVM has left.
+	 *
+	 * @param heapBudget  the number of bytes of heap the visibility calculation may use
+	 * @param memoryBudget  the number of bytes of memory outside the heap the visibility
+	 * matrix may use, or 0 to never use <code>OFF_HEAP</code>
+	 * @param keepMatrix  true to keep the visibility matrix when it fits, or false to
+	 * only count the VFI and VFO
+	 */
+	public ClosurePlanner(long heapBudget, long memoryBudget, boolean keepMatrix)
+	{
+		this(heapBudget, memoryBudget, OffHeapBitMatrix.availableDirectMemory(), keepMatrix);
+	}
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param heapBudget  the number of bytes of heap the visibility calculation may use
+	 * @param memoryBudget  the number of bytes of memory outside the heap the visibility
+	 * matrix may use, or 0 to never use <code>OFF_HEAP</code>
+	 * @param directMemory  the number of bytes of direct memory the JVM has left
+	 * @param keepMatrix  true to keep the visibility matrix when it fits, or false to
+	 * only count the VFI and VFO
+	 */
+	public ClosurePlanner(long heapBudget, long memoryBudget, long directMemory,
+						  boolean keepMatrix)
+	{
+		this.heapBudget = heapBudget;
+		this.memoryBudget = memoryBudget;
+		this.directMemory = directMemory;
+		this.keepMatrix = keepMatrix;
+	}
+
+	/**
+	 * Chooses the visibility mode for a dependency matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  the mode, which is never <code>AUTO</code> or <code>APPROXIMATE</code>
+	 */
+	public VisibilityMode choose(SparseDependencyMatrix dep)
+	{
+		return choose(dep.size(), dep.getEdgeCount());
+	}
+
+	/**
+	 * Chooses the visibility mode for a DSM of a given size.
+	 *
+	 * @param size  the number of elements
+	 * @param edges  the number of dependencies
+	 * @return  the mode, which is never <code>AUTO</code> or <code>APPROXIMATE</code>
+	 */
+	public VisibilityMode choose(int size, long edges)
+	{
+		long matrixBytes = matrixBytes(size);
+		if(keepMatrix && matrixBytes <= heapBudget)
+		{
+			double density = edges / ((double) size * size);
+			if(size <= SMALL_SIZE && density >= DENSE_DENSITY)
+			{
+				return VisibilityMode.BITSET;
+			}
+			return VisibilityMode.CONDENSED_BITSET;
+		}
+		if(keepMatrix && matrixBytes <= memoryBudget - memoryBudget / OffHeapBitMatrix.BLOCK_SHARE
+				&& matrixBytes <= directMemory
+				&& Math.min(matrixBytes, memoryBudget / OffHeapBitMatrix.BLOCK_SHARE) <= heapBudget)
+		{
+			return VisibilityMode.OFF_HEAP;
+		}
+		if(matrixBytes / 2 <= heapBudget)
+		{
+			return VisibilityMode.CONDENSATION;
+		}
+		return VisibilityMode.PARALLEL_SPARSE;
+	}
+
+	/**
+	 * Gets the size of the bit-packed visibility matrix of a DSM.
+	 *
+	 * @param size  the number of elements
+	 * @return  the size, in bytes
+	 */
+	public static long matrixBytes(int size)
+	{
+		return 8L * size * ((size + 63) >>> 6);
+	}
+}
@@ -0,0 +1,129 @@
+package additions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * What a <code>ClosureEngine</code> calculated: the visibility matrix in one of
+ * its forms, its row and column sums, or both. Any of them may be null, but not
+ * all of them. Engines can also add counters, such as the number of matrix
+ * multiplications done, which <code>DSMData</code> sends to its metrics sink.
+ */
+public class ClosureResult
+{
+	/** The visibility matrix as doubles, or null. */
+	private DoubleMatrix dense;
+	/** The bit-packed visibility matrix, or null. */
+	private BitMatrix matrix;
+	/** The bit-packed visibility matrix outside the heap, or null. */
+	private OffHeapBitMatrix offHeap;
+	/** The row and column sums of the visibility matrix, or null. */
+	private ReachabilityCounts counts;
+	/** The counters added by the engine, in the order they were added. */
+	private Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param dense  the visibility matrix as doubles, or null
+	 * @param matrix  the bit-packed visibility matrix, or null
+	 * @param offHeap  the bit-packed visibility matrix outside the heap, or null
+	 * @param counts  the row and column sums of the visibility matrix, or null
+	 */
+	public ClosureResult(DoubleMatrix dense, BitMatrix matrix, OffHeapBitMatrix offHeap,
+						 ReachabilityCounts counts)
+	{
+		this.dense = dense;
+		this.matrix = matrix;
+		this.offHeap = offHeap;
+		this.counts = counts;
+	}
+
+	/**
+	 * Creates a result that only has the row and column sums.
+	 *
+	 * @param counts  the row and column sums of the visibility matrix
+	 * @return  the result
+	 */
+	public static ClosureResult ofCounts(ReachabilityCounts counts)
+	{
+		return new ClosureResult(null, null, null, counts);
+	}
+
+	/**
+	 * Creates a result that has the bit-packed visibility matrix.
+	 *
+	 * @param matrix  the bit-packed visibility matrix
+	 * @return  the result
+	 */
+	public static ClosureResult ofMatrix(BitMatrix matrix)
+	{
+		return new ClosureResult(null, matrix, null, null);
+	}
+
+	/**
+	 * Adds a counter, which replaces any counter with the same name.
+	 *
+	 * @param name  the name of the counter
+	 * @param value  its value
+	 * @return  this result
+	 */
+	public ClosureResult count(String name, long value)
+	{
+		counters.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Gets the visibility matrix as doubles.
+	 *
+	 * @return  the matrix, or null
+	 */
+	public DoubleMatrix getDenseMatrix()
+	{
+		return dense;
+	}
+
+	/**
+	 * Gets the bit-packed visibility matrix.
+	 *
+	 * @return  the matrix, or null
+	 */
+	public BitMatrix getMatrix()
+	{
+		return matrix;
+	}
+
+	/**
+	 * Gets the bit-packed visibility matrix outside the heap.
+	 *
+	 * @return  the matrix, or null
+	 */
+	public OffHeapBitMatrix getOffHeapMatrix()
+	{
+		return offHeap;
+	}
+
+	/**
+	 * Gets the row and column sums of the visibility matrix.
+	 *
+	 * @return  the VFI, VFO, and diagonal count, or null
+	 */
+	public ReachabilityCounts getCounts()
+	{
+		return counts;
+	}
+
+	/**
+	 * Gets the counters added by the engine.
+	 *
+	 * @return  the counters by name, in the order they were added
+	 */
+	public Map<String, Long> getCounters()
+	{
+		return Collections.unmodifiableMap(counters);
+	}
+}
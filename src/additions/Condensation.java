@@ -0,0 +1,204 @@
+package additions;
+
+/**
+ * The condensation of a dependency graph: the graph whose nodes are the
+ * strongly connected components of the original graph, with a dependency from
+ * one component to another if any member of the first depends on any member of
+ * the second. The condensation never has cycles.<br>
+ * <br>
+ * The components are numbered as <code>StronglyConnectedComponents</code> numbers
+ * them, in reverse topological order: every component that a component depends on
+ * has a smaller number than it. Going through the components from 0 upwards therefore
+ * always visits a component after everything it depends on.<br>
+ * <br>
+ * On real systems the condensation is much smaller than the original graph, since
+ * the whole Core becomes one node, so anything calculated over it (such as the
+ * reachable sets in <code>CondensationReachability</code>) needs much less memory.
+ */
+public class Condensation
+{
+	/** The number of elements in the original graph. */
+	private int size;
+	/** The component of each element. */
+	private int[] componentOf;
+	/** The number of components. */
+	private int count;
+	/** The position in <code>members</code> where each component's members start. */
+	private int[] memberStart;
+	/** The elements of each component, component by component, in ascending order. */
+	private int[] members;
+	/** Whether each component has a member that depends on itself. */
+	private boolean[] selfDependent;
+	/** The dependencies between components. */
+	private SparseDependencyMatrix dag;
+
+	/**
+	 * Constructor that finds the strongly connected components of a dependency
+	 * matrix and builds the condensed graph.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public Condensation(SparseDependencyMatrix dep)
+	{
+		this(dep, new StronglyConnectedComponents(dep));
+	}
+
+	/**
+	 * Constructor that builds the condensed graph from components that have
+	 * already been found.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param scc  the strongly connected components of the matrix
+	 */
+	public Condensation(SparseDependencyMatrix dep, StronglyConnectedComponents scc)
+	{
+		size = dep.size();
+		count = scc.getComponentCount();
+		componentOf = new int[size];
+		memberStart = new int[count + 1];
+		for(int i = 0; i < size; i++)
+		{
+			componentOf[i] = scc.getComponent(i);
+			memberStart[componentOf[i] + 1]++;
+		}
+		for(int c = 0; c < count; c++)
+		{
+			memberStart[c + 1] += memberStart[c];
+		}
+		members = new int[size];
+		int[] next = new int[count];
+		System.arraycopy(memberStart, 0, next, 0, count);
+		for(int i = 0; i < size; i++)
+		{
+			members[next[componentOf[i]]++] = i;
+		}
+
+		//keep only the dependencies between different components
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		selfDependent = new boolean[count];
+		int edges = 0;
+		for(int i = 0; i < size; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				if(componentOf[columns[p]] != componentOf[i])
+				{
+					edges++;
+				}
+				else if(columns[p] == i)
+				{
+					selfDependent[componentOf[i]] = true;
+				}
+			}
+		}
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		edges = 0;
+		for(int i = 0; i < size; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				if(componentOf[columns[p]] != componentOf[i])
+				{
+					from[edges] = componentOf[i];
+					to[edges] = componentOf[columns[p]];
+					edges++;
+				}
+			}
+		}
+		dag = SparseDependencyMatrix.fromEdges(count, from, to, edges, null);
+	}
+
+	/**
+	 * Gets the number of elements in the original graph.
+	 *
+	 * @return  the number of elements
+	 */
+	public int getElementCount()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the number of components.
+	 *
+	 * @return  the number of components
+	 */
+	public int getComponentCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the component of an element.
+	 *
+	 * @param element  the index of the element
+	 * @return  the component number
+	 */
+	public int getComponent(int element)
+	{
+		return componentOf[element];
+	}
+
+	/**
+	 * Gets the number of elements in a component.
+	 *
+	 * @param c  the component number
+	 * @return  the size of the component
+	 */
+	public int getComponentSize(int c)
+	{
+		return memberStart[c + 1] - memberStart[c];
+	}
+
+	/**
+	 * Checks whether a component is cyclic, meaning its members can see
+	 * themselves. This is true when it has more than one member, or when its
+	 * only member depends on itself. The loaders never keep such
+	 * self-dependencies, but a matrix built in other ways may have them.
+	 *
+	 * @param c  the component number
+	 * @return  true if the component is cyclic
+	 */
+	public boolean isCyclic(int c)
+	{
+		return getComponentSize(c) > 1 || selfDependent[c];
+	}
+
+	/**
+	 * Gets the members of a component.
+	 *
+	 * @param c  the component number
+	 * @return  a new array with the members, in ascending order
+	 */
+	public int[] getMembers(int c)
+	{
+		int[] m = new int[getComponentSize(c)];
+		System.arraycopy(members, memberStart[c], m, 0, m.length);
+		return m;
+	}
+
+	/**
+	 * Gets the member at a position of a component, without copying the members.
+	 *
+	 * @param c  the component number
+	 * @param k  the position, from 0 to the size of the component - 1
+	 * @return  the element
+	 */
+	public int getMember(int c, int k)
+	{
+		return members[memberStart[c] + k];
+	}
+
+	/**
+	 * Gets the condensed graph, where row c lists the components that
+	 * component c depends on (all of which are numbered lower than c).
+	 *
+	 * @return  the dependency matrix of the condensation
+	 */
+	public SparseDependencyMatrix getDAG()
+	{
+		return dag;
+	}
+}
@@ -0,0 +1,199 @@
+package additions;
+
+/**
+ * Finds the components that can be reached from each component of a
+ * <code>Condensation</code>, as one bitset per component, and counts the
+ * VFI and VFO of every element from them.<br>
+ * <br>
+ * Every member of a component can see the same elements: the members of every
+ * component reachable from it, plus the members of its own component if it is
+ * cyclic. So the counts only need the reachable components, which are found
+ * going through the components in reverse topological order: the reachable set of
+ * a component is the union of the reachable sets of the components it depends on,
+ * plus those components. Since those all have lower numbers, component c only
+ * needs c bits.<br>
+ * <br>
+ * The memory used is proportional to the square of the number of components
+ * instead of the number of elements, so a system with a big Core needs only a
+ * small fraction of the memory of the visibility matrix. When only the counts
+ * are needed, a bitset is also dropped as soon as every component that depends
+ * on it has been done.
+ */
+public class CondensationReachability
+{
+	/** The condensation that is searched. */
+	private Condensation cond;
+	/** The components reachable from each component, or null for the ones that were dropped. */
+	private long[][] reachable;
+	/** The number of elements each component can see. */
+	private int[] outWeight;
+	/** The number of elements that can see each component. */
+	private int[] inWeight;
+
+	/**
+	 * Constructor that finds the reachable components of every component.
+	 *
+	 * @param cond  the condensation
+	 * @param keepSets  true to keep every reachable set for <code>isReachable</code>
+	 * and <code>getReachable</code>, false to only keep the counts
+	 */
+	public CondensationReachability(Condensation cond, boolean keepSets)
+	{
+		this.cond = cond;
+		int count = cond.getComponentCount();
+		int[] rowStart = cond.getDAG().getRowStarts();
+		int[] columns = cond.getDAG().getColumns();
+		reachable = new long[count][];
+		outWeight = new int[count];
+		inWeight = new int[count];
+
+		//the number of components that depend on each component and have not been done yet
+		int[] pending = new int[count];
+		for(int p = 0; p < rowStart[count]; p++)
+		{
+			pending[columns[p]]++;
+		}
+
+		for(int c = 0; c < count; c++)
+		{
+			long[] bits = new long[(c + 63) >> 6];
+			for(int p = rowStart[c]; p < rowStart[c + 1]; p++)
+			{
+				int d = columns[p];
+				long[] other = reachable[d];
+				for(int w = 0; w < other.length; w++)
+				{
+					bits[w] |= other[w];
+				}
+				bits[d >> 6] |= 1L << d;
+			}
+
+			int size = cond.getComponentSize(c);
+			int weight = 0;
+			for(int w = 0; w < bits.length; w++)
+			{
+				long word = bits[w];
+				while(word != 0)
+				{
+					int d = (w << 6) + Long.numberOfTrailingZeros(word);
+					weight += cond.getComponentSize(d);
+					inWeight[d] += size;
+					word &= word - 1;
+				}
+			}
+			outWeight[c] = weight;
+			reachable[c] = bits;
+
+			if(!keepSets)
+			{
+				for(int p = rowStart[c]; p < rowStart[c + 1]; p++)
+				{
+					if(--pending[columns[p]] == 0)
+					{
+						reachable[columns[p]] = null;
+					}
+				}
+				if(pending[c] == 0)
+				{
+					reachable[c] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the VFI and VFO of every element over the condensation of the
+	 * dependency matrix, without building the visibility matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  the VFI, VFO, and diagonal count of the visibility matrix
+	 */
+	public static ReachabilityCounts countAll(SparseDependencyMatrix dep)
+	{
+		return new CondensationReachability(new Condensation(dep), false).getCounts();
+	}
+
+	/**
+	 * Gets the VFI and VFO of every element.
+	 *
+	 * @return  the VFI, VFO, and diagonal count of the visibility matrix
+	 */
+	public ReachabilityCounts getCounts()
+	{
+		int n = cond.getElementCount();
+		int[] vfi = new int[n];
+		int[] vfo = new int[n];
+		int selfVisible = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int c = cond.getComponent(i);
+			int own = cond.isCyclic(c) ? cond.getComponentSize(c) : 0;
+			vfi[i] = inWeight[c] + own;
+			vfo[i] = outWeight[c] + own;
+			if(own > 0)
+			{
+				selfVisible++;
+			}
+		}
+		return new ReachabilityCounts(vfi, vfo, selfVisible);
+	}
+
+	/**
+	 * Gets the number of elements that the members of a component can see,
+	 * not counting the members of the component itself.
+	 *
+	 * @param c  the component number
+	 * @return  the number of elements in the components reachable from it
+	 */
+	public int getOutWeight(int c)
+	{
+		return outWeight[c];
+	}
+
+	/**
+	 * Gets the number of elements that can see the members of a component,
+	 * not counting the members of the component itself.
+	 *
+	 * @param c  the component number
+	 * @return  the number of elements in the components it is reachable from
+	 */
+	public int getInWeight(int c)
+	{
+		return inWeight[c];
+	}
+
+	/**
+	 * Checks whether one component can be reached from another by following
+	 * one or more dependencies. A component can only reach itself if it is
+	 * cyclic. Needs the reachable sets to have been kept.
+	 *
+	 * @param from  the component the path starts at
+	 * @param to  the component the path ends at
+	 * @return  true if there is a path
+	 */
+	public boolean isReachable(int from, int to)
+	{
+		if(from == to)
+		{
+			return cond.isCyclic(from);
+		}
+		if(to > from)
+		{
+			return false;
+		}
+		return (reachable[from][to >> 6] & (1L << to)) != 0;
+	}
+
+	/**
+	 * Gets the components that can be reached from a component, not including
+	 * itself. Bit d of word <code>d / 64</code> is set if component d is
+	 * reachable. Needs the reachable sets to have been kept.
+	 *
+	 * @param c  the component number
+	 * @return  the bitset, which must not be changed
+	 */
+	public long[] getReachable(int c)
+	{
+		return reachable[c];
+	}
+}
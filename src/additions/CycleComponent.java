@@ -14,7 +14,7 @@ package additions;
 public class CycleComponent implements Comparable<CycleComponent>
 {
 	/** The index of the component in the visibility matrix. */
-	private int visIndex;	//currently unused
+	private int visIndex;
 	/** Fan-in visibility. */
 	private double vfi;
 	/** Fan-out visibility. */
@@ -26,8 +26,9 @@ public class CycleComponent implements Comparable<CycleComponent>
 	 *  be assigned. Must be less than or equal to the minimum of
 	 *  the VFO, VFI, and countM for a group of components. */
 	private int maxCycleSize;
-	/** Cycle number to which this component is assigned. */
-	private int cyclicGroup;	//currently unused
+	/** Cycle number to which this component is assigned (0 if it is
+	 *  not part of any cycle). */
+	private int cyclicGroup;
 	
 	/**
 	 * Default blank constructor.
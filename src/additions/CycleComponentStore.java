@@ -0,0 +1,283 @@
+package additions;
+
+import java.util.Arrays;
+
+/**
+ * Holds the data of every <code>CycleComponent</code> of a DSM in parallel
+ * <code>int</code> arrays (one array per field) instead of one object per
+ * component, and sorts them with a radix sort instead of
+ * <code>Arrays.sort()</code> and <code>compareTo()</code>.<br>
+ * <br>
+ * Position k in each array is the k-th component in sorted order. The order is
+ * the same as the one given by <code>CycleComponent.compareTo()</code>: descending
+ * by VFI, then ascending by VFO. The sort is stable, so components with the same
+ * VFI and VFO stay in order of their index in the visibility matrix, exactly as
+ * with <code>Arrays.sort()</code> on <code>CycleComponent</code> objects.<br>
+ * <br>
+ * The VFI and VFO are packed into one <code>long</code> key, which is sorted 16 bits
+ * at a time from the lowest bits up. Passes over bits that are the same in every
+ * key are skipped, so a DSM with fewer than 65,536 components usually needs only
+ * two passes.
+ */
+public class CycleComponentStore
+{
+	/** The number of bits sorted in each pass. */
+	private static final int DIGIT_BITS = 16;
+	/** The number of different values of one digit. */
+	private static final int RADIX = 1 << DIGIT_BITS;
+
+	/** The number of components. */
+	private int size;
+	/** The index of each component in the visibility matrix. */
+	private int[] visIndex;
+	/** Fan-in visibility of each component. */
+	private int[] vfi;
+	/** Fan-out visibility of each component. */
+	private int[] vfo;
+	/** Count of components preceding and including each one that have the same
+	 *  VFI and VFO. */
+	private int[] countM;
+	/** The maximum size of the cycle to which each component can be assigned. */
+	private int[] maxCycleSize;
+	/** Cycle number to which each component is assigned (0 if it is not part of
+	 *  any cycle). */
+	private int[] cyclicGroup;
+
+	/**
+	 * Constructor that stores and sorts the components of a DSM. The counts and
+	 * maximum cycle sizes start at 0.
+	 *
+	 * @param vfi  the VFI of each element, by index in the visibility matrix
+	 * @param vfo  the VFO of each element, by index in the visibility matrix
+	 * @param groups  the cyclic group of each element, or null if they are not known
+	 */
+	public CycleComponentStore(int[] vfi, int[] vfo, int[] groups)
+	{
+		size = vfi.length;
+		visIndex = sortedOrder(vfi, vfo);
+		this.vfi = new int[size];
+		this.vfo = new int[size];
+		countM = new int[size];
+		maxCycleSize = new int[size];
+		cyclicGroup = new int[size];
+		for(int k = 0; k < size; k++)
+		{
+			int i = visIndex[k];
+			this.vfi[k] = vfi[i];
+			this.vfo[k] = vfo[i];
+			cyclicGroup[k] = (groups == null) ? 0 : groups[i];
+		}
+	}
+
+	/**
+	 * Finds the sorted order of the elements with a stable LSD radix sort on the
+	 * key (max VFI - VFI, VFO).
+	 *
+	 * @param vfi  the VFI of each element
+	 * @param vfo  the VFO of each element
+	 * @return  the element indices, in sorted order
+	 */
+	private static int[] sortedOrder(int[] vfi, int[] vfo)
+	{
+		int n = vfi.length;
+		int maxVFI = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(vfi[i] > maxVFI)
+			{
+				maxVFI = vfi[i];
+			}
+		}
+		long[] keys = new long[n];
+		long all = -1L;
+		long any = 0;
+		for(int i = 0; i < n; i++)
+		{
+			keys[i] = ((long) (maxVFI - vfi[i]) << 32) | vfo[i];
+			any |= keys[i];
+			all &= keys[i];
+		}
+
+		int[] order = new int[n];
+		int[] temp = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			order[i] = i;
+		}
+		int[] counts = new int[RADIX + 1];
+		for(int shift = 0; shift < 64; shift += DIGIT_BITS)
+		{
+			//a digit that is the same in every key does not change the order
+			if(((any ^ all) >>> shift & (RADIX - 1)) == 0)
+			{
+				continue;
+			}
+			Arrays.fill(counts, 0);
+			for(int i = 0; i < n; i++)
+			{
+				counts[(int) (keys[i] >>> shift & (RADIX - 1)) + 1]++;
+			}
+			for(int d = 0; d < RADIX; d++)
+			{
+				counts[d + 1] += counts[d];
+			}
+			for(int p = 0; p < n; p++)
+			{
+				int i = order[p];
+				temp[counts[(int) (keys[i] >>> shift & (RADIX - 1))]++] = i;
+			}
+			int[] swap = order;
+			order = temp;
+			temp = swap;
+		}
+		return order;
+	}
+
+	/**
+	 * Determines the count of each component, in the same way as
+	 * <code>DSMData.findCounts()</code>: the count goes up by one for each
+	 * component that has the same VFI and VFO (both greater than 1) as the one
+	 * before it, and goes back to 1 otherwise.
+	 */
+	public void findCounts()
+	{
+		int currentCount = 1;
+		for(int k = 0; k < size; k++)
+		{
+			if(k > 0 && vfi[k] == vfi[k-1] && vfo[k] == vfo[k-1]
+					&& vfo[k] > 1 && vfi[k] > 1)
+			{
+				currentCount++;
+			}
+			else
+			{
+				currentCount = 1;
+			}
+			countM[k] = currentCount;
+		}
+	}
+
+	/**
+	 * Finds the maximum cyclic group size of each component. Each run of
+	 * components that ends before a count of 1 is given the minimum of the
+	 * count, VFI, and VFO of its last component (but at least 1).
+	 * <code>findCounts()</code> must be called first.
+	 *
+	 * @return  the largest maximum cycle size found (the estimated Core size)
+	 */
+	public int findMaxCycleSizes()
+	{
+		int largest = 0;
+		int start = 0;
+		for(int k = 1; k <= size; k++)
+		{
+			if(k == size || countM[k] == 1)
+			{
+				int last = k - 1;
+				int newCount = Math.min(countM[last], Math.min(vfi[last], vfo[last]));
+				if(newCount < 1)
+				{
+					newCount = 1;
+				}
+				if(newCount > largest)
+				{
+					largest = newCount;
+				}
+				for(int j = start; j < k; j++)
+				{
+					maxCycleSize[j] = newCount;
+				}
+				start = k;
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * Gets the number of components.
+	 *
+	 * @return  the number of components
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the index in the visibility matrix of a component.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the index in the visibility matrix
+	 */
+	public int getVisIndex(int k)
+	{
+		return visIndex[k];
+	}
+
+	/**
+	 * Gets the Fan-In Visibility of a component.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the Fan-In Visibility
+	 */
+	public int getVFI(int k)
+	{
+		return vfi[k];
+	}
+
+	/**
+	 * Gets the Fan-Out Visibility of a component.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the Fan-Out Visibility
+	 */
+	public int getVFO(int k)
+	{
+		return vfo[k];
+	}
+
+	/**
+	 * Gets the count of a component.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the countM of the component
+	 */
+	public int getCount(int k)
+	{
+		return countM[k];
+	}
+
+	/**
+	 * Gets the maximum size of the cycle to which a component can belong.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the maximum cycle size
+	 */
+	public int getMaxCycleSize(int k)
+	{
+		return maxCycleSize[k];
+	}
+
+	/**
+	 * Gets the cyclic group to which a component belongs.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  the number of the cyclic group
+	 */
+	public int getCyclicGroup(int k)
+	{
+		return cyclicGroup[k];
+	}
+
+	/**
+	 * Creates a <code>CycleComponent</code> object with the data of one component.
+	 *
+	 * @param k  the position of the component in sorted order
+	 * @return  a new object with the same values
+	 */
+	public CycleComponent getComponent(int k)
+	{
+		return new CycleComponent(visIndex[k], vfi[k], vfo[k],
+				countM[k], maxCycleSize[k], cyclicGroup[k]);
+	}
+}
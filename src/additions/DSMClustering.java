@@ -0,0 +1,617 @@
+package additions;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Clusters a DSM with the same coordination cost as jDSM's <code>ClusteredCost</code>,
+ * but on primitive arrays and with the bids calculated in parallel.<br>
+ * <br>
+ * The cost of a dependency from element i to element j is 1 if j is a vertical
+ * bus (an element that more than the bus threshold of all elements depend on),
+ * the square of the cluster size if i and j are in the same cluster, and the
+ * square of the DSM size otherwise. The total coordination cost is the sum over
+ * all dependencies, and the relative cost is that divided by the fourth power of
+ * the DSM size, as in jDSM.<br>
+ * <br>
+ * jDSM starts with every element in its own cluster, and moves one random element
+ * at a time to the cluster that lowers the cost the most, going through every
+ * cluster for every element and every pair of elements in both clusters for every
+ * bid. Here:
+ * <ul>
+ * 	<li>The clusters start as the strongly connected components, since the members
+ * 	of a cycle can only be kept apart at a high cost. Vertical busses start on their
+ * 	own and are never moved, as in jDSM.</li>
+ * 	<li>The size and the number of internal dependencies of every cluster are kept,
+ * 	so the change in cost of a move only needs the dependencies of the element that
+ * 	moves. Only the clusters of its neighbours, and a new cluster of its own, can
+ * 	bid for it.</li>
+ * 	<li>Each pass calculates the best bid of every element in parallel, against the
+ * 	clusters as they were at the start of the pass. The bids are then applied from the
+ * 	best to the worst, each one checked again against the clusters as they are by
+ * 	then, and only applied if it still lowers the cost. Passes are repeated until
+ * 	nothing moves.</li>
+ * </ul>
+ * The result only depends on the DSM, not on the number of threads.
+ */
+public class DSMClustering
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(DSMClustering.class);
+	/** The default part of all elements that must depend on an element for it to be a vertical bus. */
+	public static final double DEFAULT_BUS_THRESHOLD = 0.1;
+	/** The largest number of passes. */
+	private static final int MAX_PASSES = 100;
+	/** The number of elements that one task bids for without splitting further. */
+	private static final int CHUNK_SIZE = 256;
+	/** The number of elements. */
+	private int size;
+	/** Where the dependencies of each element start in <code>outColumns</code>. */
+	private int[] outStart;
+	/** The elements each element depends on. */
+	private int[] outColumns;
+	/** Where the dependents of each element start in <code>inColumns</code>. */
+	private int[] inStart;
+	/** The elements that depend on each element. */
+	private int[] inColumns;
+	/** Whether each element is a vertical bus. */
+	private boolean[] bus;
+	/** The cluster of each element. */
+	private int[] clusterOf;
+	/** The number of elements in each cluster. */
+	private int[] clusterSize;
+	/** The number of dependencies within each cluster on elements that are not busses. */
+	private long[] internal;
+	/** Whether each element that is not a bus depends on itself. */
+	private boolean[] selfDependent;
+	/** The clusters that are empty and can be reused. */
+	private int[] free;
+	/** The number of clusters in <code>free</code>. */
+	private int freeCount;
+	/** The number of passes done. */
+	private int passes;
+	/** The number of moves made. */
+	private int moves;
+	/** The scratch space of the current thread, with one entry per cluster for the
+	 *  links of an element and one for the clusters it has links with. */
+	private ThreadLocal<int[][]> scratch = new ThreadLocal<int[][]>()
+	{
+		@Override
+		protected int[][] initialValue()
+		{
+			return new int[2][size];
+		}
+	};
+
+	/**
+	 * Constructor that clusters a DSM on the given pool.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param busThreshold  the part of all elements (between 0 and 1) that must depend
+	 * on an element for it to be a vertical bus, as in jDSM
+	 * @param pool  the pool to calculate the bids in
+	 */
+	public DSMClustering(SparseDependencyMatrix dep, double busThreshold, ForkJoinPool pool)
+	{
+		size = dep.size();
+		outStart = dep.getRowStarts();
+		outColumns = dep.getColumns();
+		SparseDependencyMatrix t = dep.transpose();
+		inStart = t.getRowStarts();
+		inColumns = t.getColumns();
+		bus = new boolean[size];
+		int busses = 0;
+		for(int j = 0; j < size; j++)
+		{
+			int dependents = inStart[j + 1] - inStart[j];
+			if(dependents / (double) size > busThreshold)
+			{
+				bus[j] = true;
+				busses++;
+			}
+		}
+		logger.info("Found " + busses + " vertical busses.");
+		selfDependent = new boolean[size];
+		for(int i = 0; i < size; i++)
+		{
+			selfDependent[i] = !bus[i] && dep.get(i, i);
+		}
+
+		seedClusters(new StronglyConnectedComponents(dep));
+		logger.info("Started with " + getClusterCount() + " clusters, cost " + getCost() + ".");
+
+		long[] bids = new long[size];
+		int[] targets = new int[size];
+		for(passes = 0; passes < MAX_PASSES; passes++)
+		{
+			pool.invoke(new BidTask(bids, targets, 0, size));
+			int count = 0;
+			for(int e = 0; e < size; e++)
+			{
+				if(bids[e] < 0)
+				{
+					count++;
+				}
+			}
+			if(count == 0)
+			{
+				break;
+			}
+
+			//apply the best bids first, breaking ties by element
+			long[][] ranked = new long[count][];
+			count = 0;
+			for(int e = 0; e < size; e++)
+			{
+				if(bids[e] < 0)
+				{
+					ranked[count++] = new long[] {bids[e], e};
+				}
+			}
+			Arrays.sort(ranked, (a, b) -> (a[0] != b[0]) ? Long.compare(a[0], b[0])
+					: Long.compare(a[1], b[1]));
+			int moved = 0;
+			int[] links = scratch.get()[0];
+			int[] touched = scratch.get()[1];
+			for(long[] r : ranked)
+			{
+				int e = (int) r[1];
+				int target = targets[e];
+				if(clusterSize[target] == 0 && clusterSize[clusterOf[e]] == 1)
+				{
+					continue;
+				}
+				if(target != clusterOf[e] && moveCost(e, target, links, touched) < 0)
+				{
+					move(e, target, links, touched);
+					moved++;
+				}
+			}
+			moves += moved;
+			logger.debug("Pass " + passes + ": moved " + moved + " of " + count
+					+ " bidding elements, cost " + getCost());
+			if(moved == 0)
+			{
+				break;
+			}
+		}
+		logger.info("Finished clustering after " + passes + " passes and " + moves
+				+ " moves: " + getClusterCount() + " clusters, cost " + getCost() + ".");
+		if(!Arrays.equals(internal, countInternal()))
+		{
+			logger.info("Error: The internal dependencies of the clusters were not kept up to date.");
+		}
+	}
+
+	/**
+	 * Clusters a DSM on the common <code>ForkJoinPool</code>.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param busThreshold  the part of all elements that must depend on an element
+	 * for it to be a vertical bus
+	 * @return  the clustering
+	 */
+	public static DSMClustering cluster(SparseDependencyMatrix dep, double busThreshold)
+	{
+		return new DSMClustering(dep, busThreshold, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Puts the elements of each strongly connected component in one cluster,
+	 * except for the vertical busses, which get a cluster each.
+	 *
+	 * @param scc  the strongly connected components
+	 */
+	private void seedClusters(StronglyConnectedComponents scc)
+	{
+		clusterOf = new int[size];
+		clusterSize = new int[size];
+		internal = new long[size];
+		int components = scc.getComponentCount();
+		int[] seed = new int[components];
+		Arrays.fill(seed, -1);
+		boolean[] used = new boolean[size];
+		for(int i = 0; i < size; i++)
+		{
+			int c = scc.getComponent(i);
+			if(bus[i])
+			{
+				clusterOf[i] = i;
+			}
+			else
+			{
+				if(seed[c] == -1)
+				{
+					seed[c] = i;
+				}
+				clusterOf[i] = seed[c];
+			}
+			used[clusterOf[i]] = true;
+			clusterSize[clusterOf[i]]++;
+		}
+		free = new int[size];
+		freeCount = 0;
+		for(int k = size - 1; k >= 0; k--)
+		{
+			if(!used[k])
+			{
+				free[freeCount++] = k;
+			}
+		}
+		internal = countInternal();
+	}
+
+	/**
+	 * Counts the dependencies within each cluster on elements that are not busses.
+	 *
+	 * @return  the number of internal dependencies of each cluster
+	 */
+	private long[] countInternal()
+	{
+		long[] counts = new long[size];
+		for(int i = 0; i < size; i++)
+		{
+			for(int p = outStart[i]; p < outStart[i + 1]; p++)
+			{
+				int j = outColumns[p];
+				if(!bus[j] && clusterOf[j] == clusterOf[i])
+				{
+					counts[clusterOf[i]]++;
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the dependencies between an element and each cluster, in both
+	 * directions, leaving out dependencies on busses (whose cost does not depend
+	 * on the clusters) and on the element itself (which always stays in the
+	 * cluster of the element, see <code>selfDependent</code>).
+	 *
+	 * @param e  the element
+	 * @param links  filled with the number of dependencies with each cluster in
+	 * <code>touched</code>; must be all zero before
+	 * @param touched  filled with the clusters that have dependencies with the element
+	 * @return  the number of clusters in <code>touched</code>
+	 */
+	private int countLinks(int e, int[] links, int[] touched)
+	{
+		int count = 0;
+		for(int p = outStart[e]; p < outStart[e + 1]; p++)
+		{
+			int j = outColumns[p];
+			if(!bus[j] && j != e)
+			{
+				int c = clusterOf[j];
+				if(links[c]++ == 0)
+				{
+					touched[count++] = c;
+				}
+			}
+		}
+		for(int p = inStart[e]; p < inStart[e + 1]; p++)
+		{
+			int i = inColumns[p];
+			if(i != e)
+			{
+				int c = clusterOf[i];
+				if(links[c]++ == 0)
+				{
+					touched[count++] = c;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the change in cost of moving an element into a cluster, as in jDSM's
+	 * marginal cost of change. A dependency of the element on itself moves with it.
+	 *
+	 * @param e  the element
+	 * @param from  the cluster of the element
+	 * @param to  the cluster it moves to
+	 * @param linksFrom  the number of dependencies between the element and the rest of its cluster
+	 * @param linksTo  the number of dependencies between the element and the other cluster
+	 * @return  the change in cost
+	 */
+	private long delta(int e, int from, int to, long linksFrom, long linksTo)
+	{
+		long n2 = (long) size * size;
+		long sFrom = clusterSize[from];
+		long sTo = clusterSize[to];
+		long self = selfDependent[e] ? 1 : 0;
+		return linksTo * ((sTo + 1) * (sTo + 1) - n2)
+				+ linksFrom * (n2 - sFrom * sFrom)
+				+ self * ((sTo + 1) * (sTo + 1) - sFrom * sFrom)
+				+ (internal[from] - linksFrom - self) * ((sFrom - 1) * (sFrom - 1) - sFrom * sFrom)
+				+ internal[to] * ((sTo + 1) * (sTo + 1) - sTo * sTo);
+	}
+
+	/**
+	 * Finds the best cluster to move an element to.
+	 *
+	 * @param e  the element
+	 * @param links  zeroed scratch space with one entry per cluster, left zeroed
+	 * @param touched  scratch space with one entry per cluster
+	 * @param bids  filled with the change in cost of the best move, or 0 for none
+	 * @param targets  filled with the cluster of the best move
+	 */
+	private void bid(int e, int[] links, int[] touched, long[] bids, int[] targets)
+	{
+		bids[e] = 0;
+		targets[e] = clusterOf[e];
+		if(bus[e])
+		{
+			return;
+		}
+		int from = clusterOf[e];
+		int count = countLinks(e, links, touched);
+		long linksFrom = links[from];
+		long best = 0;
+		int bestCluster = from;
+		for(int k = 0; k < count; k++)
+		{
+			int c = touched[k];
+			if(c != from)
+			{
+				long d = delta(e, from, c, linksFrom, links[c]);
+				if(d < best)
+				{
+					best = d;
+					bestCluster = c;
+				}
+			}
+		}
+		//a cluster of its own, if it is not on its own already
+		if(clusterSize[from] > 1 && freeCount > 0)
+		{
+			long d = delta(e, from, free[freeCount - 1], linksFrom, 0);
+			if(d < best)
+			{
+				best = d;
+				bestCluster = free[freeCount - 1];
+			}
+		}
+		for(int k = 0; k < count; k++)
+		{
+			links[touched[k]] = 0;
+		}
+		bids[e] = best;
+		targets[e] = bestCluster;
+	}
+
+	/**
+	 * Gets the change in cost of moving an element into a cluster, with the
+	 * clusters as they are now.
+	 *
+	 * @param e  the element
+	 * @param to  the cluster, which may be empty
+	 * @param links  zeroed scratch space with one entry per cluster, left zeroed
+	 * @param touched  scratch space with one entry per cluster
+	 * @return  the change in cost
+	 */
+	private long moveCost(int e, int to, int[] links, int[] touched)
+	{
+		int count = countLinks(e, links, touched);
+		long d = delta(e, clusterOf[e], to, links[clusterOf[e]], links[to]);
+		for(int k = 0; k < count; k++)
+		{
+			links[touched[k]] = 0;
+		}
+		return d;
+	}
+
+	/**
+	 * Moves an element into a cluster, updating the sizes and internal
+	 * dependencies of both clusters.
+	 *
+	 * @param e  the element
+	 * @param to  the cluster, which may be empty
+	 * @param links  zeroed scratch space with one entry per cluster, left zeroed
+	 * @param touched  scratch space with one entry per cluster
+	 */
+	private void move(int e, int to, int[] links, int[] touched)
+	{
+		int from = clusterOf[e];
+		int count = countLinks(e, links, touched);
+		long self = selfDependent[e] ? 1 : 0;
+		internal[from] -= links[from] + self;
+		internal[to] += links[to] + self;
+		for(int k = 0; k < count; k++)
+		{
+			links[touched[k]] = 0;
+		}
+		if(clusterSize[to] == 0)
+		{
+			//take it off the free list
+			for(int k = freeCount - 1; k >= 0; k--)
+			{
+				if(free[k] == to)
+				{
+					free[k] = free[--freeCount];
+					break;
+				}
+			}
+		}
+		clusterSize[from]--;
+		clusterSize[to]++;
+		clusterOf[e] = to;
+		if(clusterSize[from] == 0)
+		{
+			free[freeCount++] = from;
+		}
+	}
+
+	/**
+	 * Gets the total coordination cost of the clusters, as jDSM calculates it.
+	 *
+	 * @return  the cost
+	 */
+	public long getCost()
+	{
+		long n2 = (long) size * size;
+		long cost = 0;
+		for(int i = 0; i < size; i++)
+		{
+			for(int p = outStart[i]; p < outStart[i + 1]; p++)
+			{
+				int j = outColumns[p];
+				if(bus[j])
+				{
+					cost++;
+				}
+				else if(clusterOf[j] == clusterOf[i])
+				{
+					long s = clusterSize[clusterOf[i]];
+					cost += s * s;
+				}
+				else
+				{
+					cost += n2;
+				}
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Gets the relative coordination cost, which is the total cost divided by
+	 * the fourth power of the DSM size, as jDSM calculates it.
+	 *
+	 * @return  the relative cost
+	 */
+	public double getRelativeCost()
+	{
+		double n2 = (double) size * size;
+		return getCost() / (n2 * n2);
+	}
+
+	/**
+	 * Gets the number of clusters.
+	 *
+	 * @return  the number of clusters
+	 */
+	public int getClusterCount()
+	{
+		int count = 0;
+		for(int c = 0; c < size; c++)
+		{
+			if(clusterSize[c] > 0)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the cluster of every element. The clusters are numbered from 0 in
+	 * the order of their first elements.
+	 *
+	 * @return  a new array with the cluster of each element
+	 */
+	public int[] getClusters()
+	{
+		int[] number = new int[size];
+		Arrays.fill(number, -1);
+		int[] clusters = new int[size];
+		int next = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int c = clusterOf[i];
+			if(number[c] == -1)
+			{
+				number[c] = next++;
+			}
+			clusters[i] = number[c];
+		}
+		return clusters;
+	}
+
+	/**
+	 * Checks whether an element is a vertical bus.
+	 *
+	 * @param i  the element
+	 * @return  true if it is a vertical bus
+	 */
+	public boolean isVerticalBus(int i)
+	{
+		return bus[i];
+	}
+
+	/**
+	 * Gets the number of passes that were done.
+	 *
+	 * @return  the number of passes
+	 */
+	public int getPassCount()
+	{
+		return passes;
+	}
+
+	/**
+	 * Gets the number of times an element was moved to another cluster.
+	 *
+	 * @return  the number of moves
+	 */
+	public int getMoveCount()
+	{
+		return moves;
+	}
+
+	/**
+	 * Calculates the bids of a range of elements, splitting the range in half
+	 * until it is small enough.
+	 */
+	private class BidTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		/** The change in cost of the best move of each element. */
+		private long[] bids;
+		/** The cluster of the best move of each element. */
+		private int[] targets;
+		/** The first element in the range. */
+		private int from;
+		/** One past the last element in the range. */
+		private int to;
+
+		/**
+		 * Constructor for a task over the elements from <code>from</code> to
+		 * <code>to - 1</code>.
+		 *
+		 * @param bids  the bids of all elements
+		 * @param targets  the targets of all elements
+		 * @param from  the first element
+		 * @param to  one past the last element
+		 */
+		private BidTask(long[] bids, int[] targets, int from, int to)
+		{
+			this.bids = bids;
+			this.targets = targets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > CHUNK_SIZE)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new BidTask(bids, targets, from, mid), new BidTask(bids, targets, mid, to));
+				return;
+			}
+			int[] links = scratch.get()[0];
+			int[] touched = scratch.get()[1];
+			for(int e = from; e < to; e++)
+			{
+				bid(e, links, touched, bids, targets);
+			}
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package additions;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.log4j.Logger;
 import org.jblas.DoubleMatrix;
@@ -41,21 +46,80 @@ import edu.carleton.tim.jdsm.dependency.provider.DependencyFinderDSMProvider;
  * 	<li><code>calcPropCostSelf()</code> (Optional)</li>
  * 	<li><code>findCoreSize()</code></li>
  * </ol>
+ * <br>
+ * Steps 1 and 2 can be replaced by <code>loadDependencies(String depFilePath, String filter)</code>,
+ * which reads the dependencies file as a stream with <code>DependencyFinderLoader</code> and
+ * never builds jDSM's DSM. This is what the constructor uses. If the path given to it is
+ * a folder of classes or a JAR, WAR, EAR, or ZIP file instead of an XML file, the
+ * dependencies are read straight from the class files with
+ * <code>BytecodeDependencyExtractor</code> (see <code>loadClasses()</code>), so Dependency
+ * Finder does not need to be run at all.
  * <br><br>
  * Another method, <code>getDSMFromXML(String dsmFilePath)</code>, has also been provided as an
  * alternative to step #1, if you have the DSM saved in XML format as given by jDSM.
- * However, this does not appear to work properly with jDSM's given loading method.<br>
+ * However, this does not appear to work properly with jDSM's given loading method, and it
+ * is deprecated. Instead, a DSM can be saved with <code>saveBinary(String filePath)</code>
+ * (or <code>DSMFromDepToBinary()</code>) into a compact binary file, and loaded again with
+ * the constructor that takes a <code>BinaryDSMFile</code>.<br>
  * <br>
  * Also, this class includes the static method
  * <code>DSMFromDepToXML(String depFilePath, String outputFolder)</code>, which can be used to
  * create DSMs from a given dependency file from Dependency Finder and save it through
  * jDSM into XML format, as well as create an image of the DSM in SVG format (viewable in
- * a web browser).<br>
+ * a web browser), or in PNG format for large DSMs. <code>saveImage()</code> draws the
+ * dependency matrix of any size as a PNG image or a pyramid of tiles.<br>
+ * <br>
+ * The dependency matrix is kept in compressed sparse row form
+ * (<code>SparseDependencyMatrix</code>). Each <code>VisibilityMode</code> calculates the
+ * visibility matrix with a different <code>ClosureEngine</code> (see
+ * <code>ClosureEngines</code>), and another engine can be plugged in with
+ * <code>setClosureEngine()</code>. By default, the <code>AUTO</code> mode lets a
+ * <code>ClosurePlanner</code> choose the mode from the size and density of the DSM and
+ * the memory available; it keeps a bit-packed matrix (<code>BitMatrix</code>) whenever it
+ * fits in the heap, built with Warshall's algorithm (<code>BITSET</code>) or from the
+ * strongly connected components (<code>CONDENSED_BITSET</code>). With the <code>SPARSE</code>
+ * <code>VisibilityMode</code>, only the VFI and VFO are counted and the visibility matrix
+ * is never built, so memory scales with the number of dependencies. The
+ * <code>PARALLEL</code> and <code>PARALLEL_SPARSE</code> modes do the same searches on
+ * all cores, using the common <code>ForkJoinPool</code> unless another pool is given with
+ * <code>setForkJoinPool()</code>. The <code>CONDENSATION</code> mode counts the VFI and
+ * VFO over the strongly connected components instead of the elements, which needs the
+ * least memory when there is a big Core. For very large systems, the <code>APPROXIMATE</code>
+ * mode estimates the VFI and VFO in near-linear time (see <code>ReachabilityEstimator</code>),
+ * and <code>getPropCostError()</code> gives the 95% confidence interval of the propagation
+ * costs. Its accuracy is set with <code>setApproximation()</code>.
+ * When the exact visibility matrix is needed but does not fit in the heap, the
+ * <code>OFF_HEAP</code> mode builds it in direct buffers or a memory-mapped scratch
+ * file (see <code>OffHeapBitMatrix</code>), under the budget set with <code>setOffHeap()</code>.
+ * The original jBLAS calculation can still be used by
+ * setting the mode to <code>REFERENCE</code>.<br>
  * <br>
  * Using the <code>findCoreSize()</code> method, you can calculate the Core size
- * of the given DSM. However, this class does not at the present time actually assign the
- * components to cyclic groups. It only calculates the maximum size that would be possible
- * for the largest cyclic group, or the Core.
+ * of the given DSM. Each component is assigned to its cyclic group by finding the strongly
+ * connected components of the dependency matrix, which does not need the visibility matrix.
+ * Cyclic groups are numbered from largest to smallest, so the Core is always group 1.
+ * If the VFI and VFO have been calculated, the original estimate of the maximum size of
+ * the Core is also calculated, for comparison.<br>
+ * <br>
+ * The same metrics can be calculated for packages, package prefixes, and modules with
+ * <code>getHierarchy()</code>, which reuses the strongly connected components of the
+ * classes for every level (see <code>DSMHierarchy</code>).<br>
+ * <br>
+ * Which classes a single class can see, and which can see it, are answered by the index
+ * from <code>getReachabilityIndex()</code> (see <code>ReachabilityIndex</code>).
+ * What a change to some classes affects, and how it changes the propagation costs and
+ * Core size, is found by <code>changeImpactAnalysis()</code> without analysing the
+ * whole DSM again (see <code>ChangeImpactAnalysis</code>).<br>
+ * <br>
+ * The DSM can also be clustered with <code>cluster()</code>, which gives the cluster of
+ * every element and the coordination cost as jDSM's clustering does, but starts from the
+ * strongly connected components and calculates the bids in parallel (see
+ * <code>DSMClustering</code>).<br>
+ * <br>
+ * Each phase (load, recalcDepMatrix, visibility, fanInOut, propCost, propCostSelf,
+ * core, index, impact, and cluster) is timed, and its time, allocation, and counters are sent to a
+ * <code>MetricsSink</code> if one is set with <code>setMetricsSink()</code> or
+ * <code>PhaseTimer.setDefaultSink()</code>.
  * 
  * @author YuliyaA
  *
@@ -64,10 +128,40 @@ public class DSMData
 {
 	/** Logger to print messages to user. */
 	private static Logger logger = Logger.getLogger(DSMData.class);
+	/** The number of standard errors in half of a 95% confidence interval. */
+	private static final double CONFIDENCE_Z = 1.96;
+	/** The largest DSM that <code>DSMFromDepToXML()</code> draws as SVG. Larger ones are drawn as PNG. */
+	private static final int MAX_SVG_SIZE = 2000;
+	/** The largest width and height of the PNG images drawn by <code>DSMFromDepToXML()</code>. */
+	private static final int IMAGE_PIXELS = 4096;
 	/** The dependency matrix with which this data is associated. */
-	private DoubleMatrix dep;
-	/** The visibility matrix for the given DSM. */
+	private SparseDependencyMatrix dep;
+	/** The visibility matrix for the given DSM. Only used in <code>REFERENCE</code> mode. */
 	private DoubleMatrix vis;
+	/** The bit-packed visibility matrix for the given DSM. Used in <code>BITSET</code> and <code>CONDENSED_BITSET</code> modes. */
+	private BitMatrix closure;
+	/** The row and column sums of the visibility matrix. Used in <code>SPARSE</code> mode. */
+	private ReachabilityCounts reach;
+	/** The method used to calculate the visibility matrix. */
+	private VisibilityMode visibilityMode;
+	/** The pool used by the parallel visibility modes, or null to use the common pool. */
+	private ForkJoinPool pool;
+	/** The number of rankings used in <code>APPROXIMATE</code> mode. */
+	private int sketchSize = ReachabilityEstimator.DEFAULT_SKETCH_SIZE;
+	/** The seed of the random ranks used in <code>APPROXIMATE</code> mode. */
+	private long sketchSeed = 1;
+	/** The visibility matrix outside the heap, in the <code>OFF_HEAP</code> mode. */
+	private OffHeapBitMatrix offHeapClosure;
+	/** The number of bytes of memory the <code>OFF_HEAP</code> mode may use. */
+	private long memoryBudget = OffHeapBitMatrix.DEFAULT_MEMORY_BUDGET;
+	/** The folder of the scratch file in the <code>OFF_HEAP</code> mode, or null for the temporary folder. */
+	private File scratchFolder;
+	/** The engine that calculates the visibility matrix whatever the mode, or null to use the mode. */
+	private ClosureEngine engine;
+	/** The planner that chooses the mode in the <code>AUTO</code> mode, or null for the default one. */
+	private ClosurePlanner planner;
+	/** The engine that calculated the visibility matrix the last time. */
+	private ClosureEngine usedEngine;
 	/** The number of files in the DSM. */
 	private int nrFiles;
 	/** Fan in visibility for each element. */
@@ -78,12 +172,24 @@ public class DSMData
 	private double propCost;
 	/** The propagation cost with self dependencies. */
 	private double propCost2;
-	/** Array of objects that contain data about each component of the DSM. */
-	private CycleComponent[] components;
-	/** The Core size of the DSM. (The maximum size of the largest cyclic group.) */
+	/** Half the width of the 95% confidence interval of both propagation costs,
+	 *  or 0 if they were calculated exactly. */
+	private double propCostError;
+	/** The data about each component of the DSM, in sorted order. */
+	private CycleComponentStore components;
+	/** The Core size of the DSM. (The size of the largest cyclic group.) */
 	private int coreSize;
+	/** The estimated Core size of the DSM, found from the VFI and VFO.
+	 *  (The maximum size that would be possible for the largest cyclic group.) */
+	private int coreSizeEstimate;
+	/** The cyclic group of each component, or 0 if it is not part of any cycle. */
+	private int[] cyclicGroups;
+	/** The number of cyclic groups found. */
+	private int nrCyclicGroups;
 	/** Determines whether or not to calculate propCost2. */
 	private boolean calcPropCost2;
+	/** The sink that the measurements of each phase are sent to, or null. */
+	private MetricsSink metricsSink = PhaseTimer.getDefaultSink();
 	
 	/**
 	 * Default blank constructor.
@@ -92,12 +198,18 @@ public class DSMData
 	{
 		dep = null;
 		vis = null;
+		closure = null;
+		reach = null;
+		visibilityMode = VisibilityMode.AUTO;
 		nrFiles = 0;
 		vfi = null;
 		vfo = null;
 		propCost = 0;
 		components = null;
 		coreSize = 0;
+		coreSizeEstimate = 0;
+		cyclicGroups = null;
+		nrCyclicGroups = 0;
 		calcPropCost2 = false;
 	}
 	
@@ -110,17 +222,163 @@ public class DSMData
 	 * @param filter  the filter to use when analyzing the DSM
 	 */
 	public DSMData(boolean calcPropCost2, String depFilePath, String filter)
+	{
+		this(calcPropCost2, depFilePath, filter, VisibilityMode.AUTO);
+	}
+	
+	/**
+	 * Constructor for a DSM from an XML file provided as output
+	 * from DependencyFinder, using the given method to calculate
+	 * the visibility matrix.
+	 * 
+	 * @param calcPropCost2  true to also calculate propagation cost with self-dependencies
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @param mode  the method used to calculate the visibility matrix
+	 */
+	public DSMData(boolean calcPropCost2, String depFilePath, String filter, VisibilityMode mode)
 	{
 		this.calcPropCost2 = calcPropCost2;
+		this.visibilityMode = mode;
 		dep = null;
 		vis = null;
-		recalcDepMatrix(getDSMFromDep(depFilePath, filter));
+		closure = null;
+		reach = null;
+		loadDependencies(depFilePath, filter);
+		calcAll();
+	}
+	
+	/**
+	 * Constructor for a DSM loaded from a binary DSM file. If the file also stores
+	 * the results, they are used as they are and nothing is calculated. Otherwise,
+	 * if the file stores the visibility matrix, it is used and is not calculated again.
+	 * 
+	 * @param calcPropCost2  true to also calculate propagation cost with self-dependencies
+	 * @param file  the binary DSM file, written by <code>saveBinary()</code>
+	 * @param mode  the method used to calculate the visibility matrix, if the file
+	 * does not store it
+	 */
+	public DSMData(boolean calcPropCost2, BinaryDSMFile file, VisibilityMode mode)
+	{
+		this.calcPropCost2 = calcPropCost2;
+		this.visibilityMode = mode;
+		this.dep = file.getDependencyMatrix();
+		this.nrFiles = dep.size();
+		logger.info("Dependency Matrix has " + nrFiles + " files and "
+				+ dep.getEdgeCount() + " dependencies.");
+		vis = null;
+		reach = null;
+		closure = file.getClosure();
+		DSMResults results = file.getResults();
+		if(results != null && (results.hasPropCost2() || !calcPropCost2))
+		{
+			logger.info("Using the stored results.");
+			setResults(results);
+		}
+		else if(closure != null)
+		{
+			logger.info("Using the stored Visibility Matrix.");
+			calcResults();
+		}
+		else
+		{
+			calcAll();
+		}
+	}
+	
+	/**
+	 * Constructor for a DSM from a dependency matrix that has already been
+	 * loaded, for example with a <code>DependencyFinderLoader</code>.
+	 * 
+	 * @param calcPropCost2  true to also calculate propagation cost with self-dependencies
+	 * @param dep  the dependency matrix
+	 * @param mode  the method used to calculate the visibility matrix
+	 */
+	public DSMData(boolean calcPropCost2, SparseDependencyMatrix dep, VisibilityMode mode)
+	{
+		this.calcPropCost2 = calcPropCost2;
+		this.visibilityMode = mode;
+		this.dep = dep;
+		this.nrFiles = dep.size();
+		vis = null;
+		closure = null;
+		reach = null;
+		calcAll();
+	}
+	
+	/**
+	 * Restores the results that were calculated before, instead of calculating
+	 * them. The visibility matrix is not needed.
+	 * 
+	 * @param results  the results
+	 */
+	private void setResults(DSMResults results)
+	{
+		int[] inCounts = results.getVFI();
+		int[] outCounts = results.getVFO();
+		this.vfi = new DoubleMatrix(1, nrFiles);
+		this.vfo = new DoubleMatrix(nrFiles, 1);
+		for(int i = 0; i < nrFiles; i++)
+		{
+			this.vfi.put(i, inCounts[i]);
+			this.vfo.put(i, outCounts[i]);
+		}
+		propCost = results.getPropCost();
+		propCost2 = results.getPropCost2();
+		cyclicGroups = results.getCyclicGroups();
+		nrCyclicGroups = results.getCyclicGroupCount();
+		coreSize = results.getCoreSize();
+		coreSizeEstimate = 0;
+		initializeCyclicComponents();
+		findCounts();
+		findMaxCycleSize();
+	}
+	
+	/**
+	 * Gets the results calculated for this DSM, so that they can be stored.
+	 * 
+	 * @return  the results, or null if the VFI, VFO, and cyclic groups have not
+	 * been calculated
+	 */
+	public DSMResults getResults()
+	{
+		if(vfi == null || vfo == null || cyclicGroups == null)
+		{
+			return null;
+		}
+		int[] inCounts = new int[nrFiles];
+		int[] outCounts = new int[nrFiles];
+		for(int i = 0; i < nrFiles; i++)
+		{
+			inCounts[i] = (int) vfi.get(i);
+			outCounts[i] = (int) vfo.get(i);
+		}
+		return new DSMResults(inCounts, outCounts, propCost, propCost2, calcPropCost2,
+				cyclicGroups, nrCyclicGroups, coreSize);
+	}
+	
+	/**
+	 * Calls all of the calculation methods in order, once the dependency
+	 * matrix has been loaded.
+	 */
+	private void calcAll()
+	{
 		calcVisibility();
+		calcResults();
+	}
+	
+	/**
+	 * Calls the calculation methods that come after the visibility matrix.
+	 */
+	private void calcResults()
+	{
 		calcFanInOut();
 		calcPropCost();
 		calcPropCostSelf();
 		components = null;
 		coreSize = 0;
+		coreSizeEstimate = 0;
+		cyclicGroups = null;
 		findCoreSize();
 	}
 
@@ -140,6 +398,12 @@ public class DSMData
 	/**
 	 * Static method to take an XML dependencies file from DependencyFinder,
 	 * create a DSM from it, and save the DSM to an XML file and an SVG file.
+	 * DSMs with more than <code>MAX_SVG_SIZE</code> elements are too big for
+	 * a browser to open as SVG, so they are drawn as a PNG density image
+	 * (<code>dsm_original.png</code>) with <code>DSMImageRenderer</code> instead,
+	 * and no XML file is written. The file is read with <code>DependencyFinderLoader</code>,
+	 * and jDSM's DSM, which takes memory for every pair of elements, is only
+	 * created for the SVG and XML files.
 	 * 
 	 * @param depFilePath  the path to the XML dependencies file
 	 * @param outputFolder  the path to the folder that will contain the output files
@@ -149,11 +413,18 @@ public class DSMData
 		try
 		{
 			String filter = "[.*]";
-			DesignStructureMatrix<Dependency> dsm = DependencyFinderDSMProvider
-				.loadDesignStructureMatrix(depFilePath, filter);
-			
-			SVGOutput.printDsm(dsm, new FileOutputStream(outputFolder + "/dsm_original.svg"));
-			dsm.saveToXml(new FileOutputStream(outputFolder + "/dsm_original.xml"));
+			SparseDependencyMatrix dep = DependencyFinderLoader.load(depFilePath, filter);
+			if(dep.size() > MAX_SVG_SIZE)
+			{
+				new DSMImageRenderer(dep).writeImage(outputFolder + "/dsm_original.png", IMAGE_PIXELS);
+			}
+			else
+			{
+				DesignStructureMatrix<Dependency> dsm = DependencyFinderDSMProvider
+					.loadDesignStructureMatrix(depFilePath, filter);
+				SVGOutput.printDsm(dsm, new FileOutputStream(outputFolder + "/dsm_original.svg"));
+				dsm.saveToXml(new FileOutputStream(outputFolder + "/dsm_original.xml"));
+			}
 		}
 		catch(Exception e)
 		{
@@ -161,6 +432,105 @@ public class DSMData
 		}
 	}
 	
+	/**
+	 * Static method to take an XML dependencies file from DependencyFinder and
+	 * save its dependency matrix to a binary DSM file, which can be loaded again
+	 * much faster than the XML with <code>BinaryDSMFile</code>.
+	 * 
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @param outputPath  the path of the binary DSM file to write
+	 * @param withClosure  true to also calculate and store the visibility matrix
+	 */
+	public static void DSMFromDepToBinary(String depFilePath, String filter,
+										  String outputPath, boolean withClosure)
+	{
+		try
+		{
+			SparseDependencyMatrix dep = DependencyFinderLoader.load(depFilePath, filter);
+			BitMatrix closure = null;
+			if(withClosure)
+			{
+				closure = BitMatrix.closureOf(new Condensation(dep));
+			}
+			BinaryDSMFile.write(outputPath, dep, closure);
+		}
+		catch(IOException | XMLStreamException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Draws the dependency matrix as a PNG density image, with the cyclic groups
+	 * drawn together and highlighted (the Core in red) if they have been found.
+	 * 
+	 * @param filePath  the path of the PNG file to write
+	 * @param maxPixels  the largest width and height of the image (not used for tiles)
+	 * @param tiled  true to write a pyramid of tiles into the folder
+	 * <code>filePath</code> instead of one image
+	 */
+	public void saveImage(String filePath, int maxPixels, boolean tiled)
+	{
+		if(dep == null)
+		{
+			logger.info("Dependency Matrix has not been properly initialized.");
+			return;
+		}
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "image",
+				(pool == null) ? ForkJoinPool.commonPool() : pool);
+		try
+		{
+			DSMImageRenderer renderer = new DSMImageRenderer(dep);
+			if(pool != null)
+			{
+				renderer.setPool(pool);
+			}
+			if(cyclicGroups != null)
+			{
+				renderer.setGroups(cyclicGroups, true);
+			}
+			if(tiled)
+			{
+				timer.count("tiles", renderer.writeTiles(filePath));
+			}
+			else
+			{
+				renderer.writeImage(filePath, maxPixels);
+			}
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+		timer.stop();
+	}
+	
+	/**
+	 * Saves the dependency matrix to a binary DSM file, along with the results
+	 * that have been calculated and the visibility matrix if it has been calculated
+	 * as a <code>BitMatrix</code> (in the <code>BITSET</code>, <code>CONDENSED_BITSET</code>,
+	 * or <code>PARALLEL</code> modes).
+	 * 
+	 * @param filePath  the path of the binary DSM file to write
+	 */
+	public void saveBinary(String filePath)
+	{
+		if(dep == null)
+		{
+			logger.info("Dependency Matrix has not been properly initialized.");
+			return;
+		}
+		try
+		{
+			BinaryDSMFile.write(filePath, dep, closure, getResults());
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * Load a DSM from an XML file of dependencies provided by DependencyFinder.
 	 * 
@@ -187,27 +557,177 @@ public class DSMData
 	}
 	
 	/**
-	 * Recalculates the DependencyDSM into a DoubleMatrix form
-	 * with Dependency.YES = 1 and Dependency.NO = 0, and saves it
+	 * Loads the dependency matrix from an XML file of dependencies provided by
+	 * DependencyFinder, and saves it into the dep field. This gives the same matrix
+	 * as <code>recalcDepMatrix(getDSMFromDep(depFilePath, filter))</code>, but reads
+	 * the file as a stream and does not create jDSM's DSM, so it is much faster and
+	 * uses much less memory on large files.
+	 * <br><br>
+	 * If the path is a folder of classes or an archive, <code>loadClasses()</code> is
+	 * used instead.
+	 * 
+	 * @param depFilePath  path to the dependencies XML file
+	 * @param filter  the filter to use when analyzing the DSM
+	 */
+	public void loadDependencies(String depFilePath, String filter)
+	{
+		if(BytecodeDependencyExtractor.isClassPath(depFilePath))
+		{
+			loadClasses(depFilePath, filter);
+			return;
+		}
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "load");
+		try
+		{
+			this.dep = DependencyFinderLoader.load(depFilePath, filter);
+			nrFiles = dep.size();
+			logger.info("Dependency Matrix has " + nrFiles + " files and "
+					+ dep.getEdgeCount() + " dependencies.");
+			timer.count("files", nrFiles);
+			timer.count("edges", dep.getEdgeCount());
+		}
+		catch (IOException | XMLStreamException e)
+		{
+			e.printStackTrace();
+		}
+		timer.stop();
+	}
+	
+	/**
+	 * Loads the dependency matrix straight from compiled classes, by reading the
+	 * constant pools and descriptors of the class files with
+	 * <code>BytecodeDependencyExtractor</code>, and saves it into the dep field.
+	 * The class files are parsed in parallel, on the pool given with
+	 * <code>setForkJoinPool()</code> or the common pool.
+	 * 
+	 * @param classesPath  the folder of classes, or the JAR, WAR, EAR, or ZIP file
+	 * @param filter  the filter to use when analyzing the DSM, in the same format
+	 * as for the dependencies XML file
+	 */
+	public void loadClasses(String classesPath, String filter)
+	{
+		ForkJoinPool p = (pool == null) ? ForkJoinPool.commonPool() : pool;
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "load", p);
+		try
+		{
+			this.dep = new BytecodeDependencyExtractor(filter, null, p).extract(classesPath);
+			nrFiles = dep.size();
+			logger.info("Dependency Matrix has " + nrFiles + " files and "
+					+ dep.getEdgeCount() + " dependencies.");
+			timer.count("files", nrFiles);
+			timer.count("edges", dep.getEdgeCount());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		timer.stop();
+	}
+	
+	/**
+	 * Recalculates the DependencyDSM into a compressed sparse row form,
+	 * with only the Dependency.YES entries stored, and saves it
 	 * into the dep field.
 	 * 
 	 * @param d  the DSM
 	 */
 	public void recalcDepMatrix(DesignStructureMatrix<Dependency> d)
 	{
-		Dependency[][] data = d.getMap();
-		nrFiles = data.length;
-		this.dep = DoubleMatrix.zeros(nrFiles, nrFiles);
-		for(int i = 0; i < data.length; i++)
-		{
-			for(int j = 0; j < data[i].length; j++)
-			{
-				if(data[i][j].equals(Dependency.YES))
-				{
-					this.dep.put(i, j, 1.0);
-				}
-			}
-		}
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "recalcDepMatrix");
+		this.dep = SparseDependencyMatrix.fromDSM(d);
+		nrFiles = dep.size();
+		logger.info("Dependency Matrix has " + nrFiles + " files and "
+				+ dep.getEdgeCount() + " dependencies.");
+		timer.count("files", nrFiles);
+		timer.count("edges", dep.getEdgeCount());
+		timer.stop();
+	}
+	
+	/**
+	 * Sets the method used to calculate the visibility matrix.
+	 * 
+	 * @param mode  the method to use in <code>calcVisibility()</code>
+	 */
+	public void setVisibilityMode(VisibilityMode mode)
+	{
+		visibilityMode = mode;
+	}
+	
+	/**
+	 * Sets the engine used to calculate the visibility matrix, instead of the one
+	 * of the visibility mode.
+	 * 
+	 * @param engine  the engine to use in <code>calcVisibility()</code>, or null to
+	 * use the engine of the visibility mode
+	 */
+	public void setClosureEngine(ClosureEngine engine)
+	{
+		this.engine = engine;
+	}
+	
+	/**
+	 * Sets the planner that chooses the visibility mode in the <code>AUTO</code> mode.
+	 * By default, it may use a quarter of the maximum heap size and the memory budget
+	 * set with <code>setOffHeap()</code>, and keeps the visibility matrix when it fits.
+	 * 
+	 * @param planner  the planner, or null to use the default one
+	 */
+	public void setClosurePlanner(ClosurePlanner planner)
+	{
+		this.planner = planner;
+	}
+	
+	/**
+	 * Sets the pool used to run the searches in the <code>PARALLEL</code> and
+	 * <code>PARALLEL_SPARSE</code> visibility modes.
+	 * 
+	 * @param pool  the pool to use, or null to use the common pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	/**
+	 * Sets the accuracy of the <code>APPROXIMATE</code> visibility mode. Each VFI
+	 * and VFO is estimated with a relative standard error of
+	 * <code>1 / sqrt(sketchSize - 2)</code>, and the time taken grows linearly
+	 * with the sketch size. <code>ReachabilityEstimator.sketchSizeFor()</code>
+	 * gives the sketch size needed for a given error.
+	 * 
+	 * @param sketchSize  the number of rankings, at least 3
+	 * @param seed  the seed of the random ranks, so that runs can be repeated
+	 */
+	public void setApproximation(int sketchSize, long seed)
+	{
+		this.sketchSize = sketchSize;
+		this.sketchSeed = seed;
+	}
+	
+	/**
+	 * Sets the memory budget of the <code>OFF_HEAP</code> visibility mode. The
+	 * visibility matrix is kept in direct buffers if it fits in the budget, and
+	 * otherwise in a scratch file that is mapped into memory.
+	 * 
+	 * @param memoryBudget  the number of bytes of memory the visibility matrix may use
+	 * @param scratchFolder  the folder for the scratch file, or null for the temporary folder
+	 */
+	public void setOffHeap(long memoryBudget, File scratchFolder)
+	{
+		this.memoryBudget = memoryBudget;
+		this.scratchFolder = scratchFolder;
+	}
+	
+	/**
+	 * Sets the sink that the measurements of each phase (time, allocation, and
+	 * counters) are sent to. By default this is <code>PhaseTimer.getDefaultSink()</code>
+	 * as it was when this object was created.
+	 * 
+	 * @param sink  the sink, or null to not measure anything
+	 */
+	public void setMetricsSink(MetricsSink sink)
+	{
+		this.metricsSink = sink;
 	}
 	
 	/**
@@ -219,35 +739,66 @@ public class DSMData
 	 */
 	public void calcVisibility()
 	{
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "visibility",
+				(pool == null) ? ForkJoinPool.commonPool() : pool);
+		offHeapClosure = null;
 		if(dep == null)
 		{
 			logger.info("Dependency Matrix has not been properly initialized.");
 		}
 		else
 		{
-			//DoubleMatrix zeros = DoubleMatrix.zeros(nrFiles, nrFiles);
-
-			DoubleMatrix temp = DoubleMatrix.eye(nrFiles);
-			DoubleMatrix visibility;
-			
-			visibility = DoubleMatrix.zeros(nrFiles, nrFiles);
-			
-			logger.info("Beginning Visibility Matrix calculation.");
-			
-			int count = 0;
-			while(count < nrFiles && temp.truth().sum() != 0)	// && !temp.equals(zeros)
+			ClosureEngine e = engine;
+			if(e == null)
 			{
-				count++;
-				if (count % 50 == 0) {
-					logger.info("Processed " + count + " of " + nrFiles);
+				VisibilityMode mode = visibilityMode;
+				if(mode == VisibilityMode.AUTO)
+				{
+					ClosurePlanner p = planner;
+					if(p == null)
+					{
+						p = new ClosurePlanner(Runtime.getRuntime().maxMemory()
+								/ ClosurePlanner.HEAP_SHARE, memoryBudget, true);
+					}
+					mode = p.choose(dep);
+					logger.info("Chose the " + mode + " visibility mode.");
 				}
-				temp = temp.mmul(this.dep);
-				visibility = visibility.add(temp);
+				e = ClosureEngines.forMode(mode, pool, sketchSize, sketchSeed, memoryBudget, scratchFolder);
 			}
-			
-			vis = visibility;
-			logger.info("Finished Visibility Matrix calculation.");
+			usedEngine = e;
+			vis = null;
+			closure = null;
+			reach = null;
+			try
+			{
+				ClosureResult result = e.compute(dep);
+				vis = result.getDenseMatrix();
+				closure = result.getMatrix();
+				offHeapClosure = result.getOffHeapMatrix();
+				reach = result.getCounts();
+				for(Map.Entry<String, Long> counter : result.getCounters().entrySet())
+				{
+					timer.count(counter.getKey(), counter.getValue());
+				}
+			}
+			catch (IOException ex)
+			{
+				ex.printStackTrace();
+			}
+			timer.count("files", nrFiles);
+			timer.count("edges", dep.getEdgeCount());
 		}
+		timer.stop();
+	}
+	
+	/**
+	 * Gets the engine that calculated the visibility matrix the last time.
+	 * 
+	 * @return  the engine, or null if the visibility matrix has not been calculated
+	 */
+	public ClosureEngine getClosureEngine()
+	{
+		return usedEngine;
 	}
 	
 	/**
@@ -257,19 +808,43 @@ public class DSMData
 	 */
 	public void calcFanInOut()
 	{
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "fanInOut");
 		logger.info("Calculating VFI and VFO.");
-		if(vis == null)
+		if(vis == null && closure == null && reach == null)
 		{
 			logger.info("Error: The visibility matrix has not been properly initialized.");
 		}
 		else
 		{
-			DoubleMatrix temp = vis.truth();
-			this.vfi = temp.columnSums();
-			this.vfo = temp.rowSums();
+			if(reach == null && closure != null)
+			{
+				reach = closure.reachabilityCounts();
+			}
+			if(reach != null)
+			{
+				int[] inCounts = reach.getVFI();
+				int[] outCounts = reach.getVFO();
+				this.vfi = new DoubleMatrix(1, nrFiles);
+				this.vfo = new DoubleMatrix(nrFiles, 1);
+				for(int i = 0; i < nrFiles; i++)
+				{
+					this.vfi.put(i, inCounts[i]);
+					this.vfo.put(i, outCounts[i]);
+				}
+			}
+			else
+			{
+				DoubleMatrix temp = vis.truth();
+				this.vfi = temp.columnSums();
+				this.vfo = temp.rowSums();
+			}
 			double isum = this.vfi.sum();
 			double osum = this.vfo.sum();
-			if(isum == osum)
+			if(reach instanceof ReachabilityEstimate)
+			{
+				logger.info("Estimated VFI sum: " + isum + "\tEstimated VFO sum: " + osum);
+			}
+			else if(isum == osum)
 			{
 				logger.info("VFI sum: " + isum + "\tVFO sum: " + osum);
 			}
@@ -278,7 +853,9 @@ public class DSMData
 				logger.info("The VFI and VFO are not correct. Their sums should be equal. \nVFI sum: "
 						+ isum + "\tVFO sum: " + osum);
 			}
+			timer.count("visibleEntries", (long) isum);
 		}
+		timer.stop();
 	}
 	
 	/**
@@ -291,6 +868,7 @@ public class DSMData
 	 */
 	public void calcPropCost()
 	{
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "propCost");
 		logger.info("Calculating Propagation Cost.");
 		if(vfi == null || vfo == null)
 		{
@@ -298,9 +876,19 @@ public class DSMData
 		}
 		else
 		{
-			double cost1 = this.vfi.sum()/(this.nrFiles * this.nrFiles);
-			double cost2 = this.vfo.sum()/(this.nrFiles * this.nrFiles);
-			if(cost1 == cost2)
+			double cost1 = this.vfi.sum()/((double) this.nrFiles * this.nrFiles);
+			double cost2 = this.vfo.sum()/((double) this.nrFiles * this.nrFiles);
+			propCostError = 0;
+			if(reach instanceof ReachabilityEstimate)
+			{
+				ReachabilityEstimate estimate = (ReachabilityEstimate) reach;
+				this.propCost = estimate.getTotal() / ((double) this.nrFiles * this.nrFiles);
+				propCostError = CONFIDENCE_Z * estimate.getStandardError()
+						/ ((double) this.nrFiles * this.nrFiles);
+				logger.info("Estimated Propagation Cost: " + this.propCost
+						+ " (95% confidence interval +/- " + propCostError + ")");
+			}
+			else if(cost1 == cost2)
 			{
 				this.propCost = cost1;
 				logger.info("Propagation Cost: " + cost1);
@@ -312,6 +900,7 @@ public class DSMData
 						+ "\nPropagation Cost: " + this.propCost);
 			}
 		}
+		timer.stop();
 	}
 	
 	/**
@@ -323,7 +912,8 @@ public class DSMData
 	 */
 	public void calcPropCostSelf()
 	{
-		if(vis == null)
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "propCostSelf");
+		if(vis == null && closure == null && reach == null)
 		{
 			logger.info("Error: The visibility matrix has not been properly initialized.");
 		}
@@ -333,20 +923,42 @@ public class DSMData
 			{
 				logger.info("Calculating propagation cost with self-dependencies.");
 				
-				DoubleMatrix temp = DoubleMatrix.eye(nrFiles).add(vis);
-				temp = temp.truth();
-				propCost2 = temp.sum() / (nrFiles * nrFiles);
+				if(reach != null)
+				{
+					double sum = reach.getTotal() + nrFiles - reach.getSelfVisible();
+					propCost2 = sum / ((double) nrFiles * nrFiles);
+				}
+				else if(closure != null)
+				{
+					double sum = closure.cardinality() + nrFiles - closure.diagonalCardinality();
+					propCost2 = sum / ((double) nrFiles * nrFiles);
+				}
+				else
+				{
+					DoubleMatrix temp = DoubleMatrix.eye(nrFiles).add(vis);
+					temp = temp.truth();
+					propCost2 = temp.sum() / (nrFiles * nrFiles);
+				}
 				
-				logger.info("Propagation Cost with self-dependencies: " + propCost2);
+				if(reach instanceof ReachabilityEstimate)
+				{
+					logger.info("Estimated Propagation Cost with self-dependencies: " + propCost2
+							+ " (95% confidence interval +/- " + propCostError + ")");
+				}
+				else
+				{
+					logger.info("Propagation Cost with self-dependencies: " + propCost2);
+				}
 			}
 		}
+		timer.stop();
 	}
 	
 	
 	/**
-	 * Initializes the array of cyclic components (<code>CycleComponent</code>)
-	 * that will be used in finding cyclic groups. Also sorts the array as per the
-	 * order defined in the <code>compareTo()</code> method in <code>CycleComponent</code>,
+	 * Initializes the store of cyclic components (<code>CycleComponentStore</code>)
+	 * that will be used in finding cyclic groups. The store sorts the components in
+	 * the order defined in the <code>compareTo()</code> method in <code>CycleComponent</code>,
 	 * which is descending by a component's VFI, then ascending by VFO.
 	 * <br><br>
 	 * The VFI and VFO must be properly calculated prior to calling this method.
@@ -360,24 +972,104 @@ public class DSMData
 		}
 		else
 		{
-			components = new CycleComponent[nrFiles];
+			int[] inCounts = new int[nrFiles];
+			int[] outCounts = new int[nrFiles];
 			for(int i = 0; i < nrFiles; i++)
 			{
-				components[i] = new CycleComponent(i, vfi.get(i), vfo.get(i));
+				inCounts[i] = (int) vfi.get(i);
+				outCounts[i] = (int) vfo.get(i);
 			}
-			Arrays.sort(components);
+			components = new CycleComponentStore(inCounts, outCounts, cyclicGroups);
 			logger.info("Finished list of cyclic group components.");
 		}
 	}
 	
 	/**
 	 * Wrapper method that groups and calls all Core-related methods together.
+	 * The exact cyclic groups and Core size are found from the dependency matrix.
+	 * If the VFI and VFO have been calculated, the Core size is also estimated
+	 * the original way.
 	 */
 	public void findCoreSize()
 	{
-		initializeCyclicComponents();
-		findCounts();
-		findMaxCycleSize();
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "core");
+		findCyclicGroups();
+		if(vfi != null && vfo != null)
+		{
+			initializeCyclicComponents();
+			findCounts();
+			findMaxCycleSize();
+		}
+		timer.count("cyclicGroups", nrCyclicGroups);
+		timer.count("coreSize", coreSize);
+		timer.stop();
+	}
+	
+	/**
+	 * Assigns each component to its cyclic group by finding the strongly connected
+	 * components of the dependency matrix, and records the size of the largest one
+	 * (the Core) in the coreSize field of this object.<br>
+	 * <br>
+	 * Only strongly connected components with more than one member are cyclic groups.
+	 * They are numbered starting at 1 from the largest to the smallest (ties are broken
+	 * by the index of their first member), so the Core is group 1. Components that are
+	 * not part of any cycle are given group 0.
+	 * <br><br>
+	 * The DSM must be properly initialized prior to calling this method.
+	 */
+	private void findCyclicGroups()
+	{
+		logger.info("Finding cyclic groups.");
+		if(dep == null)
+		{
+			logger.info("Error: Dependency Matrix has not been properly initialized.");
+		}
+		else
+		{
+			StronglyConnectedComponents scc = new StronglyConnectedComponents(dep);
+			
+			//sort the cyclic groups by size, then by first member, packed into one key
+			int[] first = new int[scc.getComponentCount()];
+			Arrays.fill(first, -1);
+			int groups = 0;
+			for(int i = 0; i < nrFiles; i++)
+			{
+				int c = scc.getComponent(i);
+				if(first[c] == -1)
+				{
+					first[c] = i;
+					if(scc.getComponentSize(c) > 1)
+					{
+						groups++;
+					}
+				}
+			}
+			long[] keys = new long[groups];
+			int g = 0;
+			for(int c = 0; c < first.length; c++)
+			{
+				if(scc.getComponentSize(c) > 1)
+				{
+					keys[g++] = ((long) (nrFiles - scc.getComponentSize(c)) << 32) | first[c];
+				}
+			}
+			Arrays.sort(keys);
+			
+			int[] groupOf = new int[first.length];
+			for(g = 0; g < groups; g++)
+			{
+				groupOf[scc.getComponent((int) keys[g])] = g + 1;
+			}
+			cyclicGroups = new int[nrFiles];
+			for(int i = 0; i < nrFiles; i++)
+			{
+				cyclicGroups[i] = groupOf[scc.getComponent(i)];
+			}
+			nrCyclicGroups = groups;
+			coreSize = scc.getLargestComponentSize();
+			logger.info("Found " + nrCyclicGroups + " cyclic groups.");
+			logger.info("Largest cycle (Core) size: " + coreSize);
+		}
 	}
 	
 	/**
@@ -400,29 +1092,13 @@ public class DSMData
 		{
 			logger.info("Error: Components array is not properly initialized yet.");
 		}
-		else if(components.length == 0)
+		else if(components.size() == 0)
 		{
 			logger.info("Error: Components array is empty.");
 		}
 		else
 		{
-			int currentCount = 1;
-			components[0].setCount(currentCount);
-			for(int i = 1; i < components.length; i++)
-			{
-				if(components[i].getVFI() == components[i-1].getVFI()
-						&& components[i].getVFO() == components[i-1].getVFO()
-						&& components[i].getVFO() > 1
-						&& components[i].getVFI() > 1)
-				{
-					currentCount++;
-				}
-				else
-				{
-					currentCount = 1;
-				}
-				components[i].setCount(currentCount);
-			}
+			components.findCounts();
 			logger.info("Finished calculating counts.");
 		}
 	}
@@ -442,83 +1118,287 @@ public class DSMData
 	 * (therefore, the component with the accumulation of all of the countMs).
 	 * <br><br>
 	 * During this process, the when a cyclic group size is found that as
-	 * greater than the current coreSize, the coreSize is updated with the
-	 * greater value.
+	 * greater than the current coreSizeEstimate, the coreSizeEstimate is updated
+	 * with the greater value.
 	 */
 	private void findMaxCycleSize()
 	{
 		logger.info("Updating maximum cycle sizes.");
-		int start = 0;
-		int newCount = 0;
-		for(int i = 1; i < components.length+1; i++)
+		int largest = components.findMaxCycleSizes();
+		if(largest > coreSizeEstimate)
 		{
-			if(i == components.length || components[i].getCount() == 1)
-			{
-				CycleComponent temp = components[i-1];
-				newCount = min(temp.getCount(), temp.getVFI(), temp.getVFO());
-				if(newCount < 1)
-				{
-					newCount = 1;
-				}
-				if(newCount > coreSize)
-				{
-					coreSize = newCount;
-				}
-				for(int j = start; j < i; j++)
-				{
-					components[j].setMaxCycleSize(newCount);
-				}
-				start = i;
-			}
+			coreSizeEstimate = largest;
 		}
 		logger.info("Finished maximum cycle sizes.");
-		logger.info("Largest cycle (Core) size: " + coreSize);
+		logger.info("Estimated largest cycle (Core) size: " + coreSizeEstimate);
+	}
+	
+
+	/**
+	 * Gets the number of files (classes) in the DSM.
+	 * 
+	 * @return  the size of the DSM
+	 */
+	public int getNrFiles()
+	{
+		return nrFiles;
+	}
+	
+	/**
+	 * Gets the sum of the fan-in visibilities of all elements.
+	 * 
+	 * @return  the VFI sum, or 0 if the VFI has not been calculated
+	 */
+	public double getVFISum()
+	{
+		return (vfi == null) ? 0 : vfi.sum();
+	}
+	
+	/**
+	 * Gets the sum of the fan-out visibilities of all elements.
+	 * 
+	 * @return  the VFO sum, or 0 if the VFO has not been calculated
+	 */
+	public double getVFOSum()
+	{
+		return (vfo == null) ? 0 : vfo.sum();
 	}
 	
 	/**
-	 * A quick method to find the minimum for finding the maximum
-	 * cyclic group size. All numbers are assumed to actually be
-	 * integers, even though they are declared doubles, based on the
-	 * fact that the VFI and VFO must be whole numbers.
-	 * @param a  the count
-	 * @param b  the VFI
-	 * @param c  the VFO
-	 * @return  the minimum of the parameters
+	 * Gets the propagation cost, without self-dependencies.
+	 * 
+	 * @return  the propagation cost
+	 */
+	public double getPropCost()
+	{
+		return propCost;
+	}
+	
+	/**
+	 * Gets half the width of the 95% confidence interval of the propagation costs
+	 * (both with and without self-dependencies), in the <code>APPROXIMATE</code>
+	 * visibility mode. The interval is conservative: it assumes the errors of all
+	 * the estimates add up.
+	 * 
+	 * @return  the error bound, or 0 if the propagation costs are exact
 	 */
-	private int min(int a, double b, double c)
+	public double getPropCostError()
 	{
-		int temp1;
-		if(a < b)
+		return propCostError;
+	}
+	
+	/**
+	 * Gets the propagation cost with self-dependencies. This is only calculated
+	 * if <code>calcPropCost2</code> was set.
+	 * 
+	 * @return  the propagation cost with self-dependencies
+	 */
+	public double getPropCost2()
+	{
+		return propCost2;
+	}
+	
+	/**
+	 * Gets the dependency matrix.
+	 * 
+	 * @return  the dependency matrix, or null if it has not been loaded
+	 */
+	public SparseDependencyMatrix getDependencyMatrix()
+	{
+		return dep;
+	}
+	
+	/**
+	 * Gets the bit-packed visibility matrix. This is only kept by the
+	 * <code>BITSET</code>, <code>CONDENSED_BITSET</code>, and <code>PARALLEL</code>
+	 * visibility modes, and by the <code>AUTO</code> mode when it fits in the heap.
+	 * 
+	 * @return  the visibility matrix, or null if it was not kept
+	 */
+	public BitMatrix getVisibilityMatrix()
+	{
+		return closure;
+	}
+	
+	/**
+	 * Builds an index that answers which classes a class can see and which can see
+	 * it, without the visibility matrix. The index is built from the dependency
+	 * matrix, whatever the visibility mode.
+	 * 
+	 * @return  the reachability index, or null if the DSM has not been loaded
+	 */
+	public ReachabilityIndex getReachabilityIndex()
+	{
+		if(dep == null)
 		{
-			temp1 = a;
+			logger.info("Error: Dependency Matrix has not been properly initialized.");
+			return null;
 		}
-		else
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "index");
+		ReachabilityIndex index = new ReachabilityIndex(dep);
+		timer.count("indexBytes", index.getIndexBytes());
+		timer.stop();
+		return index;
+	}
+	
+	/**
+	 * Creates an object that finds the classes affected by a change to some classes,
+	 * and the change in the VFI and VFO sums, propagation costs, and Core size when
+	 * the change also adds or removes dependencies. This DSMData is not changed.
+	 * 
+	 * @return  the change-impact analysis, or null if the DSM has not been loaded
+	 */
+	public ChangeImpactAnalysis changeImpactAnalysis()
+	{
+		if(dep == null)
 		{
-			temp1 = (int) b;
+			logger.info("Error: Dependency Matrix has not been properly initialized.");
+			return null;
 		}
-		if(temp1 < c)
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "impact");
+		ChangeImpactAnalysis analysis = new ChangeImpactAnalysis(dep);
+		timer.stop();
+		return analysis;
+	}
+	
+	/**
+	 * Clusters this DSM, on the pool given with <code>setForkJoinPool()</code> or the
+	 * common pool. The cost of the clusters is the same as jDSM's clustered cost.
+	 * 
+	 * @param busThreshold  the part of all elements (between 0 and 1) that must depend
+	 * on an element for it to be a vertical bus, such as
+	 * <code>DSMClustering.DEFAULT_BUS_THRESHOLD</code>
+	 * @return  the clusters and their cost, or null if the DSM has not been loaded
+	 */
+	public DSMClustering cluster(double busThreshold)
+	{
+		if(dep == null)
 		{
-			return temp1;
+			logger.info("Error: Dependency Matrix has not been properly initialized.");
+			return null;
 		}
-		else
+		ForkJoinPool p = (pool == null) ? ForkJoinPool.commonPool() : pool;
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMData", "cluster", p);
+		DSMClustering clustering = new DSMClustering(dep, busThreshold, p);
+		logger.info("Clustered cost: " + clustering.getCost() + "\tRelative clustered cost: "
+				+ clustering.getRelativeCost());
+		timer.count("clusters", clustering.getClusterCount());
+		timer.count("moves", clustering.getMoveCount());
+		timer.stop();
+		return clustering;
+	}
+	
+	/**
+	 * Gets the visibility matrix that was calculated outside the heap.
+	 * 
+	 * @return  the visibility matrix, or null if the mode was not <code>OFF_HEAP</code>
+	 */
+	public OffHeapBitMatrix getOffHeapVisibilityMatrix()
+	{
+		return offHeapClosure;
+	}
+	
+	/**
+	 * Creates an object that keeps the visibility, VFI, VFO, propagation costs,
+	 * and Core of this DSM up to date as dependencies are added and removed.
+	 * The bit-packed visibility matrix is reused if it was kept, and calculated
+	 * otherwise. This DSMData is not changed.
+	 * 
+	 * @return  the incremental visibility, starting from this DSM
+	 */
+	public IncrementalVisibility incrementalVisibility()
+	{
+		return new IncrementalVisibility(dep, closure);
+	}
+	
+	/**
+	 * Creates an object that rolls this DSM up to packages, package prefixes, and
+	 * modules, and calculates the VFI, VFO, propagation costs, and Core of each
+	 * level. The dependency matrix must have the class names.
+	 * 
+	 * @return  the hierarchy of this DSM
+	 */
+	public DSMHierarchy getHierarchy()
+	{
+		DSMHierarchy hierarchy = new DSMHierarchy(dep);
+		hierarchy.setMetricsSink(metricsSink);
+		return hierarchy;
+	}
+	
+	/**
+	 * Gets the Core size, which is the size of the largest cyclic group.
+	 * 
+	 * @return  the Core size
+	 */
+	public int getCoreSize()
+	{
+		return coreSize;
+	}
+	
+	/**
+	 * Gets the estimated Core size, which is the maximum size that would be
+	 * possible for the largest cyclic group according to the VFI and VFO.
+	 * 
+	 * @return  the estimated Core size, or 0 if the VFI and VFO were not calculated
+	 */
+	public int getCoreSizeEstimate()
+	{
+		return coreSizeEstimate;
+	}
+	
+	/**
+	 * Gets the number of cyclic groups (groups of more than one component).
+	 * 
+	 * @return  the number of cyclic groups
+	 */
+	public int getCyclicGroupCount()
+	{
+		return nrCyclicGroups;
+	}
+	
+	/**
+	 * Gets the cyclic group of a component. Groups are numbered from largest
+	 * to smallest, so the Core is group 1.
+	 * 
+	 * @param index  the index of the component in the DSM
+	 * @return  the number of the cyclic group, or 0 if it is not part of any cycle
+	 */
+	public int getCyclicGroup(int index)
+	{
+		return cyclicGroups[index];
+	}
+	
+	/**
+	 * Gets the indices of the components in the Core (cyclic group 1).
+	 * 
+	 * @return  the indices of the Core members, which is empty if there are no cycles
+	 */
+	public int[] getCoreMembers()
+	{
+		int[] members = new int[nrFiles];
+		int count = 0;
+		for(int i = 0; i < nrFiles; i++)
 		{
-			return (int) c;
+			if(cyclicGroups[i] == 1)
+			{
+				members[count++] = i;
+			}
 		}
+		return Arrays.copyOf(members, count);
 	}
 	
-
 	/**
 	 * Prints each of the components' VFI, VFO, and countM. Used for debugging.
 	 */
 	private void printCounts()
 	{
-		for(int i = 0; i < components.length; i++)
+		for(int k = 0; k < components.size(); k++)
 		{
-			if(components[i].getCount() > 1)
+			if(components.getCount(k) > 1)
 			{
-				System.out.println("VFI: " + components[i].getVFI()
-								+ "\tVFO: " + components[i].getVFO()
-								+ "\tCount: " + components[i].getCount());
+				System.out.println("VFI: " + components.getVFI(k)
+								+ "\tVFO: " + components.getVFO(k)
+								+ "\tCount: " + components.getCount(k));
 			}
 		}
 	}
@@ -531,7 +1411,11 @@ public class DSMData
 	 * 
 	 * @param dsmFilePath  path to the DSM XML file
 	 * @returns  the DSM
+	 * @deprecated  jDSM's XML does not load back into the same DSM. Save the DSM with
+	 * <code>saveBinary()</code> or <code>DSMFromDepToBinary()</code> instead, and load it
+	 * with the <code>BinaryDSMFile</code> constructor.
 	 */
+	@Deprecated
 	public DesignStructureMatrix<Dependency> getDSMFromXML(String dsmFilePath)
 	{
 		try
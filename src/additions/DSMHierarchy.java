@@ -0,0 +1,426 @@
+package additions;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Rolls a class-level dependency matrix up to packages, package prefixes, and
+ * modules, and calculates the VFI, VFO, propagation costs, and Core of each of
+ * these levels.<br>
+ * <br>
+ * The strongly connected components of the classes are found only once, in the
+ * constructor, and every level is calculated from them instead of from the class
+ * dependencies. A path between classes is also a path between their groups, so all
+ * groups that have classes in the same component can see each other, and group
+ * reachability only needs one representative group per component: the group of
+ * its first member is linked both ways to the other groups of its members, and
+ * each dependency of the condensation links the representatives of its two
+ * components. This graph has the same reachability as the grouped DSM, and it has
+ * at most one edge per condensation edge plus two per class, so each level costs
+ * little more than building its group names. Its reachable sets are then found
+ * with <code>CondensationReachability</code> as for the classes.<br>
+ * <br>
+ * The dependency matrix of each level (what is drawn in its DSM) is still built
+ * from the class dependencies, since the graph above only keeps reachability.<br>
+ * <br>
+ * Levels:
+ * <ul>
+ * 	<li><code>package</code>: the package of the class (everything before the last dot)</li>
+ * 	<li><code>prefixN</code>: the first N parts of the package name</li>
+ * 	<li><code>module</code>: the module whose package prefix is the longest match, from
+ * 	a properties file of <code>prefix=module</code> lines. Packages that match no prefix
+ * 	are their own module.</li>
+ * </ul>
+ * Classes in the default package are put in the group <code>(default)</code>.
+ */
+public class DSMHierarchy
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(DSMHierarchy.class);
+	/** The name of the group of classes in the default package. */
+	public static final String DEFAULT_PACKAGE = "(default)";
+	/** The class-level dependency matrix. */
+	private SparseDependencyMatrix dep;
+	/** The strongly connected components of the classes. */
+	private Condensation cond;
+	/** Where the time of each level is sent. */
+	private MetricsSink metricsSink = PhaseTimer.getDefaultSink();
+
+	/**
+	 * Constructor that finds the strongly connected components of the classes.
+	 *
+	 * @param dep  the class-level dependency matrix, with the class names
+	 */
+	public DSMHierarchy(SparseDependencyMatrix dep)
+	{
+		this(dep, new Condensation(dep));
+	}
+
+	/**
+	 * Constructor with the strongly connected components already found.
+	 *
+	 * @param dep  the class-level dependency matrix, with the class names
+	 * @param cond  the condensation of the matrix
+	 */
+	public DSMHierarchy(SparseDependencyMatrix dep, Condensation cond)
+	{
+		if(dep.getNames() == null)
+		{
+			throw new IllegalArgumentException("The dependency matrix has no class names.");
+		}
+		this.dep = dep;
+		this.cond = cond;
+	}
+
+	/**
+	 * Sets where the time of each level is sent.
+	 *
+	 * @param sink  the metrics sink
+	 */
+	public void setMetricsSink(MetricsSink sink)
+	{
+		this.metricsSink = sink;
+	}
+
+	/**
+	 * Reads the modules from a properties file, where each line maps a package
+	 * prefix to the name of its module, such as <code>org.apache.commons.io=commons-io</code>.
+	 *
+	 * @param path  the path of the properties file
+	 * @return  the module of each prefix
+	 * @throws IOException  if the file cannot be read
+	 */
+	public static Map<String, String> loadModules(String path) throws IOException
+	{
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(path);
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		Map<String, String> modules = new HashMap<String, String>();
+		for(String prefix : props.stringPropertyNames())
+		{
+			modules.put(prefix, props.getProperty(prefix).trim());
+		}
+		return modules;
+	}
+
+	/**
+	 * Gets the package of a class.
+	 *
+	 * @param className  the fully qualified name of the class
+	 * @return  the package, or <code>(default)</code> for the default package
+	 */
+	public static String packageOf(String className)
+	{
+		int dot = className.lastIndexOf('.');
+		return (dot < 0) ? DEFAULT_PACKAGE : className.substring(0, dot);
+	}
+
+	/**
+	 * Calculates the package level.
+	 *
+	 * @return  the package level
+	 */
+	public DSMLevel getPackageLevel()
+	{
+		String[] groups = new String[dep.size()];
+		for(int i = 0; i < groups.length; i++)
+		{
+			groups[i] = packageOf(dep.getName(i));
+		}
+		return rollUp("package", groups);
+	}
+
+	/**
+	 * Calculates the level of package prefixes with the given number of parts.
+	 * Packages with fewer parts are their own group.
+	 *
+	 * @param depth  the number of parts, at least 1
+	 * @return  the prefix level
+	 */
+	public DSMLevel getPrefixLevel(int depth)
+	{
+		if(depth < 1)
+		{
+			throw new IllegalArgumentException("The prefix depth must be at least 1: " + depth);
+		}
+		String[] groups = new String[dep.size()];
+		for(int i = 0; i < groups.length; i++)
+		{
+			String pkg = packageOf(dep.getName(i));
+			int end = -1;
+			for(int k = 0; k < depth; k++)
+			{
+				end = pkg.indexOf('.', end + 1);
+				if(end < 0)
+				{
+					break;
+				}
+			}
+			groups[i] = (end < 0) ? pkg : pkg.substring(0, end);
+		}
+		return rollUp("prefix" + depth, groups);
+	}
+
+	/**
+	 * Calculates the module level. Each package belongs to the module of the
+	 * longest prefix that matches it at a dot, or is its own module if none does.
+	 *
+	 * @param modules  the module of each package prefix
+	 * @return  the module level
+	 */
+	public DSMLevel getModuleLevel(Map<String, String> modules)
+	{
+		Map<String, String> moduleOfPackage = new HashMap<String, String>();
+		String[] groups = new String[dep.size()];
+		for(int i = 0; i < groups.length; i++)
+		{
+			String pkg = packageOf(dep.getName(i));
+			String module = moduleOfPackage.get(pkg);
+			if(module == null)
+			{
+				module = pkg;
+				String prefix = pkg;
+				while(true)
+				{
+					String m = modules.get(prefix);
+					if(m != null)
+					{
+						module = m;
+						break;
+					}
+					int dot = prefix.lastIndexOf('.');
+					if(dot < 0)
+					{
+						break;
+					}
+					prefix = prefix.substring(0, dot);
+				}
+				moduleOfPackage.put(pkg, module);
+			}
+			groups[i] = module;
+		}
+		return rollUp("module", groups);
+	}
+
+	/**
+	 * Calculates the package level, the prefix levels from the given depth up
+	 * to 1, and the module level if modules are given, in that order.
+	 *
+	 * @param maxDepth  the deepest prefix level, or 0 for none
+	 * @param modules  the module of each package prefix, or null for no module level
+	 * @return  the levels
+	 */
+	public List<DSMLevel> getLevels(int maxDepth, Map<String, String> modules)
+	{
+		List<DSMLevel> levels = new ArrayList<DSMLevel>();
+		levels.add(getPackageLevel());
+		for(int depth = maxDepth; depth >= 1; depth--)
+		{
+			levels.add(getPrefixLevel(depth));
+		}
+		if(modules != null)
+		{
+			levels.add(getModuleLevel(modules));
+		}
+		return levels;
+	}
+
+	/**
+	 * Calculates a level where each class is put in the named group.
+	 *
+	 * @param levelName  the name of the level
+	 * @param groupNames  the name of the group of each class
+	 * @return  the level
+	 */
+	public DSMLevel rollUp(String levelName, String[] groupNames)
+	{
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "DSMHierarchy", levelName);
+		int n = dep.size();
+
+		//number the groups in the order their first classes appear
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		int[] groupOf = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			Integer g = index.get(groupNames[i]);
+			if(g == null)
+			{
+				g = names.size();
+				index.put(groupNames[i], g);
+				names.add(groupNames[i]);
+			}
+			groupOf[i] = g;
+		}
+		int size = names.size();
+		int[] classCounts = new int[size];
+		for(int i = 0; i < n; i++)
+		{
+			classCounts[groupOf[i]]++;
+		}
+
+		SparseDependencyMatrix grouped = groupDependencies(groupOf, size,
+				names.toArray(new String[size]));
+		Condensation groupCond = new Condensation(reachabilityGraph(groupOf, size));
+		ReachabilityCounts counts = new CondensationReachability(groupCond, false).getCounts();
+
+		double cells = (double) size * size;
+		double propCost = counts.getTotal() / cells;
+		double propCost2 = (counts.getTotal() + size - counts.getSelfVisible()) / cells;
+		int[] cyclicGroups = new int[size];
+		int nrCyclicGroups = numberCyclicGroups(groupCond, cyclicGroups);
+		int coreSize = 0;
+		for(int c = 0; c < groupCond.getComponentCount(); c++)
+		{
+			coreSize = Math.max(coreSize, groupCond.getComponentSize(c));
+		}
+		logger.info("Level " + levelName + ": " + size + " groups, " + grouped.getEdgeCount()
+				+ " dependencies, propagation cost " + propCost + ", Core size " + coreSize);
+		timer.count("groups", size);
+		timer.count("edges", grouped.getEdgeCount());
+		timer.stop();
+		return new DSMLevel(levelName, groupOf, classCounts, grouped,
+				new DSMResults(counts.getVFI(), counts.getVFO(), propCost, propCost2, true,
+						cyclicGroups, nrCyclicGroups, coreSize));
+	}
+
+	/**
+	 * Builds the dependencies between the groups from the dependencies between
+	 * their classes, leaving out those within a group.
+	 *
+	 * @param groupOf  the group of each class
+	 * @param size  the number of groups
+	 * @param names  the name of each group
+	 * @return  the grouped dependency matrix
+	 */
+	private SparseDependencyMatrix groupDependencies(int[] groupOf, int size, String[] names)
+	{
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		int[] from = new int[rowStart[dep.size()]];
+		int[] to = new int[from.length];
+		int edges = 0;
+		for(int i = 0; i < dep.size(); i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				if(groupOf[columns[p]] != groupOf[i])
+				{
+					from[edges] = groupOf[i];
+					to[edges] = groupOf[columns[p]];
+					edges++;
+				}
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(size, from, to, edges, names);
+	}
+
+	/**
+	 * Builds a graph over the groups with the same reachability as the grouped
+	 * dependencies, from the class condensation (see the class description).
+	 *
+	 * @param groupOf  the group of each class
+	 * @param size  the number of groups
+	 * @return  the graph
+	 */
+	private SparseDependencyMatrix reachabilityGraph(int[] groupOf, int size)
+	{
+		int count = cond.getComponentCount();
+		SparseDependencyMatrix dag = cond.getDAG();
+		int[] rowStart = dag.getRowStarts();
+		int[] columns = dag.getColumns();
+		int[] rep = new int[count];
+		for(int c = 0; c < count; c++)
+		{
+			rep[c] = groupOf[cond.getMember(c, 0)];
+		}
+
+		int max = rowStart[count] + 2 * cond.getElementCount();
+		int[] from = new int[max];
+		int[] to = new int[max];
+		int edges = 0;
+		for(int c = 0; c < count; c++)
+		{
+			for(int k = 1; k < cond.getComponentSize(c); k++)
+			{
+				int g = groupOf[cond.getMember(c, k)];
+				if(g != rep[c])
+				{
+					from[edges] = rep[c];
+					to[edges++] = g;
+					from[edges] = g;
+					to[edges++] = rep[c];
+				}
+			}
+			for(int p = rowStart[c]; p < rowStart[c + 1]; p++)
+			{
+				if(rep[columns[p]] != rep[c])
+				{
+					from[edges] = rep[c];
+					to[edges++] = rep[columns[p]];
+				}
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(size, from, to, edges, null);
+	}
+
+	/**
+	 * Numbers the cyclic groups of a level as <code>DSMData</code> does: from
+	 * the largest to the smallest starting at 1, with ties broken by the index of
+	 * their first member, and 0 for groups that are not part of any cycle.
+	 *
+	 * @param groupCond  the condensation of the level
+	 * @param cyclicGroups  filled with the cyclic group of each group
+	 * @return  the number of cyclic groups
+	 */
+	private static int numberCyclicGroups(Condensation groupCond, int[] cyclicGroups)
+	{
+		int size = groupCond.getElementCount();
+		int count = groupCond.getComponentCount();
+		int groups = 0;
+		for(int c = 0; c < count; c++)
+		{
+			if(groupCond.isCyclic(c))
+			{
+				groups++;
+			}
+		}
+		long[] keys = new long[groups];
+		int g = 0;
+		for(int c = 0; c < count; c++)
+		{
+			if(groupCond.isCyclic(c))
+			{
+				//members are in ascending order, so the first one is the smallest
+				keys[g++] = ((long) (size - groupCond.getComponentSize(c)) << 32)
+						| groupCond.getMember(c, 0);
+			}
+		}
+		Arrays.sort(keys);
+		for(g = 0; g < groups; g++)
+		{
+			int c = groupCond.getComponent((int) keys[g]);
+			for(int k = 0; k < groupCond.getComponentSize(c); k++)
+			{
+				cyclicGroups[groupCond.getMember(c, k)] = g + 1;
+			}
+		}
+		return groups;
+	}
+}
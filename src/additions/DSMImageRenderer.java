@@ -0,0 +1,469 @@
+package additions;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Draws a dependency or visibility matrix as a PNG density image, or as a
+ * pyramid of PNG tiles that a map viewer can zoom into. Unlike jDSM's
+ * <code>SVGOutput</code>, which writes one SVG element per cell, the cells are
+ * added up in square blocks of one pixel each, so the image size does not
+ * depend on the size of the matrix.<br>
+ * <br>
+ * The darkness of a pixel grows with the logarithm of the number of dependencies
+ * in its block, so that a single dependency is still visible in a large block.
+ * If cyclic groups are given with <code>setGroups()</code>, dependencies between
+ * members of the Core are drawn in red and those inside other cyclic groups in
+ * blue, and the members of each group can be drawn next to each other.<br>
+ * <br>
+ * The image is drawn in bands of pixel rows, which are rendered in parallel on a
+ * <code>ForkJoinPool</code> and written in order through a <code>PngWriter</code>.
+ * Only a few bands are held at once, so the memory used depends on the width of
+ * the image and not on its height or on the size of the matrix. The tiles of a
+ * pyramid are rendered a row of tiles at a time, in one pass over the matrix rows
+ * that the row of tiles covers, and only the tiles with dependencies get pixels,
+ * so each level goes through the matrix once, whatever the number of tiles.
+ */
+public class DSMImageRenderer
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(DSMImageRenderer.class);
+	/** The number of pixel rows rendered by one task. */
+	private static final int BAND_HEIGHT = 16;
+	/** The width and height of each tile of a pyramid, in pixels. */
+	public static final int TILE_SIZE = 256;
+	/** The lightest shade used for a block with any dependencies, from 0 (none) to 1 (full). */
+	private static final double MIN_SHADE = 0.3;
+	/** The kind of a pixel with dependencies inside other cyclic groups. */
+	private static final byte CYCLIC = 1;
+	/** The kind of a pixel with dependencies inside the Core, which is drawn over <code>CYCLIC</code>. */
+	private static final byte CORE = 2;
+
+	/** The dependency matrix to draw, or null if the visibility matrix is drawn. */
+	private SparseDependencyMatrix dep;
+	/** The visibility matrix to draw, or null if the dependency matrix is drawn. */
+	private BitMatrix closure;
+	/** The number of rows and columns. */
+	private int size;
+	/** The element drawn at each position. */
+	private int[] order;
+	/** The position each element is drawn at. */
+	private int[] position;
+	/** The cyclic group of each element (1 for the Core), or null to not highlight any. */
+	private int[] groups;
+	/** The pool that renders the bands and tiles. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructor for drawing a dependency matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public DSMImageRenderer(SparseDependencyMatrix dep)
+	{
+		this.dep = dep;
+		this.closure = null;
+		init(dep.size());
+	}
+
+	/**
+	 * Constructor for drawing a visibility matrix.
+	 *
+	 * @param closure  the visibility matrix
+	 */
+	public DSMImageRenderer(BitMatrix closure)
+	{
+		this.dep = null;
+		this.closure = closure;
+		init(closure.size());
+	}
+
+	/**
+	 * Sets the size and draws the elements in their original order.
+	 *
+	 * @param n  the number of rows and columns
+	 */
+	private void init(int n)
+	{
+		size = n;
+		order = new int[n];
+		position = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			order[i] = i;
+			position[i] = i;
+		}
+		groups = null;
+		pool = ForkJoinPool.commonPool();
+	}
+
+	/**
+	 * Sets the cyclic groups to highlight, as found by <code>DSMData</code>.
+	 *
+	 * @param cyclicGroups  the cyclic group of each element, 1 for the Core and 0
+	 * for elements that are not in any cycle
+	 * @param groupTogether  true to draw the Core first, then each other cyclic group
+	 * in order, then the remaining elements in their original order
+	 */
+	public void setGroups(int[] cyclicGroups, boolean groupTogether)
+	{
+		groups = cyclicGroups;
+		if(!groupTogether)
+		{
+			return;
+		}
+		int maxGroup = 0;
+		for(int g : cyclicGroups)
+		{
+			maxGroup = Math.max(maxGroup, g);
+		}
+		//counting sort by group, with group 0 last
+		int[] start = new int[maxGroup + 2];
+		for(int g : cyclicGroups)
+		{
+			start[(g == 0 ? maxGroup : g - 1) + 1]++;
+		}
+		for(int g = 0; g <= maxGroup; g++)
+		{
+			start[g + 1] += start[g];
+		}
+		for(int i = 0; i < size; i++)
+		{
+			int g = cyclicGroups[i];
+			int p = start[g == 0 ? maxGroup : g - 1]++;
+			order[p] = i;
+			position[i] = p;
+		}
+	}
+
+	/**
+	 * Sets the pool used to render the image.
+	 *
+	 * @param pool  the pool to use
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * Writes the whole matrix as one PNG image, with each pixel showing a square
+	 * block of cells. The blocks are as small as possible while the image is at
+	 * most <code>maxPixels</code> wide.
+	 *
+	 * @param path  the path of the PNG file to write
+	 * @param maxPixels  the largest width and height of the image
+	 * @throws IOException  if the image cannot be written
+	 */
+	public void writeImage(String path, int maxPixels) throws IOException
+	{
+		final int block = Math.max(1, (size + maxPixels - 1) / maxPixels);
+		final int pixels = Math.max(1, (size + block - 1) / block);
+		logger.info("Drawing " + size + " x " + size + " matrix as a " + pixels + " x " + pixels
+				+ " image (" + block + " x " + block + " cells per pixel).");
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(path));
+		boolean done = false;
+		try
+		{
+			PngWriter png = new PngWriter(out, pixels, pixels);
+			byte[] blank = new byte[pixels * 3];
+			Arrays.fill(blank, (byte) 255);
+			int bands = (pixels + BAND_HEIGHT - 1) / BAND_HEIGHT;
+			int window = 2 * pool.getParallelism();
+			List<Future<byte[]>> rendered = new ArrayList<Future<byte[]>>();
+			int next = 0;
+			for(int b = 0; b < bands; b++)
+			{
+				//keep a few bands ahead of the writer, but no more
+				while(next < bands && next < b + window)
+				{
+					final int row = next * BAND_HEIGHT;
+					final int rows = Math.min(BAND_HEIGHT, pixels - row);
+					rendered.add(pool.submit(() -> render(row, rows, pixels, block)));
+					next++;
+				}
+				byte[] rgb = rendered.set(b, null).get();
+				int rows = Math.min(BAND_HEIGHT, pixels - b * BAND_HEIGHT);
+				for(int r = 0; r < rows; r++)
+				{
+					if(rgb == null)
+					{
+						png.writeRow(blank, 0);
+					}
+					else
+					{
+						png.writeRow(rgb, r * pixels * 3);
+					}
+				}
+			}
+			png.close();
+			done = true;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while drawing " + path, e);
+		}
+		catch(ExecutionException e)
+		{
+			throw new IOException("Could not draw " + path, e.getCause());
+		}
+		finally
+		{
+			if(!done)
+			{
+				out.close();
+			}
+		}
+		logger.info("Wrote " + path);
+	}
+
+	/**
+	 * Writes the matrix as a pyramid of <code>TILE_SIZE</code> pixel tiles, in
+	 * <code>folder/level/x/y.png</code>. At level 0 the whole matrix fits in one tile,
+	 * and each level after that doubles the resolution, up to the last level where
+	 * each pixel is one cell. Tiles without any dependencies are not written.
+	 *
+	 * @param folder  the folder to write the pyramid to
+	 * @return  the number of tiles written
+	 * @throws IOException  if a tile cannot be written
+	 */
+	public int writeTiles(String folder) throws IOException
+	{
+		int topBlock = 1;
+		while((long) topBlock * TILE_SIZE < size)
+		{
+			topBlock *= 2;
+		}
+		int levels = Integer.numberOfTrailingZeros(topBlock) + 1;
+		int written = 0;
+		for(int level = 0; level < levels; level++)
+		{
+			final int block = topBlock >> level;
+			int pixels = (size + block - 1) / block;
+			final int tiles = (pixels + TILE_SIZE - 1) / TILE_SIZE;
+			final File levelFolder = new File(folder, String.valueOf(level));
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for(int y = 0; y < tiles; y++)
+			{
+				final int tileRow = y;
+				results.add(pool.submit(() -> writeTileRow(levelFolder, tileRow, tiles, block)));
+			}
+			try
+			{
+				for(Future<Integer> result : results)
+				{
+					written += result.get();
+				}
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while drawing tiles", e);
+			}
+			catch(ExecutionException e)
+			{
+				throw new IOException("Could not draw tiles", e.getCause());
+			}
+		}
+		logger.info("Wrote " + written + " tiles in " + levels + " levels to " + folder);
+		return written;
+	}
+
+	/**
+	 * Renders and writes one row of tiles of a pyramid, leaving out the empty tiles.
+	 *
+	 * @param levelFolder  the folder of the level
+	 * @param y  the row of tiles
+	 * @param tiles  the number of tiles in each row
+	 * @param block  the number of cells per pixel in each direction
+	 * @return  the number of tiles written
+	 * @throws IOException  if a tile cannot be written
+	 */
+	private int writeTileRow(File levelFolder, int y, int tiles, int block) throws IOException
+	{
+		int[][] all = new int[tiles][];
+		byte[][] kinds = new byte[tiles][];
+		countBand(y * TILE_SIZE, TILE_SIZE, TILE_SIZE, block, all, kinds);
+		int written = 0;
+		for(int x = 0; x < tiles; x++)
+		{
+			if(all[x] == null)
+			{
+				continue;
+			}
+			byte[] rgb = shade(all[x], kinds[x], block);
+			File file = new File(levelFolder, x + "/" + y + ".png");
+			file.getParentFile().mkdirs();
+			PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file)),
+					TILE_SIZE, TILE_SIZE);
+			for(int r = 0; r < TILE_SIZE; r++)
+			{
+				png.writeRow(rgb, r * TILE_SIZE * 3);
+			}
+			png.close();
+			written++;
+		}
+		return written;
+	}
+
+	/**
+	 * Renders a band of pixel rows across the whole image.
+	 *
+	 * @param row  the first pixel row
+	 * @param rows  the number of pixel rows
+	 * @param cols  the number of pixel columns
+	 * @param block  the number of cells per pixel in each direction
+	 * @return  the red, green, and blue bytes of each pixel, row by row, or null
+	 * if the band has no dependencies in it
+	 */
+	private byte[] render(int row, int rows, int cols, int block)
+	{
+		int[][] all = new int[1][];
+		byte[][] kinds = new byte[1][];
+		countBand(row, rows, cols, block, all, kinds);
+		return (all[0] == null) ? null : shade(all[0], kinds[0], block);
+	}
+
+	/**
+	 * Counts the dependencies in each pixel of a band of pixel rows, going once
+	 * through the rows of the matrix that the band covers. The columns of the band
+	 * are split into parts of the same width, such as the tiles of a pyramid, and
+	 * each part only gets its pixel counts when a dependency falls in it.
+	 *
+	 * @param row  the first pixel row
+	 * @param rows  the number of pixel rows
+	 * @param width  the number of pixel columns in each part
+	 * @param block  the number of cells per pixel in each direction
+	 * @param all  filled with the number of dependencies in each pixel of each part
+	 * (row by row), or null for a part without any
+	 * @param kinds  filled with the kind of each pixel of each part (<code>CORE</code>,
+	 * <code>CYCLIC</code>, or 0), or left null if no cyclic groups are highlighted
+	 */
+	private void countBand(int row, int rows, int width, int block, int[][] all, byte[][] kinds)
+	{
+		int lastPos = (int) Math.min(size, (long) (row + rows) * block);
+		for(int p = row * block; p < lastPos; p++)
+		{
+			int i = order[p];
+			int base = (p / block - row) * width;
+			if(dep != null)
+			{
+				int[] rowStart = dep.getRowStarts();
+				int[] columns = dep.getColumns();
+				for(int e = rowStart[i]; e < rowStart[i + 1]; e++)
+				{
+					count(i, columns[e], rows, width, block, base, all, kinds);
+				}
+			}
+			else
+			{
+				long[] bits = closure.getRow(i);
+				for(int w = 0; w < bits.length; w++)
+				{
+					long word = bits[w];
+					while(word != 0)
+					{
+						int j = (w << 6) + Long.numberOfTrailingZeros(word);
+						count(i, j, rows, width, block, base, all, kinds);
+						word &= word - 1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds one dependency to the pixel it falls in, giving its part of the band
+	 * pixel counts when it is the first dependency there.
+	 *
+	 * @param i  the element that has the dependency
+	 * @param j  the element it depends on
+	 * @param rows  the number of pixel rows in the band
+	 * @param width  the number of pixel columns in each part of the band
+	 * @param block  the number of cells per pixel in each direction
+	 * @param base  the index of the first pixel in the pixel row of element i, in each part
+	 * @param all  the number of dependencies in each pixel of each part
+	 * @param kinds  the kind of each pixel of each part
+	 */
+	private void count(int i, int j, int rows, int width, int block, int base, int[][] all, byte[][] kinds)
+	{
+		int x = position[j] / block;
+		int part = x / width;
+		if(all[part] == null)
+		{
+			all[part] = new int[rows * width];
+			if(groups != null)
+			{
+				kinds[part] = new byte[rows * width];
+			}
+		}
+		int k = base + x - part * width;
+		all[part][k]++;
+		if(groups != null && groups[i] != 0 && groups[i] == groups[j])
+		{
+			byte kind = (groups[i] == 1) ? CORE : CYCLIC;
+			if(kinds[part][k] < kind)
+			{
+				kinds[part][k] = kind;
+			}
+		}
+	}
+
+	/**
+	 * Turns the dependency counts of a rectangle of pixels into colours.
+	 *
+	 * @param all  the number of dependencies in each pixel, row by row
+	 * @param kinds  the kind of each pixel, or null
+	 * @param block  the number of cells per pixel in each direction
+	 * @return  the red, green, and blue bytes of each pixel, row by row
+	 */
+	private byte[] shade(int[] all, byte[] kinds, int block)
+	{
+		double full = Math.log1p((double) block * block);
+		byte[] rgb = new byte[all.length * 3];
+		for(int k = 0; k < all.length; k++)
+		{
+			int red = 255;
+			int green = 255;
+			int blue = 255;
+			if(all[k] > 0)
+			{
+				double shade = MIN_SHADE + (1 - MIN_SHADE) * Math.log1p(all[k]) / full;
+				int light = (int) Math.round(255 * (1 - shade));
+				if(kinds != null && kinds[k] == CORE)
+				{
+					green = light;
+					blue = light;
+				}
+				else if(kinds != null && kinds[k] == CYCLIC)
+				{
+					red = light;
+					green = light;
+				}
+				else
+				{
+					red = light;
+					green = light;
+					blue = light;
+				}
+			}
+			rgb[3 * k] = (byte) red;
+			rgb[3 * k + 1] = (byte) green;
+			rgb[3 * k + 2] = (byte) blue;
+		}
+		return rgb;
+	}
+}
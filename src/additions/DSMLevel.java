@@ -0,0 +1,117 @@
+package additions;
+
+/**
+ * One level of a <code>DSMHierarchy</code>: the classes grouped into packages,
+ * package prefixes, or modules, with the dependencies between the groups and
+ * the VFI, VFO, propagation costs, and cyclic groups of the grouped DSM.<br>
+ * <br>
+ * A group depends on another group if any class in the first depends on any
+ * class in the second. Dependencies between classes of the same group are
+ * internal to it, so like the classes themselves, a group can only see itself
+ * if it is part of a cycle of groups.
+ */
+public class DSMLevel
+{
+	/** The name of the level. */
+	private String name;
+	/** The group of each class. */
+	private int[] groupOf;
+	/** The number of classes in each group. */
+	private int[] classCounts;
+	/** The dependencies between the groups, named after them. */
+	private SparseDependencyMatrix dep;
+	/** The results calculated for the grouped DSM. */
+	private DSMResults results;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param name  the name of the level
+	 * @param groupOf  the group of each class
+	 * @param classCounts  the number of classes in each group
+	 * @param dep  the dependencies between the groups
+	 * @param results  the results calculated for the grouped DSM
+	 */
+	public DSMLevel(String name, int[] groupOf, int[] classCounts, SparseDependencyMatrix dep,
+					DSMResults results)
+	{
+		this.name = name;
+		this.groupOf = groupOf;
+		this.classCounts = classCounts;
+		this.dep = dep;
+		this.results = results;
+	}
+
+	/**
+	 * Gets the name of the level, such as <code>package</code> or <code>prefix2</code>.
+	 *
+	 * @return  the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the number of groups.
+	 *
+	 * @return  the number of groups
+	 */
+	public int size()
+	{
+		return classCounts.length;
+	}
+
+	/**
+	 * Gets the name of a group.
+	 *
+	 * @param g  the index of the group
+	 * @return  the name
+	 */
+	public String getGroupName(int g)
+	{
+		return dep.getName(g);
+	}
+
+	/**
+	 * Gets the group of a class.
+	 *
+	 * @param index  the index of the class in the class-level matrix
+	 * @return  the index of its group
+	 */
+	public int getGroup(int index)
+	{
+		return groupOf[index];
+	}
+
+	/**
+	 * Gets the number of classes in a group.
+	 *
+	 * @param g  the index of the group
+	 * @return  the number of classes
+	 */
+	public int getClassCount(int g)
+	{
+		return classCounts[g];
+	}
+
+	/**
+	 * Gets the dependencies between the groups.
+	 *
+	 * @return  the dependency matrix, with the group names
+	 */
+	public SparseDependencyMatrix getDependencyMatrix()
+	{
+		return dep;
+	}
+
+	/**
+	 * Gets the VFI, VFO, propagation costs, and cyclic groups of the groups.
+	 *
+	 * @return  the results
+	 */
+	public DSMResults getResults()
+	{
+		return results;
+	}
+}
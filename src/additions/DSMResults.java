@@ -0,0 +1,143 @@
+package additions;
+
+/**
+ * The results calculated by <code>DSMData</code> for one DSM: the VFI and VFO
+ * of every element, both propagation costs, and the cyclic groups. These are
+ * everything needed to restore a <code>DSMData</code> without calculating the
+ * visibility matrix again, so they can be stored in a <code>BinaryDSMFile</code>
+ * and in a <code>ResultCache</code>.
+ */
+public class DSMResults
+{
+	/** Fan-in visibility of each element. */
+	private int[] vfi;
+	/** Fan-out visibility of each element. */
+	private int[] vfo;
+	/** The propagation cost. */
+	private double propCost;
+	/** The propagation cost with self dependencies, if it was calculated. */
+	private double propCost2;
+	/** Whether propCost2 was calculated. */
+	private boolean hasPropCost2;
+	/** The cyclic group of each element, or 0 if it is not part of any cycle. */
+	private int[] cyclicGroups;
+	/** The number of cyclic groups. */
+	private int nrCyclicGroups;
+	/** The Core size. */
+	private int coreSize;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param vfi  the VFI of each element
+	 * @param vfo  the VFO of each element
+	 * @param propCost  the propagation cost
+	 * @param propCost2  the propagation cost with self-dependencies
+	 * @param hasPropCost2  true if propCost2 was calculated
+	 * @param cyclicGroups  the cyclic group of each element
+	 * @param nrCyclicGroups  the number of cyclic groups
+	 * @param coreSize  the Core size
+	 */
+	public DSMResults(int[] vfi, int[] vfo, double propCost, double propCost2,
+					  boolean hasPropCost2, int[] cyclicGroups, int nrCyclicGroups, int coreSize)
+	{
+		this.vfi = vfi;
+		this.vfo = vfo;
+		this.propCost = propCost;
+		this.propCost2 = propCost2;
+		this.hasPropCost2 = hasPropCost2;
+		this.cyclicGroups = cyclicGroups;
+		this.nrCyclicGroups = nrCyclicGroups;
+		this.coreSize = coreSize;
+	}
+
+	/**
+	 * Gets the number of elements.
+	 *
+	 * @return  the size of the DSM
+	 */
+	public int size()
+	{
+		return vfi.length;
+	}
+
+	/**
+	 * Gets the VFI of each element.
+	 *
+	 * @return  the VFI values
+	 */
+	public int[] getVFI()
+	{
+		return vfi;
+	}
+
+	/**
+	 * Gets the VFO of each element.
+	 *
+	 * @return  the VFO values
+	 */
+	public int[] getVFO()
+	{
+		return vfo;
+	}
+
+	/**
+	 * Gets the propagation cost.
+	 *
+	 * @return  the propagation cost
+	 */
+	public double getPropCost()
+	{
+		return propCost;
+	}
+
+	/**
+	 * Gets the propagation cost with self-dependencies.
+	 *
+	 * @return  the propagation cost with self-dependencies
+	 */
+	public double getPropCost2()
+	{
+		return propCost2;
+	}
+
+	/**
+	 * Checks whether the propagation cost with self-dependencies was calculated.
+	 *
+	 * @return  true if it was calculated
+	 */
+	public boolean hasPropCost2()
+	{
+		return hasPropCost2;
+	}
+
+	/**
+	 * Gets the cyclic group of each element.
+	 *
+	 * @return  the cyclic groups, with 0 for elements that are not in any cycle
+	 */
+	public int[] getCyclicGroups()
+	{
+		return cyclicGroups;
+	}
+
+	/**
+	 * Gets the number of cyclic groups.
+	 *
+	 * @return  the number of cyclic groups
+	 */
+	public int getCyclicGroupCount()
+	{
+		return nrCyclicGroups;
+	}
+
+	/**
+	 * Gets the Core size.
+	 *
+	 * @return  the size of the largest cyclic group
+	 */
+	public int getCoreSize()
+	{
+		return coreSize;
+	}
+}
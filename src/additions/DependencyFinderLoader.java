@@ -0,0 +1,380 @@
+package additions;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Loads a dependencies XML file created by Dependency Finder straight into a
+ * <code>SparseDependencyMatrix</code>, reading it as a stream with StAX.<br>
+ * <br>
+ * This gives the same matrix as loading the file with jDSM's
+ * <code>DependencyFinderDSMProvider</code> and then calling
+ * <code>DSMData.recalcDepMatrix()</code>, but it never unmarshals the whole file
+ * into objects and never builds jDSM's n &times; n <code>Dependency[][]</code> map.
+ * Class names are given an int id as soon as they are read, and each dependency is
+ * stored as a pair of ints until the end of the file, when the matrix is built.<br>
+ * <br>
+ * The filter has the same format as jDSM's: a comma-separated list of regular
+ * expressions, each wrapped in one delimiter character on both sides (for example
+ * <code>/^org.apache.*&#47;,/^javax.servlet.*&#47;</code>). Only the classes in packages
+ * whose whole name matches one of the expressions are included, and the classes are
+ * numbered in the order they appear in the file, as jDSM does.<br>
+ * <br>
+ * A <code>ClassNameTable</code> can be given so that the class names of many files
+ * (such as successive versions of a system) share one copy of each name.
+ */
+public class DependencyFinderLoader
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(DependencyFinderLoader.class);
+	/** Not inside any element that matters. */
+	private static final int LEVEL_NONE = 0;
+	/** Inside a package element. */
+	private static final int LEVEL_PACKAGE = 1;
+	/** Inside a class element. */
+	private static final int LEVEL_CLASS = 2;
+	/** Inside a feature element. */
+	private static final int LEVEL_FEATURE = 3;
+
+	/** The package name patterns to include. */
+	private Pattern[] filter;
+	/** The table used to share class names, or null. */
+	private ClassNameTable table;
+	/** The id of each name seen so far, whether it is a class or only a dependency. */
+	private Map<String, Integer> nameIds;
+	/** The class index of each name id, or -1 if the name is not an included class. */
+	private int[] classOfName;
+	/** The names of the included classes, in order. */
+	private String[] classNames;
+	/** The number of included classes. */
+	private int nrClasses;
+	/** The class that has each dependency. */
+	private int[] edgeFrom;
+	/** The name id of what each dependency is on. */
+	private int[] edgeTo;
+	/** The number of dependencies read. */
+	private int nrEdges;
+
+	/**
+	 * Constructor with the filter to apply to package names.
+	 *
+	 * @param filter  the filter, in the same format jDSM uses
+	 */
+	public DependencyFinderLoader(String filter)
+	{
+		this(filter, null);
+	}
+
+	/**
+	 * Constructor with the filter to apply to package names, and a table
+	 * to share the class names through.
+	 *
+	 * @param filter  the filter, in the same format jDSM uses
+	 * @param table  the table of class names, or null
+	 */
+	public DependencyFinderLoader(String filter, ClassNameTable table)
+	{
+		this.table = table;
+		String[] parts = filter.split(",");
+		this.filter = new Pattern[parts.length];
+		for(int i = 0; i < parts.length; i++)
+		{
+			this.filter[i] = Pattern.compile(parts[i].substring(1, parts[i].length() - 1));
+		}
+	}
+
+	/**
+	 * Loads the dependency matrix from a Dependency Finder XML file.
+	 *
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @return  the dependency matrix, with the class names
+	 * @throws IOException  if the file cannot be read
+	 * @throws XMLStreamException  if the file is not well-formed XML
+	 */
+	public static SparseDependencyMatrix load(String depFilePath, String filter)
+			throws IOException, XMLStreamException
+	{
+		return load(depFilePath, filter, null);
+	}
+
+	/**
+	 * Loads the dependency matrix from a Dependency Finder XML file, sharing
+	 * the class names through the given table.
+	 *
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @param table  the table of class names, or null
+	 * @return  the dependency matrix, with the class names
+	 * @throws IOException  if the file cannot be read
+	 * @throws XMLStreamException  if the file is not well-formed XML
+	 */
+	public static SparseDependencyMatrix load(String depFilePath, String filter,
+											  ClassNameTable table)
+			throws IOException, XMLStreamException
+	{
+		logger.info("Started parsing dependencies from file: " + depFilePath);
+		logger.info("Using filter expression: " + filter);
+		InputStream in = new BufferedInputStream(new FileInputStream(depFilePath), 1 << 16);
+		try
+		{
+			SparseDependencyMatrix dep = new DependencyFinderLoader(filter, table).load(in);
+			logger.info("Finished parsing dependencies from file: " + depFilePath);
+			return dep;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads the dependency matrix from a stream of Dependency Finder XML.
+	 *
+	 * @param in  the XML stream, which is not closed
+	 * @return  the dependency matrix, with the class names
+	 * @throws XMLStreamException  if the stream is not well-formed XML
+	 */
+	public SparseDependencyMatrix load(InputStream in) throws XMLStreamException
+	{
+		nameIds = new HashMap<String, Integer>();
+		classOfName = new int[1024];
+		classNames = new String[1024];
+		nrClasses = 0;
+		edgeFrom = new int[4096];
+		edgeTo = new int[4096];
+		nrEdges = 0;
+
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		try
+		{
+			parse(reader);
+		}
+		finally
+		{
+			reader.close();
+		}
+		logger.info("Loaded " + nrClasses + " classes.");
+		return buildMatrix();
+	}
+
+	/**
+	 * Reads the elements of the file and records the classes and dependencies.
+	 *
+	 * @param reader  the XML reader
+	 * @throws XMLStreamException  if the stream is not well-formed XML
+	 */
+	private void parse(XMLStreamReader reader) throws XMLStreamException
+	{
+		int level = LEVEL_NONE;
+		boolean packageMatches = false;
+		int currentClass = -1;
+		while(reader.hasNext())
+		{
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+			{
+				String element = reader.getLocalName();
+				if(element.equals("package"))
+				{
+					level = LEVEL_PACKAGE;
+					packageMatches = false;
+				}
+				else if(element.equals("class"))
+				{
+					level = LEVEL_CLASS;
+					currentClass = -1;
+				}
+				else if(element.equals("feature"))
+				{
+					level = LEVEL_FEATURE;
+				}
+				else if(element.equals("name"))
+				{
+					String name = reader.getElementText().trim();
+					if(level == LEVEL_PACKAGE)
+					{
+						packageMatches = matchesPattern(name);
+					}
+					else if(level == LEVEL_CLASS && packageMatches)
+					{
+						currentClass = addClass(name);
+					}
+				}
+				else if(element.equals("outbound") && currentClass >= 0
+						&& (level == LEVEL_CLASS || level == LEVEL_FEATURE))
+				{
+					String type = reader.getAttributeValue(null, "type");
+					String name = reader.getElementText().trim();
+					if("feature".equals(type))
+					{
+						name = getClassNameFromFeatureName(name);
+					}
+					if(name != null)
+					{
+						addEdge(currentClass, internName(name));
+					}
+				}
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT)
+			{
+				String element = reader.getLocalName();
+				if(element.equals("feature"))
+				{
+					level = LEVEL_CLASS;
+				}
+				else if(element.equals("class"))
+				{
+					level = LEVEL_PACKAGE;
+					currentClass = -1;
+				}
+				else if(element.equals("package"))
+				{
+					level = LEVEL_NONE;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolves the dependencies to class indices, drops the ones on classes that
+	 * were not included (and dependencies of a class on itself), and builds the
+	 * sparse matrix.
+	 *
+	 * @return  the dependency matrix
+	 */
+	private SparseDependencyMatrix buildMatrix()
+	{
+		int kept = 0;
+		for(int e = 0; e < nrEdges; e++)
+		{
+			int to = classOfName[edgeTo[e]];
+			if(to >= 0 && to != edgeFrom[e])
+			{
+				edgeFrom[kept] = edgeFrom[e];
+				edgeTo[kept] = to;
+				kept++;
+			}
+		}
+		SparseDependencyMatrix dep = SparseDependencyMatrix.fromEdges(nrClasses, edgeFrom, edgeTo,
+				kept, Arrays.copyOf(classNames, nrClasses));
+		nameIds = null;
+		edgeFrom = null;
+		edgeTo = null;
+		return dep;
+	}
+
+	/**
+	 * Includes a class in the matrix, giving it the next index. If a class with
+	 * the same name was already included, its index is used instead.
+	 *
+	 * @param name  the name of the class
+	 * @return  the index of the class
+	 */
+	private int addClass(String name)
+	{
+		int id = internName(name);
+		if(classOfName[id] >= 0)
+		{
+			logger.info("Class " + name + " appears more than once.");
+			return classOfName[id];
+		}
+		if(nrClasses == classNames.length)
+		{
+			classNames = Arrays.copyOf(classNames, nrClasses * 2);
+		}
+		classNames[nrClasses] = (table == null) ? name : table.intern(name);
+		classOfName[id] = nrClasses;
+		return nrClasses++;
+	}
+
+	/**
+	 * Gets the id of a name, giving it a new one if it has not been seen.
+	 *
+	 * @param name  the name of a class
+	 * @return  the id of the name
+	 */
+	private int internName(String name)
+	{
+		Integer id = nameIds.get(name);
+		if(id == null)
+		{
+			id = nameIds.size();
+			nameIds.put(name, id);
+			if(id == classOfName.length)
+			{
+				int oldLength = classOfName.length;
+				classOfName = Arrays.copyOf(classOfName, oldLength * 2);
+				Arrays.fill(classOfName, oldLength, classOfName.length, -1);
+			}
+			classOfName[id] = -1;
+		}
+		return id;
+	}
+
+	/**
+	 * Records a dependency of a class on a name.
+	 *
+	 * @param from  the index of the class
+	 * @param toName  the id of the name it depends on
+	 */
+	private void addEdge(int from, int toName)
+	{
+		if(nrEdges == edgeFrom.length)
+		{
+			edgeFrom = Arrays.copyOf(edgeFrom, nrEdges * 2);
+			edgeTo = Arrays.copyOf(edgeTo, nrEdges * 2);
+		}
+		edgeFrom[nrEdges] = from;
+		edgeTo[nrEdges] = toName;
+		nrEdges++;
+	}
+
+	/**
+	 * Checks whether a package name matches any of the filter's patterns.
+	 *
+	 * @param packageName  the name of the package
+	 * @return  true if the package is included
+	 */
+	private boolean matchesPattern(String packageName)
+	{
+		for(Pattern p : filter)
+		{
+			if(p.matcher(packageName).matches())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the name of the class that a feature (field or method) belongs to,
+	 * the same way jDSM does.
+	 *
+	 * @param featureName  the full name of the feature
+	 * @return  the name of its class, or null if it has no class part
+	 */
+	private String getClassNameFromFeatureName(String featureName)
+	{
+		int paren = featureName.lastIndexOf('(');
+		int dot = (paren > 0) ? featureName.lastIndexOf('.', paren) : featureName.lastIndexOf('.');
+		return (dot < 0) ? null : featureName.substring(0, dot);
+	}
+}
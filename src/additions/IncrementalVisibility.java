@@ -0,0 +1,776 @@
+package additions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the visibility matrix, VFI, VFO, propagation costs, and Core of a DSM
+ * up to date while dependencies are added and removed, without recalculating
+ * everything.<br>
+ * <br>
+ * Consecutive versions of a system usually differ by a few hundred dependencies,
+ * and a change to the dependency of element u on element v can only change the
+ * visibility of u and of the elements that can see u. So each change only
+ * touches those rows:
+ * <ul>
+ * 	<li>When a dependency u &rarr; v is added, each of those rows gets v and
+ * 	the row of v ORed into it. If u could already see v, nothing changes.</li>
+ * 	<li>When a dependency u &rarr; v is removed, the strongly connected components
+ * 	of just those rows are found, and their rows are rebuilt from their successors
+ * 	in reverse topological order.</li>
+ * </ul>
+ * The VFI and VFO are updated from the bits that actually changed. The cyclic
+ * groups only change when an added dependency closes a cycle (the groups on that
+ * cycle are merged) or a removed dependency was inside a cyclic group (that group
+ * is split, using the components found above).<br>
+ * <br>
+ * Dependencies of an element on itself are kept, as in <code>DSMData</code>: like
+ * <code>Condensation.isCyclic()</code>, an element that depends on itself can see
+ * itself, even if it is not in a cyclic group with other elements.<br>
+ * <br>
+ * This needs the bit-packed visibility matrix, so it uses n<sup>2</sup>/8 bytes.
+ */
+public class IncrementalVisibility
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(IncrementalVisibility.class);
+	/** The number of elements. */
+	private int n;
+	/** The names of the elements, or null if they are not known. */
+	private String[] names;
+	/** The index of each name, created the first time it is needed. */
+	private Map<String, Integer> nameIndex;
+	/** The elements each element depends on. Only the first outSize[i] are used. */
+	private int[][] out;
+	/** The number of elements each element depends on. */
+	private int[] outSize;
+	/** The elements that depend on each element. Only the first inSize[i] are used. */
+	private int[][] in;
+	/** The number of elements that depend on each element. */
+	private int[] inSize;
+	/** The visibility matrix. */
+	private BitMatrix closure;
+	/** Fan-in visibility of each element. */
+	private int[] vfi;
+	/** Fan-out visibility of each element. */
+	private int[] vfo;
+	/** The sum of all VFO (and of all VFI). */
+	private long total;
+	/** The number of elements that can see themselves. */
+	private int selfVisible;
+	/** The label of the strongly connected component of each element. */
+	private int[] group;
+	/** The size of each component label, or 0 if the label is no longer used. */
+	private int[] groupSize;
+	/** The next unused component label. */
+	private int nextGroup;
+	/** The number of components of each size, to find the Core size quickly. */
+	private TreeMap<Integer, Integer> sizeCounts;
+	/** The stamp of the last search that reached each element. */
+	private int[] mark;
+	/** The stamp of the current search. */
+	private int stamp;
+	/** The elements reached by the last search. */
+	private int[] queue;
+	/** The position of each element among the affected elements, or -1. */
+	private int[] local;
+
+	/**
+	 * Constructor starting from a dependency matrix. The visibility matrix is
+	 * calculated from it.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public IncrementalVisibility(SparseDependencyMatrix dep)
+	{
+		this(dep, null);
+	}
+
+	/**
+	 * Constructor starting from a dependency matrix and its visibility matrix,
+	 * as calculated by <code>DSMData</code>. The visibility matrix is copied, so
+	 * the original is not changed.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param vis  the visibility matrix of dep, or null to calculate it
+	 */
+	public IncrementalVisibility(SparseDependencyMatrix dep, BitMatrix vis)
+	{
+		n = dep.size();
+		names = dep.getNames();
+		nameIndex = null;
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		SparseDependencyMatrix t = dep.transpose();
+		int[] tStart = t.getRowStarts();
+		int[] tColumns = t.getColumns();
+		out = new int[n][];
+		outSize = new int[n];
+		in = new int[n][];
+		inSize = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			out[i] = Arrays.copyOfRange(columns, rowStart[i], rowStart[i + 1]);
+			outSize[i] = out[i].length;
+			in[i] = Arrays.copyOfRange(tColumns, tStart[i], tStart[i + 1]);
+			inSize[i] = in[i].length;
+		}
+
+		if(vis == null)
+		{
+			closure = BitMatrix.closureOf(new Condensation(dep));
+		}
+		else
+		{
+			closure = vis.copy();
+		}
+		ReachabilityCounts counts = closure.reachabilityCounts();
+		vfi = counts.getVFI();
+		vfo = counts.getVFO();
+		total = counts.getTotal();
+		selfVisible = counts.getSelfVisible();
+
+		StronglyConnectedComponents scc = new StronglyConnectedComponents(dep);
+		group = new int[n];
+		groupSize = new int[Math.max(16, scc.getComponentCount() * 2)];
+		sizeCounts = new TreeMap<Integer, Integer>();
+		for(int i = 0; i < n; i++)
+		{
+			group[i] = scc.getComponent(i);
+		}
+		for(int c = 0; c < scc.getComponentCount(); c++)
+		{
+			groupSize[c] = scc.getComponentSize(c);
+			addSize(groupSize[c]);
+		}
+		nextGroup = scc.getComponentCount();
+
+		mark = new int[n];
+		stamp = 0;
+		queue = new int[n];
+		local = new int[n];
+		Arrays.fill(local, -1);
+	}
+
+	/**
+	 * Adds a dependency of one element on another, and updates the visibility,
+	 * VFI, VFO, and cyclic groups.
+	 *
+	 * @param from  the element that has the dependency
+	 * @param to  the element it depends on
+	 * @return  true if the dependency was added, false if it was already there
+	 */
+	public boolean addDependency(int from, int to)
+	{
+		if(indexOf(out[from], outSize[from], to) >= 0)
+		{
+			return false;
+		}
+		out[from] = append(out[from], outSize[from]++, to);
+		in[to] = append(in[to], inSize[to]++, from);
+		if(closure.get(from, to))
+		{
+			//from could already see to, and so everything to can see
+			return true;
+		}
+
+		boolean closesCycle = closure.get(to, from);
+		long[] added = Arrays.copyOf(closure.getRow(to), closure.getWordsPerRow());
+		added[to >>> 6] |= 1L << to;
+		int count = findAncestors(from);
+		for(int k = 0; k < count; k++)
+		{
+			int x = queue[k];
+			long[] row = closure.getRow(x);
+			for(int w = 0; w < row.length; w++)
+			{
+				long diff = added[w] & ~row[w];
+				if(diff != 0)
+				{
+					row[w] |= diff;
+					countChanges(x, w, diff, 1);
+				}
+			}
+		}
+		if(closesCycle)
+		{
+			mergeGroups(count, added);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a dependency of one element on another, and updates the visibility,
+	 * VFI, VFO, and cyclic groups.
+	 *
+	 * @param from  the element that has the dependency
+	 * @param to  the element it depends on
+	 * @return  true if the dependency was removed, false if it was not there
+	 */
+	public boolean removeDependency(int from, int to)
+	{
+		int pos = indexOf(out[from], outSize[from], to);
+		if(pos < 0)
+		{
+			return false;
+		}
+		out[from][pos] = out[from][--outSize[from]];
+		pos = indexOf(in[to], inSize[to], from);
+		in[to][pos] = in[to][--inSize[to]];
+
+		//removing the dependency does not change which elements can see from
+		int count = findAncestors(from);
+		int[] affected = Arrays.copyOf(queue, count);
+		for(int k = 0; k < count; k++)
+		{
+			local[affected[k]] = k;
+		}
+
+		//strongly connected components of the affected elements only
+		int[] subStart = new int[count + 1];
+		int[] subFrom = new int[16];
+		int[] subTo = new int[16];
+		int edges = 0;
+		for(int k = 0; k < count; k++)
+		{
+			int x = affected[k];
+			for(int p = 0; p < outSize[x]; p++)
+			{
+				int w = local[out[x][p]];
+				if(w >= 0)
+				{
+					if(edges == subFrom.length)
+					{
+						subFrom = Arrays.copyOf(subFrom, edges * 2);
+						subTo = Arrays.copyOf(subTo, edges * 2);
+					}
+					subFrom[edges] = k;
+					subTo[edges] = w;
+					edges++;
+				}
+			}
+		}
+		StronglyConnectedComponents scc = new StronglyConnectedComponents(
+				SparseDependencyMatrix.fromEdges(count, subFrom, subTo, edges, null));
+		int comps = scc.getComponentCount();
+		int[] members = new int[count];
+		int[] compStart = new int[comps + 1];
+		for(int k = 0; k < count; k++)
+		{
+			compStart[scc.getComponent(k) + 1]++;
+		}
+		for(int c = 0; c < comps; c++)
+		{
+			compStart[c + 1] += compStart[c];
+		}
+		int[] next = Arrays.copyOf(compStart, comps);
+		for(int k = 0; k < count; k++)
+		{
+			members[next[scc.getComponent(k)]++] = affected[k];
+		}
+
+		//rebuild the rows, successors first
+		int words = closure.getWordsPerRow();
+		long[] row = new long[words];
+		for(int c = 0; c < comps; c++)
+		{
+			Arrays.fill(row, 0);
+			//cyclic as in Condensation.isCyclic(): more than one member, or a self-dependency
+			boolean cyclic = compStart[c + 1] - compStart[c] > 1;
+			for(int p = compStart[c]; p < compStart[c + 1]; p++)
+			{
+				int x = members[p];
+				for(int q = 0; q < outSize[x]; q++)
+				{
+					int w = out[x][q];
+					if(w == x)
+					{
+						cyclic = true;
+					}
+					else if(local[w] < 0 || scc.getComponent(local[w]) != c)
+					{
+						long[] other = closure.getRow(w);
+						for(int i = 0; i < words; i++)
+						{
+							row[i] |= other[i];
+						}
+						row[w >>> 6] |= 1L << w;
+					}
+				}
+			}
+			if(cyclic)
+			{
+				for(int p = compStart[c]; p < compStart[c + 1]; p++)
+				{
+					row[members[p] >>> 6] |= 1L << members[p];
+				}
+			}
+			for(int p = compStart[c]; p < compStart[c + 1]; p++)
+			{
+				int x = members[p];
+				long[] old = closure.getRow(x);
+				for(int i = 0; i < words; i++)
+				{
+					long diff = old[i] & ~row[i];
+					if(diff != 0)
+					{
+						countChanges(x, i, diff, -1);
+					}
+				}
+				System.arraycopy(row, 0, old, 0, words);
+			}
+		}
+
+		//the dependency was inside a cyclic group if both ends are in it, which for a
+		//group of one element means it was a self-dependency
+		int oldGroup = group[from];
+		if(group[to] == oldGroup)
+		{
+			splitGroup(oldGroup, scc, compStart, members);
+		}
+		for(int k = 0; k < count; k++)
+		{
+			local[affected[k]] = -1;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a dependency of one element on another, found by name.
+	 *
+	 * @param from  the name of the element that has the dependency
+	 * @param to  the name of the element it depends on
+	 * @return  true if the dependency was added
+	 */
+	public boolean addDependency(String from, String to)
+	{
+		return addDependency(indexOfName(from), indexOfName(to));
+	}
+
+	/**
+	 * Removes a dependency of one element on another, found by name.
+	 *
+	 * @param from  the name of the element that has the dependency
+	 * @param to  the name of the element it depends on
+	 * @return  true if the dependency was removed
+	 */
+	public boolean removeDependency(String from, String to)
+	{
+		return removeDependency(indexOfName(from), indexOfName(to));
+	}
+
+	/**
+	 * Changes the dependencies to those of another dependency matrix over the same
+	 * elements (for example, the next version of the system), by removing and adding
+	 * only the dependencies that differ.
+	 *
+	 * @param next  the new dependency matrix, with the same elements in the same order
+	 * @return  the number of dependencies that were added or removed
+	 */
+	public int update(SparseDependencyMatrix next)
+	{
+		if(next.size() != n)
+		{
+			throw new IllegalArgumentException("The new matrix has " + next.size()
+					+ " elements instead of " + n + ".");
+		}
+		int[] rowStart = next.getRowStarts();
+		int[] columns = next.getColumns();
+		int changes = 0;
+		for(int i = 0; i < n; i++)
+		{
+			int[] current = Arrays.copyOf(out[i], outSize[i]);
+			for(int j : current)
+			{
+				if(!next.get(i, j) && removeDependency(i, j))
+				{
+					changes++;
+				}
+			}
+		}
+		for(int i = 0; i < n; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				if(addDependency(i, columns[p]))
+				{
+					changes++;
+				}
+			}
+		}
+		logger.info("Applied " + changes + " dependency changes.");
+		return changes;
+	}
+
+	/**
+	 * Gets the current dependency matrix.
+	 *
+	 * @return  a new sparse matrix with the current dependencies
+	 */
+	public SparseDependencyMatrix toDependencyMatrix()
+	{
+		int edges = 0;
+		for(int i = 0; i < n; i++)
+		{
+			edges += outSize[i];
+		}
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		int e = 0;
+		for(int i = 0; i < n; i++)
+		{
+			for(int p = 0; p < outSize[i]; p++)
+			{
+				from[e] = i;
+				to[e] = out[i][p];
+				e++;
+			}
+		}
+		return SparseDependencyMatrix.fromEdges(n, from, to, edges, names);
+	}
+
+	/**
+	 * Gets the current visibility matrix. The returned matrix is the one used
+	 * here, so it must not be changed.
+	 *
+	 * @return  the visibility matrix
+	 */
+	public BitMatrix getVisibilityMatrix()
+	{
+		return closure;
+	}
+
+	/**
+	 * Gets the fan-in visibility of an element.
+	 *
+	 * @param i  the element
+	 * @return  the VFI
+	 */
+	public int getVFI(int i)
+	{
+		return vfi[i];
+	}
+
+	/**
+	 * Gets the fan-out visibility of an element.
+	 *
+	 * @param i  the element
+	 * @return  the VFO
+	 */
+	public int getVFO(int i)
+	{
+		return vfo[i];
+	}
+
+	/**
+	 * Gets the sum of all VFI, which is the same as the sum of all VFO.
+	 *
+	 * @return  the number of set entries in the visibility matrix
+	 */
+	public long getVisibilitySum()
+	{
+		return total;
+	}
+
+	/**
+	 * Gets the propagation cost, without self-dependencies.
+	 *
+	 * @return  the propagation cost
+	 */
+	public double getPropCost()
+	{
+		return total / ((double) n * n);
+	}
+
+	/**
+	 * Gets the propagation cost with self-dependencies.
+	 *
+	 * @return  the propagation cost with self-dependencies
+	 */
+	public double getPropCostSelf()
+	{
+		return (total + n - selfVisible) / ((double) n * n);
+	}
+
+	/**
+	 * Gets the Core size, which is the size of the largest cyclic group.
+	 *
+	 * @return  the Core size
+	 */
+	public int getCoreSize()
+	{
+		return sizeCounts.isEmpty() ? 0 : sizeCounts.lastKey();
+	}
+
+	/**
+	 * Gets the elements in the Core. If there is more than one largest cyclic group,
+	 * the one with the lowest element index is returned.
+	 *
+	 * @return  the indices of the Core members, which is empty if there are no cycles
+	 */
+	public int[] getCoreMembers()
+	{
+		int coreSize = getCoreSize();
+		if(coreSize < 2)
+		{
+			return new int[0];
+		}
+		int[] members = new int[coreSize];
+		int core = -1;
+		int count = 0;
+		for(int i = 0; i < n && count < coreSize; i++)
+		{
+			if(core == -1 && groupSize[group[i]] == coreSize)
+			{
+				core = group[i];
+			}
+			if(group[i] == core)
+			{
+				members[count++] = i;
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Checks whether two elements are in the same cyclic group.
+	 *
+	 * @param i  the first element
+	 * @param j  the second element
+	 * @return  true if each can see the other, which for the same element means
+	 * that it can see itself
+	 */
+	public boolean inSameCyclicGroup(int i, int j)
+	{
+		return group[i] == group[j] && closure.get(i, j);
+	}
+
+	/**
+	 * Finds the element and all elements that can see it, by searching the
+	 * dependencies backwards. The elements are left in <code>queue</code>.
+	 *
+	 * @param target  the element
+	 * @return  the number of elements found, including the target
+	 */
+	private int findAncestors(int target)
+	{
+		stamp++;
+		int head = 0;
+		int tail = 0;
+		mark[target] = stamp;
+		queue[tail++] = target;
+		while(head < tail)
+		{
+			int v = queue[head++];
+			for(int p = 0; p < inSize[v]; p++)
+			{
+				int w = in[v][p];
+				if(mark[w] != stamp)
+				{
+					mark[w] = stamp;
+					queue[tail++] = w;
+				}
+			}
+		}
+		return tail;
+	}
+
+	/**
+	 * Updates the VFI, VFO, and totals for a word of bits that were set
+	 * or cleared in a row.
+	 *
+	 * @param row  the row that changed
+	 * @param word  the index of the word that changed
+	 * @param bits  the bits that changed
+	 * @param delta  1 if the bits were set, -1 if they were cleared
+	 */
+	private void countChanges(int row, int word, long bits, int delta)
+	{
+		int changed = Long.bitCount(bits);
+		vfo[row] += delta * changed;
+		total += delta * changed;
+		while(bits != 0)
+		{
+			int j = (word << 6) + Long.numberOfTrailingZeros(bits);
+			vfi[j] += delta;
+			if(j == row)
+			{
+				selfVisible += delta;
+			}
+			bits &= bits - 1;
+		}
+	}
+
+	/**
+	 * Merges the cyclic groups on a new cycle. The members are the elements that
+	 * can see the new dependency's source (the first count elements of
+	 * <code>queue</code>) and that can be seen from its target.
+	 *
+	 * @param count  the number of elements that can see the source
+	 * @param reached  the bits of the elements that the target can see, and the target
+	 */
+	private void mergeGroups(int count, long[] reached)
+	{
+		int label = newGroup();
+		int size = 0;
+		for(int k = 0; k < count; k++)
+		{
+			int x = queue[k];
+			if((reached[x >>> 6] & (1L << x)) != 0)
+			{
+				int old = group[x];
+				if(groupSize[old] > 0)
+				{
+					removeSize(groupSize[old]);
+					groupSize[old] = 0;
+				}
+				group[x] = label;
+				size++;
+			}
+		}
+		groupSize[label] = size;
+		addSize(size);
+	}
+
+	/**
+	 * Splits a cyclic group after one of its dependencies was removed, using the
+	 * components found among the affected elements.
+	 *
+	 * @param oldGroup  the label of the group that may split
+	 * @param scc  the components of the affected elements
+	 * @param compStart  where each component's members start in members
+	 * @param members  the affected elements, grouped by component
+	 */
+	private void splitGroup(int oldGroup, StronglyConnectedComponents scc,
+							int[] compStart, int[] members)
+	{
+		removeSize(groupSize[oldGroup]);
+		groupSize[oldGroup] = 0;
+		for(int c = 0; c < scc.getComponentCount(); c++)
+		{
+			if(group[members[compStart[c]]] == oldGroup)
+			{
+				int label = newGroup();
+				for(int p = compStart[c]; p < compStart[c + 1]; p++)
+				{
+					group[members[p]] = label;
+				}
+				groupSize[label] = compStart[c + 1] - compStart[c];
+				addSize(groupSize[label]);
+			}
+		}
+	}
+
+	/**
+	 * Gets a new component label.
+	 *
+	 * @return  the label
+	 */
+	private int newGroup()
+	{
+		if(nextGroup == groupSize.length)
+		{
+			groupSize = Arrays.copyOf(groupSize, nextGroup * 2);
+		}
+		return nextGroup++;
+	}
+
+	/**
+	 * Records a new component of the given size.
+	 *
+	 * @param size  the size of the component
+	 */
+	private void addSize(int size)
+	{
+		Integer c = sizeCounts.get(size);
+		sizeCounts.put(size, (c == null) ? 1 : c + 1);
+	}
+
+	/**
+	 * Forgets a component of the given size.
+	 *
+	 * @param size  the size of the component
+	 */
+	private void removeSize(int size)
+	{
+		int c = sizeCounts.get(size);
+		if(c == 1)
+		{
+			sizeCounts.remove(size);
+		}
+		else
+		{
+			sizeCounts.put(size, c - 1);
+		}
+	}
+
+	/**
+	 * Gets the index of an element by its name.
+	 *
+	 * @param name  the name of the element
+	 * @return  its index
+	 */
+	private int indexOfName(String name)
+	{
+		if(nameIndex == null)
+		{
+			if(names == null)
+			{
+				throw new IllegalStateException("The names of the elements are not known.");
+			}
+			nameIndex = new HashMap<String, Integer>();
+			for(int i = 0; i < n; i++)
+			{
+				nameIndex.put(names[i], i);
+			}
+		}
+		Integer i = nameIndex.get(name);
+		if(i == null)
+		{
+			throw new IllegalArgumentException("Unknown element: " + name);
+		}
+		return i;
+	}
+
+	/**
+	 * Finds a value in the first size entries of an array.
+	 *
+	 * @param a  the array
+	 * @param size  the number of entries used
+	 * @param value  the value to find
+	 * @return  its position, or -1 if it is not there
+	 */
+	private static int indexOf(int[] a, int size, int value)
+	{
+		for(int p = 0; p < size; p++)
+		{
+			if(a[p] == value)
+			{
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Puts a value at the given position of an array, growing it if needed.
+	 *
+	 * @param a  the array
+	 * @param pos  the position, which is the number of entries used so far
+	 * @param value  the value to add
+	 * @return  the array, or a larger copy of it
+	 */
+	private static int[] append(int[] a, int pos, int value)
+	{
+		if(pos == a.length)
+		{
+			a = Arrays.copyOf(a, Math.max(4, pos * 2));
+		}
+		a[pos] = value;
+		return a;
+	}
+}
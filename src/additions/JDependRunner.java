@@ -1,11 +1,12 @@
 package additions;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.log4j.Logger;
-import org.jblas.DoubleMatrix;
 
 import jdepend.framework.JDepend;
 import jdepend.framework.JavaPackage;
@@ -16,6 +17,17 @@ import jdepend.framework.JavaPackage;
  * calculates each metric for each package while recording all results; and
  * then prints out the min, max, and mean of each metric (except for the
  * number of cycles, which is just a count). Requires .class or .jar files.
+ * <br><br>
+ * The results of each metric are kept as <code>RunningStatistics</code>, which are
+ * updated as each package is processed: the min, max, mean, and variance, and
+ * estimates of the median, 90th, and 99th percentiles. Nothing is stored per package,
+ * so the memory used does not grow with the number of packages. If a writer is given
+ * with <code>setPackageOutput()</code>, one tab-separated row with each package's name
+ * and metrics is written to it as the package is processed.
+ * <br><br>
+ * By default, the class files are parsed in parallel with <code>ParallelJDepend</code>,
+ * which gives the same packages and metrics as JDepend's own sequential analysis.
+ * The sequential analysis can still be used by calling <code>setParallel(false)</code>.
  * 
  * @author YuliyaA
  *
@@ -30,19 +42,31 @@ public class JDependRunner
 										"Abstractness -- ",
 										"Instability -- ",
 										"Distance -- "};
-	/** Contains the metrics for each processed package. */
-	private DoubleMatrix data;
+	/** The quantiles of each metric that are estimated. */
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+	/** The number of metrics recorded for each package. */
+	private static final int NR_METRICS = 5;
+	/** The statistics of each metric over the processed packages. */
+	private RunningStatistics[] stats;
+	/** The writer that a row for each package is written to, or null. */
+	private Writer packageOutput;
 	/** The number of packages that are detected. */
 	private int size;
 	/** The number of cycles that are detected. */
 	private int cycleCount;
+	/** The sink that the measurements of each phase are sent to, or null. */
+	private MetricsSink metricsSink = PhaseTimer.getDefaultSink();
+	/** Whether to parse the class files in parallel. */
+	private boolean parallel = true;
+	/** The pool used to parse the class files in parallel, or null to use the common pool. */
+	private ForkJoinPool pool;
 	
 	/**
 	 * Default blank constructor.
 	 */
 	public JDependRunner()
 	{
-		data = null;
+		stats = newStatistics();
 		size = 0;
 		cycleCount = 0;
 	}
@@ -54,7 +78,7 @@ public class JDependRunner
 	 */
 	public JDependRunner(String pathToClasses)
 	{
-		data = null;
+		stats = newStatistics();
 		size = 0;
 		cycleCount = 0;
 		analyze(pathToClasses);
@@ -73,53 +97,300 @@ public class JDependRunner
 	}
 	
 	/**
-	 * Finds all of the packages and analyzes them. Creates a DoubleMatrix of the
-	 * results and saves it in the <code>data</code> instance variable. Also saves
+	 * Finds all of the packages and analyzes them. Adds each package's metrics to
+	 * the <code>stats</code> instance variable, and writes them to the package output
+	 * if there is one. Also saves
 	 * the number of packages and the number of cycles found in their respective
 	 * instance variables.
 	 * 
 	 * @param pathToClasses  the path to the folder containing the files to be analyzed
 	 */
-	private void analyze(String pathToClasses)
+	public void analyze(String pathToClasses)
 	{
-		JDepend jdepend = new JDepend();
-		try
+		ForkJoinPool p = (pool == null) ? ForkJoinPool.commonPool() : pool;
+		PhaseTimer timer = PhaseTimer.start(metricsSink, "JDependRunner", "load",
+				parallel ? p : null);
+		Collection packages;
+		if(parallel)
 		{
-			jdepend.addDirectory(pathToClasses);
+			ParallelJDepend jdepend = new ParallelJDepend(p);
+			try
+			{
+				jdepend.addDirectory(pathToClasses);
+			}
+			catch (IOException e)
+			{
+				logger.info("That is not a valid directory.");
+				e.printStackTrace();
+			}
+			packages = jdepend.analyze();	//finds the packages
 		}
-		catch (IOException e)
+		else
 		{
-			logger.info("That is not a valid directory.");
-			e.printStackTrace();
+			JDepend jdepend = new JDepend();
+			try
+			{
+				jdepend.addDirectory(pathToClasses);
+			}
+			catch (IOException e)
+			{
+				logger.info("That is not a valid directory.");
+				e.printStackTrace();
+			}
+			packages = jdepend.analyze();	//finds the packages
 		}
-		Collection packages = jdepend.analyze();	//finds the packages
 		size = packages.size();
 		logger.info("Found " + size + " packages.");
+		timer.count("packages", size);
+		timer.stop();
+		timer = PhaseTimer.start(metricsSink, "JDependRunner", "metrics");
 		int count = 0;
 		cycleCount = 0;
-		data = DoubleMatrix.zeros(size, 5);		//initialize data matrix to 0
-		JavaPackage jPackage;	//the package to be analyzed
+		stats = newStatistics();
+		double[] metrics = new double[NR_METRICS];
+		StringBuilder row = new StringBuilder();
+		writePackageRow(getPackageHeader());
 		
-		Iterator i = packages.iterator();
-		while (i.hasNext())
+		for(Object o : packages)
 		{
-			jPackage = (JavaPackage) i.next();
-			//String name = jPackage.getName();					//package name
-			data.put(count, 0, jPackage.afferentCoupling());	//afferent coupling
-			data.put(count, 1, jPackage.efferentCoupling());	//efferent coupling
-			data.put(count, 2, jPackage.abstractness());		//abstractness
-			data.put(count, 3, jPackage.instability());			//instability
-			data.put(count, 4, jPackage.distance());			//distance
-			if(jPackage.containsCycle())
+			JavaPackage jPackage = (JavaPackage) o;	//the package to be analyzed
+			metrics[0] = jPackage.afferentCoupling();	//afferent coupling
+			metrics[1] = jPackage.efferentCoupling();	//efferent coupling
+			metrics[2] = jPackage.abstractness();		//abstractness
+			metrics[3] = jPackage.instability();		//instability
+			metrics[4] = jPackage.distance();			//distance
+			boolean cycle = jPackage.containsCycle();
+			if(cycle)
 			{
 				cycleCount++;		//total cycles
 			}
+			row.setLength(0);
+			row.append(jPackage.getName());
+			for(int m = 0; m < NR_METRICS; m++)
+			{
+				stats[m].add(metrics[m]);
+				row.append('\t').append(String.format(Locale.ROOT, "%.6g", metrics[m]));
+			}
+			row.append('\t').append(cycle);
+			writePackageRow(row.toString());
 			count++;
 			if(count % 50 == 0)
 			{
 				logger.info("Processed package " + count + " of " + size + ".");
 			}
 		}
+		flushPackageOutput();
+		timer.count("packages", count);
+		timer.count("cycles", cycleCount);
+		timer.stop();
+	}
+	
+	/**
+	 * Creates empty statistics for each metric.
+	 * 
+	 * @return  the statistics
+	 */
+	private static RunningStatistics[] newStatistics()
+	{
+		RunningStatistics[] s = new RunningStatistics[NR_METRICS];
+		for(int m = 0; m < NR_METRICS; m++)
+		{
+			s[m] = new RunningStatistics(QUANTILES);
+		}
+		return s;
+	}
+	
+	/**
+	 * Gets the header row of the per-package output.
+	 * 
+	 * @return  the column names, separated by tabs
+	 */
+	private static String getPackageHeader()
+	{
+		StringBuilder header = new StringBuilder("package");
+		for(int m = 0; m < NR_METRICS; m++)
+		{
+			header.append('\t').append(getMetricName(m));
+		}
+		return header.append("\tcycle").toString();
+	}
+	
+	/**
+	 * Writes one line to the per-package output, if there is one. If it cannot
+	 * be written, the rest of the output is skipped.
+	 * 
+	 * @param line  the line, without the line break
+	 */
+	private void writePackageRow(String line)
+	{
+		if(packageOutput == null)
+		{
+			return;
+		}
+		try
+		{
+			packageOutput.write(line);
+			packageOutput.write(System.lineSeparator());
+		}
+		catch (IOException e)
+		{
+			logger.info("Could not write the package metrics.");
+			e.printStackTrace();
+			packageOutput = null;
+		}
+	}
+	
+	/**
+	 * Flushes the per-package output, if there is one.
+	 */
+	private void flushPackageOutput()
+	{
+		if(packageOutput == null)
+		{
+			return;
+		}
+		try
+		{
+			packageOutput.flush();
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Sets the writer that one row per package is written to by
+	 * <code>analyze()</code>, after a header row: the package name, the five
+	 * metrics, and whether the package is part of a cycle, separated by tabs.
+	 * The writer is flushed at the end but not closed. Wrap it in a
+	 * <code>BufferedWriter</code> when writing to a file.
+	 * 
+	 * @param out  the writer, or null to not write the rows
+	 */
+	public void setPackageOutput(Writer out)
+	{
+		this.packageOutput = out;
+	}
+	
+	/**
+	 * Sets the sink that the measurements of each phase (time, allocation, and
+	 * counters) are sent to. By default this is <code>PhaseTimer.getDefaultSink()</code>
+	 * as it was when this object was created.
+	 * 
+	 * @param sink  the sink, or null to not measure anything
+	 */
+	public void setMetricsSink(MetricsSink sink)
+	{
+		this.metricsSink = sink;
+	}
+	
+	/**
+	 * Sets whether the class files are parsed in parallel (the default) or
+	 * one after another by JDepend itself.
+	 * 
+	 * @param parallel  true to parse in parallel
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * Sets the pool used to parse the class files in parallel.
+	 * 
+	 * @param pool  the pool to use, or null to use the common pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	/**
+	 * Gets the number of packages that were analyzed.
+	 * 
+	 * @return  the number of packages
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+	
+	/**
+	 * Gets the number of packages that are part of a cycle.
+	 * 
+	 * @return  the number of cycles counted
+	 */
+	public int getCycleCount()
+	{
+		return cycleCount;
+	}
+	
+	/**
+	 * Gets the name of a metric, in the same order as the columns of the results.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @return  the name of the metric
+	 */
+	public static String getMetricName(int metric)
+	{
+		return headings[metric].replace(" -- ", "");
+	}
+	
+	/**
+	 * Gets the mean of a metric over all packages.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @return  the mean, or 0 if there are no packages
+	 */
+	public double getMean(int metric)
+	{
+		return stats[metric].getMean();
+	}
+	
+	/**
+	 * Gets the minimum of a metric over all packages.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @return  the minimum, or 0 if there are no packages
+	 */
+	public double getMin(int metric)
+	{
+		return stats[metric].getMin();
+	}
+	
+	/**
+	 * Gets the maximum of a metric over all packages.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @return  the maximum, or 0 if there are no packages
+	 */
+	public double getMax(int metric)
+	{
+		return stats[metric].getMax();
+	}
+	
+	/**
+	 * Gets the standard deviation of a metric over all packages.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @return  the sample standard deviation, or 0 if there are fewer than two packages
+	 */
+	public double getStandardDeviation(int metric)
+	{
+		return stats[metric].getStandardDeviation();
+	}
+	
+	/**
+	 * Gets the estimate of a percentile of a metric over all packages.
+	 * 
+	 * @param metric  the column of the metric, from 0 to 4
+	 * @param quantile  0.5 for the median, 0.9, or 0.99
+	 * @return  the estimate, or 0 if there are no packages
+	 */
+	public double getQuantile(int metric, double quantile)
+	{
+		return stats[metric].getQuantile(quantile);
 	}
 	
 	/**
@@ -127,22 +398,21 @@ public class JDependRunner
 	 */
 	private void printResults()
 	{
-		DoubleMatrix means = data.columnMeans();
-		DoubleMatrix maxes = data.columnMaxs();
-		DoubleMatrix mins = data.columnMins();
-		
 		logger.info("Metrics calculated.");
 		for(int j = 0; j < headings.length; j++)
 		{
-			logger.info(headings[j] + "Min: " + mins.get(j)
-						+ ", Max: " + maxes.get(j)
-						+ ", Mean: " + means.get(j));
+			logger.info(headings[j] + "Min: " + getMin(j)
+						+ ", Max: " + getMax(j)
+						+ ", Mean: " + getMean(j)
+						+ ", Std Dev: " + getStandardDeviation(j)
+						+ ", Median: " + getQuantile(j, 0.5)
+						+ ", 90th: " + getQuantile(j, 0.9)
+						+ ", 99th: " + getQuantile(j, 0.99));
 		}
 		logger.info("Total cycles counted -- " + cycleCount);
 		
 		//theoretically, without self-dependencies
-		DoubleMatrix propagation = data.getColumn(0);
-		double propCost = propagation.columnMeans().sum()/size;
+		double propCost = getMean(0)/size;
 		logger.info("Propagation Cost -- " + propCost);
 	}
 }
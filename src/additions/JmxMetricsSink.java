@@ -0,0 +1,212 @@
+package additions;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A <code>MetricsSink</code> that keeps running statistics for each phase of
+ * each kind of analysis and publishes them as MXBeans on the platform MBean
+ * server, so they can be watched with JConsole, VisualVM, or any JMX client.<br>
+ * <br>
+ * Each phase gets one MXBean (<code>PhaseStatsMXBean</code>), registered the first
+ * time the phase is recorded, with the name
+ * <code>additions:type=Phase,source=&lt;source&gt;,phase=&lt;phase&gt;</code>.
+ */
+public class JmxMetricsSink implements MetricsSink
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(JmxMetricsSink.class);
+	/** The domain of the MXBean names. */
+	private static final String DOMAIN = "additions";
+
+	/** The server the MXBeans are registered with. */
+	private MBeanServer server;
+	/** The statistics of each phase, by source and phase name. */
+	private Map<String, PhaseStats> stats;
+
+	/**
+	 * Constructor for a sink that registers its MXBeans with the platform
+	 * MBean server.
+	 */
+	public JmxMetricsSink()
+	{
+		server = ManagementFactory.getPlatformMBeanServer();
+		stats = new ConcurrentHashMap<String, PhaseStats>();
+	}
+
+	@Override
+	public void record(String source, PhaseMetrics phase)
+	{
+		String key = source + "\0" + phase.getName();
+		PhaseStats s = stats.get(key);
+		if(s == null)
+		{
+			synchronized(this)
+			{
+				s = stats.get(key);
+				if(s == null)
+				{
+					s = new PhaseStats();
+					register(source, phase.getName(), s);
+					stats.put(key, s);
+				}
+			}
+		}
+		s.add(phase);
+	}
+
+	/**
+	 * Registers the MXBean of one phase.
+	 *
+	 * @param source  the name of what runs the phase
+	 * @param phase  the name of the phase
+	 * @param s  the statistics of the phase
+	 */
+	private void register(String source, String phase, PhaseStats s)
+	{
+		try
+		{
+			ObjectName name = new ObjectName(DOMAIN + ":type=Phase,source="
+					+ ObjectName.quote(source) + ",phase=" + ObjectName.quote(phase));
+			if(server.isRegistered(name))
+			{
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(s, name);
+		}
+		catch(JMException e)
+		{
+			logger.info("Could not register metrics for phase " + phase + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The statistics of one phase.
+	 */
+	private static class PhaseStats implements PhaseStatsMXBean
+	{
+		/** The number of runs. */
+		private long count;
+		/** The last wall-clock time, in nanoseconds. */
+		private long lastWall;
+		/** The total wall-clock time, in nanoseconds. */
+		private long totalWall;
+		/** The last CPU time, in nanoseconds. */
+		private long lastCpu;
+		/** The total CPU time, in nanoseconds. */
+		private long totalCpu;
+		/** The last allocated bytes. */
+		private long lastBytes;
+		/** The total allocated bytes. */
+		private long totalBytes;
+		/** Whether the last run overlapped other analyses. */
+		private boolean lastOverlapped;
+		/** The number of runs that overlapped other analyses. */
+		private long overlappedCount;
+		/** The counters of the last run. */
+		private Map<String, Long> lastCounters = new LinkedHashMap<String, Long>();
+		/** The totals of the counters. */
+		private Map<String, Long> totalCounters = new LinkedHashMap<String, Long>();
+
+		/**
+		 * Adds the measurements of one run.
+		 *
+		 * @param phase  the measurements
+		 */
+		private synchronized void add(PhaseMetrics phase)
+		{
+			count++;
+			lastWall = phase.getWallNanos();
+			totalWall += lastWall;
+			lastCpu = phase.getCpuNanos();
+			totalCpu += Math.max(0, lastCpu);
+			lastBytes = phase.getAllocatedBytes();
+			totalBytes += Math.max(0, lastBytes);
+			lastOverlapped = phase.isOverlapped();
+			if(lastOverlapped)
+			{
+				overlappedCount++;
+			}
+			lastCounters = new LinkedHashMap<String, Long>(phase.getCounters());
+			for(Map.Entry<String, Long> e : phase.getCounters().entrySet())
+			{
+				Long old = totalCounters.get(e.getKey());
+				totalCounters.put(e.getKey(), (old == null) ? e.getValue() : old + e.getValue());
+			}
+		}
+
+		@Override
+		public synchronized long getCount()
+		{
+			return count;
+		}
+
+		@Override
+		public synchronized double getLastWallMillis()
+		{
+			return lastWall / 1e6;
+		}
+
+		@Override
+		public synchronized double getTotalWallMillis()
+		{
+			return totalWall / 1e6;
+		}
+
+		@Override
+		public synchronized double getLastCpuMillis()
+		{
+			return (lastCpu < 0) ? -1 : lastCpu / 1e6;
+		}
+
+		@Override
+		public synchronized double getTotalCpuMillis()
+		{
+			return totalCpu / 1e6;
+		}
+
+		@Override
+		public synchronized long getLastAllocatedBytes()
+		{
+			return lastBytes;
+		}
+
+		@Override
+		public synchronized long getTotalAllocatedBytes()
+		{
+			return totalBytes;
+		}
+
+		@Override
+		public synchronized boolean isLastOverlapped()
+		{
+			return lastOverlapped;
+		}
+
+		@Override
+		public synchronized long getOverlappedCount()
+		{
+			return overlappedCount;
+		}
+
+		@Override
+		public synchronized Map<String, Long> getLastCounters()
+		{
+			return new LinkedHashMap<String, Long>(lastCounters);
+		}
+
+		@Override
+		public synchronized Map<String, Long> getTotalCounters()
+		{
+			return new LinkedHashMap<String, Long>(totalCounters);
+		}
+	}
+}
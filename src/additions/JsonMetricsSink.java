@@ -0,0 +1,116 @@
+package additions;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A <code>MetricsSink</code> that appends each phase's measurements to a file
+ * as one JSON object per line (JSON Lines), for example:
+ * <pre>
+ * {"time":1700000000000,"source":"DSMData","phase":"visibility","wallMs":812.345,
+ *  "cpuMs":809.100,"allocatedBytes":10485760,"overlapped":false,"counters":{"edges":52310}}
+ * </pre>
+ * (on one line). Unknown CPU times and allocations are written as -1, and
+ * "overlapped" is true if other analyses were measured at the same time, so the
+ * numbers of the phase may include some of their work. Each line
+ * is written and flushed as a whole, so the file can be read while analyses
+ * are still running.
+ */
+public class JsonMetricsSink implements MetricsSink
+{
+	/** The file the lines are written to. */
+	private Writer out;
+
+	/**
+	 * Constructor for a sink that appends to the given file, creating it if needed.
+	 *
+	 * @param filePath  the path of the file
+	 * @throws IOException  if the file cannot be opened
+	 */
+	public JsonMetricsSink(String filePath) throws IOException
+	{
+		out = new OutputStreamWriter(new FileOutputStream(filePath, true), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public synchronized void record(String source, PhaseMetrics phase)
+	{
+		StringBuilder line = new StringBuilder();
+		line.append("{\"time\":").append(System.currentTimeMillis());
+		line.append(",\"source\":");
+		appendString(line, source);
+		line.append(",\"phase\":");
+		appendString(line, phase.getName());
+		line.append(String.format(Locale.ROOT, ",\"wallMs\":%.3f", phase.getWallNanos() / 1e6));
+		line.append(String.format(Locale.ROOT, ",\"cpuMs\":%.3f",
+				(phase.getCpuNanos() < 0) ? -1.0 : phase.getCpuNanos() / 1e6));
+		line.append(",\"allocatedBytes\":").append(phase.getAllocatedBytes());
+		line.append(",\"overlapped\":").append(phase.isOverlapped());
+		line.append(",\"counters\":{");
+		boolean first = true;
+		for(Map.Entry<String, Long> e : phase.getCounters().entrySet())
+		{
+			if(!first)
+			{
+				line.append(',');
+			}
+			appendString(line, e.getKey());
+			line.append(':').append(e.getValue());
+			first = false;
+		}
+		line.append("}}\n");
+		try
+		{
+			out.write(line.toString());
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException  if the file cannot be closed
+	 */
+	public synchronized void close() throws IOException
+	{
+		out.close();
+	}
+
+	/**
+	 * Appends a string as a quoted JSON string, escaping the characters that
+	 * need it.
+	 *
+	 * @param line  the line to append to
+	 * @param s  the string
+	 */
+	static void appendString(StringBuilder line, String s)
+	{
+		line.append('"');
+		for(int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\')
+			{
+				line.append('\\').append(c);
+			}
+			else if(c < 0x20)
+			{
+				line.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				line.append(c);
+			}
+		}
+		line.append('"');
+	}
+}
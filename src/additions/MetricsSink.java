@@ -0,0 +1,21 @@
+package additions;
+
+/**
+ * Receives the measurements of each phase of an analysis, such as the time
+ * spent calculating the visibility matrix. <code>DSMData</code> and
+ * <code>JDependRunner</code> send their measurements to the sink they are given
+ * (or to <code>PhaseTimer.getDefaultSink()</code>), if there is one.<br>
+ * <br>
+ * <code>JmxMetricsSink</code> and <code>JsonMetricsSink</code> are provided. A sink
+ * can be called from several threads at once, so it must be thread-safe.
+ */
+public interface MetricsSink
+{
+	/**
+	 * Records the measurements of one phase, once it has finished.
+	 *
+	 * @param source  the name of what ran the phase, such as "DSMData"
+	 * @param phase  the measurements
+	 */
+	void record(String source, PhaseMetrics phase);
+}
@@ -0,0 +1,534 @@
+package additions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A square binary matrix stored outside the Java heap, with each row packed
+ * into <code>long</code> words like <code>BitMatrix</code>.<br>
+ * <br>
+ * A bit-packed visibility matrix of 200,000 elements takes about 5 GB, which
+ * would need a very large heap and cause long garbage collection pauses. Here
+ * the rows are kept in direct buffers when the whole matrix fits in the memory
+ * budget and in the direct memory the JVM allows, and otherwise in a scratch file that is mapped into memory, so the
+ * operating system pages rows in and out as they are used. The scratch file is
+ * deleted as soon as it is mapped where the operating system allows it (and
+ * otherwise when the JVM exits), so nothing is left behind.<br>
+ * <br>
+ * The rows are split over segments of at most 1 GB, since one buffer cannot
+ * be larger than 2 GB.<br>
+ * <br>
+ * <code>closureOf()</code> fills the matrix with the visibility matrix of a
+ * dependency matrix. It goes through the strongly connected components in
+ * reverse topological order, as <code>CondensationReachability</code> does, so
+ * each row is the union of rows that are already done. The rows are built on the
+ * heap in blocks that fit in a quarter of the memory budget and written out when the
+ * block is full, so the heap only ever holds one block.
+ */
+public class OffHeapBitMatrix
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(OffHeapBitMatrix.class);
+	/** The default memory budget, in bytes (1 GB). */
+	public static final long DEFAULT_MEMORY_BUDGET = 1L << 30;
+	/** The largest number of bytes in one segment. */
+	private static final long SEGMENT_BYTES = 1L << 30;
+	/** The part of the memory budget used for the rows built on the heap (a quarter). */
+	static final int BLOCK_SHARE = 4;
+	/** The JVM option that sets the largest amount of direct memory. */
+	private static final String MAX_DIRECT_OPTION = "-XX:MaxDirectMemorySize=";
+	/** The number of rows (and columns) in the matrix. */
+	private int size;
+	/** The number of long words used to store each row. */
+	private int words;
+	/** The number of rows in each segment. */
+	private int rowsPerSegment;
+	/** The segments, each holding <code>rowsPerSegment</code> rows. */
+	private LongBuffer[] segments;
+	/** Whether the segments are mapped from a scratch file. */
+	private boolean mapped;
+	/** The memory budget, in bytes. */
+	private long memoryBudget;
+
+	/**
+	 * Constructor for an empty (all zero) matrix of the given size. It is kept in
+	 * direct buffers if it fits in three quarters of the memory budget (the rest is
+	 * left for the rows built on the heap) and in the direct memory the JVM has left
+	 * (see <code>availableDirectMemory()</code>), and in a scratch file otherwise.
+	 * If the direct buffers cannot be allocated after all, the scratch file is used.
+	 *
+	 * @param size  the number of rows and columns in the matrix
+	 * @param memoryBudget  the number of bytes of memory the matrix may use
+	 * @param scratchFolder  the folder for the scratch file, or null for the
+	 * temporary folder
+	 * @throws IOException  if the scratch file cannot be created
+	 */
+	public OffHeapBitMatrix(int size, long memoryBudget, File scratchFolder) throws IOException
+	{
+		this.size = size;
+		this.words = Math.max(1, (size + 63) >>> 6);
+		this.memoryBudget = memoryBudget;
+		long rowBytes = 8L * words;
+		this.rowsPerSegment = (int) Math.max(1, Math.min(size, SEGMENT_BYTES / rowBytes));
+		int count = (size + rowsPerSegment - 1) / rowsPerSegment;
+		this.segments = new LongBuffer[count];
+		long totalBytes = rowBytes * size;
+		this.mapped = totalBytes > memoryBudget - memoryBudget / BLOCK_SHARE
+				|| totalBytes > availableDirectMemory();
+
+		if(!mapped)
+		{
+			try
+			{
+				for(int s = 0; s < count; s++)
+				{
+					segments[s] = ByteBuffer.allocateDirect((int) (rowBytes * segmentRows(s)))
+							.order(ByteOrder.nativeOrder()).asLongBuffer();
+				}
+				return;
+			}
+			catch(OutOfMemoryError e)
+			{
+				logger.info("Direct buffers of " + (totalBytes >> 20)
+						+ " MB could not be allocated, using a scratch file.");
+				Arrays.fill(segments, null);
+				mapped = true;
+			}
+		}
+
+		File scratch = File.createTempFile("visibility", ".bits", scratchFolder);
+		RandomAccessFile file = new RandomAccessFile(scratch, "rw");
+		try
+		{
+			file.setLength(totalBytes);
+			FileChannel channel = file.getChannel();
+			for(int s = 0; s < count; s++)
+			{
+				segments[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+						rowBytes * s * rowsPerSegment, rowBytes * segmentRows(s))
+						.order(ByteOrder.nativeOrder()).asLongBuffer();
+			}
+		}
+		finally
+		{
+			file.close();
+			if(!scratch.delete())
+			{
+				scratch.deleteOnExit();
+			}
+		}
+		logger.info("Visibility matrix of " + (totalBytes >> 20) + " MB is mapped from "
+				+ scratch + ".");
+	}
+
+	/**
+	 * Gets the largest amount of direct memory the JVM allows, which is set with
+	 * <code>-XX:MaxDirectMemorySize</code> and is the maximum heap size by default.
+	 *
+	 * @return  the limit, in bytes
+	 */
+	public static long maxDirectMemory()
+	{
+		for(String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+		{
+			if(arg.startsWith(MAX_DIRECT_OPTION))
+			{
+				try
+				{
+					return parseSize(arg.substring(MAX_DIRECT_OPTION.length()));
+				}
+				catch(NumberFormatException e)
+				{
+					logger.info("Error: Could not read " + arg);
+				}
+			}
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	/**
+	 * Gets the amount of direct memory that is not used by any direct buffer yet.
+	 *
+	 * @return  the free direct memory, in bytes
+	 */
+	public static long availableDirectMemory()
+	{
+		long used = 0;
+		for(BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+		{
+			if("direct".equals(pool.getName()))
+			{
+				used = pool.getMemoryUsed();
+			}
+		}
+		return Math.max(0, maxDirectMemory() - used);
+	}
+
+	/**
+	 * Reads a JVM memory size such as 512m or 2g.
+	 *
+	 * @param value  the size, with an optional k, m, g, or t suffix
+	 * @return  the size, in bytes
+	 * @throws NumberFormatException  if it is not a size
+	 */
+	private static long parseSize(String value)
+	{
+		String v = value.trim().toLowerCase(Locale.ROOT);
+		int shift = 0;
+		switch(v.isEmpty() ? ' ' : v.charAt(v.length() - 1))
+		{
+			case 't':
+				shift = 40;
+				break;
+			case 'g':
+				shift = 30;
+				break;
+			case 'm':
+				shift = 20;
+				break;
+			case 'k':
+				shift = 10;
+				break;
+			default:
+				return Long.parseLong(v);
+		}
+		return Long.parseLong(v.substring(0, v.length() - 1)) << shift;
+	}
+
+	/**
+	 * Calculates the visibility matrix of a dependency matrix outside the heap.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param memoryBudget  the number of bytes of memory the matrix and the rows
+	 * that are being built may use
+	 * @param scratchFolder  the folder for the scratch file, or null for the
+	 * temporary folder
+	 * @return  the visibility matrix
+	 * @throws IOException  if the scratch file cannot be created
+	 */
+	public static OffHeapBitMatrix closureOf(SparseDependencyMatrix dep, long memoryBudget,
+											 File scratchFolder) throws IOException
+	{
+		OffHeapBitMatrix m = new OffHeapBitMatrix(dep.size(), memoryBudget, scratchFolder);
+		m.fillClosure(new Condensation(dep));
+		return m;
+	}
+
+	/**
+	 * Gets the number of rows in a segment.
+	 *
+	 * @param s  the segment
+	 * @return  the number of rows
+	 */
+	private int segmentRows(int s)
+	{
+		return Math.min(rowsPerSegment, size - s * rowsPerSegment);
+	}
+
+	/**
+	 * Gets the number of rows that are built on the heap at a time: as many
+	 * as fit in a quarter of the memory budget.
+	 *
+	 * @return  the number of rows in a block, at least 1
+	 */
+	private int blockRows()
+	{
+		long rowBytes = 8L * words;
+		return (int) Math.max(1, Math.min(size, memoryBudget / BLOCK_SHARE / rowBytes));
+	}
+
+	/**
+	 * Fills the matrix with the visibility matrix of the condensed graph. The row
+	 * of a component is built from the rows of the components it depends on,
+	 * which come from the block on the heap if they are in it and from the
+	 * matrix otherwise, and is written to the rows of all of its members when
+	 * the block is full.
+	 *
+	 * @param cond  the condensation of the dependency matrix
+	 */
+	private void fillClosure(Condensation cond)
+	{
+		int count = cond.getComponentCount();
+		int[] rowStart = cond.getDAG().getRowStarts();
+		int[] columns = cond.getDAG().getColumns();
+		int blockSize = Math.min(count, blockRows());
+		long[][] block = new long[blockSize][words];
+		int blocks = 0;
+
+		for(int blockStart = 0; blockStart < count; blockStart += blockSize)
+		{
+			int blockEnd = Math.min(count, blockStart + blockSize);
+			for(int c = blockStart; c < blockEnd; c++)
+			{
+				long[] row = block[c - blockStart];
+				Arrays.fill(row, 0);
+				for(int p = rowStart[c]; p < rowStart[c + 1]; p++)
+				{
+					int d = columns[p];
+					if(d >= blockStart)
+					{
+						long[] rowD = block[d - blockStart];
+						for(int w = 0; w < words; w++)
+						{
+							row[w] |= rowD[w];
+						}
+					}
+					else
+					{
+						orRowInto(cond.getMember(d, 0), row);
+					}
+					for(int k = 0; k < cond.getComponentSize(d); k++)
+					{
+						int j = cond.getMember(d, k);
+						row[j >>> 6] |= 1L << j;
+					}
+				}
+				if(cond.isCyclic(c))
+				{
+					for(int k = 0; k < cond.getComponentSize(c); k++)
+					{
+						int j = cond.getMember(c, k);
+						row[j >>> 6] |= 1L << j;
+					}
+				}
+			}
+			for(int c = blockStart; c < blockEnd; c++)
+			{
+				for(int k = 0; k < cond.getComponentSize(c); k++)
+				{
+					writeRow(cond.getMember(c, k), block[c - blockStart]);
+				}
+			}
+			blocks++;
+		}
+		logger.info("Built " + count + " component rows in " + blocks + " blocks of "
+				+ blockSize + ".");
+	}
+
+	/**
+	 * Gets the number of long words used to store each row.
+	 *
+	 * @return  the number of words per row
+	 */
+	public int getWordsPerRow()
+	{
+		return words;
+	}
+
+	/**
+	 * Gets the number of rows (and columns) in the matrix.
+	 *
+	 * @return  the size of the matrix
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Checks whether the matrix is kept in a scratch file instead of in memory.
+	 *
+	 * @return  true if it is mapped from a scratch file
+	 */
+	public boolean isMapped()
+	{
+		return mapped;
+	}
+
+	/**
+	 * Gets the position of the first word of a row in its segment.
+	 *
+	 * @param i  the row
+	 * @return  the index of the word
+	 */
+	private int offset(int i)
+	{
+		return (i % rowsPerSegment) * words;
+	}
+
+	/**
+	 * Gets the value of a single entry.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 * @return  true if the entry is set
+	 */
+	public boolean get(int i, int j)
+	{
+		return (segments[i / rowsPerSegment].get(offset(i) + (j >>> 6)) & (1L << j)) != 0;
+	}
+
+	/**
+	 * Sets a single entry to 1.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 */
+	public void set(int i, int j)
+	{
+		LongBuffer s = segments[i / rowsPerSegment];
+		int w = offset(i) + (j >>> 6);
+		s.put(w, s.get(w) | (1L << j));
+	}
+
+	/**
+	 * Copies a row into an array.
+	 *
+	 * @param i  the row
+	 * @param target  the array, with at least <code>getWordsPerRow()</code> words
+	 */
+	public void readRow(int i, long[] target)
+	{
+		LongBuffer s = segments[i / rowsPerSegment].duplicate();
+		s.position(offset(i));
+		s.get(target, 0, words);
+	}
+
+	/**
+	 * Replaces a row with the words of an array.
+	 *
+	 * @param i  the row
+	 * @param source  the array, with at least <code>getWordsPerRow()</code> words
+	 */
+	public void writeRow(int i, long[] source)
+	{
+		LongBuffer s = segments[i / rowsPerSegment].duplicate();
+		s.position(offset(i));
+		s.put(source, 0, words);
+	}
+
+	/**
+	 * ORs a row into an array.
+	 *
+	 * @param i  the row
+	 * @param target  the array that is changed
+	 */
+	public void orRowInto(int i, long[] target)
+	{
+		LongBuffer s = segments[i / rowsPerSegment];
+		int base = offset(i);
+		for(int w = 0; w < words; w++)
+		{
+			target[w] |= s.get(base + w);
+		}
+	}
+
+	/**
+	 * Counts the number of set entries in a row.
+	 *
+	 * @param i  the row
+	 * @return  the number of set entries
+	 */
+	public int rowCardinality(int i)
+	{
+		LongBuffer s = segments[i / rowsPerSegment];
+		int base = offset(i);
+		int count = 0;
+		for(int w = 0; w < words; w++)
+		{
+			count += Long.bitCount(s.get(base + w));
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the number of set entries in the whole matrix.
+	 *
+	 * @return  the number of set entries
+	 */
+	public long cardinality()
+	{
+		long count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			count += rowCardinality(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the number of set entries on the diagonal.
+	 *
+	 * @return  the number of set diagonal entries
+	 */
+	public int diagonalCardinality()
+	{
+		int count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			if(get(i, i))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the set entries of every row and column, and of the diagonal, in
+	 * one pass through the rows in order.
+	 *
+	 * @return  the row, column, and diagonal sums of this matrix
+	 */
+	public ReachabilityCounts reachabilityCounts()
+	{
+		int[] rowCounts = new int[size];
+		int[] columnCounts = new int[size];
+		int diagonal = 0;
+		long[] row = new long[words];
+		for(int i = 0; i < size; i++)
+		{
+			readRow(i, row);
+			for(int w = 0; w < words; w++)
+			{
+				long word = row[w];
+				rowCounts[i] += Long.bitCount(word);
+				while(word != 0)
+				{
+					columnCounts[(w << 6) + Long.numberOfTrailingZeros(word)]++;
+					word &= word - 1;
+				}
+			}
+			if((row[i >>> 6] & (1L << i)) != 0)
+			{
+				diagonal++;
+			}
+		}
+		return new ReachabilityCounts(columnCounts, rowCounts, diagonal);
+	}
+
+	/**
+	 * Copies this matrix onto the heap, for matrices small enough to fit there.
+	 *
+	 * @return  a new bit matrix with the same entries
+	 */
+	public BitMatrix toBitMatrix()
+	{
+		BitMatrix b = new BitMatrix(size);
+		for(int i = 0; i < size; i++)
+		{
+			readRow(i, b.getRow(i));
+		}
+		return b;
+	}
+
+	/**
+	 * Drops the buffers, so their memory (or the scratch file) is given back
+	 * when they are garbage collected. The matrix cannot be used afterwards.
+	 */
+	public void close()
+	{
+		segments = null;
+	}
+}
@@ -0,0 +1,178 @@
+package additions;
+
+import java.util.Arrays;
+
+/**
+ * Estimates one quantile (such as the median or the 90th percentile) of a
+ * stream of values without storing them, with the P-square algorithm of Jain
+ * and Chlamtac.<br>
+ * <br>
+ * Five markers are kept: the minimum, the maximum, the quantile itself, and the
+ * quantiles halfway between it and the ends. As each value arrives, the markers'
+ * positions are updated, and any marker that has drifted more than one position
+ * from where it should be is moved, with its height adjusted by a parabolic (or
+ * if that fails, linear) interpolation between its neighbours. Until five values
+ * have been seen, the exact quantile is returned.
+ */
+public class P2Quantile
+{
+	/** The quantile that is estimated, between 0 and 1. */
+	private double p;
+	/** The number of values seen. */
+	private long count;
+	/** The heights of the markers. */
+	private double[] height = new double[5];
+	/** The actual positions of the markers, counting from 1. */
+	private long[] position = new long[5];
+	/** The desired positions of the markers. */
+	private double[] desired = new double[5];
+	/** The amount each desired position moves by for each value. */
+	private double[] increment = new double[5];
+
+	/**
+	 * Constructor for estimating the given quantile.
+	 *
+	 * @param p  the quantile, between 0 and 1 (0.5 for the median)
+	 */
+	public P2Quantile(double p)
+	{
+		if(p < 0 || p > 1)
+		{
+			throw new IllegalArgumentException("The quantile must be between 0 and 1: " + p);
+		}
+		this.p = p;
+		this.count = 0;
+		increment[0] = 0;
+		increment[1] = p / 2;
+		increment[2] = p;
+		increment[3] = (1 + p) / 2;
+		increment[4] = 1;
+	}
+
+	/**
+	 * Gets the quantile that is estimated.
+	 *
+	 * @return  the quantile, between 0 and 1
+	 */
+	public double getQuantile()
+	{
+		return p;
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param x  the value
+	 */
+	public void add(double x)
+	{
+		if(count < 5)
+		{
+			height[(int) count] = x;
+			count++;
+			if(count == 5)
+			{
+				Arrays.sort(height);
+				for(int i = 0; i < 5; i++)
+				{
+					position[i] = i + 1;
+				}
+				desired[0] = 1;
+				desired[1] = 1 + 2 * p;
+				desired[2] = 1 + 4 * p;
+				desired[3] = 3 + 2 * p;
+				desired[4] = 5;
+			}
+			return;
+		}
+		count++;
+
+		//find the cell the value falls in, stretching the ends if needed
+		int k;
+		if(x < height[0])
+		{
+			height[0] = x;
+			k = 0;
+		}
+		else if(x >= height[4])
+		{
+			height[4] = x;
+			k = 3;
+		}
+		else
+		{
+			k = 0;
+			while(x >= height[k + 1])
+			{
+				k++;
+			}
+		}
+		for(int i = k + 1; i < 5; i++)
+		{
+			position[i]++;
+		}
+		for(int i = 0; i < 5; i++)
+		{
+			desired[i] += increment[i];
+		}
+
+		//move the middle markers that have drifted
+		for(int i = 1; i < 4; i++)
+		{
+			double d = desired[i] - position[i];
+			if((d >= 1 && position[i + 1] - position[i] > 1)
+					|| (d <= -1 && position[i - 1] - position[i] < -1))
+			{
+				int step = (d > 0) ? 1 : -1;
+				double h = parabolic(i, step);
+				if(height[i - 1] < h && h < height[i + 1])
+				{
+					height[i] = h;
+				}
+				else
+				{
+					height[i] += step * (height[i + step] - height[i])
+							/ (position[i + step] - position[i]);
+				}
+				position[i] += step;
+			}
+		}
+	}
+
+	/**
+	 * Gets the new height of a marker that moves by one position, by fitting
+	 * a parabola through it and its neighbours.
+	 *
+	 * @param i  the marker
+	 * @param step  1 to move it right, -1 to move it left
+	 * @return  the new height
+	 */
+	private double parabolic(int i, int step)
+	{
+		double left = position[i] - position[i - 1];
+		double right = position[i + 1] - position[i];
+		return height[i] + step / (double) (position[i + 1] - position[i - 1])
+				* ((left + step) * (height[i + 1] - height[i]) / right
+						+ (right - step) * (height[i] - height[i - 1]) / left);
+	}
+
+	/**
+	 * Gets the estimate of the quantile.
+	 *
+	 * @return  the estimate, or 0 if no values have been added
+	 */
+	public double get()
+	{
+		if(count == 0)
+		{
+			return 0;
+		}
+		if(count < 5)
+		{
+			double[] seen = Arrays.copyOf(height, (int) count);
+			Arrays.sort(seen);
+			return seen[(int) Math.round(p * (count - 1))];
+		}
+		return height[2];
+	}
+}
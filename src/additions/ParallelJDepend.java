@@ -0,0 +1,343 @@
+package additions;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.apache.log4j.Logger;
+
+import jdepend.framework.ClassFileParser;
+import jdepend.framework.FileManager;
+import jdepend.framework.JDepend;
+import jdepend.framework.JavaClass;
+import jdepend.framework.JavaPackage;
+
+/**
+ * Does the same analysis as <code>JDepend.analyze()</code>, but parses the
+ * class files in parallel.<br>
+ * <br>
+ * JDepend finds the files with its <code>FileManager</code>, parses every class
+ * in every file one after another, and then adds each class to its package. Here
+ * the same files are found, the classes inside them (loose class files, and the
+ * entries of JAR, WAR, and ZIP files) are listed, and they are parsed on a
+ * <code>ForkJoinPool</code>, with one <code>ClassFileParser</code> per thread
+ * since a parser keeps the state of the class it is parsing. The parsed classes
+ * are then added to a <code>JDepend</code> in the same order as the sequential
+ * run would add them, in the same way as <code>JDepend</code> does, so the
+ * packages and their metrics are the same.<br>
+ * <br>
+ * As in JDepend, a class file that cannot be parsed is skipped, and a class in
+ * an archive that cannot be parsed causes the whole archive to be skipped.
+ */
+public class ParallelJDepend
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(ParallelJDepend.class);
+	/** The number of classes that one task parses without splitting further. */
+	private static final int CHUNK_SIZE = 16;
+	/** The JDepend that holds the packages. */
+	private JDepend jdepend;
+	/** Finds the files to analyze, as in JDepend. */
+	private FileManager fileManager;
+	/** The pool that parses the classes. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructor with the default package filter (from <code>jdepend.properties</code>,
+	 * as in JDepend).
+	 *
+	 * @param pool  the pool to parse the classes in
+	 */
+	public ParallelJDepend(ForkJoinPool pool)
+	{
+		this.jdepend = new JDepend();
+		this.fileManager = new FileManager();
+		this.pool = pool;
+	}
+
+	/**
+	 * Adds a folder or file whose classes will be analyzed.
+	 *
+	 * @param name  the path of the folder or the class, JAR, WAR, or ZIP file
+	 * @throws IOException  if it is not a folder or file
+	 */
+	public void addDirectory(String name) throws IOException
+	{
+		fileManager.addDirectory(name);
+	}
+
+	/**
+	 * Gets the JDepend that the packages are added to.
+	 *
+	 * @return  the JDepend
+	 */
+	public JDepend getJDepend()
+	{
+		return jdepend;
+	}
+
+	/**
+	 * Parses all of the classes and adds them to their packages.
+	 *
+	 * @return  the packages, as returned by <code>JDepend.getPackages()</code>
+	 */
+	public Collection<JavaPackage> analyze()
+	{
+		List<File> sources = new ArrayList<File>();
+		List<JarFile> archives = new ArrayList<JarFile>();
+		List<Integer> unitSource = new ArrayList<Integer>();
+		List<String> unitEntry = new ArrayList<String>();
+		for(Object o : fileManager.extractFiles())
+		{
+			File file = (File) o;
+			int source = sources.size();
+			sources.add(file);
+			if(fileManager.acceptClassFile(file))
+			{
+				archives.add(null);
+				unitSource.add(source);
+				unitEntry.add(null);
+			}
+			else
+			{
+				JarFile jar = null;
+				int listed = unitSource.size();
+				try
+				{
+					jar = new JarFile(file);
+					Enumeration<? extends ZipEntry> entries = jar.entries();
+					while(entries.hasMoreElements())
+					{
+						ZipEntry entry = entries.nextElement();
+						if(fileManager.acceptClassFileName(entry.getName()))
+						{
+							unitSource.add(source);
+							unitEntry.add(entry.getName());
+						}
+					}
+				}
+				catch(IOException e)
+				{
+					logger.info("Skipping " + file + ": " + e.getMessage());
+					unitSource.subList(listed, unitSource.size()).clear();
+					unitEntry.subList(listed, unitEntry.size()).clear();
+				}
+				archives.add(jar);
+			}
+		}
+
+		Job job = new Job(sources, archives, unitSource, unitEntry);
+		try
+		{
+			pool.invoke(new ParseTask(job, 0, job.parsed.length));
+		}
+		finally
+		{
+			for(JarFile jar : archives)
+			{
+				if(jar != null)
+				{
+					try
+					{
+						jar.close();
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+
+		//add the classes in the order JDepend would have
+		int added = 0;
+		for(int k = 0; k < job.parsed.length; k++)
+		{
+			int source = job.source[k];
+			if(job.parsed[k] != null && !job.failed[source])
+			{
+				addClass(job.parsed[k]);
+				added++;
+			}
+		}
+		logger.info("Parsed " + added + " classes from " + sources.size() + " files on "
+				+ pool.getParallelism() + " threads.");
+		List<JavaPackage> packages = new ArrayList<JavaPackage>();
+		for(Object o : jdepend.getPackages())
+		{
+			packages.add((JavaPackage) o);
+		}
+		return packages;
+	}
+
+	/**
+	 * Adds a parsed class to its package, and makes its package depend on
+	 * every package it imports, as <code>JDepend.analyzeClass()</code> does.
+	 *
+	 * @param c  the class
+	 */
+	private void addClass(JavaClass c)
+	{
+		String packageName = c.getPackageName();
+		if(!jdepend.getFilter().accept(packageName))
+		{
+			return;
+		}
+		JavaPackage classPackage = jdepend.addPackage(packageName);
+		classPackage.addClass(c);
+		for(Object o : c.getImportedPackages())
+		{
+			JavaPackage imported = jdepend.addPackage(((JavaPackage) o).getName());
+			classPackage.dependsUpon(imported);
+		}
+	}
+
+	/**
+	 * The classes to parse and the results of parsing them.
+	 */
+	private class Job
+	{
+		/** The files found by the file manager. */
+		private List<File> sources;
+		/** The open archive of each file, or null for class files. */
+		private List<JarFile> archives;
+		/** The file each class is in. */
+		private int[] source;
+		/** The archive entry of each class, or null for class files. */
+		private String[] entry;
+		/** Each parsed class, or null if it could not be parsed. */
+		private JavaClass[] parsed;
+		/** Whether any class in each file could not be parsed. */
+		private boolean[] failed;
+		/** The parser of the current thread. */
+		private ThreadLocal<ClassFileParser> parser = new ThreadLocal<ClassFileParser>()
+		{
+			@Override
+			protected ClassFileParser initialValue()
+			{
+				return new ClassFileParser(jdepend.getFilter());
+			}
+		};
+
+		/**
+		 * Constructor for parsing the given classes.
+		 *
+		 * @param sources  the files found by the file manager
+		 * @param archives  the open archive of each file, or null for class files
+		 * @param unitSource  the file each class is in
+		 * @param unitEntry  the archive entry of each class, or null for class files
+		 */
+		private Job(List<File> sources, List<JarFile> archives, List<Integer> unitSource,
+					List<String> unitEntry)
+		{
+			this.sources = sources;
+			this.archives = archives;
+			int n = unitSource.size();
+			this.source = new int[n];
+			this.entry = unitEntry.toArray(new String[n]);
+			for(int k = 0; k < n; k++)
+			{
+				source[k] = unitSource.get(k);
+			}
+			this.parsed = new JavaClass[n];
+			this.failed = new boolean[sources.size()];
+		}
+
+		/**
+		 * Parses one class.
+		 *
+		 * @param k  the index of the class
+		 */
+		private void parse(int k)
+		{
+			InputStream in = null;
+			try
+			{
+				JarFile jar = archives.get(source[k]);
+				if(jar == null)
+				{
+					in = new FileInputStream(sources.get(source[k]));
+				}
+				else
+				{
+					in = jar.getInputStream(jar.getEntry(entry[k]));
+				}
+				parsed[k] = parser.get().parse(in);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				failed[source[k]] = true;
+				logger.info("Could not parse " + sources.get(source[k])
+						+ (entry[k] == null ? "" : "!" + entry[k]) + ": " + e.getMessage());
+			}
+			finally
+			{
+				if(in != null)
+				{
+					try
+					{
+						in.close();
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a range of classes, splitting the range in half until it is
+	 * small enough.
+	 */
+	private class ParseTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		/** The state shared by all tasks. */
+		private Job job;
+		/** The first class in the range. */
+		private int from;
+		/** One past the last class in the range. */
+		private int to;
+
+		/**
+		 * Constructor for a task over the classes from <code>from</code> to
+		 * <code>to - 1</code>.
+		 *
+		 * @param job  the shared state
+		 * @param from  the first class
+		 * @param to  one past the last class
+		 */
+		private ParseTask(Job job, int from, int to)
+		{
+			this.job = job;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > CHUNK_SIZE)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new ParseTask(job, from, mid), new ParseTask(job, mid, to));
+				return;
+			}
+			for(int k = from; k < to; k++)
+			{
+				job.parse(k);
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package additions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Counts the VFI and VFO of every element by searching the sparse dependency
+ * matrix from each element, with the searches spread over a
+ * <code>ForkJoinPool</code>.<br>
+ * <br>
+ * The sources are split into small ranges that the pool's threads steal from
+ * each other. Each thread has its own search buffers and its own VFI counts,
+ * which are added together once all searches are done. Each VFO value (and
+ * each row of the visibility matrix, if one is requested) is only ever written
+ * by the search from that element, so the results do not depend on how the
+ * work was split or on the order the threads ran in.
+ */
+public class ParallelReachability
+{
+	/** The number of sources that one task searches without splitting further. */
+	private static final int CHUNK_SIZE = 32;
+	/** The dependency matrix to search. */
+	private SparseDependencyMatrix dep;
+	/** The pool that runs the searches. */
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructor for searching the given dependency matrix with the given pool.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param pool  the pool to run the searches in
+	 */
+	public ParallelReachability(SparseDependencyMatrix dep, ForkJoinPool pool)
+	{
+		this.dep = dep;
+		this.pool = pool;
+	}
+
+	/**
+	 * Searches from every element and counts the VFI and VFO. If a bit matrix
+	 * is given, the elements reached from each source are also set in that
+	 * source's row, which gives the whole visibility matrix.
+	 *
+	 * @param rows  the matrix to store the visibility matrix in, or null to
+	 * only count
+	 * @return  the VFI, VFO, and diagonal count of the visibility matrix
+	 */
+	public ReachabilityCounts countAll(BitMatrix rows)
+	{
+		int n = dep.size();
+		Job job = new Job(n, rows);
+		pool.invoke(new SearchTask(job, 0, n));
+
+		int[] vfi = new int[n];
+		int selfVisible = 0;
+		for(Scratch s : job.scratches)
+		{
+			for(int i = 0; i < n; i++)
+			{
+				vfi[i] += s.vfi[i];
+			}
+			selfVisible += s.selfVisible;
+		}
+		return new ReachabilityCounts(vfi, job.vfo, selfVisible);
+	}
+
+	/**
+	 * The buffers used by one thread: the search itself and that thread's
+	 * share of the VFI counts.
+	 */
+	private class Scratch
+	{
+		/** The breadth-first search and its buffers. */
+		private SparseReachability search = new SparseReachability(dep);
+		/** The VFI counts from the searches run on this thread. */
+		private int[] vfi = new int[dep.size()];
+		/** The number of sources that reached themselves on this thread. */
+		private int selfVisible = 0;
+	}
+
+	/**
+	 * The shared state of one call to <code>countAll</code>.
+	 */
+	private class Job
+	{
+		/** The VFO of each element. */
+		private int[] vfo;
+		/** The visibility matrix to fill in, or null. */
+		private BitMatrix rows;
+		/** The buffers of every thread that took part, to be merged at the end. */
+		private List<Scratch> scratches = new ArrayList<Scratch>();
+		/** The buffers of the current thread. */
+		private ThreadLocal<Scratch> local = new ThreadLocal<Scratch>()
+		{
+			@Override
+			protected Scratch initialValue()
+			{
+				Scratch s = new Scratch();
+				synchronized(scratches)
+				{
+					scratches.add(s);
+				}
+				return s;
+			}
+		};
+
+		/**
+		 * Constructor for a job over n elements.
+		 *
+		 * @param n  the number of elements
+		 * @param rows  the visibility matrix to fill in, or null
+		 */
+		private Job(int n, BitMatrix rows)
+		{
+			this.vfo = new int[n];
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * Searches from a range of sources, splitting the range in half until it
+	 * is small enough.
+	 */
+	private class SearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		/** The state shared by all tasks. */
+		private Job job;
+		/** The first source in the range. */
+		private int from;
+		/** One past the last source in the range. */
+		private int to;
+
+		/**
+		 * Constructor for a task over the sources from <code>from</code> to
+		 * <code>to - 1</code>.
+		 *
+		 * @param job  the shared state
+		 * @param from  the first source
+		 * @param to  one past the last source
+		 */
+		private SearchTask(Job job, int from, int to)
+		{
+			this.job = job;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > CHUNK_SIZE)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new SearchTask(job, from, mid), new SearchTask(job, mid, to));
+				return;
+			}
+			Scratch s = job.local.get();
+			for(int source = from; source < to; source++)
+			{
+				int count = s.search.search(source);
+				job.vfo[source] = count;
+				for(int k = 0; k < count; k++)
+				{
+					int w = s.search.getReached(k);
+					s.vfi[w]++;
+					if(job.rows != null)
+					{
+						job.rows.set(source, w);
+					}
+				}
+				if(s.search.reachedSelf())
+				{
+					s.selfVisible++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package additions;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The measurements of one phase of an analysis: the wall-clock and CPU time
+ * it took, the bytes allocated by its threads, and any counters the phase
+ * recorded (such as the number of dependencies it went through). If other
+ * analyses ran at the same time, the phase is marked as overlapped, since its
+ * times (and its CPU time and bytes, if they shared its pool) may include their work.
+ */
+public class PhaseMetrics
+{
+	/** The name of the phase. */
+	private String name;
+	/** The wall-clock time, in nanoseconds. */
+	private long wallNanos;
+	/** The CPU time of the threads of the phase, in nanoseconds, or -1 if unknown. */
+	private long cpuNanos;
+	/** The bytes allocated by the threads of the phase, or -1 if unknown. */
+	private long allocatedBytes;
+	/** Whether other phases were measured on other threads at the same time. */
+	private boolean overlapped;
+	/** The counters recorded by the phase, by name. */
+	private Map<String, Long> counters;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param name  the name of the phase
+	 * @param wallNanos  the wall-clock time, in nanoseconds
+	 * @param cpuNanos  the CPU time, in nanoseconds, or -1 if unknown
+	 * @param allocatedBytes  the bytes allocated, or -1 if unknown
+	 * @param overlapped  true if other phases were measured on other threads at the same time
+	 * @param counters  the counters recorded by the phase
+	 */
+	public PhaseMetrics(String name, long wallNanos, long cpuNanos, long allocatedBytes,
+						boolean overlapped, Map<String, Long> counters)
+	{
+		this.name = name;
+		this.wallNanos = wallNanos;
+		this.cpuNanos = cpuNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.overlapped = overlapped;
+		this.counters = Collections.unmodifiableMap(counters);
+	}
+
+	/**
+	 * Gets the name of the phase.
+	 *
+	 * @return  the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the wall-clock time the phase took.
+	 *
+	 * @return  the time, in nanoseconds
+	 */
+	public long getWallNanos()
+	{
+		return wallNanos;
+	}
+
+	/**
+	 * Gets the CPU time of the thread that ran the phase and, if it was given one,
+	 * of the workers of the <code>ForkJoinPool</code> it handed work to.
+	 *
+	 * @return  the CPU time, in nanoseconds, or -1 if the JVM does not measure it
+	 */
+	public long getCpuNanos()
+	{
+		return cpuNanos;
+	}
+
+	/**
+	 * Gets the bytes allocated by the thread that ran the phase and, if it was
+	 * given one, by the workers of the <code>ForkJoinPool</code> it handed work to.
+	 *
+	 * @return  the bytes allocated, or -1 if the JVM does not measure it
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * Checks whether other phases were measured on other threads while this one
+	 * ran, for example in another analysis of a batch. The measurements are then
+	 * less reliable, since the analyses shared the CPUs, and maybe the pool.
+	 *
+	 * @return  true if the phase overlapped other phases
+	 */
+	public boolean isOverlapped()
+	{
+		return overlapped;
+	}
+
+	/**
+	 * Gets the counters recorded by the phase.
+	 *
+	 * @return  the counters, by name, in the order they were first recorded
+	 */
+	public Map<String, Long> getCounters()
+	{
+		return counters;
+	}
+}
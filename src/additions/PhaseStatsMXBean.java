@@ -0,0 +1,88 @@
+package additions;
+
+import java.util.Map;
+
+/**
+ * The management interface of the statistics that <code>JmxMetricsSink</code>
+ * keeps for each phase of each kind of analysis.
+ */
+public interface PhaseStatsMXBean
+{
+	/**
+	 * Gets the number of times the phase has run.
+	 *
+	 * @return  the number of runs
+	 */
+	long getCount();
+
+	/**
+	 * Gets the wall-clock time of the last run.
+	 *
+	 * @return  the time, in milliseconds
+	 */
+	double getLastWallMillis();
+
+	/**
+	 * Gets the total wall-clock time of all runs.
+	 *
+	 * @return  the time, in milliseconds
+	 */
+	double getTotalWallMillis();
+
+	/**
+	 * Gets the CPU time of the last run.
+	 *
+	 * @return  the time, in milliseconds, or -1 if it is not measured
+	 */
+	double getLastCpuMillis();
+
+	/**
+	 * Gets the total CPU time of all runs.
+	 *
+	 * @return  the time, in milliseconds
+	 */
+	double getTotalCpuMillis();
+
+	/**
+	 * Gets the bytes allocated by the last run.
+	 *
+	 * @return  the bytes, or -1 if they are not measured
+	 */
+	long getLastAllocatedBytes();
+
+	/**
+	 * Gets the bytes allocated by all runs.
+	 *
+	 * @return  the bytes
+	 */
+	long getTotalAllocatedBytes();
+
+	/**
+	 * Checks whether the last run overlapped phases of other analyses, which makes
+	 * its measurements less reliable.
+	 *
+	 * @return  true if it overlapped
+	 */
+	boolean isLastOverlapped();
+
+	/**
+	 * Gets the number of runs that overlapped phases of other analyses.
+	 *
+	 * @return  the number of overlapped runs
+	 */
+	long getOverlappedCount();
+
+	/**
+	 * Gets the counters of the last run.
+	 *
+	 * @return  the counters, by name
+	 */
+	Map<String, Long> getLastCounters();
+
+	/**
+	 * Gets the totals of the counters over all runs.
+	 *
+	 * @return  the counters, by name
+	 */
+	Map<String, Long> getTotalCounters();
+}
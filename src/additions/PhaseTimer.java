@@ -0,0 +1,336 @@
+package additions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures one phase of an analysis and sends the measurements to a
+ * <code>MetricsSink</code> when the phase ends. A timer is used like this:
+ * <pre>
+ * PhaseTimer timer = PhaseTimer.start(sink, "DSMData", "visibility");
+ * ...
+ * timer.count("edges", dep.getEdgeCount());
+ * timer.stop();
+ * </pre>
+ * If the sink is null, nothing is measured and every method does nothing, so
+ * an analysis without a sink costs nothing extra.<br>
+ * <br>
+ * The CPU time and allocated bytes are those of the thread that started the
+ * timer and, if the phase is given the <code>ForkJoinPool</code> it hands work to,
+ * of the workers of that pool. They are read from the JVM's <code>ThreadMXBean</code>
+ * (and <code>com.sun.management.ThreadMXBean</code> for allocation), when the JVM
+ * supports them. Workers that end during the phase are not counted.<br>
+ * <br>
+ * Analyses that run at the same time (as in <code>BatchAnalysisRunner</code> and
+ * <code>AnalysisServer</code>) may share a pool, and always share the CPUs, so a
+ * phase is marked as overlapped (see <code>PhaseMetrics.isOverlapped()</code>) if a
+ * phase was being measured on another thread at any time while it ran.<br>
+ * <br>
+ * A default sink can be set with <code>setDefaultSink()</code>. It is used by
+ * every <code>DSMData</code> and <code>JDependRunner</code> created afterwards,
+ * including the ones whose constructors run the whole analysis.
+ */
+public class PhaseTimer
+{
+	/** The sink used when none is given. */
+	private static volatile MetricsSink defaultSink = null;
+	/** The JVM's thread bean. */
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	/** The number of timers running on each thread. */
+	private static final ThreadLocal<int[]> RUNNING = new ThreadLocal<int[]>()
+	{
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[1];
+		}
+	};
+	/** The number of threads that have timers running. */
+	private static final AtomicInteger ACTIVE_THREADS = new AtomicInteger();
+	/** The number of times a thread started running timers. */
+	private static final AtomicLong THREAD_STARTS = new AtomicLong();
+
+	/** The sink to send the measurements to, or null. */
+	private MetricsSink sink;
+	/** The name of what is running the phase. */
+	private String source;
+	/** The name of the phase. */
+	private String phase;
+	/** The thread that started the timer. */
+	private Thread thread;
+	/** The pool the phase hands work to, or null. */
+	private ForkJoinPool pool;
+	/** The value of <code>THREAD_STARTS</code> when the phase started. */
+	private long startThreadStarts;
+	/** Whether a phase was measured on another thread while this one ran. */
+	private boolean overlapped;
+	/** The wall-clock time when the phase started. */
+	private long startWall;
+	/** The CPU time of each measured thread when the phase started, by thread id, or null. */
+	private Map<Long, Long> startCpu;
+	/** The bytes allocated by each measured thread when the phase started, by thread id, or null. */
+	private Map<Long, Long> startBytes;
+	/** The counters recorded so far. */
+	private Map<String, Long> counters;
+
+	/**
+	 * Constructor that starts timing a phase.
+	 *
+	 * @param sink  the sink to send the measurements to, or null
+	 * @param source  the name of what is running the phase
+	 * @param phase  the name of the phase
+	 * @param pool  the pool the phase hands work to, or null
+	 */
+	private PhaseTimer(MetricsSink sink, String source, String phase, ForkJoinPool pool)
+	{
+		this.sink = sink;
+		this.source = source;
+		this.phase = phase;
+		if(sink != null)
+		{
+			this.thread = Thread.currentThread();
+			this.pool = pool;
+			counters = new LinkedHashMap<String, Long>();
+			if(RUNNING.get()[0]++ == 0)
+			{
+				ACTIVE_THREADS.incrementAndGet();
+				startThreadStarts = THREAD_STARTS.incrementAndGet();
+			}
+			else
+			{
+				startThreadStarts = THREAD_STARTS.get();
+			}
+			overlapped = ACTIVE_THREADS.get() > 1;
+			long[] ids = threadIds();
+			startBytes = allocatedBytes(ids);
+			startCpu = cpuTime(ids);
+			startWall = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Starts timing a phase.
+	 *
+	 * @param sink  the sink to send the measurements to, or null to measure nothing
+	 * @param source  the name of what is running the phase
+	 * @param phase  the name of the phase
+	 * @return  the timer
+	 */
+	public static PhaseTimer start(MetricsSink sink, String source, String phase)
+	{
+		return new PhaseTimer(sink, source, phase, null);
+	}
+
+	/**
+	 * Starts timing a phase that hands work to a pool, whose workers are measured
+	 * along with the current thread.
+	 *
+	 * @param sink  the sink to send the measurements to, or null to measure nothing
+	 * @param source  the name of what is running the phase
+	 * @param phase  the name of the phase
+	 * @param pool  the pool the phase hands work to
+	 * @return  the timer
+	 */
+	public static PhaseTimer start(MetricsSink sink, String source, String phase,
+								   ForkJoinPool pool)
+	{
+		return new PhaseTimer(sink, source, phase, pool);
+	}
+
+	/**
+	 * Sets the sink used by analyses that are not given one.
+	 *
+	 * @param sink  the default sink, or null for none
+	 */
+	public static void setDefaultSink(MetricsSink sink)
+	{
+		defaultSink = sink;
+	}
+
+	/**
+	 * Gets the sink used by analyses that are not given one.
+	 *
+	 * @return  the default sink, or null if there is none
+	 */
+	public static MetricsSink getDefaultSink()
+	{
+		return defaultSink;
+	}
+
+	/**
+	 * Adds to a counter of this phase.
+	 *
+	 * @param counter  the name of the counter
+	 * @param amount  the amount to add
+	 */
+	public void count(String counter, long amount)
+	{
+		if(sink != null)
+		{
+			Long old = counters.get(counter);
+			counters.put(counter, (old == null) ? amount : old + amount);
+		}
+	}
+
+	/**
+	 * Ends the phase and sends its measurements to the sink.
+	 */
+	public void stop()
+	{
+		if(sink != null)
+		{
+			long wall = System.nanoTime() - startWall;
+			long[] ids = threadIds();
+			long cpu = growth(startCpu, cpuTime(ids));
+			long bytes = growth(startBytes, allocatedBytes(ids));
+			if(THREAD_STARTS.get() != startThreadStarts)
+			{
+				overlapped = true;
+			}
+			if(Thread.currentThread() == thread && --RUNNING.get()[0] == 0)
+			{
+				ACTIVE_THREADS.decrementAndGet();
+			}
+			sink.record(source, new PhaseMetrics(phase, wall, cpu, bytes, overlapped, counters));
+			sink = null;
+		}
+	}
+
+	/**
+	 * Gets the ids of the threads that are measured: the thread that started the
+	 * timer, and the workers of the pool, if there is one.
+	 *
+	 * @return  the thread ids
+	 */
+	private long[] threadIds()
+	{
+		if(pool == null)
+		{
+			return new long[] {thread.getId()};
+		}
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while(root.getParent() != null)
+		{
+			root = root.getParent();
+		}
+		Thread[] all = new Thread[root.activeCount() + 16];
+		int count;
+		while((count = root.enumerate(all, true)) == all.length)
+		{
+			all = new Thread[all.length * 2];
+		}
+		long[] ids = new long[count + 1];
+		int k = 0;
+		ids[k++] = thread.getId();
+		for(int t = 0; t < count; t++)
+		{
+			if(all[t] != thread && all[t] instanceof ForkJoinWorkerThread
+					&& ((ForkJoinWorkerThread) all[t]).getPool() == pool)
+			{
+				ids[k++] = all[t].getId();
+			}
+		}
+		return Arrays.copyOf(ids, k);
+	}
+
+	/**
+	 * Gets the CPU time of some threads.
+	 *
+	 * @param ids  the thread ids
+	 * @return  the CPU time of each thread, in nanoseconds, by thread id, or null if
+	 * it is not supported
+	 */
+	private static Map<Long, Long> cpuTime(long[] ids)
+	{
+		if(!THREADS.isThreadCpuTimeSupported() || !THREADS.isThreadCpuTimeEnabled())
+		{
+			return null;
+		}
+		long[] times;
+		if(THREADS instanceof com.sun.management.ThreadMXBean)
+		{
+			times = ((com.sun.management.ThreadMXBean) THREADS).getThreadCpuTime(ids);
+		}
+		else
+		{
+			times = new long[ids.length];
+			for(int t = 0; t < ids.length; t++)
+			{
+				times[t] = THREADS.getThreadCpuTime(ids[t]);
+			}
+		}
+		return byThread(ids, times);
+	}
+
+	/**
+	 * Gets the bytes allocated so far by some threads.
+	 *
+	 * @param ids  the thread ids
+	 * @return  the bytes allocated by each thread, by thread id, or null if it is
+	 * not supported
+	 */
+	private static Map<Long, Long> allocatedBytes(long[] ids)
+	{
+		if(THREADS instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+			if(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled())
+			{
+				return byThread(ids, bean.getThreadAllocatedBytes(ids));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Puts the values of the threads that are still alive (those that are not -1)
+	 * into a map.
+	 *
+	 * @param ids  the thread ids
+	 * @param values  the value of each thread, or -1
+	 * @return  the values by thread id
+	 */
+	private static Map<Long, Long> byThread(long[] ids, long[] values)
+	{
+		Map<Long, Long> map = new HashMap<Long, Long>(ids.length * 2);
+		for(int t = 0; t < ids.length; t++)
+		{
+			if(values[t] >= 0)
+			{
+				map.put(ids[t], values[t]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Adds up how much the value of every thread grew during the phase. Threads
+	 * that started during the phase count from 0.
+	 *
+	 * @param start  the values when the phase started, or null
+	 * @param end  the values when the phase ended, or null
+	 * @return  the total growth, or -1 if either is null
+	 */
+	private static long growth(Map<Long, Long> start, Map<Long, Long> end)
+	{
+		if(start == null || end == null)
+		{
+			return -1;
+		}
+		long total = 0;
+		for(Map.Entry<Long, Long> e : end.entrySet())
+		{
+			Long before = start.get(e.getKey());
+			total += e.getValue() - ((before == null) ? 0 : before);
+		}
+		return total;
+	}
+}
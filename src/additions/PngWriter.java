@@ -0,0 +1,162 @@
+package additions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8-bit RGB PNG image one row at a time, so that an image of any
+ * height can be written without holding all of it in memory (which
+ * <code>javax.imageio</code> needs).<br>
+ * <br>
+ * The compressed rows are written in <code>IDAT</code> chunks of up to
+ * <code>CHUNK_SIZE</code> bytes. Rows must be written from top to bottom, and
+ * the writer must be closed after the last row.
+ */
+public class PngWriter
+{
+	/** The PNG file signature. */
+	private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+	/** The largest amount of compressed data in one <code>IDAT</code> chunk. */
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/** The stream the PNG is written to. */
+	private OutputStream out;
+	/** The compressed image data, collected until it fills a chunk. */
+	private ByteArrayOutputStream pending;
+	/** The compressor of the rows. */
+	private DeflaterOutputStream deflater;
+	/** The width of the image, in pixels. */
+	private int width;
+	/** The height of the image, in pixels. */
+	private int height;
+	/** The number of rows written so far. */
+	private int rows;
+
+	/**
+	 * Constructor that writes the PNG header for an image of the given size.
+	 *
+	 * @param out  the stream to write the PNG to; it is closed by <code>close()</code>
+	 * @param width  the width of the image, in pixels
+	 * @param height  the height of the image, in pixels
+	 * @throws IOException  if the header cannot be written
+	 */
+	public PngWriter(OutputStream out, int width, int height) throws IOException
+	{
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		this.rows = 0;
+		out.write(SIGNATURE);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		writeInt(header, width);
+		writeInt(header, height);
+		header.write(8);	//bits per sample
+		header.write(2);	//RGB
+		header.write(0);	//deflate
+		header.write(0);	//adaptive filtering
+		header.write(0);	//not interlaced
+		writeChunk("IHDR", header.toByteArray(), header.size());
+
+		pending = new ByteArrayOutputStream(CHUNK_SIZE + 1024);
+		deflater = new DeflaterOutputStream(pending, new Deflater(Deflater.BEST_SPEED), 1 << 14);
+	}
+
+	/**
+	 * Writes the next row of the image.
+	 *
+	 * @param rgb  the red, green, and blue bytes of each pixel in the row
+	 * @param offset  the position of the row's first byte in the array
+	 * @throws IOException  if the row cannot be written
+	 */
+	public void writeRow(byte[] rgb, int offset) throws IOException
+	{
+		if(rows == height)
+		{
+			throw new IllegalStateException("All " + height + " rows have already been written.");
+		}
+		deflater.write(0);	//no filter
+		deflater.write(rgb, offset, width * 3);
+		rows++;
+		if(pending.size() >= CHUNK_SIZE)
+		{
+			flushData();
+		}
+	}
+
+	/**
+	 * Finishes the image and closes the stream.
+	 *
+	 * @throws IOException  if the image cannot be written, or not all rows were written
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			if(rows != height)
+			{
+				throw new IOException("Only " + rows + " of " + height + " rows were written.");
+			}
+			deflater.finish();
+			flushData();
+			writeChunk("IEND", new byte[0], 0);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the compressed data collected so far as an <code>IDAT</code> chunk.
+	 *
+	 * @throws IOException  if the chunk cannot be written
+	 */
+	private void flushData() throws IOException
+	{
+		if(pending.size() > 0)
+		{
+			writeChunk("IDAT", pending.toByteArray(), pending.size());
+			pending.reset();
+		}
+	}
+
+	/**
+	 * Writes one chunk, with its length and checksum.
+	 *
+	 * @param type  the four-letter chunk type
+	 * @param data  the chunk data
+	 * @param length  the number of bytes of data
+	 * @throws IOException  if the chunk cannot be written
+	 */
+	private void writeChunk(String type, byte[] data, int length) throws IOException
+	{
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+		writeInt(out, length);
+		out.write(name);
+		out.write(data, 0, length);
+		writeInt(out, (int) crc.getValue());
+	}
+
+	/**
+	 * Writes a big-endian 32-bit integer.
+	 *
+	 * @param stream  the stream to write to
+	 * @param value  the value
+	 * @throws IOException  if the value cannot be written
+	 */
+	private static void writeInt(OutputStream stream, int value) throws IOException
+	{
+		stream.write(value >>> 24);
+		stream.write(value >>> 16);
+		stream.write(value >>> 8);
+		stream.write(value);
+	}
+}
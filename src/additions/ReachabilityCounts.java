@@ -0,0 +1,77 @@
+package additions;
+
+/**
+ * The row and column sums of a visibility matrix, without the matrix itself.
+ * This is everything needed to calculate the VFI, VFO, and both propagation
+ * costs, so visibility methods that never build the whole matrix produce one
+ * of these instead.
+ */
+public class ReachabilityCounts
+{
+	/** Fan-in visibility of each element (the column sums). */
+	private int[] vfi;
+	/** Fan-out visibility of each element (the row sums). */
+	private int[] vfo;
+	/** The number of elements that can see themselves (the diagonal sum),
+	 *  which are the elements that are part of a cycle. */
+	private int selfVisible;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param vfi  the fan-in visibility of each element
+	 * @param vfo  the fan-out visibility of each element
+	 * @param selfVisible  the number of elements that can see themselves
+	 */
+	public ReachabilityCounts(int[] vfi, int[] vfo, int selfVisible)
+	{
+		this.vfi = vfi;
+		this.vfo = vfo;
+		this.selfVisible = selfVisible;
+	}
+
+	/**
+	 * Gets the fan-in visibility of each element.
+	 *
+	 * @return  the VFI values
+	 */
+	public int[] getVFI()
+	{
+		return vfi;
+	}
+
+	/**
+	 * Gets the fan-out visibility of each element.
+	 *
+	 * @return  the VFO values
+	 */
+	public int[] getVFO()
+	{
+		return vfo;
+	}
+
+	/**
+	 * Gets the number of elements that can see themselves.
+	 *
+	 * @return  the sum of the diagonal of the visibility matrix
+	 */
+	public int getSelfVisible()
+	{
+		return selfVisible;
+	}
+
+	/**
+	 * Gets the total number of non-zero entries in the visibility matrix.
+	 *
+	 * @return  the sum of all VFO values
+	 */
+	public long getTotal()
+	{
+		long sum = 0;
+		for(int i = 0; i < vfo.length; i++)
+		{
+			sum += vfo[i];
+		}
+		return sum;
+	}
+}
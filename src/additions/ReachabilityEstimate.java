@@ -0,0 +1,75 @@
+package additions;
+
+/**
+ * Estimated row and column sums of a visibility matrix, as found by
+ * <code>ReachabilityEstimator</code>. Only the part of each count that comes from
+ * other components is estimated; the part from the element's own cyclic group,
+ * and the number of elements that can see themselves, are exact.<br>
+ * <br>
+ * Since the VFI and VFO are estimated separately, their sums are not exactly
+ * equal, so the total is taken as the mean of the two.
+ */
+public class ReachabilityEstimate extends ReachabilityCounts
+{
+	/** The number of ranks used for each estimate. */
+	private int sketchSize;
+	/** The estimated part of the total (the part not in the elements' own cyclic groups). */
+	private double estimatedTotal;
+
+	/**
+	 * Constructor with all values specified.
+	 *
+	 * @param vfi  the estimated fan-in visibility of each element
+	 * @param vfo  the estimated fan-out visibility of each element
+	 * @param selfVisible  the number of elements that can see themselves
+	 * @param sketchSize  the number of ranks used for each estimate
+	 * @param estimatedTotal  the estimated part of the total
+	 */
+	public ReachabilityEstimate(int[] vfi, int[] vfo, int selfVisible, int sketchSize,
+								double estimatedTotal)
+	{
+		super(vfi, vfo, selfVisible);
+		this.sketchSize = sketchSize;
+		this.estimatedTotal = estimatedTotal;
+	}
+
+	/**
+	 * Gets the number of ranks used for each estimate.
+	 *
+	 * @return  the sketch size
+	 */
+	public int getSketchSize()
+	{
+		return sketchSize;
+	}
+
+	/**
+	 * Gets the estimated total number of non-zero entries in the visibility matrix.
+	 *
+	 * @return  the mean of the VFI sum and the VFO sum, rounded
+	 */
+	@Override
+	public long getTotal()
+	{
+		long in = 0;
+		for(int v : getVFI())
+		{
+			in += v;
+		}
+		return Math.round((in + super.getTotal()) / 2.0);
+	}
+
+	/**
+	 * Gets the standard error of the total. Each reachable set size is estimated
+	 * with a relative standard error of <code>1 / sqrt(sketchSize - 2)</code>. The
+	 * estimates for different elements share their ranks, so they are not independent;
+	 * the standard error of their sum is at most the sum of their standard errors,
+	 * which is what is returned.
+	 *
+	 * @return  an upper bound on the standard error of <code>getTotal()</code>
+	 */
+	public double getStandardError()
+	{
+		return estimatedTotal / Math.sqrt(sketchSize - 2);
+	}
+}
@@ -0,0 +1,291 @@
+package additions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers reachability queries about single classes: whether one class can see
+ * another, which classes a class can see (what it transitively depends on), which
+ * classes can see it (what is affected by a change to it), and its VFI and VFO.<br>
+ * <br>
+ * The index is the condensation of the dependency matrix with the reachable
+ * components of every component kept as a bitset (see
+ * <code>CondensationReachability</code>). Every member of a component sees the same
+ * classes, so a point query is one component lookup and one bit test, and a whole
+ * set is the members of the components in one bitset. The sets of classes that can
+ * see a class are found by testing its component's bit in the bitsets of the
+ * components numbered above it (only those can reach it), so they do not need a
+ * second set of bitsets.<br>
+ * <br>
+ * Component c only needs c bits, so the index takes about (number of components)
+ * squared / 16 bytes, which is far less than the visibility matrix when there is a
+ * Core, and never more than half of it.
+ */
+public class ReachabilityIndex
+{
+	/** The dependency matrix. */
+	private SparseDependencyMatrix dep;
+	/** The strongly connected components. */
+	private Condensation cond;
+	/** The reachable components of every component. */
+	private CondensationReachability reach;
+	/** The index of each class name, built the first time a name is looked up. */
+	private Map<String, Integer> index;
+
+	/**
+	 * Constructor that builds the index of a dependency matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public ReachabilityIndex(SparseDependencyMatrix dep)
+	{
+		this(dep, new Condensation(dep));
+	}
+
+	/**
+	 * Constructor that builds the index from components that have already been found.
+	 *
+	 * @param dep  the dependency matrix
+	 * @param cond  the condensation of the matrix
+	 */
+	public ReachabilityIndex(SparseDependencyMatrix dep, Condensation cond)
+	{
+		this.dep = dep;
+		this.cond = cond;
+		this.reach = new CondensationReachability(cond, true);
+	}
+
+	/**
+	 * Gets the number of classes.
+	 *
+	 * @return  the number of classes
+	 */
+	public int size()
+	{
+		return cond.getElementCount();
+	}
+
+	/**
+	 * Gets the index of a class.
+	 *
+	 * @param name  the name of the class
+	 * @return  the index, or -1 if there is no class with that name
+	 */
+	public synchronized int indexOf(String name)
+	{
+		if(index == null)
+		{
+			if(dep.getNames() == null)
+			{
+				return -1;
+			}
+			index = new HashMap<String, Integer>();
+			for(int i = 0; i < dep.size(); i++)
+			{
+				index.put(dep.getName(i), i);
+			}
+		}
+		Integer i = index.get(name);
+		return (i == null) ? -1 : i;
+	}
+
+	/**
+	 * Gets the index of a class that must exist.
+	 *
+	 * @param name  the name of the class
+	 * @return  the index
+	 * @throws IllegalArgumentException  if there is no class with that name
+	 */
+	private int require(String name)
+	{
+		int i = indexOf(name);
+		if(i < 0)
+		{
+			throw new IllegalArgumentException("No such class: " + name);
+		}
+		return i;
+	}
+
+	/**
+	 * Checks whether one class can see another, meaning there is a path of one or
+	 * more dependencies from the first to the second. A class can only see itself
+	 * if it is part of a cycle.
+	 *
+	 * @param from  the index of the class the path starts at
+	 * @param to  the index of the class the path ends at
+	 * @return  true if there is a path
+	 */
+	public boolean canSee(int from, int to)
+	{
+		return reach.isReachable(cond.getComponent(from), cond.getComponent(to));
+	}
+
+	/**
+	 * Checks whether one class can see another, by name.
+	 *
+	 * @param from  the name of the class the path starts at
+	 * @param to  the name of the class the path ends at
+	 * @return  true if there is a path
+	 * @throws IllegalArgumentException  if either class does not exist
+	 */
+	public boolean canSee(String from, String to)
+	{
+		return canSee(require(from), require(to));
+	}
+
+	/**
+	 * Gets the fan-out visibility of a class: the number of classes it can see.
+	 *
+	 * @param i  the index of the class
+	 * @return  the VFO
+	 */
+	public int getVFO(int i)
+	{
+		int c = cond.getComponent(i);
+		return reach.getOutWeight(c) + (cond.isCyclic(c) ? cond.getComponentSize(c) : 0);
+	}
+
+	/**
+	 * Gets the fan-in visibility of a class: the number of classes that can see it.
+	 *
+	 * @param i  the index of the class
+	 * @return  the VFI
+	 */
+	public int getVFI(int i)
+	{
+		int c = cond.getComponent(i);
+		return reach.getInWeight(c) + (cond.isCyclic(c) ? cond.getComponentSize(c) : 0);
+	}
+
+	/**
+	 * Gets the classes a class can see, which are everything it transitively
+	 * depends on.
+	 *
+	 * @param i  the index of the class
+	 * @return  the indices of the classes, in ascending order
+	 */
+	public int[] getVisible(int i)
+	{
+		int c = cond.getComponent(i);
+		int[] result = new int[getVFO(i)];
+		int n = 0;
+		long[] bits = reach.getReachable(c);
+		for(int w = 0; w < bits.length; w++)
+		{
+			long word = bits[w];
+			while(word != 0)
+			{
+				n = addMembers((w << 6) + Long.numberOfTrailingZeros(word), result, n);
+				word &= word - 1;
+			}
+		}
+		if(cond.isCyclic(c))
+		{
+			n = addMembers(c, result, n);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Gets the classes that can see a class, which are everything that may be
+	 * affected when it changes.
+	 *
+	 * @param i  the index of the class
+	 * @return  the indices of the classes, in ascending order
+	 */
+	public int[] getVisibleFrom(int i)
+	{
+		int c = cond.getComponent(i);
+		int[] result = new int[getVFI(i)];
+		int n = 0;
+		int word = c >> 6;
+		long mask = 1L << c;
+		for(int d = c + 1; d < cond.getComponentCount(); d++)
+		{
+			if((reach.getReachable(d)[word] & mask) != 0)
+			{
+				n = addMembers(d, result, n);
+			}
+		}
+		if(cond.isCyclic(c))
+		{
+			n = addMembers(c, result, n);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Gets the names of the classes a class can see.
+	 *
+	 * @param name  the name of the class
+	 * @return  the names, in the order of their indices
+	 * @throws IllegalArgumentException  if the class does not exist
+	 */
+	public String[] getVisible(String name)
+	{
+		return namesOf(getVisible(require(name)));
+	}
+
+	/**
+	 * Gets the names of the classes that can see a class.
+	 *
+	 * @param name  the name of the class
+	 * @return  the names, in the order of their indices
+	 * @throws IllegalArgumentException  if the class does not exist
+	 */
+	public String[] getVisibleFrom(String name)
+	{
+		return namesOf(getVisibleFrom(require(name)));
+	}
+
+	/**
+	 * Gets the approximate size of the index, not counting the dependency matrix.
+	 *
+	 * @return  the size, in bytes
+	 */
+	public long getIndexBytes()
+	{
+		long bytes = 4L * 3 * cond.getElementCount() + 4L * 4 * cond.getComponentCount();
+		for(int c = 0; c < cond.getComponentCount(); c++)
+		{
+			bytes += 8L * reach.getReachable(c).length + 16;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copies the members of a component into an array.
+	 *
+	 * @param c  the component
+	 * @param result  the array
+	 * @param n  the position to copy them to
+	 * @return  the position after the last one copied
+	 */
+	private int addMembers(int c, int[] result, int n)
+	{
+		for(int k = 0; k < cond.getComponentSize(c); k++)
+		{
+			result[n++] = cond.getMember(c, k);
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the names of classes.
+	 *
+	 * @param indices  the indices of the classes
+	 * @return  their names
+	 */
+	private String[] namesOf(int[] indices)
+	{
+		String[] names = new String[indices.length];
+		for(int k = 0; k < indices.length; k++)
+		{
+			names[k] = dep.getName(indices[k]);
+		}
+		return names;
+	}
+}
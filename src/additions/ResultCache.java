@@ -0,0 +1,377 @@
+package additions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A cache of <code>DSMData</code> results on disk, so that a dependency file
+ * that has not changed does not have to be parsed and analyzed again.<br>
+ * <br>
+ * Each entry is a <code>BinaryDSMFile</code> with the dependency matrix and the
+ * results (and optionally the visibility matrix), named by the SHA-256 hash of
+ * the contents of the dependencies file, the filter, whether the propagation cost
+ * with self-dependencies is calculated, and <code>ENGINE_VERSION</code>. If any of
+ * them changes, the key changes, so an entry never has to be invalidated.<br>
+ * <br>
+ * Several processes can share one cache folder:
+ * <ul>
+ * <li>Entries are written to a temporary file in the same folder and then moved
+ * into place in one step, so a reader never sees a half-written entry. If two
+ * processes analyze the same file at once, both write the same entry and the
+ * last move wins.</li>
+ * <li>Reading an entry updates its last modified time, which is used as the time
+ * it was last used.</li>
+ * <li>After each write, the least recently used entries are deleted until the
+ * cache fits in its size limit. Only one process evicts at a time, by locking the
+ * <code>.lock</code> file in the folder. An entry that is deleted while another
+ * process is reading it stays readable to that process (on POSIX file systems),
+ * and any entry that cannot be read is treated as missing.</li>
+ * </ul>
+ */
+public class ResultCache
+{
+	/** Logger to print messages to user. */
+	private static Logger logger = Logger.getLogger(ResultCache.class);
+	/** The version of the analysis. Change this when the results would change. */
+	public static final String ENGINE_VERSION = "architecture-analysis-1/dsmb-"
+			+ BinaryDSMFile.VERSION;
+	/** The extension of the cache entries. */
+	private static final String EXTENSION = ".dsmb";
+	/** The extension of the temporary files entries are written to. */
+	private static final String TEMP_EXTENSION = ".tmp";
+	/** The name of the file that is locked while evicting. */
+	private static final String LOCK_FILE = ".lock";
+	/** The age after which a temporary file is assumed to be left over from a crash. */
+	private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000L;
+	/** Only one thread of this JVM evicts at a time, since file locks are per process. */
+	private static final Object EVICTION_LOCK = new Object();
+
+	/** The folder holding the entries. */
+	private Path directory;
+	/** The largest total size of the entries, in bytes. */
+	private long maxBytes;
+	/** Whether to store the visibility matrix in new entries, when there is one. */
+	private boolean storeClosure;
+
+	/**
+	 * Constructor for a cache in the given folder, which is created if needed.
+	 *
+	 * @param directory  the path of the cache folder
+	 * @param maxBytes  the largest total size of the entries, in bytes
+	 * @param storeClosure  true to also store the visibility matrix in new entries
+	 * (whenever <code>DSMData</code> keeps it as a <code>BitMatrix</code>)
+	 * @throws IOException  if the folder cannot be created
+	 */
+	public ResultCache(String directory, long maxBytes, boolean storeClosure) throws IOException
+	{
+		this.directory = Paths.get(directory);
+		this.maxBytes = maxBytes;
+		this.storeClosure = storeClosure;
+		Files.createDirectories(this.directory);
+	}
+
+	/**
+	 * Gets the analysis of a dependencies file from the cache, or analyzes it
+	 * and stores it in the cache if it is not there.
+	 *
+	 * @param calcPropCost2  true to also calculate propagation cost with self-dependencies
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @param mode  the method used to calculate the visibility matrix
+	 * @return  the analysis of the file
+	 * @throws IOException  if the dependencies file cannot be read
+	 */
+	public DSMData analyze(boolean calcPropCost2, String depFilePath, String filter,
+						   VisibilityMode mode) throws IOException
+	{
+		String key = getKey(calcPropCost2, depFilePath, filter);
+		Path entry = directory.resolve(key + EXTENSION);
+
+		DSMData cached = read(entry, calcPropCost2, mode);
+		if(cached != null)
+		{
+			logger.info("Using cached results for " + depFilePath);
+			return cached;
+		}
+
+		logger.info("No cached results for " + depFilePath);
+		DSMData data = new DSMData(calcPropCost2, depFilePath, filter, mode);
+		DSMResults results = data.getResults();
+		//estimates are not stored, since the key does not include the mode
+		if(data.getDependencyMatrix() != null && results != null
+				&& mode != VisibilityMode.APPROXIMATE)
+		{
+			write(entry, key, data, results);
+			evict();
+		}
+		return data;
+	}
+
+	/**
+	 * Gets the key of the cache entry for a dependencies file.
+	 *
+	 * @param calcPropCost2  true if propagation cost with self-dependencies is calculated
+	 * @param depFilePath  the path to the XML dependencies file
+	 * @param filter  the filter to use when analyzing the DSM
+	 * @return  the key, as a hexadecimal SHA-256 hash
+	 * @throws IOException  if the dependencies file cannot be read
+	 */
+	public static String getKey(boolean calcPropCost2, String depFilePath, String filter)
+			throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		InputStream in = Files.newInputStream(Paths.get(depFilePath));
+		try
+		{
+			int read;
+			while((read = in.read(buffer)) > 0)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		String settings = "\0" + filter + "\0" + calcPropCost2 + "\0" + ENGINE_VERSION;
+		digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest())
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Reads a cache entry, if it exists and is complete, and marks it as used.
+	 *
+	 * @param entry  the path of the entry
+	 * @param calcPropCost2  true if propagation cost with self-dependencies is needed
+	 * @param mode  the visibility mode to give the restored DSM
+	 * @return  the analysis, or null if the entry cannot be used
+	 */
+	private DSMData read(Path entry, boolean calcPropCost2, VisibilityMode mode)
+	{
+		try
+		{
+			BinaryDSMFile file = new BinaryDSMFile(entry.toString());
+			if(!file.hasResults())
+			{
+				return null;
+			}
+			try
+			{
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			}
+			catch(IOException e)
+			{
+				//another process may have just evicted it; the mapping is still readable
+			}
+			return new DSMData(calcPropCost2, file, mode);
+		}
+		catch(NoSuchFileException e)
+		{
+			return null;
+		}
+		catch(IOException e)
+		{
+			logger.info("Ignoring unreadable cache entry " + entry + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a cache entry to a temporary file and then moves it into place.
+	 *
+	 * @param entry  the path of the entry
+	 * @param key  the key of the entry
+	 * @param data  the analysis
+	 * @param results  the results of the analysis
+	 */
+	private void write(Path entry, String key, DSMData data, DSMResults results)
+	{
+		Path temp = null;
+		try
+		{
+			temp = Files.createTempFile(directory, key, TEMP_EXTENSION);
+			BitMatrix closure = storeClosure ? data.getVisibilityMatrix() : null;
+			BinaryDSMFile.write(temp.toString(), data.getDependencyMatrix(), closure, results);
+			try
+			{
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		}
+		catch(IOException e)
+		{
+			logger.info("Could not write cache entry " + entry + ": " + e.getMessage());
+		}
+		finally
+		{
+			if(temp != null)
+			{
+				try
+				{
+					Files.deleteIfExists(temp);
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache fits in its size
+	 * limit, and deletes temporary files left over from crashed processes. Does
+	 * nothing if another process is already evicting.
+	 */
+	public void evict()
+	{
+		synchronized(EVICTION_LOCK)
+		{
+			try
+			{
+				FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				try
+				{
+					FileLock lock = channel.tryLock();
+					if(lock == null)
+					{
+						return;
+					}
+					try
+					{
+						evictLocked();
+					}
+					finally
+					{
+						lock.release();
+					}
+				}
+				finally
+				{
+					channel.close();
+				}
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Deletes entries while holding the eviction lock.
+	 *
+	 * @throws IOException  if the cache folder cannot be listed
+	 */
+	private void evictLocked() throws IOException
+	{
+		final List<Path> entries = new ArrayList<Path>();
+		final List<Long> used = new ArrayList<Long>();
+		List<Long> sizes = new ArrayList<Long>();
+		long total = 0;
+		long now = System.currentTimeMillis();
+		DirectoryStream<Path> files = Files.newDirectoryStream(directory);
+		try
+		{
+			for(Path file : files)
+			{
+				String name = file.getFileName().toString();
+				try
+				{
+					long modified = Files.getLastModifiedTime(file).toMillis();
+					if(name.endsWith(TEMP_EXTENSION) && now - modified > STALE_TEMP_MILLIS)
+					{
+						Files.deleteIfExists(file);
+					}
+					else if(name.endsWith(EXTENSION))
+					{
+						long size = Files.size(file);
+						entries.add(file);
+						used.add(modified);
+						sizes.add(size);
+						total += size;
+					}
+				}
+				catch(NoSuchFileException e)
+				{
+					//deleted by another process since the folder was listed
+				}
+			}
+		}
+		finally
+		{
+			files.close();
+		}
+		if(total <= maxBytes)
+		{
+			return;
+		}
+
+		List<Integer> order = new ArrayList<Integer>();
+		for(int i = 0; i < entries.size(); i++)
+		{
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(used.get(a), used.get(b));
+			}
+		});
+		int evicted = 0;
+		for(int k = 0; k < order.size() && total > maxBytes; k++)
+		{
+			int i = order.get(k);
+			if(Files.deleteIfExists(entries.get(i)))
+			{
+				evicted++;
+			}
+			total -= sizes.get(i);
+		}
+		logger.info("Evicted " + evicted + " cache entries.");
+	}
+}
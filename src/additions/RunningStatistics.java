@@ -0,0 +1,141 @@
+package additions;
+
+/**
+ * Keeps the count, minimum, maximum, mean, and variance of a stream of values,
+ * and estimates of some of its percentiles, without storing the values. The
+ * mean and variance are updated with Welford's method, which does not lose
+ * precision when the values are large compared to their spread, and the
+ * percentiles with <code>P2Quantile</code>.
+ */
+public class RunningStatistics
+{
+	/** The number of values seen. */
+	private long count;
+	/** The mean of the values. */
+	private double mean;
+	/** The sum of the squared differences from the mean. */
+	private double squares;
+	/** The smallest value. */
+	private double min;
+	/** The largest value. */
+	private double max;
+	/** The estimators of the percentiles. */
+	private P2Quantile[] quantiles;
+
+	/**
+	 * Constructor that also estimates the given quantiles.
+	 *
+	 * @param quantiles  the quantiles to estimate, between 0 and 1 (such as 0.5 for the median)
+	 */
+	public RunningStatistics(double... quantiles)
+	{
+		this.count = 0;
+		this.mean = 0;
+		this.squares = 0;
+		this.min = Double.POSITIVE_INFINITY;
+		this.max = Double.NEGATIVE_INFINITY;
+		this.quantiles = new P2Quantile[quantiles.length];
+		for(int q = 0; q < quantiles.length; q++)
+		{
+			this.quantiles[q] = new P2Quantile(quantiles[q]);
+		}
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param x  the value
+	 */
+	public void add(double x)
+	{
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		squares += delta * (x - mean);
+		min = Math.min(min, x);
+		max = Math.max(max, x);
+		for(P2Quantile q : quantiles)
+		{
+			q.add(x);
+		}
+	}
+
+	/**
+	 * Gets the number of values.
+	 *
+	 * @return  the count
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the mean of the values.
+	 *
+	 * @return  the mean, or 0 if there are none
+	 */
+	public double getMean()
+	{
+		return mean;
+	}
+
+	/**
+	 * Gets the sample variance of the values.
+	 *
+	 * @return  the variance, or 0 if there are fewer than two values
+	 */
+	public double getVariance()
+	{
+		return (count < 2) ? 0 : squares / (count - 1);
+	}
+
+	/**
+	 * Gets the sample standard deviation of the values.
+	 *
+	 * @return  the standard deviation, or 0 if there are fewer than two values
+	 */
+	public double getStandardDeviation()
+	{
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * Gets the smallest value.
+	 *
+	 * @return  the minimum, or 0 if there are none
+	 */
+	public double getMin()
+	{
+		return (count == 0) ? 0 : min;
+	}
+
+	/**
+	 * Gets the largest value.
+	 *
+	 * @return  the maximum, or 0 if there are none
+	 */
+	public double getMax()
+	{
+		return (count == 0) ? 0 : max;
+	}
+
+	/**
+	 * Gets the estimate of a quantile that was given to the constructor.
+	 *
+	 * @param p  the quantile, between 0 and 1
+	 * @return  the estimate, or 0 if there are no values
+	 * @throws IllegalArgumentException  if the quantile is not being estimated
+	 */
+	public double getQuantile(double p)
+	{
+		for(P2Quantile q : quantiles)
+		{
+			if(q.getQuantile() == p)
+			{
+				return q.get();
+			}
+		}
+		throw new IllegalArgumentException("The quantile " + p + " is not being estimated.");
+	}
+}
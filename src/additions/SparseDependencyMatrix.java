@@ -0,0 +1,317 @@
+package additions;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.jblas.DoubleMatrix;
+
+import edu.carleton.tim.jdsm.DesignStructureMatrix;
+import edu.carleton.tim.jdsm.dependency.Dependency;
+
+/**
+ * A binary dependency matrix stored in compressed sparse row (CSR) form.<br>
+ * <br>
+ * Row i of the matrix (the components that component i depends on) is stored
+ * in <code>columns[rowStart[i]]</code> to <code>columns[rowStart[i+1] - 1]</code>,
+ * in ascending order. Real class dependency graphs have far fewer than 1% non-zero
+ * entries, so this takes memory proportional to the number of dependencies rather
+ * than the square of the number of components.<br>
+ * <br>
+ * The names of the components can optionally be kept with the matrix, in the
+ * same order as the rows.
+ */
+public class SparseDependencyMatrix
+{
+	/** The number of rows (and columns) in the matrix. */
+	private int size;
+	/** The position in <code>columns</code> where each row starts. Has size + 1 entries. */
+	private int[] rowStart;
+	/** The column indices of the non-zero entries, row by row. */
+	private int[] columns;
+	/** The names of the components, or null if they are not known. */
+	private String[] names;
+	/** The transpose of this matrix, created the first time it is needed. */
+	private SparseDependencyMatrix transpose;
+
+	/**
+	 * Constructor with the CSR arrays given directly. The column indices of
+	 * each row must be in ascending order and must not repeat.
+	 *
+	 * @param size  the number of rows and columns
+	 * @param rowStart  the position where each row starts, with size + 1 entries
+	 * @param columns  the column indices of the non-zero entries
+	 * @param names  the names of the components, or null
+	 */
+	public SparseDependencyMatrix(int size, int[] rowStart, int[] columns, String[] names)
+	{
+		this.size = size;
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.names = names;
+		this.transpose = null;
+	}
+
+	/**
+	 * Creates a sparse matrix from a jDSM DSM, with Dependency.YES as the
+	 * non-zero entries.
+	 *
+	 * @param d  the DSM
+	 * @return  the sparse dependency matrix
+	 */
+	public static SparseDependencyMatrix fromDSM(DesignStructureMatrix<Dependency> d)
+	{
+		Dependency[][] data = d.getMap();
+		int n = data.length;
+		int[] rowStart = new int[n + 1];
+		for(int i = 0; i < n; i++)
+		{
+			int count = 0;
+			for(int j = 0; j < data[i].length; j++)
+			{
+				if(data[i][j].equals(Dependency.YES))
+				{
+					count++;
+				}
+			}
+			rowStart[i + 1] = rowStart[i] + count;
+		}
+		int[] columns = new int[rowStart[n]];
+		int pos = 0;
+		for(int i = 0; i < n; i++)
+		{
+			for(int j = 0; j < data[i].length; j++)
+			{
+				if(data[i][j].equals(Dependency.YES))
+				{
+					columns[pos++] = j;
+				}
+			}
+		}
+
+		String[] names = null;
+		Map<Integer, String> positions = d.getPositionNameMappings();
+		if(positions != null && positions.size() == n)
+		{
+			names = new String[n];
+			for(int i = 0; i < n; i++)
+			{
+				names[i] = positions.get(i);
+			}
+		}
+		return new SparseDependencyMatrix(n, rowStart, columns, names);
+	}
+
+	/**
+	 * Creates a sparse matrix from a list of dependencies, given as pairs of
+	 * <code>from[e]</code> and <code>to[e]</code>. Repeated dependencies are
+	 * only stored once.
+	 *
+	 * @param size  the number of rows and columns
+	 * @param from  the element that has each dependency
+	 * @param to  the element that each dependency is on
+	 * @param count  the number of dependencies in the arrays
+	 * @param names  the names of the components, or null
+	 * @return  the sparse dependency matrix
+	 */
+	public static SparseDependencyMatrix fromEdges(int size, int[] from, int[] to,
+												   int count, String[] names)
+	{
+		int[] rowStart = new int[size + 1];
+		for(int e = 0; e < count; e++)
+		{
+			rowStart[from[e] + 1]++;
+		}
+		for(int i = 0; i < size; i++)
+		{
+			rowStart[i + 1] += rowStart[i];
+		}
+		int[] next = Arrays.copyOf(rowStart, size);
+		int[] columns = new int[count];
+		for(int e = 0; e < count; e++)
+		{
+			columns[next[from[e]]++] = to[e];
+		}
+
+		//sort each row and remove repeats, moving the rows down as they shrink
+		int write = 0;
+		int start = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int end = rowStart[i + 1];
+			Arrays.sort(columns, start, end);
+			rowStart[i] = write;
+			for(int p = start; p < end; p++)
+			{
+				if(write == rowStart[i] || columns[p] != columns[write - 1])
+				{
+					columns[write++] = columns[p];
+				}
+			}
+			start = end;
+		}
+		rowStart[size] = write;
+		if(write < count)
+		{
+			columns = Arrays.copyOf(columns, write);
+		}
+		return new SparseDependencyMatrix(size, rowStart, columns, names);
+	}
+
+	/**
+	 * Gets the number of rows (and columns) in the matrix.
+	 *
+	 * @return  the number of components
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the number of non-zero entries in the matrix.
+	 *
+	 * @return  the number of dependencies
+	 */
+	public int getEdgeCount()
+	{
+		return rowStart[size];
+	}
+
+	/**
+	 * Gets the array of row start positions. The returned array is the one
+	 * backing the matrix, and must not be changed.
+	 *
+	 * @return  the row start positions, with size + 1 entries
+	 */
+	public int[] getRowStarts()
+	{
+		return rowStart;
+	}
+
+	/**
+	 * Gets the array of column indices. The returned array is the one
+	 * backing the matrix, and must not be changed.
+	 *
+	 * @return  the column indices of the non-zero entries, row by row
+	 */
+	public int[] getColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * Gets the number of non-zero entries in a row.
+	 *
+	 * @param i  the row
+	 * @return  the number of components that component i depends on
+	 */
+	public int getRowCount(int i)
+	{
+		return rowStart[i + 1] - rowStart[i];
+	}
+
+	/**
+	 * Gets the value of a single entry.
+	 *
+	 * @param i  the row
+	 * @param j  the column
+	 * @return  true if component i depends on component j
+	 */
+	public boolean get(int i, int j)
+	{
+		int lo = rowStart[i];
+		int hi = rowStart[i + 1] - 1;
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if(columns[mid] < j)
+			{
+				lo = mid + 1;
+			}
+			else if(columns[mid] > j)
+			{
+				hi = mid - 1;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the name of a component.
+	 *
+	 * @param i  the index of the component
+	 * @return  the name, or null if the names are not known
+	 */
+	public String getName(int i)
+	{
+		return (names == null) ? null : names[i];
+	}
+
+	/**
+	 * Gets the names of all components.
+	 *
+	 * @return  the names, or null if they are not known
+	 */
+	public String[] getNames()
+	{
+		return names;
+	}
+
+	/**
+	 * Gets the transpose of this matrix (the compressed sparse column form),
+	 * where row j lists the components that depend on component j. It is
+	 * computed the first time it is needed and then kept.
+	 *
+	 * @return  the transposed matrix
+	 */
+	public SparseDependencyMatrix transpose()
+	{
+		if(transpose == null)
+		{
+			int[] tStart = new int[size + 1];
+			for(int p = 0; p < rowStart[size]; p++)
+			{
+				tStart[columns[p] + 1]++;
+			}
+			for(int j = 0; j < size; j++)
+			{
+				tStart[j + 1] += tStart[j];
+			}
+			int[] next = new int[size];
+			System.arraycopy(tStart, 0, next, 0, size);
+			int[] tColumns = new int[rowStart[size]];
+			for(int i = 0; i < size; i++)
+			{
+				for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+				{
+					tColumns[next[columns[p]]++] = i;
+				}
+			}
+			transpose = new SparseDependencyMatrix(size, tStart, tColumns, names);
+			transpose.transpose = this;
+		}
+		return transpose;
+	}
+
+	/**
+	 * Converts this matrix into a dense DoubleMatrix of 1s and 0s.
+	 *
+	 * @return  the matrix as a DoubleMatrix
+	 */
+	public DoubleMatrix toDoubleMatrix()
+	{
+		DoubleMatrix m = DoubleMatrix.zeros(size, size);
+		for(int i = 0; i < size; i++)
+		{
+			for(int p = rowStart[i]; p < rowStart[i + 1]; p++)
+			{
+				m.put(i, columns[p], 1.0);
+			}
+		}
+		return m;
+	}
+}
@@ -0,0 +1,140 @@
+package additions;
+
+import java.util.Arrays;
+
+/**
+ * Finds the elements that can be reached from a given element by
+ * following dependencies, with a breadth-first search over a
+ * <code>SparseDependencyMatrix</code>.<br>
+ * <br>
+ * One search takes time proportional to the number of dependencies it
+ * follows. The scratch buffers are allocated once and reused by every
+ * search, so an instance must not be shared between threads.
+ */
+public class SparseReachability
+{
+	/** The dependency matrix to search. */
+	private SparseDependencyMatrix dep;
+	/** The stamp of the last search that reached each element. */
+	private int[] mark;
+	/** The elements reached by the last search, in the order they were reached. */
+	private int[] queue;
+	/** The number of elements reached by the last search. */
+	private int reached;
+	/** The stamp of the current search. */
+	private int stamp;
+	/** The source of the last search. */
+	private int source;
+
+	/**
+	 * Constructor for searching the given dependency matrix.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public SparseReachability(SparseDependencyMatrix dep)
+	{
+		this.dep = dep;
+		this.mark = new int[dep.size()];
+		this.queue = new int[dep.size()];
+		this.reached = 0;
+		this.stamp = 0;
+		this.source = -1;
+	}
+
+	/**
+	 * Counts the VFI and VFO of every element by searching from each one in
+	 * turn, without building the visibility matrix. Takes time proportional to
+	 * the number of elements times the number of dependencies, and memory
+	 * proportional to the number of elements.
+	 *
+	 * @param dep  the dependency matrix
+	 * @return  the VFI, VFO, and diagonal count of the visibility matrix
+	 */
+	public static ReachabilityCounts countAll(SparseDependencyMatrix dep)
+	{
+		int n = dep.size();
+		int[] vfi = new int[n];
+		int[] vfo = new int[n];
+		int selfVisible = 0;
+		SparseReachability search = new SparseReachability(dep);
+		for(int s = 0; s < n; s++)
+		{
+			int count = search.search(s);
+			vfo[s] = count;
+			for(int k = 0; k < count; k++)
+			{
+				vfi[search.queue[k]]++;
+			}
+			if(search.reachedSelf())
+			{
+				selfVisible++;
+			}
+		}
+		return new ReachabilityCounts(vfi, vfo, selfVisible);
+	}
+
+	/**
+	 * Finds all elements that can be reached from the source by a path of one
+	 * or more dependencies. The source itself is only included if it is part
+	 * of a cycle.
+	 *
+	 * @param s  the index of the source element
+	 * @return  the number of elements reached
+	 */
+	public int search(int s)
+	{
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		if(++stamp == 0)
+		{
+			//the stamps wrapped around, so old marks could be mistaken for new ones
+			Arrays.fill(mark, 0);
+			stamp = 1;
+		}
+		source = s;
+		int head = 0;
+		int tail = 0;
+		int v = s;
+		while(true)
+		{
+			for(int p = rowStart[v]; p < rowStart[v + 1]; p++)
+			{
+				int w = columns[p];
+				if(mark[w] != stamp)
+				{
+					mark[w] = stamp;
+					queue[tail++] = w;
+				}
+			}
+			if(head == tail)
+			{
+				break;
+			}
+			v = queue[head++];
+		}
+		reached = tail;
+		return reached;
+	}
+
+	/**
+	 * Gets an element reached by the last search.
+	 *
+	 * @param k  the position of the element, from 0 to the number reached
+	 * @return  the index of the element
+	 */
+	public int getReached(int k)
+	{
+		return queue[k];
+	}
+
+	/**
+	 * Checks whether the last search reached its own source, which means
+	 * that the source is part of a cycle.
+	 *
+	 * @return  true if the source can see itself
+	 */
+	public boolean reachedSelf()
+	{
+		return source >= 0 && mark[source] == stamp;
+	}
+}
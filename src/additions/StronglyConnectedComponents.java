@@ -0,0 +1,164 @@
+package additions;
+
+/**
+ * Finds the strongly connected components of a dependency graph with
+ * Tarjan's algorithm. Runs in time linear in the number of elements and
+ * dependencies, and does not need the visibility matrix.<br>
+ * <br>
+ * A strongly connected component with more than one element is a cyclic
+ * group: each of its members depends, directly or indirectly, on all the
+ * others. The largest one is the Core.<br>
+ * <br>
+ * The algorithm is written with an explicit stack instead of recursion,
+ * so that it does not overflow the call stack on large systems. Components
+ * are numbered in the order they are completed, which is a reverse
+ * topological order of the condensed graph (a component is numbered before
+ * any component that depends on it).
+ */
+public class StronglyConnectedComponents
+{
+	/** The component number of each element. */
+	private int[] component;
+	/** The number of elements in each component. */
+	private int[] sizes;
+	/** The number of components found. */
+	private int count;
+
+	/**
+	 * Finds the strongly connected components of the given graph.
+	 *
+	 * @param dep  the dependency matrix
+	 */
+	public StronglyConnectedComponents(SparseDependencyMatrix dep)
+	{
+		int n = dep.size();
+		int[] rowStart = dep.getRowStarts();
+		int[] columns = dep.getColumns();
+		component = new int[n];
+		sizes = new int[n];
+		count = 0;
+
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] edgePos = new int[n];	//position in columns of the next dependency to follow
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] call = new int[n];
+		int sp = 0;
+		int next = 0;
+
+		for(int i = 0; i < n; i++)
+		{
+			index[i] = -1;
+		}
+		for(int s = 0; s < n; s++)
+		{
+			if(index[s] != -1)
+			{
+				continue;
+			}
+			int csp = 0;
+			index[s] = low[s] = next++;
+			edgePos[s] = rowStart[s];
+			stack[sp++] = s;
+			onStack[s] = true;
+			call[csp++] = s;
+			while(csp > 0)
+			{
+				int v = call[csp - 1];
+				if(edgePos[v] < rowStart[v + 1])
+				{
+					int w = columns[edgePos[v]++];
+					if(index[w] == -1)
+					{
+						index[w] = low[w] = next++;
+						edgePos[w] = rowStart[w];
+						stack[sp++] = w;
+						onStack[w] = true;
+						call[csp++] = w;
+					}
+					else if(onStack[w] && index[w] < low[v])
+					{
+						low[v] = index[w];
+					}
+				}
+				else
+				{
+					csp--;
+					if(csp > 0)
+					{
+						int u = call[csp - 1];
+						if(low[v] < low[u])
+						{
+							low[u] = low[v];
+						}
+					}
+					if(low[v] == index[v])
+					{
+						int w;
+						do
+						{
+							w = stack[--sp];
+							onStack[w] = false;
+							component[w] = count;
+							sizes[count]++;
+						}
+						while(w != v);
+						count++;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of strongly connected components.
+	 *
+	 * @return  the number of components
+	 */
+	public int getComponentCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the component number of an element.
+	 *
+	 * @param element  the index of the element
+	 * @return  the component it belongs to
+	 */
+	public int getComponent(int element)
+	{
+		return component[element];
+	}
+
+	/**
+	 * Gets the number of elements in a component.
+	 *
+	 * @param c  the component number
+	 * @return  the size of the component
+	 */
+	public int getComponentSize(int c)
+	{
+		return sizes[c];
+	}
+
+	/**
+	 * Gets the size of the largest component. This is 1 if the graph has no
+	 * cycles, and 0 if it is empty.
+	 *
+	 * @return  the size of the largest component
+	 */
+	public int getLargestComponentSize()
+	{
+		int max = 0;
+		for(int c = 0; c < count; c++)
+		{
+			if(sizes[c] > max)
+			{
+				max = sizes[c];
+			}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,47 @@
+package additions;
+
+/**
+ * The methods that <code>DSMData</code> can use to calculate the visibility matrix.
+ * Each one is a <code>ClosureEngine</code> from <code>ClosureEngines</code>.
+ */
+public enum VisibilityMode
+{
+	/** The original method: sums the powers of the dependency matrix with jBLAS
+	 *  until they become zero. Very slow, but kept as a reference. */
+	REFERENCE,
+	/** Computes the transitive closure with Warshall's algorithm on
+	 *  a bit-packed matrix. Gives the same result as <code>REFERENCE</code>. */
+	BITSET,
+	/** Builds the same bit-packed matrix as <code>BITSET</code> from the
+	 *  strongly connected components, with one row OR per dependency between
+	 *  components. Much faster than <code>BITSET</code> on large, sparse systems. */
+	CONDENSED_BITSET,
+	/** Searches the sparse dependency matrix from every element and only keeps
+	 *  the VFI and VFO counts, so memory scales with the number of dependencies.
+	 *  The visibility matrix itself is never built. */
+	SPARSE,
+	/** Like <code>SPARSE</code>, but the searches run in parallel on a
+	 *  <code>ForkJoinPool</code>, and their results are also stored as a
+	 *  bit-packed visibility matrix. */
+	PARALLEL,
+	/** Like <code>SPARSE</code>, but the searches run in parallel on a
+	 *  <code>ForkJoinPool</code>. The visibility matrix itself is never built. */
+	PARALLEL_SPARSE,
+	/** Collapses the strongly connected components and counts the VFI and VFO
+	 *  over the resulting acyclic graph, with one bitset per component. Memory
+	 *  scales with the number of components, so it is smallest on systems with
+	 *  a big Core. The visibility matrix itself is never built. */
+	CONDENSATION,
+	/** Estimates the VFI and VFO from random ranks propagated over the
+	 *  condensation, in near-linear time. The results are approximate, with
+	 *  the error given by <code>DSMData.getPropCostError()</code>. */
+	APPROXIMATE,
+	/** Builds the bit-packed visibility matrix outside the Java heap, in direct
+	 *  buffers or a memory-mapped scratch file, under the memory budget given by
+	 *  <code>DSMData.setOffHeap()</code>. For systems whose visibility matrix
+	 *  does not fit in the heap. */
+	OFF_HEAP,
+	/** Lets a <code>ClosurePlanner</code> choose one of the exact modes from the
+	 *  number of elements and dependencies and the memory available. */
+	AUTO
+}